@@ -18,4 +18,9 @@
 
 # If you keep the line number information, uncomment this to
 # hide the original source file name.
-#-renamesourcefileattribute SourceFile
\ No newline at end of file
+#-renamesourcefileattribute SourceFile
+
+# 注解处理器生成的EntityMapper通过Class.forName加载
+-keep class * implements com.sty.ne.db.db.EntityMapper {
+    public <init>();
+}
\ No newline at end of file
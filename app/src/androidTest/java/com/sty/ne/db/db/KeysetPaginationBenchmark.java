@@ -0,0 +1,125 @@
+package com.sty.ne.db.db;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.sty.ne.db.model.Photo;
+import com.sty.ne.db.storage.android.AndroidStorage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 对比 limit offset 分页和键集分页在深页上的耗时
+ * 默认100万行，可以通过 -e rowCount 10000 调整
+ * ./gradlew connectedAndroidTest -Pandroid.testInstrumentationRunnerArguments.class=com.sty.ne.db.db.KeysetPaginationBenchmark
+ * @Author: tian
+ * @UpdateDate: 2020/11/28 4:20 PM
+ */
+@RunWith(AndroidJUnit4.class)
+public class KeysetPaginationBenchmark {
+    private static final String TAG = "KeysetPagination";
+    private static final int PAGE_SIZE = 50;
+    private static final int REPEAT = 5;
+
+    private File dbFile;
+    private SQLiteDatabase database;
+    private BaseDao<Photo> photoDao;
+    private int rowCount;
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        Bundle arguments = InstrumentationRegistry.getArguments();
+        rowCount = Integer.parseInt(arguments.getString("rowCount", "1000000"));
+
+        dbFile = context.getDatabasePath("keyset_benchmark.db");
+        dbFile.getParentFile().mkdirs();
+        SQLiteDatabase.deleteDatabase(dbFile);
+        database = SQLiteDatabase.openOrCreateDatabase(dbFile, null);
+        photoDao = new BaseDao<>();
+        photoDao.init(AndroidStorage.wrap(database), Photo.class);
+        database.execSQL("create index if not exists idx_tb_photo_time on tb_photo(time)");
+
+        long start = SystemClock.elapsedRealtime();
+        List<Photo> batch = new ArrayList<>();
+        for (int i = 0; i < rowCount; i++) {
+            Photo photo = new Photo();
+            //每10行的time相同，检验相同排序值时按rowid续传
+            photo.setTime(String.format("2020-11-28 %08d", i / 10));
+            photo.setPath("/sdcard/photo/" + i + ".jpg");
+            batch.add(photo);
+            if(batch.size() == 10000) {
+                photoDao.insertAll(batch);
+                batch.clear();
+            }
+        }
+        photoDao.insertAll(batch);
+        Log.i(TAG, "insert " + rowCount + " rows: " + (SystemClock.elapsedRealtime() - start) + "ms");
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+        SQLiteDatabase.deleteDatabase(dbFile);
+    }
+
+    @Test
+    public void compareDeepPages() {
+        int[] depths = {0, rowCount / 10, rowCount / 2, rowCount - PAGE_SIZE};
+        for (int depth : depths) {
+            //先走到该深度，拿到续传标记（不计时）
+            String token = tokenAt(depth);
+
+            long offsetNanos = 0;
+            long keysetNanos = 0;
+            List<Photo> byOffset = null;
+            Page<Photo> byKeyset = null;
+            for (int i = 0; i < REPEAT; i++) {
+                long start = System.nanoTime();
+                byOffset = photoDao.query(new Photo(), "time, rowid", depth, PAGE_SIZE);
+                offsetNanos += System.nanoTime() - start;
+
+                start = System.nanoTime();
+                byKeyset = photoDao.queryPage(new Photo(), "time", false, PAGE_SIZE, token);
+                keysetNanos += System.nanoTime() - start;
+            }
+
+            assertEquals(byOffset.size(), byKeyset.getItems().size());
+            for (int i = 0; i < byOffset.size(); i++) {
+                assertEquals(byOffset.get(i).getPath(), byKeyset.getItems().get(i).getPath());
+            }
+            Log.i(TAG, "depth=" + depth + " offset=" + offsetNanos / REPEAT / 1000 + "us"
+                    + " keyset=" + keysetNanos / REPEAT / 1000 + "us");
+        }
+    }
+
+    private String tokenAt(int depth) {
+        if(depth == 0) {
+            return null;
+        }
+        String token = null;
+        int skipped = 0;
+        while (skipped < depth) {
+            int limit = Math.min(10000, depth - skipped);
+            Page<Photo> page = photoDao.queryPage(new Photo(), "time", false, limit, token);
+            skipped += page.getItems().size();
+            token = page.getNextPageToken();
+        }
+        return token;
+    }
+}
@@ -0,0 +1,34 @@
+package com.sty.ne.db.storage;
+
+import android.content.Context;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.sty.ne.db.storage.android.AndroidStorage;
+
+import org.junit.runner.RunWith;
+
+import java.io.File;
+
+/**
+ * Android后端的一致性测试
+ * @Author: tian
+ * @UpdateDate: 2020/12/14 8:40 PM
+ */
+@RunWith(AndroidJUnit4.class)
+public class AndroidStorageConformanceTest extends StorageConformanceTest {
+
+    @Override
+    protected Storage createStorage() {
+        return new AndroidStorage();
+    }
+
+    @Override
+    protected File getDatabaseFile(String name) {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        File file = context.getDatabasePath(name);
+        file.getParentFile().mkdirs();
+        return file;
+    }
+}
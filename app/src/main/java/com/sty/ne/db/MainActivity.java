@@ -2,24 +2,33 @@ package com.sty.ne.db;
 
 import androidx.appcompat.app.AppCompatActivity;
 
+import android.content.Context;
 import android.os.Bundle;
 import android.util.Log;
 import android.view.View;
 import android.widget.Button;
 import android.widget.Toast;
 
+import com.sty.ne.db.db.AsyncDao;
 import com.sty.ne.db.db.BaseDao;
 import com.sty.ne.db.db.BaseDaoFactory;
+import com.sty.ne.db.db.DaoCallback;
+import com.sty.ne.db.db.DaoExecutors;
+import com.sty.ne.db.db.DbBootstrap;
 import com.sty.ne.db.db.OrderDao;
 import com.sty.ne.db.db.UserDao;
 import com.sty.ne.db.model.Photo;
 import com.sty.ne.db.model.User;
 import com.sty.ne.db.subdb.BaseDaoSubFactory;
 import com.sty.ne.db.subdb.PhotoDao;
+import com.sty.ne.db.subdb.TenantDatabaseManager;
+import com.sty.ne.db.update.MigrationRunner;
 import com.sty.ne.db.update.UpdateManager;
 
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 public class MainActivity extends AppCompatActivity {
     private Button btnInsert;
@@ -32,6 +41,9 @@ public class MainActivity extends AppCompatActivity {
 
     private int index = 0;
     private UserDao userDao;
+    //数据库操作都放到后台线程，结果在主线程上回调；数据库初始化完成之前为null
+    private AsyncDao<User> asyncUserDao;
+    private AsyncDao<User> asyncBaseDao;
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -39,6 +51,44 @@ public class MainActivity extends AppCompatActivity {
 
         initView();
         addListeners();
+        initDb();
+    }
+
+    //在写线程上一次建好主库所有的表，之后的写操作都排在它后面
+    private void initDb() {
+        DaoExecutors.getDefault().submitWrite(new Callable<DbBootstrap.Report>() {
+            @Override
+            public DbBootstrap.Report call() {
+                return new DbBootstrap()
+                        .register(UserDao.class, User.class)
+                        .register(BaseDao.<User>type(), User.class)
+                        .run();
+            }
+        }).addCallback(new DaoCallback<DbBootstrap.Report>() {
+            @Override
+            public void onSuccess(DbBootstrap.Report report) {
+                Log.i("sty", report.toString());
+                //已经初始化过，这里只是取出来
+                userDao = BaseDaoFactory.getInstance().getBaseDao(UserDao.class, User.class);
+                asyncUserDao = new AsyncDao<>(userDao);
+                BaseDao<User> baseDao = BaseDaoFactory.getInstance().getBaseDao(BaseDao.<User>type(), User.class);
+                asyncBaseDao = new AsyncDao<>(baseDao);
+            }
+
+            @Override
+            public void onFailure(Throwable error) {
+                Log.e("sty", "数据库初始化失败", error);
+                Toast.makeText(MainActivity.this, "数据库初始化失败", Toast.LENGTH_SHORT).show();
+            }
+        }, DaoExecutors.mainThread());
+    }
+
+    private boolean isDbReady() {
+        if(asyncBaseDao == null) {
+            Toast.makeText(this, "数据库初始化中", Toast.LENGTH_SHORT).show();
+            return false;
+        }
+        return true;
     }
 
     /**
@@ -55,93 +105,167 @@ public class MainActivity extends AppCompatActivity {
         btnLogin = findViewById(R.id.btn_login);
         btnInsertByDb = findViewById(R.id.btn_insert_by_db);
         btnUpdateVersion = findViewById(R.id.btn_update_version);
+    }
+
+    /**
+     * 在主线程上处理结果
+     * @param successMessage 成功时的提示，为null时不提示
+     */
+    private <V> DaoCallback<V> showResult(final String successMessage) {
+        return new DaoCallback<V>() {
+            @Override
+            public void onSuccess(V result) {
+                if(successMessage != null) {
+                    Toast.makeText(MainActivity.this, successMessage, Toast.LENGTH_SHORT).show();
+                }
+            }
 
-        userDao = BaseDaoFactory.getInstance().getBaseDao(UserDao.class, User.class);
+            @Override
+            public void onFailure(Throwable error) {
+                Log.e("sty", "数据库操作失败", error);
+                Toast.makeText(MainActivity.this, "执行失败", Toast.LENGTH_SHORT).show();
+            }
+        };
     }
 
     private void addListeners() {
         btnInsert.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                BaseDao baseDao = BaseDaoFactory.getInstance().getBaseDao(BaseDao.class, User.class);
+                if(!isDbReady()) {
+                    return;
+                }
                 //OrderDao orderDao = BaseDaoFactory.getInstance().getBaseDao(OrderDao.class, User.class);
 
-                baseDao.insert(new User(1, "sty1", "21212"));
-                baseDao.insert(new User(2, "sty2", "111"));
-                baseDao.insert(new User(3, "sty3", "21212"));
-                baseDao.insert(new User(4, "sty4", "1111"));
-                baseDao.insert(new User(5, "sty5", "21212"));
-                baseDao.insert(new User(6, "sty6", "111"));
+                //同一个事务中批量插入，只提交一次
+                asyncBaseDao.insertAll(Arrays.asList(
+                        new User(1, "sty1", "21212"),
+                        new User(2, "sty2", "111"),
+                        new User(3, "sty3", "21212"),
+                        new User(4, "sty4", "1111"),
+                        new User(5, "sty5", "21212"),
+                        new User(6, "sty6", "111")))
+                        .addCallback(MainActivity.this.<Integer>showResult(null), DaoExecutors.mainThread());
             }
         });
 
         btnSelect.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                BaseDao baseDao = BaseDaoFactory.getInstance().getBaseDao(BaseDao.class, User.class);
+                if(!isDbReady()) {
+                    return;
+                }
                 User where = new User();
                 //where.setPwd("111");
-                List<User> list = baseDao.query(where);
-                Log.e("sty", "list size is " + list.size());
-                for (int i = 0; i < list.size(); i++) {
-                    System.out.println(list.get(i).toString());
-                }
+                asyncBaseDao.query(where).addCallback(new DaoCallback<List<User>>() {
+                    @Override
+                    public void onSuccess(List<User> list) {
+                        Log.e("sty", "list size is " + list.size());
+                        for (int i = 0; i < list.size(); i++) {
+                            System.out.println(list.get(i).toString());
+                        }
+                    }
+
+                    @Override
+                    public void onFailure(Throwable error) {
+                        Log.e("sty", "query failed", error);
+                    }
+                }, DaoExecutors.mainThread());
             }
         });
 
         btnUpdate.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                BaseDao baseDao = BaseDaoFactory.getInstance().getBaseDao(BaseDao.class, User.class);
+                if(!isDbReady()) {
+                    return;
+                }
                 User user = new User(2, "xxxxxx", "abcdefg");
 
                 User where = new User();
                 where.setId(2);
-                baseDao.update(user, where);
-                Toast.makeText(MainActivity.this, "执行成功", Toast.LENGTH_SHORT).show();
+                asyncBaseDao.update(user, where)
+                        .addCallback(MainActivity.this.<Long>showResult("执行成功"), DaoExecutors.mainThread());
             }
         });
 
         btnDelete.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                BaseDao baseDao = BaseDaoFactory.getInstance().getBaseDao(BaseDao.class, User.class);
+                if(!isDbReady()) {
+                    return;
+                }
                 User where = new User();
                 where.setName("sty6");
-                baseDao.delete(where);
+                asyncBaseDao.delete(where)
+                        .addCallback(MainActivity.this.<Integer>showResult(null), DaoExecutors.mainThread());
             }
         });
 
         btnLogin.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
+                if(!isDbReady()) {
+                    return;
+                }
                 //服务器返回的信息
-                User user = new User();
+                final User user = new User();
                 user.setName("sty" + (++index));
                 user.setPwd("aaaaaaaaaaa");
                 user.setId(index);
-                //数据库插入
-                userDao.insert(user);
-                Toast.makeText(MainActivity.this, "执行成功", Toast.LENGTH_SHORT).show();
+                //数据库插入，成功后切换到该用户的分库；在写线程上完成，之后的分库操作都用新用户的库
+                asyncUserDao.submitWrite(new Callable<Long>() {
+                    @Override
+                    public Long call() {
+                        long count = userDao.login(user);
+                        if(count > 0) {
+                            TenantDatabaseManager.getInstance().switchTenant(user.getId());
+                        }
+                        return count;
+                    }
+                }).addCallback(MainActivity.this.<Long>showResult("执行成功"), DaoExecutors.mainThread());
             }
         });
 
         btnInsertByDb.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                Photo photo = new Photo();
+                //查询当前登录用户需要主库
+                if(!isDbReady()) {
+                    return;
+                }
+                final Photo photo = new Photo();
                 photo.setPath("/data/data/xxx.jpg");
                 photo.setTime(new Date().toString());
-                PhotoDao photoDao = BaseDaoSubFactory.getInstance().getBaseDao(PhotoDao.class, Photo.class);
-                photoDao.insert(photo);
+                //打开分库也在写线程上，排在之前的登录之后
+                DaoExecutors.getDefault().submitWrite(new Callable<Long>() {
+                    @Override
+                    public Long call() {
+                        //使用期间占住分库，不会被LRU关闭；没有登录用户时抛出IllegalStateException，在onFailure中提示
+                        BaseDaoSubFactory.Lease lease = BaseDaoSubFactory.getInstance().acquire();
+                        try {
+                            PhotoDao photoDao = lease.getBaseDao(PhotoDao.class, Photo.class);
+                            return photoDao.insert(photo);
+                        } finally {
+                            lease.release();
+                        }
+                    }
+                }).addCallback(MainActivity.this.<Long>showResult(null), DaoExecutors.mainThread());
             }
         });
 
         btnUpdateVersion.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
-                UpdateManager updateManager = new UpdateManager();
-                updateManager.startUpdateDb(MainActivity.this);
+                final UpdateManager updateManager = new UpdateManager();
+                final Context context = getApplicationContext();
+                //升级在写线程上执行，之后提交的写操作都在升级完成之后
+                DaoExecutors.getDefault().submitWrite(new Callable<MigrationRunner.Summary>() {
+                    @Override
+                    public MigrationRunner.Summary call() {
+                        return updateManager.startUpdateDb(context);
+                    }
+                }).addCallback(MainActivity.this.<MigrationRunner.Summary>showResult("升级完成"), DaoExecutors.mainThread());
             }
         });
     }
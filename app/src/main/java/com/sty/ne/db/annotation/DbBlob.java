@@ -0,0 +1,21 @@
+package com.sty.ne.db.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * @Author: tian
+ * @UpdateDate: 2020/12/17 8:20 PM
+ */
+//Blob成员变量的存放方式：不超过inlineLimit字节的存在行中，更大的存为数据库旁边按内容寻址的文件，行中只保存摘要
+//不加注解的Blob成员变量按默认的inlineLimit处理
+@Target(ElementType.FIELD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface DbBlob {
+    int DEFAULT_INLINE_LIMIT = 4096;
+
+    //0表示全部存为文件
+    int inlineLimit() default DEFAULT_INLINE_LIMIT;
+}
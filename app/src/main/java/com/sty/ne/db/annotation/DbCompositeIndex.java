@@ -0,0 +1,23 @@
+package com.sty.ne.db.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * @Author: tian
+ * @UpdateDate: 2020/11/29 2:15 PM
+ */
+//多列索引，columns为列名（不是成员变量名），不指定名字时为 idx_表名_列名1_列名2
+//同一个类上有多个时用DbCompositeIndexes包起来
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface DbCompositeIndex {
+
+    String name() default "";
+
+    String[] columns();
+
+    boolean unique() default false;
+}
@@ -0,0 +1,17 @@
+package com.sty.ne.db.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * @Author: tian
+ * @UpdateDate: 2020/11/29 2:16 PM
+ */
+@Target(ElementType.TYPE)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface DbCompositeIndexes {
+
+    DbCompositeIndex[] value();
+}
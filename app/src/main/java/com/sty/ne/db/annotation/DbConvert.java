@@ -0,0 +1,20 @@
+package com.sty.ne.db.annotation;
+
+import com.sty.ne.db.db.TypeConverter;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * @Author: tian
+ * @UpdateDate: 2020/12/19 9:40 PM
+ */
+//用指定的TypeConverter读写该成员变量，枚举、Date和Blob不指定时使用EnumConverter、DateConverter、BlobConverter
+@Target(ElementType.FIELD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface DbConvert {
+
+    Class<? extends TypeConverter<?>> value();
+}
@@ -0,0 +1,20 @@
+package com.sty.ne.db.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * @Author: tian
+ * @UpdateDate: 2020/11/29 2:12 PM
+ */
+//单列索引，不指定名字时为 idx_表名_列名
+@Target(ElementType.FIELD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface DbIndex {
+
+    String name() default "";
+
+    boolean unique() default false;
+}
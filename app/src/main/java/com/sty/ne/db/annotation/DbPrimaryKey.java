@@ -0,0 +1,19 @@
+package com.sty.ne.db.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * @Author: tian
+ * @UpdateDate: 2020/11/29 2:10 PM
+ */
+//主键，Integer/Long类型的主键会成为rowid的别名
+@Target(ElementType.FIELD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface DbPrimaryKey {
+
+    //只对Integer/Long类型的主键有效
+    boolean autoIncrement() default false;
+}
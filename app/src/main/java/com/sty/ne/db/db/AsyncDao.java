@@ -0,0 +1,197 @@
+package com.sty.ne.db.db;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * IBaseDao的异步版本，每个方法立即返回DaoFuture
+ * 写操作在DaoExecutors的写线程上按调用的顺序执行，读操作在读线程池上并行执行
+ * 操作抛出的异常通过DaoFuture.get()/DaoCallback.onFailure交给调用者，不会被吞掉
+ *
+ * AsyncDao<User> async = new AsyncDao<>(userDao);
+ * async.query(where).addCallback(callback, DaoExecutors.mainThread());
+ * @Author: tian
+ * @UpdateDate: 2020/12/4 8:50 PM
+ */
+public class AsyncDao<T> {
+    private final IBaseDao<T> dao;
+    private final DaoExecutors executors;
+
+    public AsyncDao(IBaseDao<T> dao) {
+        this(dao, DaoExecutors.getDefault());
+    }
+
+    public AsyncDao(IBaseDao<T> dao, DaoExecutors executors) {
+        this.dao = dao;
+        this.executors = executors;
+    }
+
+    //同步的DAO，在submitWrite/submitRead中组合多个操作时使用
+    public IBaseDao<T> getDao() {
+        return dao;
+    }
+
+    public <V> DaoFuture<V> submitWrite(Callable<V> callable) {
+        return executors.submitWrite(callable);
+    }
+
+    public <V> DaoFuture<V> submitRead(Callable<V> callable) {
+        return executors.submitRead(callable);
+    }
+
+    //写操作，在写线程上按顺序执行
+    public DaoFuture<Long> insert(final T entity) {
+        return executors.submitWrite(new Callable<Long>() {
+            @Override
+            public Long call() {
+                return dao.insert(entity);
+            }
+        });
+    }
+
+    public DaoFuture<Long> update(final T entity, final T where) {
+        return executors.submitWrite(new Callable<Long>() {
+            @Override
+            public Long call() {
+                return dao.update(entity, where);
+            }
+        });
+    }
+
+    public DaoFuture<Integer> delete(final T where) {
+        return executors.submitWrite(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return dao.delete(where);
+            }
+        });
+    }
+
+    public DaoFuture<Long> upsert(final T entity) {
+        return executors.submitWrite(new Callable<Long>() {
+            @Override
+            public Long call() {
+                return dao.upsert(entity);
+            }
+        });
+    }
+
+    public DaoFuture<Integer> insertAll(final Collection<T> entities) {
+        return executors.submitWrite(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return dao.insertAll(entities);
+            }
+        });
+    }
+
+    public DaoFuture<Integer> updateAll(final List<T> entities, final List<T> wheres) {
+        return executors.submitWrite(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return dao.updateAll(entities, wheres);
+            }
+        });
+    }
+
+    public DaoFuture<Integer> deleteAll(final Collection<T> wheres) {
+        return executors.submitWrite(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return dao.deleteAll(wheres);
+            }
+        });
+    }
+
+    public DaoFuture<Long> update(final T entity, final Criteria criteria) {
+        return executors.submitWrite(new Callable<Long>() {
+            @Override
+            public Long call() {
+                return dao.update(entity, criteria);
+            }
+        });
+    }
+
+    public DaoFuture<Integer> delete(final Criteria criteria) {
+        return executors.submitWrite(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return dao.delete(criteria);
+            }
+        });
+    }
+
+    //读操作，在读线程池上并行执行
+    public DaoFuture<T> findById(final Object primaryKey) {
+        return executors.submitRead(new Callable<T>() {
+            @Override
+            public T call() {
+                return dao.findById(primaryKey);
+            }
+        });
+    }
+
+    public DaoFuture<List<T>> query(final T where) {
+        return executors.submitRead(new Callable<List<T>>() {
+            @Override
+            public List<T> call() {
+                return dao.query(where);
+            }
+        });
+    }
+
+    public DaoFuture<List<T>> query(final T where, final String orderBy, final Integer startIndex, final Integer limit) {
+        return executors.submitRead(new Callable<List<T>>() {
+            @Override
+            public List<T> call() {
+                return dao.query(where, orderBy, startIndex, limit);
+            }
+        });
+    }
+
+    public DaoFuture<List<T>> query(final T where, final String[] columns, final String orderBy, final Integer startIndex, final Integer limit) {
+        return executors.submitRead(new Callable<List<T>>() {
+            @Override
+            public List<T> call() {
+                return dao.query(where, columns, orderBy, startIndex, limit);
+            }
+        });
+    }
+
+    public DaoFuture<List<T>> query(final Criteria criteria, final String orderBy, final Integer startIndex, final Integer limit) {
+        return executors.submitRead(new Callable<List<T>>() {
+            @Override
+            public List<T> call() {
+                return dao.query(criteria, orderBy, startIndex, limit);
+            }
+        });
+    }
+
+    public DaoFuture<Long> count(final T where) {
+        return executors.submitRead(new Callable<Long>() {
+            @Override
+            public Long call() {
+                return dao.count(where);
+            }
+        });
+    }
+
+    public DaoFuture<Long> count(final Criteria criteria) {
+        return executors.submitRead(new Callable<Long>() {
+            @Override
+            public Long call() {
+                return dao.count(criteria);
+            }
+        });
+    }
+
+    public DaoFuture<Page<T>> queryPage(final T where, final String sortColumn, final boolean descending, final int limit, final String pageToken) {
+        return executors.submitRead(new Callable<Page<T>>() {
+            @Override
+            public Page<T> call() {
+                return dao.queryPage(where, sortColumn, descending, limit, pageToken);
+            }
+        });
+    }
+}
@@ -1,20 +1,30 @@
 package com.sty.ne.db.db;
 
-import android.content.ContentValues;
-import android.database.Cursor;
-import android.database.sqlite.SQLiteDatabase;
 import android.text.TextUtils;
+import android.util.Log;
 
+import com.sty.ne.db.annotation.DbCompositeIndex;
+import com.sty.ne.db.annotation.DbCompositeIndexes;
 import com.sty.ne.db.annotation.DbField;
+import com.sty.ne.db.annotation.DbIndex;
+import com.sty.ne.db.annotation.DbPrimaryKey;
 import com.sty.ne.db.annotation.DbTable;
+import com.sty.ne.db.storage.Cursor;
+import com.sty.ne.db.storage.CursorWrapper;
+import com.sty.ne.db.storage.Database;
+import com.sty.ne.db.storage.Statement;
+import com.sty.ne.db.storage.StorageException;
 
 import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 对象注解解析以及生成SQL语句
@@ -22,8 +32,11 @@ import java.util.Set;
  * @UpdateDate: 2020/11/19 9:41 PM
  */
 public class BaseDao<T> implements IBaseDao<T> {
+    private static final String TAG = BaseDao.class.getSimpleName();
+    //键集分页时查询出来的rowid列名
+    private static final String PAGE_ROWID = "_page_rowid";
     // 持有数据库操作的引用
-    private SQLiteDatabase sqLiteDatabase;
+    private Database database;
     //表名
     private String tableName;
     //操作数据库所对应的JAVA类型
@@ -32,36 +45,156 @@ public class BaseDao<T> implements IBaseDao<T> {
     private boolean isInit = false;
     //定义一个缓存空间（key:字段名 value:成员变量）
     private HashMap<String, Field> cacheMap;
+    //实体与表之间的映射，优先使用编译期生成的，没有时用反射
+    private EntityMapper<T> mapper;
+    //编译好的insert/update/delete语句
+    private StatementCache statementCache;
+    //所有列对应的掩码
+    private long allColumnsMask;
+    //按主键缓存的实体，为null时不缓存
+    private volatile EntityCache<T> entityCache;
+    //同一个数据库上所有DAO共用的查询结果缓存和表版本号
+    private QueryCache queryCache;
+    private volatile boolean queryCacheEnabled;
+    //查询走其中的读连接，为null时所有操作都在database上
+    private ConnectionManager connectionManager;
+    //每个操作的耗时和行数
+    private final DaoMetrics metrics = DaoMetrics.getInstance();
+    //语句形状对应的SQL，统计时用作标签
+    private final ConcurrentHashMap<StatementCache.Key, String> sqlShapes = new ConcurrentHashMap<>();
 
-    public boolean init(SQLiteDatabase sqLiteDatabase, Class<T> entityClass) {
-        this.sqLiteDatabase = sqLiteDatabase;
+    /**
+     * BaseDao<M>的Class，代替原始类型BaseDao.class传给getBaseDao，不会有unchecked警告
+     * BaseDaoFactory.getInstance().getBaseDao(BaseDao.<User>type(), User.class)
+     */
+    @SuppressWarnings("unchecked")
+    public static <M> Class<BaseDao<M>> type() {
+        //类型参数被擦除，所有的BaseDao<M>共用BaseDao.class
+        return (Class<BaseDao<M>>) (Class<?>) BaseDao.class;
+    }
+
+    /**
+     * 写操作使用connectionManager的写连接，查询使用读连接
+     */
+    public boolean init(ConnectionManager connectionManager, Class<T> entityClass) {
+        this.connectionManager = connectionManager;
+        return init(connectionManager.getWriter(), entityClass);
+    }
+
+    public boolean init(Database database, Class<T> entityClass) {
+        this.database = database;
         this.entityClass = entityClass;
         if(!isInit) {
-            //根据传入的Class进行数据表的创建，本例子中对应的是User对象
-            DbTable dt = entityClass.getAnnotation(DbTable.class);
-            if (dt != null && !"".equals(dt.value())) {
-                tableName = dt.value();
-            } else {
-                tableName = entityClass.getName();
+            if(!database.isOpen()) {
+                return false;
             }
+            //记录了已经建好的表和表中的列，摘要一致时跳过建表、建索引和探测列名
+            SchemaMetadata metadata = SchemaMetadata.forDatabase(database);
+            //注解处理器生成的映射器，不需要再反射
+            EntityMapper<T> generated = EntityMappers.getGenerated(entityClass);
+            if(generated != null) {
+                tableName = generated.getTableName();
+                mapper = generated;
+                String schemaHash = SchemaMetadata.hash(generated.getCreateTableSql(), generated.getCreateIndexSqls());
+                if(metadata.getColumns(tableName, schemaHash) == null) {
+                    SchemaMetadata.stampNewDatabase(database);
+                    database.execSQL(generated.getCreateTableSql());
+                    //表已经存在时create table if not exists什么都不做，旧版本建的表可能缺少新加的列
+                    String[] tableColumns = queryColumnNames();
+                    if(Arrays.asList(tableColumns).containsAll(Arrays.asList(generated.getColumnNames()))) {
+                        if(createIndexes()) {
+                            metadata.put(tableName, schemaHash, generated.getColumnNames());
+                        }
+                    } else {
+                        //缺少的列等升级脚本加上，在这之前和反射一样只读写表中实际存在的列，也不记录，下次启动再检查
+                        mapper = createReflectionMapper(getCreateTableSql(), getCreateIndexSqls(), tableColumns,
+                                generated.getColumnNames());
+                        createIndexes();
+                    }
+                }
+            } else {
+                //根据传入的Class进行数据表的创建，本例子中对应的是User对象
+                DbTable dt = entityClass.getAnnotation(DbTable.class);
+                if (dt != null && !"".equals(dt.value())) {
+                    tableName = dt.value();
+                } else {
+                    tableName = entityClass.getName();
+                }
 
-            if(!sqLiteDatabase.isOpen()) {
-                return false;
+                String createTableSql = getCreateTableSql();
+                String[] createIndexSqls = getCreateIndexSqls();
+                String schemaHash = SchemaMetadata.hash(createTableSql, createIndexSqls);
+                String[] tableColumns = metadata.getColumns(tableName, schemaHash);
+                boolean verified = tableColumns != null;
+                if(!verified) {
+                    SchemaMetadata.stampNewDatabase(database);
+                    database.execSQL(createTableSql);
+                    tableColumns = queryColumnNames();
+                }
+                //没有生成的列名可以对比，按表中实际存在的列映射
+                mapper = createReflectionMapper(createTableSql, createIndexSqls, tableColumns, tableColumns);
+                //索引没有建成功时不记录，下次启动再试
+                if(!verified && createIndexes()) {
+                    metadata.put(tableName, schemaHash, tableColumns);
+                }
             }
-            String createTableSql = getCreateTableSql();
-            sqLiteDatabase.execSQL(createTableSql);
-            cacheMap = new HashMap<>();
-            initCacheMap();
+            //Blob成员变量超过inlineLimit时存为外部文件
+            mapper = BlobEntityMapper.wrap(mapper, entityClass, database);
+            String[] columnNames = mapper.getColumnNames();
+            if(columnNames.length > 64) {
+                //SQL的形状用long的每一位表示一列
+                throw new IllegalStateException(tableName + " 超过64列");
+            }
+            allColumnsMask = columnNames.length == 64 ? -1L : (1L << columnNames.length) - 1;
+            statementCache = new StatementCache(database, new StatementCache.SqlFactory() {
+                @Override
+                public String createSql(StatementCache.Key key) {
+                    return BaseDao.this.createSql(key);
+                }
+            }, StatementCache.DEFAULT_MAX_SIZE);
+            queryCache = QueryCache.forDatabase(database);
             isInit = true;
         }
         return  isInit;
     }
 
-    private void initCacheMap() {
-        //取得所有的列名
+    /**
+     * 只映射表中实际存在的列
+     * @param expectedColumns 实体对应的所有列，表中没有的列对应的成员变量读写时跳过，写入时赋了值的直接拒绝
+     */
+    private EntityMapper<T> createReflectionMapper(String createTableSql, String[] createIndexSqls,
+                                                   String[] tableColumns, String[] expectedColumns) {
+        cacheMap = new LinkedHashMap<>();
+        initCacheMap(tableColumns);
+        LinkedHashMap<String, Field> missingColumns = new LinkedHashMap<>();
+        Field[] columnFields = entityClass.getDeclaredFields();
+        for (String columnName : expectedColumns) {
+            Field columnField = findField(columnFields, columnName);
+            if(columnField != null && !cacheMap.containsKey(columnName)) {
+                missingColumns.put(columnName, columnField);
+            }
+        }
+        if(!missingColumns.isEmpty()) {
+            Log.w(TAG, tableName + " has columns " + Arrays.toString(tableColumns) + ", missing "
+                    + missingColumns.keySet() + ": " + entityClass.getSimpleName()
+                    + " fields mapped to them are dropped until the table is migrated");
+        }
+        return new ReflectionEntityMapper<>(entityClass, tableName, createTableSql,
+                getPrimaryKeyColumn(), createIndexSqls, cacheMap, missingColumns);
+    }
+
+    //表中实际存在的列名
+    private String[] queryColumnNames() {
         String sql = "select * from " + tableName + " limit 1,0"; //从第一个数据开始取0条数据-->得到表结构
-        Cursor cursor = sqLiteDatabase.rawQuery(sql, null);
-        String[] columnNames = cursor.getColumnNames();
+        Cursor cursor = database.rawQuery(sql, null);
+        try {
+            return cursor.getColumnNames();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void initCacheMap(String[] columnNames) {
         //获取所有的成员变量
         Field[] columnFields = entityClass.getDeclaredFields();
         //将字段访问权限打开
@@ -69,17 +202,7 @@ public class BaseDao<T> implements IBaseDao<T> {
             field.setAccessible(true);
         }
         for (String columnName : columnNames) {
-            Field columnField = null;
-            for (Field field : columnFields) {
-                String fieldName = field.getName();
-                if(field.getAnnotation(DbField.class) != null) {
-                    fieldName = field.getAnnotation(DbField.class).value();
-                }
-                if(columnName.equals(fieldName)) {
-                    columnField = field;
-                    break;
-                }
-            }
+            Field columnField = findField(columnFields, columnName);
             if(columnField != null) {
                 cacheMap.put(columnName, columnField);
             }
@@ -87,6 +210,20 @@ public class BaseDao<T> implements IBaseDao<T> {
 
     }
 
+    //列名对应的成员变量，没有时为null
+    private static Field findField(Field[] columnFields, String columnName) {
+        for (Field field : columnFields) {
+            String fieldName = field.getName();
+            if(field.getAnnotation(DbField.class) != null) {
+                fieldName = field.getAnnotation(DbField.class).value();
+            }
+            if(columnName.equals(fieldName)) {
+                return field;
+            }
+        }
+        return null;
+    }
+
     private String getCreateTableSql() {
         StringBuffer sb = new StringBuffer();
         sb.append("create table if not exists ");
@@ -94,6 +231,9 @@ public class BaseDao<T> implements IBaseDao<T> {
         //反射得到所有的成员变量
         Field[] fields = entityClass.getDeclaredFields();
         for (Field field : fields) {
+            if(Modifier.isStatic(field.getModifiers())) {
+                continue;
+            }
             Class<?> type = field.getType();
             DbField dbField = field.getAnnotation(DbField.class);
             String columnName = field.getName();
@@ -101,20 +241,22 @@ public class BaseDao<T> implements IBaseDao<T> {
                columnName = dbField.value();
             }
 
-            if (type == String.class) {
-                sb.append(columnName + " TEXT,");
-            } else if (type == Integer.class) {
-                sb.append(columnName + " INTEGER,");
-            } else if (type == Long.class) {
-                sb.append(columnName + " BIGINT,");
-            } else if (type == Double.class) {
-                sb.append(columnName + " DOUBLE,");
-            } else if (type == byte[].class) {
-                sb.append(columnName + " BLOB,");
-            } else {
+            DbPrimaryKey primaryKey = field.getAnnotation(DbPrimaryKey.class);
+            if (primaryKey != null && (type == Integer.class || type == Long.class
+                    || type == int.class || type == long.class)) {
+                //INTEGER PRIMARY KEY才是rowid的别名
+                sb.append(columnName + " INTEGER PRIMARY KEY"
+                        + (primaryKey.autoIncrement() ? " AUTOINCREMENT," : ","));
+                continue;
+            }
+            //String、整数、浮点数、boolean、byte[]以及需要转换的枚举、Date等
+            String sqlType = ReflectionEntityMapper.sqlTypeOf(field);
+            if(sqlType == null) {
                 //不支持的数据类型
                 continue;
             }
+            sb.append(columnName + " " + sqlType);
+            sb.append(primaryKey != null ? " PRIMARY KEY," : ",");
         }
 
         if(sb.charAt(sb.length() - 1) == ',') {
@@ -125,176 +267,1249 @@ public class BaseDao<T> implements IBaseDao<T> {
         return sb.toString();
     }
 
+    //声明了@DbPrimaryKey的列名，没有时为null
+    private String getPrimaryKeyColumn() {
+        String primaryKeyColumn = null;
+        for (Field field : entityClass.getDeclaredFields()) {
+            if(field.getAnnotation(DbPrimaryKey.class) == null) {
+                continue;
+            }
+            if(primaryKeyColumn != null) {
+                throw new IllegalStateException(entityClass.getName() + " 只能有一个@DbPrimaryKey");
+            }
+            primaryKeyColumn = getColumnName(field);
+        }
+        return primaryKeyColumn;
+    }
+
+    //根据@DbIndex/@DbCompositeIndex生成建索引的语句
+    private String[] getCreateIndexSqls() {
+        ArrayList<String> sqls = new ArrayList<>();
+        for (Field field : entityClass.getDeclaredFields()) {
+            DbIndex index = field.getAnnotation(DbIndex.class);
+            if(index != null) {
+                sqls.add(createIndexSql(tableName, index.name(), new String[]{getColumnName(field)}, index.unique()));
+            }
+        }
+        DbCompositeIndex compositeIndex = entityClass.getAnnotation(DbCompositeIndex.class);
+        if(compositeIndex != null) {
+            sqls.add(createIndexSql(tableName, compositeIndex.name(), compositeIndex.columns(), compositeIndex.unique()));
+        }
+        DbCompositeIndexes compositeIndexes = entityClass.getAnnotation(DbCompositeIndexes.class);
+        if(compositeIndexes != null) {
+            for (DbCompositeIndex index : compositeIndexes.value()) {
+                sqls.add(createIndexSql(tableName, index.name(), index.columns(), index.unique()));
+            }
+        }
+        return sqls.toArray(new String[sqls.size()]);
+    }
+
+    /**
+     * create [unique] index if not exists idx_tb_user_status on tb_user(status)
+     * 注解处理器生成的语句与这里保持一致
+     */
+    static String createIndexSql(String tableName, String name, String[] columns, boolean unique) {
+        StringBuilder sb = new StringBuilder();
+        if(TextUtils.isEmpty(name)) {
+            sb.append("idx_").append(tableName);
+            for (String column : columns) {
+                sb.append("_").append(column);
+            }
+            //表名默认为类的全名，去掉其中的"."
+            name = sb.toString().replaceAll("\\W", "_");
+            sb.setLength(0);
+        }
+        sb.append(unique ? "create unique index if not exists " : "create index if not exists ")
+                .append(name).append(" on ").append(tableName).append("(");
+        for (int i = 0; i < columns.length; i++) {
+            sb.append(i == 0 ? "" : ",").append(columns[i]);
+        }
+        sb.append(")");
+        return sb.toString();
+    }
+
+    static String getColumnName(Field field) {
+        DbField dbField = field.getAnnotation(DbField.class);
+        if(dbField != null && !"".equals(dbField.value())) {
+            return dbField.value();
+        }
+        return field.getName();
+    }
+
+    /**
+     * 建立缺失的索引，可以重复执行
+     * 旧版本建的表没有主键（create table if not exists不会修改已有的表），用唯一索引代替
+     * @return 所有索引都建成功时为true
+     */
+    private boolean createIndexes() {
+        boolean success = true;
+        int primaryKeyIndex = mapper.getPrimaryKeyIndex();
+        if(primaryKeyIndex != -1) {
+            String primaryKeyColumn = mapper.getColumnNames()[primaryKeyIndex];
+            if(!isPrimaryKeyInTable(primaryKeyColumn)) {
+                success = execIndexSql("create unique index if not exists "
+                        + ("pk_" + tableName).replaceAll("\\W", "_")
+                        + " on " + tableName + "(" + primaryKeyColumn + ")");
+            }
+        }
+        for (String sql : mapper.getCreateIndexSqls()) {
+            success &= execIndexSql(sql);
+        }
+        return success;
+    }
+
+    private boolean isPrimaryKeyInTable(String columnName) {
+        //cid|name|type|notnull|dflt_value|pk
+        Cursor cursor = database.rawQuery("pragma table_info(" + tableName + ")", null);
+        try {
+            int nameIndex = cursor.getColumnIndex("name");
+            int pkIndex = cursor.getColumnIndex("pk");
+            while (cursor.moveToNext()) {
+                if(columnName.equals(cursor.getString(nameIndex))) {
+                    return cursor.getInt(pkIndex) > 0;
+                }
+            }
+            return false;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private boolean execIndexSql(String sql) {
+        try {
+            database.execSQL(sql);
+            return true;
+        } catch (StorageException e) {
+            //比如旧表中缺少该列，或者已有的数据违反了唯一约束
+            Log.e(TAG, "create index failed: " + sql, e);
+            return false;
+        }
+    }
+
     @Override
     public long insert(T entity) {
-        //user对象，转换为ContentValues  new User(1, "sty", "123")
-        Map<String, String> map = getValues(entity);
-        ContentValues values = getContentValues(map);
-        return sqLiteDatabase.insert(tableName, null, values);
+        return insertInternal(entity);
+    }
+
+    //upsert等内部调用走这里，子类覆盖insert不会影响它们
+    private long insertInternal(T entity) {
+        DaoMetrics.Event event = metrics.begin(tableName, DaoMetrics.INSERT);
+        //user对象，转换为按列排列的值  new User(1, "sty", "123")
+        ColumnValues values = getValues(entity);
+        event.markMapping();
+        //所有列都参与insert，没有赋值的绑定null，这样所有的insert共用同一条语句
+        StatementCache.Key key = new StatementCache.Key(StatementCache.INSERT, allColumnsMask, 0);
+        Statement statement = null;
+        try {
+            statement = statementCache.acquire(key);
+            bindInsert(statement, values);
+            long rowId = statement.executeInsert();
+            event.addRowsWritten(rowId != -1 ? 1 : 0);
+            return rowId;
+        } catch (StorageException e) {
+            Log.e(TAG, "insert into " + tableName + " failed: " + entity, e);
+            event.fail(e);
+            return -1;
+        } finally {
+            statementCache.release(key, statement);
+            invalidate(values, allColumnsMask, null, 0);
+            event.markSqlite();
+            endEvent(event, key);
+        }
     }
 
     @Override
     public long update(T entity, T where) {
-        //将传进来的对象的成员变量和其值转为map
-        Map map = getValues(entity);
-        ContentValues values = getContentValues(map);
+        DaoMetrics.Event event = metrics.begin(tableName, DaoMetrics.UPDATE);
+        //将传进来的对象的成员变量和其值按列排列
+        ColumnValues values = getValues(entity);
+        ColumnValues whereValues = getValues(where);
+        event.markMapping();
+        try {
+            int count = executeUpdate(values, values.getAssignedMask(), whereValues, whereValues.getAssignedMask());
+            event.addRowsWritten(count);
+            return count;
+        } catch (RuntimeException e) {
+            event.fail(e);
+            throw e;
+        } finally {
+            event.markSqlite();
+            endEvent(event, new StatementCache.Key(StatementCache.UPDATE, values.getAssignedMask(),
+                    whereValues.getAssignedMask()));
+        }
+    }
+
+    @Override
+    public int delete(T where) {
+        DaoMetrics.Event event = metrics.begin(tableName, DaoMetrics.DELETE);
+        ColumnValues whereValues = getValues(where);
+        event.markMapping();
+        try {
+            int count = executeDelete(whereValues);
+            event.addRowsWritten(count);
+            return count;
+        } catch (RuntimeException e) {
+            event.fail(e);
+            throw e;
+        } finally {
+            event.markSqlite();
+            endEvent(event, new StatementCache.Key(StatementCache.DELETE, 0, whereValues.getAssignedMask()));
+        }
+    }
 
-        Map whereMap = getValues(where);
-        Condition condition = new Condition(whereMap);
+    @Override
+    public long update(T entity, Criteria criteria) {
+        checkColumns(criteria);
+        ColumnValues values = getValues(entity);
+        long columnMask = values.getAssignedMask();
+        if(columnMask == 0) {
+            return 0;
+        }
+        DaoMetrics.Event event = metrics.begin(tableName, DaoMetrics.UPDATE);
+        StatementCache.Key key = new StatementCache.Key(StatementCache.UPDATE, columnMask, criteria.getWhereClause());
+        Statement statement = null;
+        try {
+            statement = statementCache.acquire(key);
+            int index = values.bind(statement, 1, columnMask);
+            bindArgs(statement, index, criteria.getArgs());
+            int count = statement.executeUpdateDelete();
+            event.addRowsWritten(count);
+            return count;
+        } catch (RuntimeException e) {
+            event.fail(e);
+            throw e;
+        } finally {
+            statementCache.release(key, statement);
+            invalidateAll();
+            event.markSqlite();
+            endEvent(event, key);
+        }
+    }
 
-        return sqLiteDatabase.update(tableName, values, condition.whereCause, condition.whereArgs);
+    @Override
+    public int delete(Criteria criteria) {
+        checkColumns(criteria);
+        DaoMetrics.Event event = metrics.begin(tableName, DaoMetrics.DELETE);
+        StatementCache.Key key = new StatementCache.Key(StatementCache.DELETE, 0, criteria.getWhereClause());
+        Statement statement = null;
+        try {
+            statement = statementCache.acquire(key);
+            bindArgs(statement, 1, criteria.getArgs());
+            int count = statement.executeUpdateDelete();
+            event.addRowsWritten(count);
+            return count;
+        } catch (RuntimeException e) {
+            event.fail(e);
+            throw e;
+        } finally {
+            statementCache.release(key, statement);
+            invalidateAll();
+            event.markSqlite();
+            endEvent(event, key);
+        }
     }
 
     @Override
-    public int delete(T where) {
-        Map map = getValues(where);
-        Condition condition = new Condition(map);
+    public List<T> query(Criteria criteria, String orderBy, Integer startIndex, Integer limit) {
+        checkColumns(criteria);
+        String limitString = null;
+        if(startIndex != null && limit !=null) {
+            limitString = startIndex + " , " + limit;
+        }
+        Object[] args = ColumnValues.toBindArgs(criteria.getArgs());
+        return query(null, criteria.getWhereClause(), args, orderBy, limitString);
+    }
+
+    @Override
+    public long count(T where) {
+        ColumnValues whereValues = getValues(where);
+        return count(whereValues, whereValues.getAssignedMask());
+    }
+
+    @Override
+    public long count(Criteria criteria) {
+        checkColumns(criteria);
+        return readLong("select count(*) from " + tableName + " where " + criteria.getWhereClause(),
+                ColumnValues.toBindArgs(criteria.getArgs()));
+    }
+
+    //Criteria中的列名会直接拼进SQL，必须是实体映射的列
+    private void checkColumns(Criteria criteria) {
+        for (String column : criteria.getColumns()) {
+            if(indexOfColumn(column) == -1) {
+                throw new IllegalArgumentException(tableName + " has no column " + column);
+            }
+        }
+    }
+
+    @Override
+    public long upsert(T entity) {
+        int primaryKeyIndex = mapper.getPrimaryKeyIndex();
+        if(primaryKeyIndex == -1) {
+            throw new IllegalStateException(entityClass.getName() + " 没有声明@DbPrimaryKey");
+        }
+        ColumnValues values = getValues(entity);
+        boolean hasPrimaryKey = values.isAssigned(primaryKeyIndex);
+        //update tableName set name=?,pwd=? where 1=1 and u_id =?
+        long primaryKeyMask = 1L << primaryKeyIndex;
+        long updateMask = hasPrimaryKey ? values.getAssignedMask() & ~primaryKeyMask : 0;
+
+        //插入时insert自己也会记录一次
+        DaoMetrics.Event event = metrics.begin(tableName, DaoMetrics.UPSERT);
+        boolean succeeded = false;
+        database.beginTransaction();
+        try {
+            long count;
+            if(!hasPrimaryKey) {
+                //没有主键，只能插入
+                count = insertRow(entity);
+            } else if(updateMask == 0) {
+                //只有主键，不存在时才插入
+                count = count(values, primaryKeyMask) > 0 ? 0 : insertRow(entity);
+            } else {
+                count = executeUpdate(values, updateMask, values, primaryKeyMask);
+                if(count == 0) {
+                    count = insertRow(entity);
+                }
+            }
+            if(count == -1) {
+                //插入失败时不标记成功，外层的事务（比如登录时的批量update）随之一起回滚
+                return -1;
+            }
+            database.setTransactionSuccessful();
+            succeeded = true;
+            event.addRowsWritten(count);
+            return count;
+        } catch (StorageException e) {
+            Log.e(TAG, "upsert " + tableName + " failed: " + entity, e);
+            event.fail(e);
+            return -1;
+        } finally {
+            database.endTransaction();
+            afterTransaction(succeeded);
+            event.markSqlite();
+            endEvent(event, new StatementCache.Key(StatementCache.UPDATE, updateMask, primaryKeyMask));
+        }
+    }
+
+    //插入一行，返回写入的行数
+    private long insertRow(T entity) {
+        return insertInternal(entity) != -1 ? 1 : -1;
+    }
+
+    /**
+     * 在同一个事务中执行，只提交一次；可以嵌套，最外层结束时才提交
+     * runnable抛出异常时整个事务回滚
+     */
+    public void runInTransaction(Runnable runnable) {
+        boolean succeeded = false;
+        database.beginTransaction();
+        try {
+            runnable.run();
+            database.setTransactionSuccessful();
+            succeeded = true;
+        } finally {
+            database.endTransaction();
+            afterTransaction(succeeded);
+        }
+    }
+
+    /**
+     * BaseDao开始的事务endTransaction之后调用
+     * 事务中的写操作已经加过版本号，提交之后再加一次，丢弃别的线程在提交前读到并缓存的旧结果；
+     * 最外层的事务结束时再让事务中写过的表和实体缓存失效，回滚时整个清空实体缓存
+     * @param succeeded 本层是否调用了setTransactionSuccessful
+     */
+    private void afterTransaction(boolean succeeded) {
+        queryCache.bumpVersion(tableName);
+        PendingInvalidation.finish(database, queryCache, succeeded);
+    }
+
+    private long count(ColumnValues whereValues, long whereMask) {
+        Condition condition = new Condition(whereValues, whereMask);
+        return readLong("select count(*) from " + tableName + " where " + condition.whereCause, condition.whereArgs);
+    }
+
+    @Override
+    public int insertAll(Collection<T> entities) {
+        if(entities == null || entities.isEmpty()) {
+            return 0;
+        }
+        int count = 0;
+        DaoMetrics.Event event = metrics.begin(tableName, DaoMetrics.INSERT_ALL);
+        //insert into tableName(u_id,name,...) values(?,?,...)，所有行共用一条语句
+        StatementCache.Key key = new StatementCache.Key(StatementCache.INSERT, allColumnsMask, 0);
+        Statement statement = null;
+        //所有行共用一个ColumnValues，每一行不再分配
+        ColumnValues values = new ColumnValues(mapper.getColumnNames().length);
+        boolean succeeded = false;
+        database.beginTransaction();
+        try {
+            //编译失败时也要在finally中结束事务
+            statement = statementCache.acquire(key);
+            for (T entity : entities) {
+                statement.clearBindings();
+                event.markSqlite();
+                values.clear();
+                mapper.getValues(entity, values);
+                event.markMapping();
+                bindInsert(statement, values);
+                try {
+                    if(statement.executeInsert() != -1) {
+                        count++;
+                    }
+                } catch (StorageException e) {
+                    Log.e(TAG, "insert into " + tableName + " failed: " + entity, e);
+                    event.fail(e);
+                }
+            }
+            database.setTransactionSuccessful();
+            succeeded = true;
+        } catch (RuntimeException e) {
+            event.fail(e);
+            throw e;
+        } finally {
+            statementCache.release(key, statement);
+            database.endTransaction();
+            invalidateAll();
+            afterTransaction(succeeded);
+            event.markSqlite();
+            event.addRowsWritten(count);
+            endEvent(event, key);
+        }
+        return count;
+    }
+
+    @Override
+    public int updateAll(List<T> entities, List<T> wheres) {
+        if(entities == null || wheres == null || entities.size() != wheres.size()) {
+            throw new IllegalArgumentException("entities and wheres must have the same size");
+        }
+        if(entities.isEmpty()) {
+            return 0;
+        }
+        int count = 0;
+        //形状按第一行统计
+        StatementCache.Key key = null;
+        DaoMetrics.Event event = metrics.begin(tableName, DaoMetrics.UPDATE_ALL);
+        boolean succeeded = false;
+        database.beginTransaction();
+        try {
+            //set的列和where的列相同的行在缓存中命中同一条语句
+            for (int i = 0; i < entities.size(); i++) {
+                event.markSqlite();
+                ColumnValues values = getValues(entities.get(i));
+                ColumnValues whereValues = getValues(wheres.get(i));
+                event.markMapping();
+                if(key == null) {
+                    key = new StatementCache.Key(StatementCache.UPDATE, values.getAssignedMask(),
+                            whereValues.getAssignedMask());
+                }
+                try {
+                    count += executeUpdate(values, values.getAssignedMask(), whereValues,
+                            whereValues.getAssignedMask());
+                } catch (StorageException e) {
+                    Log.e(TAG, "update " + tableName + " failed: " + entities.get(i), e);
+                    event.fail(e);
+                }
+            }
+            database.setTransactionSuccessful();
+            succeeded = true;
+        } finally {
+            database.endTransaction();
+            afterTransaction(succeeded);
+            event.markSqlite();
+            event.addRowsWritten(count);
+            endEvent(event, key);
+        }
+        return count;
+    }
+
+    @Override
+    public int deleteAll(Collection<T> wheres) {
+        if(wheres == null || wheres.isEmpty()) {
+            return 0;
+        }
+        int count = 0;
+        //形状按第一行统计
+        StatementCache.Key key = null;
+        DaoMetrics.Event event = metrics.begin(tableName, DaoMetrics.DELETE_ALL);
+        boolean succeeded = false;
+        database.beginTransaction();
+        try {
+            for (T where : wheres) {
+                event.markSqlite();
+                ColumnValues whereValues = getValues(where);
+                event.markMapping();
+                if(key == null) {
+                    key = new StatementCache.Key(StatementCache.DELETE, 0, whereValues.getAssignedMask());
+                }
+                try {
+                    count += executeDelete(whereValues);
+                } catch (StorageException e) {
+                    Log.e(TAG, "delete from " + tableName + " failed: " + where, e);
+                    event.fail(e);
+                }
+            }
+            database.setTransactionSuccessful();
+            succeeded = true;
+        } finally {
+            database.endTransaction();
+            afterTransaction(succeeded);
+            event.markSqlite();
+            event.addRowsWritten(count);
+            endEvent(event, key);
+        }
+        return count;
+    }
+
+    /**
+     * update tableName set name=?,pwd=? where 1=1 and u_id =?
+     * @param columnMask values中要更新的列
+     * @param whereMask whereValues中作为条件的列
+     */
+    private int executeUpdate(ColumnValues values, long columnMask, ColumnValues whereValues, long whereMask) {
+        if(columnMask == 0) {
+            //没有要更新的列
+            return 0;
+        }
+        StatementCache.Key key = new StatementCache.Key(StatementCache.UPDATE, columnMask, whereMask);
+        Statement statement = null;
+        try {
+            statement = statementCache.acquire(key);
+            int index = values.bind(statement, 1, columnMask);
+            whereValues.bind(statement, index, whereMask);
+            return statement.executeUpdateDelete();
+        } finally {
+            statementCache.release(key, statement);
+            invalidate(values, columnMask, whereValues, whereMask);
+        }
+    }
+
+    //delete from tableName where 1=1 and name =?
+    private int executeDelete(ColumnValues whereValues) {
+        long whereMask = whereValues.getAssignedMask();
+        StatementCache.Key key = new StatementCache.Key(StatementCache.DELETE, 0, whereMask);
+        Statement statement = null;
+        try {
+            statement = statementCache.acquire(key);
+            whereValues.bind(statement, 1, whereMask);
+            return statement.executeUpdateDelete();
+        } finally {
+            statementCache.release(key, statement);
+            invalidate(null, 0, whereValues, whereMask);
+        }
+    }
+
+    /**
+     * insert按类型绑定所有的列，基本类型的0/false照常写入
+     * 主键为0（基本类型的默认值）时绑定null，由SQLite分配rowid
+     */
+    private void bindInsert(Statement statement, ColumnValues values) {
+        int primaryKeyIndex = mapper.getPrimaryKeyIndex();
+        if(primaryKeyIndex != -1 && !values.isAssigned(primaryKeyIndex)) {
+            values.putNull(primaryKeyIndex);
+        }
+        values.bind(statement, 1, allColumnsMask);
+    }
+
+    //按类型绑定Criteria的参数，返回下一个参数的位置
+    private int bindArgs(Statement statement, int index, Object[] args) {
+        for (Object arg : args) {
+            arg = ColumnValues.toBindArg(arg);
+            if(arg instanceof Long || arg instanceof Integer || arg instanceof Short || arg instanceof Byte) {
+                statement.bindLong(index++, ((Number) arg).longValue());
+            } else if(arg instanceof Double || arg instanceof Float) {
+                statement.bindDouble(index++, ((Number) arg).doubleValue());
+            } else if(arg instanceof Boolean) {
+                statement.bindLong(index++, (Boolean) arg ? 1 : 0);
+            } else if(arg instanceof byte[]) {
+                statement.bindBlob(index++, (byte[]) arg);
+            } else {
+                statement.bindString(index++, arg.toString());
+            }
+        }
+        return index;
+    }
+
+    //缓存未命中时，根据SQL的形状拼出语句
+    private String createSql(StatementCache.Key key) {
+        StringBuilder sb = new StringBuilder();
+        switch (key.getOperation()) {
+            case StatementCache.INSERT:
+                sb.append("insert into ").append(tableName).append("(");
+                appendColumns(sb, key.getColumnMask(), ",");
+                sb.append(") values(");
+                for (int i = 0; i < Long.bitCount(key.getColumnMask()); i++) {
+                    sb.append(i == 0 ? "?" : ",?");
+                }
+                sb.append(")");
+                break;
+            case StatementCache.UPDATE:
+                sb.append("update ").append(tableName).append(" set ");
+                appendColumns(sb, key.getColumnMask(), "=?,");
+                sb.append("=? where ");
+                appendWhere(sb, key);
+                break;
+            case StatementCache.DELETE:
+                sb.append("delete from ").append(tableName).append(" where ");
+                appendWhere(sb, key);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown operation " + key.getOperation());
+        }
+        return sb.toString();
+    }
+
+    private void appendColumns(StringBuilder sb, long mask, String separator) {
+        String[] columnNames = mapper.getColumnNames();
+        boolean first = true;
+        for (int i = 0; i < columnNames.length; i++) {
+            if((mask & (1L << i)) != 0) {
+                sb.append(first ? "" : separator).append(columnNames[i]);
+                first = false;
+            }
+        }
+    }
+
+    private void appendWhere(StringBuilder sb, StatementCache.Key key) {
+        if(key.getWhereClause() != null) {
+            sb.append(key.getWhereClause());
+        } else {
+            appendWhere(sb, key.getWhereMask());
+        }
+    }
+
+    //1=1 and u_id =? and name =?
+    private void appendWhere(StringBuilder sb, long mask) {
+        String[] columnNames = mapper.getColumnNames();
+        sb.append("1=1");
+        for (int i = 0; i < columnNames.length; i++) {
+            if((mask & (1L << i)) != 0) {
+                sb.append(" and ").append(columnNames[i]).append(" =?");
+            }
+        }
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public StatementCache getStatementCache() {
+        return statementCache;
+    }
+
+    //外部Blob的文件，回收不再引用的文件时使用；内存数据库为null
+    public BlobStore getBlobStore() {
+        return BlobStore.forDatabase(database);
+    }
+
+    //操作结束，没有开启统计时不生成形状；key为null（批量操作在第一行之前失败）时形状为空
+    private void endEvent(DaoMetrics.Event event, StatementCache.Key key) {
+        if(!event.isRecording()) {
+            return;
+        }
+        if(key == null) {
+            metrics.end(event, "");
+            return;
+        }
+        String sql = sqlShapes.get(key);
+        if(sql == null) {
+            sql = createSql(key);
+            sqlShapes.put(key, sql);
+        }
+        metrics.end(event, sql);
+    }
+
+    //select u_id from tableName where 1=1 and status =? order by ... limit ?
+    private void endQueryEvent(DaoMetrics.Event event, String[] columns, String selection, String orderBy,
+                               String limitString) {
+        if(!event.isRecording()) {
+            return;
+        }
+        StringBuilder sb = new StringBuilder("select ");
+        sb.append(columns == null ? "*" : TextUtils.join(",", columns)).append(" from ").append(tableName);
+        if(selection != null) {
+            sb.append(" where ").append(selection);
+        }
+        if(orderBy != null) {
+            sb.append(" order by ").append(orderBy);
+        }
+        if(limitString != null) {
+            sb.append(" limit ?");
+        }
+        metrics.end(event, sb.toString());
+    }
+
+    /**
+     * 开启按主键的实体缓存（需要声明@DbPrimaryKey），通过本DAO的写操作会自动失效
+     * @param maxSize 最多缓存的实体个数，<=0时关闭缓存
+     */
+    public void setEntityCacheSize(int maxSize) {
+        synchronized (this) {
+            if(maxSize <= 0) {
+                entityCache = null;
+            } else if(entityCache == null) {
+                entityCache = new EntityCache<>(maxSize);
+            } else {
+                entityCache.setMaxSize(maxSize);
+            }
+        }
+    }
+
+    public EntityCache<T> getEntityCache() {
+        return entityCache;
+    }
+
+    /**
+     * 开启查询结果缓存，适合数据很少变化、同样的查询反复执行的表
+     * 缓存的大小和命中率见getQueryCache()，返回的实体是共享的，不要修改
+     */
+    public void setQueryCacheEnabled(boolean enabled) {
+        queryCacheEnabled = enabled;
+    }
+
+    public QueryCache getQueryCache() {
+        return queryCache;
+    }
+
+    /**
+     * 按主键查询，开启了实体缓存时命中缓存就不再查询数据库，事务中不使用缓存
+     * @return 不存在时为null
+     */
+    @Override
+    public T findById(Object primaryKey) {
+        int primaryKeyIndex = mapper.getPrimaryKeyIndex();
+        if(primaryKeyIndex == -1) {
+            throw new IllegalStateException(entityClass.getName() + " 没有声明@DbPrimaryKey");
+        }
+        String key = primaryKey.toString();
+        //事务中可能读到还没有提交的行，不使用缓存
+        EntityCache<T> cache = database.inTransaction() ? null : entityCache;
+        long generation = 0;
+        if(cache != null) {
+            T entity = cache.get(key);
+            if(entity != null) {
+                return entity;
+            }
+            generation = cache.generation();
+        }
+        ColumnValues whereValues = new ColumnValues(mapper.getColumnNames().length);
+        whereValues.putObject(primaryKeyIndex, primaryKey);
+        Condition condition = new Condition(whereValues, 1L << primaryKeyIndex);
+        List<T> list = load(null, condition.whereCause, condition.whereArgs, null, "1");
+        T entity = list.isEmpty() ? null : list.get(0);
+        if(cache != null && entity != null) {
+            cache.put(key, entity, generation);
+        }
+        return entity;
+    }
+
+    /**
+     * 写操作之后让缓存失效：表的版本号加一，实体缓存中条件只有主键且没有修改主键时只移除这一行，否则全部清空
+     * 在事务中时提交之前别的线程仍然可能缓存旧的行，记下来等事务结束之后再失效一次
+     * @param values 写入的值，delete时为null
+     * @param columnMask values中写入的列
+     * @param whereValues 条件，insert时为null
+     * @param whereMask whereValues中作为条件的列
+     */
+    private void invalidate(ColumnValues values, long columnMask, ColumnValues whereValues, long whereMask) {
+        queryCache.bumpVersion(tableName);
+        EntityCache<T> cache = entityCache;
+        int primaryKeyIndex = mapper.getPrimaryKeyIndex();
+        if(cache == null || primaryKeyIndex == -1) {
+            deferInvalidation(null, null);
+            return;
+        }
+        long primaryKeyMask = 1L << primaryKeyIndex;
+        if(whereValues == null) {
+            //insert：只有主键相同的行可能在缓存中
+            if(values.isAssigned(primaryKeyIndex)) {
+                String primaryKey = String.valueOf(values.get(primaryKeyIndex));
+                cache.remove(primaryKey);
+                deferInvalidation(cache, primaryKey);
+            } else {
+                deferInvalidation(null, null);
+            }
+        } else if(whereMask == primaryKeyMask
+                && (values == null || (columnMask & primaryKeyMask) == 0
+                || values.get(primaryKeyIndex).equals(whereValues.get(primaryKeyIndex)))) {
+            String primaryKey = String.valueOf(whereValues.get(primaryKeyIndex));
+            cache.remove(primaryKey);
+            deferInvalidation(cache, primaryKey);
+        } else {
+            cache.clear();
+            deferInvalidation(cache, null);
+        }
+    }
+
+    private void invalidateAll() {
+        queryCache.bumpVersion(tableName);
+        EntityCache<T> cache = entityCache;
+        if(cache != null) {
+            cache.clear();
+        }
+        deferInvalidation(cache, null);
+    }
 
-        return sqLiteDatabase.delete(tableName, condition.whereCause, condition.whereArgs);
+    //事务中的失效在提交之后再做一次，见PendingInvalidation
+    private void deferInvalidation(EntityCache<T> cache, String primaryKey) {
+        if(database.inTransaction()) {
+            PendingInvalidation.add(database, tableName, cache, primaryKey);
+        }
     }
 
     @Override
     public List<T> query(T where) {
+        ColumnValues whereValues = getValues(where);
+        int primaryKeyIndex = mapper.getPrimaryKeyIndex();
+        if(entityCache != null && primaryKeyIndex != -1 && whereValues.getAssignedMask() == 1L << primaryKeyIndex) {
+            //只按主键查询，走实体缓存
+            T entity = findById(whereValues.get(primaryKeyIndex));
+            List<T> list = new ArrayList<>();
+            if(entity != null) {
+                list.add(entity);
+            }
+            return list;
+        }
         return query(where, null, null, null);
     }
 
     @Override
     public List<T> query(T where, String orderBy, Integer startIndex, Integer limit) {
-        Map map = getValues(where);
+        return query(where, null, orderBy, startIndex, limit);
+    }
+
+    @Override
+    public List<T> query(T where, String[] columns, String orderBy, Integer startIndex, Integer limit) {
+        if(columns != null) {
+            for (String column : columns) {
+                if(indexOfColumn(column) == -1) {
+                    throw new IllegalArgumentException(tableName + " has no column " + column);
+                }
+            }
+        }
         // select * from tableName limit 0,10;
         String limitString = null;
         if(startIndex != null && limit !=null) {
             limitString = startIndex + " , " + limit;
         }
+        //select u_id from tableName ... 游标中没有的列解析时直接跳过
+        Condition condition = new Condition(getValues(where));
+        return query(columns, condition.whereCause, condition.whereArgs, orderBy, limitString);
+    }
+
+    /**
+     * 开启了查询缓存时先查缓存，事务中不使用缓存（可能读到还没有提交的数据）
+     * @param selectionArgs 按类型绑定的参数，同时作为缓存的键
+     */
+    private List<T> query(String[] columns, String selection, Object[] selectionArgs,
+                          String orderBy, String limitString) {
+        QueryCache.Key key = null;
+        long version = 0;
+        if(queryCacheEnabled && !database.inTransaction()) {
+            key = new QueryCache.Key(tableName, columns, selection, selectionArgs, orderBy, limitString);
+            //先记下版本号再查询，查询期间表被修改过的结果不会放进缓存
+            version = queryCache.getVersion(tableName);
+            RowSnapshot cached = queryCache.get(key);
+            if(cached != null) {
+                //每次都解析出新的实体，调用者修改它们不影响缓存
+                return getResult(cached.cursor(), DaoMetrics.DISABLED, null);
+            }
+        }
+        RowSnapshot snapshot = key != null ? new RowSnapshot(mapper.getColumnNames().clone()) : null;
+        List<T> result = load(columns, selection, selectionArgs, orderBy, limitString, snapshot);
+        if(key != null) {
+            queryCache.put(key, snapshot, version, snapshot.estimateSize());
+        }
+        return result;
+    }
+
+    //查询数据库并解析所有的行，缓存命中的查询不经过这里
+    private List<T> load(String[] columns, String selection, Object[] selectionArgs, String orderBy,
+                         String limitString) {
+        return load(columns, selection, selectionArgs, orderBy, limitString, null);
+    }
+
+    /**
+     * @param snapshot 不为null时同时把每一行的原始值复制进去，用于放入查询缓存
+     */
+    private List<T> load(String[] columns, String selection, Object[] selectionArgs, String orderBy,
+                         String limitString, RowSnapshot snapshot) {
+        DaoMetrics.Event event = metrics.begin(tableName, DaoMetrics.QUERY);
+        try {
+            Cursor cursor = readQuery(columns, selection, selectionArgs, orderBy, limitString);
+            //定义解析游标的方法
+            return getResult(cursor, event, snapshot);
+        } catch (RuntimeException e) {
+            event.fail(e);
+            throw e;
+        } finally {
+            endQueryEvent(event, columns, selection, orderBy, limitString);
+        }
+    }
+
+    @Override
+    public EntityIterator<T> iterate(T where, String orderBy, boolean reuseEntity) {
+        Cursor cursor = queryCursor(where, null, orderBy, null);
+        return new EntityIterator<>(cursor, mapper, getColumnIndexes(cursor), reuseEntity);
+    }
+
+    @Override
+    public void forEach(T where, String orderBy, EntityVisitor<T> visitor) {
+        EntityIterator<T> iterator = iterate(where, orderBy, true);
+        try {
+            while (iterator.hasNext()) {
+                if(!visitor.visit(iterator.next())) {
+                    break;
+                }
+            }
+        } finally {
+            iterator.close();
+        }
+    }
+
+    @Override
+    public Page<T> queryPage(T where, String sortColumn, boolean descending, int limit, String pageToken) {
+        if(limit <= 0) {
+            throw new IllegalArgumentException("limit <= 0");
+        }
+        if(sortColumn != null && indexOfColumn(sortColumn) == -1) {
+            throw new IllegalArgumentException(tableName + " has no column " + sortColumn);
+        }
+        Condition condition = new Condition(getValues(where));
+        ArrayList<Object> args = new ArrayList<>();
+        Collections.addAll(args, condition.whereArgs);
+
+        //select *, rowid as _page_rowid from tableName where 1=1 and ... and (time > ? or (time = ? and rowid > ?))
+        //order by time, rowid limit ?
+        StringBuilder sb = new StringBuilder();
+        sb.append("select *, rowid as ").append(PAGE_ROWID).append(" from ").append(tableName)
+                .append(" where ").append(condition.whereCause);
+        if(pageToken != null) {
+            sb.append(" and (");
+            appendSeek(sb, args, sortColumn, descending, PageToken.parse(pageToken));
+            sb.append(")");
+        }
+        String direction = descending ? " desc" : "";
+        sb.append(" order by ");
+        if(sortColumn != null) {
+            sb.append(sortColumn).append(direction).append(", ");
+        }
+        sb.append("rowid").append(direction);
+        //多取一行，用来判断是否还有下一页
+        sb.append(" limit ").append(limit + 1);
+
+        DaoMetrics.Event event = metrics.begin(tableName, DaoMetrics.PAGE);
+        Cursor cursor = readRawQuery(sb.toString(), args.toArray());
+        ArrayList<T> items = new ArrayList<>();
+        String nextPageToken = null;
+        try {
+            int[] columnIndexes = getColumnIndexes(cursor);
+            int rowidIndex = cursor.getColumnIndex(PAGE_ROWID);
+            int sortIndex = sortColumn != null ? cursor.getColumnIndex(sortColumn) : -1;
+            while (cursor.moveToNext()) {
+                event.readRow(cursor);
+                event.markSqlite();
+                if(items.size() == limit) {
+                    //上一行就是本页的最后一行
+                    cursor.moveToPrevious();
+                    nextPageToken = PageToken.of(cursor, rowidIndex, sortIndex).toString();
+                    break;
+                }
+                T item = mapper.newInstance();
+                mapper.readCursor(cursor, columnIndexes, item);
+                items.add(item);
+                event.markMapping();
+            }
+        } catch (RuntimeException e) {
+            event.fail(e);
+            throw e;
+        } finally {
+            cursor.close();
+            event.markSqlite();
+            //分页的页大小是固定的，limit直接作为形状的一部分
+            metrics.end(event, sb.toString());
+        }
+        return new Page<>(items, nextPageToken);
+    }
 
+    /**
+     * 拼接"排在上一页最后一行之后"的条件，展开写成or的形式（低版本的SQLite不支持(a, b) > (?, ?)）
+     * SQLite中null排在最前面（升序）或最后面（降序）
+     */
+    private void appendSeek(StringBuilder sb, List<Object> args, String sortColumn, boolean descending,
+                            PageToken token) {
+        String compare = descending ? " < ?" : " > ?";
+        Long rowid = token.rowid;
+        if(sortColumn == null) {
+            sb.append("rowid").append(compare);
+            args.add(rowid);
+        } else if(token.sortValue == null) {
+            //上一行的排序列为null
+            sb.append("(").append(sortColumn).append(" is null and rowid").append(compare).append(")");
+            args.add(rowid);
+            if(!descending) {
+                sb.append(" or ").append(sortColumn).append(" is not null");
+            }
+        } else {
+            sb.append(sortColumn).append(compare)
+                    .append(" or (").append(sortColumn).append(" = ? and rowid").append(compare).append(")");
+            args.add(token.sortValue);
+            args.add(token.sortValue);
+            args.add(rowid);
+            if(descending) {
+                sb.append(" or ").append(sortColumn).append(" is null");
+            }
+        }
+    }
+
+    private int indexOfColumn(String columnName) {
+        String[] columnNames = mapper.getColumnNames();
+        for (int i = 0; i < columnNames.length; i++) {
+            if(columnNames[i].equals(columnName)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private Cursor queryCursor(T where, String[] columns, String orderBy, String limitString) {
         //select * from tableName where id=? and name=? ...
         //String selections = "id=? and name=? ..."
-        //String selectionArgs = String[]{ "1", "sty", ...}
-        Condition condition = new Condition(map);
-        Cursor cursor = sqLiteDatabase.query(tableName, null, condition.whereCause,
-                condition.whereArgs, null, null, orderBy, limitString);
+        //Object[] selectionArgs = Object[]{ 1L, "sty", ...}
+        Condition condition = new Condition(getValues(where));
+        return readQuery(columns, condition.whereCause, condition.whereArgs, orderBy, limitString);
+    }
 
-        //定义解析游标的方法
-        List<T> result = getResult(cursor, where);
+    /**
+     * 查询使用的连接：当前线程在事务中时用写连接（要能读到事务中还没有提交的数据），否则取一个读连接
+     */
+    private Database acquireReader() {
+        if(connectionManager == null || database.inTransaction()) {
+            return database;
+        }
+        return connectionManager.acquireReader();
+    }
 
-        return result;
+    private void releaseReader(Database reader) {
+        if(reader != database) {
+            connectionManager.releaseReader(reader);
+        }
     }
 
-    private List<T> getResult(Cursor cursor, T obj) {
-        ArrayList list = new ArrayList();
-        Object item = null;  //User user = null;
-        while (cursor.moveToNext()) {
-            try {
-                item = obj.getClass().newInstance(); //user = new User();
-                Iterator<String> iterator = cacheMap.keySet().iterator();
-                while (iterator.hasNext()) {
-                    //获取列名
-                    String columnName = iterator.next();
-                    //以列名拿到列名在游标中的位置
-                    int columnIndex = cursor.getColumnIndex(columnName);
-                    //获取成员变量的类型
-                    Field field = cacheMap.get(columnName);
-                    Class type = field.getType();
-                    //cursor.getString(columnIndex);
-                    if(columnIndex != -1) {
-                        if(type == String.class) {
-                            //User user = new User();
-                            //user.setId(1); --> id.set(user, 1);
-                            field.set(item, cursor.getString(columnIndex));
-                        }else if(type == Double.class) {
-                            field.set(item, cursor.getDouble(columnIndex));
-                        }else if(type == Integer.class) {
-                            field.set(item, cursor.getInt(columnIndex));
-                        }else if(type == Long.class) {
-                            field.set(item, cursor.getLong(columnIndex));
-                        }else if(type == byte[].class) {
-                            field.set(item, cursor.getBlob(columnIndex));
-                        }
-                    }
+    //返回的游标关闭时归还读连接
+    private Cursor readQuery(String[] columns, String selection, Object[] selectionArgs,
+                             String orderBy, String limitString) {
+        Database reader = acquireReader();
+        try {
+            return new ReaderCursor(reader.rawQuery(buildQuery(columns, selection, orderBy, limitString),
+                    selectionArgs), reader);
+        } catch (RuntimeException e) {
+            releaseReader(reader);
+            throw e;
+        }
+    }
+
+    //select u_id, name from tableName where ... order by ... limit ...
+    private String buildQuery(String[] columns, String selection, String orderBy, String limitString) {
+        StringBuilder sb = new StringBuilder("select ");
+        if(columns == null || columns.length == 0) {
+            sb.append("*");
+        } else {
+            sb.append(TextUtils.join(", ", columns));
+        }
+        sb.append(" from ").append(tableName);
+        if(!TextUtils.isEmpty(selection)) {
+            sb.append(" where ").append(selection);
+        }
+        if(!TextUtils.isEmpty(orderBy)) {
+            sb.append(" order by ").append(orderBy);
+        }
+        if(!TextUtils.isEmpty(limitString)) {
+            sb.append(" limit ").append(limitString);
+        }
+        return sb.toString();
+    }
+
+    private Cursor readRawQuery(String sql, Object[] selectionArgs) {
+        Database reader = acquireReader();
+        try {
+            return new ReaderCursor(reader.rawQuery(sql, selectionArgs), reader);
+        } catch (RuntimeException e) {
+            releaseReader(reader);
+            throw e;
+        }
+    }
+
+    private long readLong(String sql, Object[] selectionArgs) {
+        DaoMetrics.Event event = metrics.begin(tableName, DaoMetrics.COUNT);
+        Database reader = acquireReader();
+        try {
+            long value = reader.longForQuery(sql, selectionArgs);
+            event.addRowsRead(1);
+            return value;
+        } catch (RuntimeException e) {
+            event.fail(e);
+            throw e;
+        } finally {
+            releaseReader(reader);
+            event.markSqlite();
+            metrics.end(event, sql);
+        }
+    }
+
+    /**
+     * 移动游标（其中包括执行查询、填充CursorWindow）的时间算在SQLite上，创建和填充实体的时间算在映射上
+     */
+    private List<T> getResult(Cursor cursor, DaoMetrics.Event event, RowSnapshot snapshot) {
+        ArrayList<T> list = new ArrayList<>();
+        try {
+            //列的位置每个游标只需要查一次，不用每行都getColumnIndex
+            int[] columnIndexes = getColumnIndexes(cursor);
+            while (cursor.moveToNext()) {
+                event.readRow(cursor);
+                if(snapshot != null) {
+                    snapshot.add(cursor, columnIndexes);
                 }
+                event.markSqlite();
+                T item = mapper.newInstance(); //User user = new User();
+                mapper.readCursor(cursor, columnIndexes, item);
                 list.add(item);
-            } catch (IllegalAccessException e) {
-                e.printStackTrace();
-            } catch (InstantiationException e) {
-                e.printStackTrace();
+                event.markMapping();
             }
+        } finally {
+            cursor.close();
+            event.markSqlite();
         }
-        cursor.close();
         return list;
     }
 
-    private ContentValues getContentValues(Map<String, String> map) {
-        ContentValues contentValues = new ContentValues();
-        Set keys = map.keySet();
-        Iterator<String> iterator = keys.iterator();
-        while (iterator.hasNext()) {
-            String key = iterator.next();
-            String value = map.get(key);
-            if(value != null) {
-                contentValues.put(key, value);
-            }
+    private int[] getColumnIndexes(Cursor cursor) {
+        String[] columnNames = mapper.getColumnNames();
+        int[] columnIndexes = new int[columnNames.length];
+        for (int i = 0; i < columnNames.length; i++) {
+            columnIndexes[i] = cursor.getColumnIndex(columnNames[i]);
         }
-        return contentValues;
+        return columnIndexes;
     }
 
     /**
-     * 把传入对象的属性解析为Map
+     * 把传入对象的属性按列的顺序、按类型取出来，没有赋值的列见ColumnValues
      * @param entity
      * @return
      */
-    private Map<String, String> getValues(T entity) {
-        HashMap<String, String> map = new HashMap<>();
-        //得到所有的成员变量，user的成员变量
-        Iterator<Field> fieldIterator = cacheMap.values().iterator();
-        while (fieldIterator.hasNext()) {
-            Field field = fieldIterator.next();
-            field.setAccessible(true);
-            //获取成员变量的值
-            try {
-                Object object = field.get(entity); //user.getName() --> field.get(user);
-                if(object == null) {
-                    continue;
-                }
-                String value = object.toString();
-                //获取列名
-                DbField dbField = field.getAnnotation(DbField.class);
-                String key = field.getName();
-                if(dbField != null && !"".equals(dbField.value())) {
-                    key = dbField.value();
-                }
-                if(!TextUtils.isEmpty(key) && !TextUtils.isEmpty(value)) {
-                    map.put(key, value);
-                }
-            } catch (IllegalAccessException e) {
-                e.printStackTrace();
+    private ColumnValues getValues(T entity) {
+        //列名和值按同样的顺序排列，user.getName() --> values[i]
+        ColumnValues values = new ColumnValues(mapper.getColumnNames().length);
+        mapper.getValues(entity, values);
+        return values;
+    }
+
+    //关闭时把读连接还给连接池，可以重复关闭
+    private class ReaderCursor extends CursorWrapper {
+        private Database reader;
+
+        ReaderCursor(Cursor cursor, Database reader) {
+            super(cursor);
+            this.reader = reader;
+        }
+
+        @Override
+        public void close() {
+            super.close();
+            if(reader != null) {
+                releaseReader(reader);
+                reader = null;
             }
         }
-        return map;
     }
 
     private class Condition {
         private String whereCause;
-        private String[] whereArgs;
+        //按类型绑定的参数
+        private Object[] whereArgs;
 
-        public Condition(Map<String, String> whereMap) {
-            ArrayList list = new ArrayList();
+        //赋了值的列作为条件
+        public Condition(ColumnValues whereValues) {
+            this(whereValues, whereValues.getAssignedMask());
+        }
+
+        public Condition(ColumnValues whereValues, long mask) {
             StringBuilder sb = new StringBuilder();
-            sb.append("1=1");
-            //获取所有的字段名
-            Set<String> keys = whereMap.keySet();
-            Iterator<String> iterator = keys.iterator();
-            while (iterator.hasNext()) {
-                String key = iterator.next();
-                String value = whereMap.get(key);
-                if(value != null) {
-                    sb.append(" and ")
-                            .append(key)
-                            .append(" =?");
-                    list.add(value);
+            appendWhere(sb, mask);
+            this.whereCause = sb.toString();
+            this.whereArgs = whereValues.toArgs(mask);
+        }
+    }
+
+    /**
+     * 续传标记：上一页最后一行的rowid和排序列的值，按类型绑定
+     * 格式为 rowid:n（null）、rowid:l整数、rowid:d浮点数 或 rowid:v字符串
+     */
+    private static class PageToken {
+        private final long rowid;
+        private final Object sortValue;
+
+        PageToken(long rowid, Object sortValue) {
+            this.rowid = rowid;
+            this.sortValue = sortValue;
+        }
+
+        //游标当前行的续传标记，sortIndex为-1时没有排序列
+        static PageToken of(Cursor cursor, int rowidIndex, int sortIndex) {
+            long rowid = cursor.getLong(rowidIndex);
+            if(sortIndex == -1) {
+                return new PageToken(rowid, null);
+            }
+            switch (cursor.getType(sortIndex)) {
+                case Cursor.FIELD_TYPE_NULL:
+                    return new PageToken(rowid, null);
+                case Cursor.FIELD_TYPE_INTEGER:
+                    return new PageToken(rowid, cursor.getLong(sortIndex));
+                case Cursor.FIELD_TYPE_FLOAT:
+                    return new PageToken(rowid, cursor.getDouble(sortIndex));
+                default:
+                    return new PageToken(rowid, cursor.getString(sortIndex));
+            }
+        }
+
+        static PageToken parse(String token) {
+            int separator = token.indexOf(':');
+            if(separator <= 0 || separator + 1 >= token.length()) {
+                throw new IllegalArgumentException("invalid page token " + token);
+            }
+            long rowid;
+            try {
+                rowid = Long.parseLong(token.substring(0, separator));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("invalid page token " + token, e);
+            }
+            char type = token.charAt(separator + 1);
+            String value = token.substring(separator + 2);
+            try {
+                if(type == 'n') {
+                    return new PageToken(rowid, null);
+                } else if(type == 'l') {
+                    return new PageToken(rowid, Long.parseLong(value));
+                } else if(type == 'd') {
+                    return new PageToken(rowid, Double.parseDouble(value));
+                } else if(type == 'v') {
+                    return new PageToken(rowid, value);
                 }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("invalid page token " + token, e);
             }
-            this.whereCause = sb.toString();
-            this.whereArgs = (String[]) list.toArray(new String[list.size()]);
+            throw new IllegalArgumentException("invalid page token " + token);
+        }
+
+        @Override
+        public String toString() {
+            if(sortValue == null) {
+                return rowid + ":n";
+            }
+            char type = sortValue instanceof Long ? 'l' : sortValue instanceof Double ? 'd' : 'v';
+            return rowid + ":" + type + sortValue;
         }
     }
 }
@@ -1,51 +1,61 @@
 package com.sty.ne.db.db;
 
-import android.database.sqlite.SQLiteDatabase;
-
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
-
 /**
  * 创建数据库文件，初始化数据库
+ * 数据库在第一次使用时打开，只管理分库的子类不会打开主库
  * @Author: tian
- * @UpdateDate: 2020/11/19 10:32 PM
+ * @UpdateDate: 2020/12/19 10:00 PM
  */
 public class BaseDaoFactory {
-    private SQLiteDatabase sqLiteDatabase;
     private String sqLitePath;
+    //一个写连接 + 读连接池，查询不会被写操作阻塞；第一次使用时创建
+    private ConnectionManager connectionManager;
     private static class LazyHolder {
         private static BaseDaoFactory instance = new BaseDaoFactory();
     }
 
-    //设计一个数据库连接池，new 一个容器，只创建一次，下次就不会再创建了，考虑多线程问题
-    protected Map<String, BaseDao> map = Collections.synchronizedMap(new HashMap<String, BaseDao>());
+    //按(数据库, DAO类, 实体类)缓存DAO，只创建一次，查找不加锁
+    protected final DaoRegistry registry = new DaoRegistry();
+    private final DaoRegistry.DaoInitializer initializer = new DaoRegistry.DaoInitializer() {
+        @Override
+        public <M> boolean init(BaseDao<M> dao, Class<M> entityClass) {
+            return dao.init(getConnectionManager(), entityClass);
+        }
+    };
 
     protected BaseDaoFactory() {
-        sqLitePath = "data/data/com.sty.ne.db/ne.db";
-        sqLiteDatabase = SQLiteDatabase.openOrCreateDatabase(sqLitePath, null);
+        this("data/data/com.sty.ne.db/ne.db");
+    }
+
+    //使用指定路径的数据库，测试时使用
+    BaseDaoFactory(String sqLitePath) {
+        this.sqLitePath = sqLitePath;
     }
 
     public static BaseDaoFactory getInstance() {
         return LazyHolder.instance;
     }
 
+    //调整读连接数、查看等待时间的统计，第一次调用时打开数据库
+    public synchronized ConnectionManager getConnectionManager() {
+        if(connectionManager == null) {
+            connectionManager = new ConnectionManager(sqLitePath, ConnectionManager.DEFAULT_MAX_READERS);
+        }
+        return connectionManager;
+    }
+
     //生产BaseDao对象
     public <T extends BaseDao<M>, M> T getBaseDao(Class<T> daoClass, Class<M> entityClass) {
-        BaseDao baseDao = map.get(daoClass.getSimpleName());
-        if(baseDao != null) {
-            return (T) baseDao;
-        }
-        try {
-            //baseDao = BaseDao.class.newInstance();
-            baseDao = daoClass.newInstance();
-            baseDao.init(sqLiteDatabase, entityClass);
-            map.put(daoClass.getSimpleName(), baseDao);
-        } catch (IllegalAccessException e) {
-            e.printStackTrace();
-        } catch (InstantiationException e) {
-            e.printStackTrace();
-        }
-        return (T) baseDao;
+        return registry.get(sqLitePath, daoClass, entityClass, initializer);
+    }
+
+    //是否已经创建过这个BaseDao
+    boolean hasBaseDao(Class<?> daoClass, Class<?> entityClass) {
+        return registry.contains(sqLitePath, daoClass, entityClass);
+    }
+
+    //移除没有建成表的BaseDao（比如启动时的事务回滚了），下次获取时重新创建
+    void removeBaseDao(Class<?> daoClass, Class<?> entityClass) {
+        registry.remove(sqLitePath, daoClass, entityClass);
     }
 }
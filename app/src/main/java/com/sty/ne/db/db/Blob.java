@@ -0,0 +1,195 @@
+package com.sty.ne.db.db;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 大块的二进制数据，用来代替byte[]成员变量，比如照片
+ *
+ * 不超过inlineLimit（见@DbBlob）的内容存在行中；更大的由BlobStore保存为数据库旁边的文件，
+ * 文件名是内容的SHA-256，行中只保存这个摘要，相同的内容只保存一份
+ * 从数据库读出来的外部Blob只记录摘要，不经过CursorWindow；第一次getBuffer()时才把文件映射到内存，
+ * 内容不会复制到Java堆中，需要按流处理时用openStream()
+ *
+ * 内容不可修改，要换内容时给成员变量赋一个新的Blob
+ * @Author: tian
+ * @UpdateDate: 2020/12/17 8:30 PM
+ */
+public final class Blob {
+    private static final int BUFFER_SIZE = 8192;
+
+    //Blob.of(byte[])或者存在行中的内容
+    private final byte[] data;
+    //Blob.of(File)的源文件，保存到BlobStore之后是其中的文件
+    private volatile File file;
+    //内容的SHA-256，第一次用到时计算
+    private volatile String key;
+    //内容在BlobStore中，行中只保存key
+    private volatile boolean external;
+    //映射到内存的文件内容，第一次getBuffer()时创建
+    private volatile ByteBuffer mapped;
+
+    private Blob(byte[] data, File file, String key, boolean external) {
+        this.data = data;
+        this.file = file;
+        this.key = key;
+        this.external = external;
+    }
+
+    //不复制data，之后不能再修改
+    public static Blob of(byte[] data) {
+        if(data == null) {
+            throw new NullPointerException("data");
+        }
+        return new Blob(data, null, null, false);
+    }
+
+    //保存时把文件复制到BlobStore中，不会整个读进内存；在此之前不能修改或删除这个文件
+    public static Blob of(File file) {
+        if(file == null) {
+            throw new NullPointerException("file");
+        }
+        return new Blob(null, file, null, false);
+    }
+
+    //从行中读出的摘要，关联BlobStore之后才能读取内容
+    static Blob ref(String key) {
+        return new Blob(null, null, key, true);
+    }
+
+    /**
+     * 内容的SHA-256（64位小写十六进制），由Blob.of创建、还没有保存的会在这里计算
+     */
+    public String getKey() throws IOException {
+        String k = key;
+        if(k == null) {
+            if(data != null) {
+                k = BlobStore.hash(data);
+            } else {
+                InputStream in = new FileInputStream(file);
+                try {
+                    k = BlobStore.hash(in);
+                } finally {
+                    in.close();
+                }
+            }
+            key = k;
+        }
+        return k;
+    }
+
+    //已经计算过的摘要，没有时为null
+    String peekKey() {
+        return key;
+    }
+
+    //内容在BlobStore中，行中只保存摘要
+    public boolean isExternal() {
+        return external;
+    }
+
+    //内容所在的文件，内容在内存中时为null
+    public File getFile() {
+        return file;
+    }
+
+    public long length() {
+        return data != null ? data.length : requireFile().length();
+    }
+
+    /**
+     * 只读的内容，每次调用返回独立的position/limit
+     * 文件只在第一次调用时映射，之后共用同一个映射；映射不占用Java堆，文件被回收之后映射仍然有效
+     */
+    public ByteBuffer getBuffer() throws IOException {
+        if(data != null) {
+            return ByteBuffer.wrap(data).asReadOnlyBuffer();
+        }
+        ByteBuffer buffer = mapped;
+        if(buffer == null) {
+            synchronized (this) {
+                buffer = mapped;
+                if(buffer == null) {
+                    buffer = map(requireFile());
+                    mapped = buffer;
+                }
+            }
+        }
+        return buffer.duplicate();
+    }
+
+    //用完必须close
+    public InputStream openStream() throws IOException {
+        if(data != null) {
+            return new ByteArrayInputStream(data);
+        }
+        return new FileInputStream(requireFile());
+    }
+
+    //复制到Java堆中，只在内容不大时使用
+    public byte[] toByteArray() throws IOException {
+        if(data != null) {
+            return data;
+        }
+        InputStream in = openStream();
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream((int) length());
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    //读出来的外部Blob关联到所在数据库的BlobStore
+    void attach(BlobStore store) {
+        if(external && file == null) {
+            file = store.fileOf(key);
+        }
+    }
+
+    //BlobStore保存之后调用，之后写入时行中只保存摘要
+    void markStored(String key, File file) {
+        this.key = key;
+        this.file = file;
+        this.external = true;
+    }
+
+    private File requireFile() {
+        File f = file;
+        if(f == null) {
+            throw new IllegalStateException("Blob " + key + " 没有关联BlobStore");
+        }
+        return f;
+    }
+
+    private static ByteBuffer map(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            //映射建立之后关闭文件不影响读取
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            raf.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        if(external) {
+            return "Blob[" + key + "]";
+        }
+        return "Blob[" + (data != null ? data.length + " bytes" : file.getPath()) + "]";
+    }
+}
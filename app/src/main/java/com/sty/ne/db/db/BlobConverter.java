@@ -0,0 +1,43 @@
+package com.sty.ne.db.db;
+
+import com.sty.ne.db.storage.Cursor;
+import com.sty.ne.db.storage.StorageException;
+
+import java.io.IOException;
+
+/**
+ * Blob成员变量默认的转换器：外部Blob写入摘要（TEXT），其它的按BLOB存在行中
+ * 列声明为BLOB，没有类型亲和性，两种值都原样保存，读取时按值的类型区分
+ * 超过inlineLimit的Blob在写入之前已经由BlobEntityMapper保存为外部Blob
+ * @Author: tian
+ * @UpdateDate: 2020/12/17 8:50 PM
+ */
+public class BlobConverter implements TypeConverter<Blob> {
+
+    @Override
+    public String getSqlType() {
+        return "BLOB";
+    }
+
+    @Override
+    public void write(Blob value, ColumnValues values, int index) {
+        try {
+            if(value.isExternal()) {
+                values.putString(index, value.getKey());
+            } else {
+                values.putBlob(index, value.toByteArray());
+            }
+        } catch (IOException e) {
+            throw new StorageException("读取 " + value + " 失败", e);
+        }
+    }
+
+    @Override
+    public Blob read(Cursor cursor, int columnIndex) {
+        if(cursor.getType(columnIndex) == Cursor.FIELD_TYPE_STRING) {
+            //只取摘要，文件在读取内容时才打开
+            return Blob.ref(cursor.getString(columnIndex));
+        }
+        return Blob.of(cursor.getBlob(columnIndex));
+    }
+}
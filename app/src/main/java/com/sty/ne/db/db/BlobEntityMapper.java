@@ -0,0 +1,146 @@
+package com.sty.ne.db.db;
+
+import com.sty.ne.db.annotation.DbBlob;
+import com.sty.ne.db.storage.Cursor;
+import com.sty.ne.db.storage.Database;
+import com.sty.ne.db.storage.StorageException;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 有Blob成员变量的实体在映射器外面包一层：
+ * 取值之前把超过inlineLimit的Blob保存到BlobStore，BlobConverter随后只写入摘要；
+ * 读出实体之后把外部Blob关联到BlobStore，读取内容时才打开文件
+ * 生成的映射器和反射的都一样处理，没有Blob成员变量的实体不经过这里
+ * @Author: tian
+ * @UpdateDate: 2020/12/17 9:00 PM
+ */
+class BlobEntityMapper<T> implements EntityMapper<T> {
+    private final EntityMapper<T> mapper;
+    private final BlobStore store;
+    private final Field[] fields;
+    private final int[] inlineLimits;
+
+    private BlobEntityMapper(EntityMapper<T> mapper, BlobStore store, Field[] fields, int[] inlineLimits) {
+        this.mapper = mapper;
+        this.store = store;
+        this.fields = fields;
+        this.inlineLimits = inlineLimits;
+    }
+
+    /**
+     * 登记引用Blob的列（回收文件时查询）
+     * @return 没有Blob成员变量或者是内存数据库时返回mapper本身
+     */
+    static <T> EntityMapper<T> wrap(EntityMapper<T> mapper, Class<T> entityClass, Database database) {
+        BlobStore store = BlobStore.forDatabase(database);
+        if(store == null) {
+            return mapper;
+        }
+        List<String> columnNames = Arrays.asList(mapper.getColumnNames());
+        List<Field> fields = new ArrayList<>();
+        List<Integer> inlineLimits = new ArrayList<>();
+        for (Field field : entityClass.getDeclaredFields()) {
+            if(field.getType() != Blob.class || Modifier.isStatic(field.getModifiers())) {
+                continue;
+            }
+            String columnName = BaseDao.getColumnName(field);
+            if(!columnNames.contains(columnName)) {
+                continue;
+            }
+            field.setAccessible(true);
+            DbBlob dbBlob = field.getAnnotation(DbBlob.class);
+            fields.add(field);
+            inlineLimits.add(dbBlob != null ? dbBlob.inlineLimit() : DbBlob.DEFAULT_INLINE_LIMIT);
+            BlobStore.register(database, mapper.getTableName(), columnName);
+        }
+        if(fields.isEmpty()) {
+            return mapper;
+        }
+        int[] limits = new int[inlineLimits.size()];
+        for (int i = 0; i < limits.length; i++) {
+            limits[i] = inlineLimits.get(i);
+        }
+        return new BlobEntityMapper<>(mapper, store, fields.toArray(new Field[fields.size()]), limits);
+    }
+
+    @Override
+    public String getTableName() {
+        return mapper.getTableName();
+    }
+
+    @Override
+    public String getCreateTableSql() {
+        return mapper.getCreateTableSql();
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return mapper.getColumnNames();
+    }
+
+    @Override
+    public int getPrimaryKeyIndex() {
+        return mapper.getPrimaryKeyIndex();
+    }
+
+    @Override
+    public String[] getCreateIndexSqls() {
+        return mapper.getCreateIndexSqls();
+    }
+
+    @Override
+    public T newInstance() {
+        return mapper.newInstance();
+    }
+
+    @Override
+    public void readCursor(Cursor cursor, int[] columnIndexes, T entity) {
+        mapper.readCursor(cursor, columnIndexes, entity);
+        for (Field field : fields) {
+            Blob blob = get(field, entity);
+            if(blob != null) {
+                blob.attach(store);
+            }
+        }
+    }
+
+    /**
+     * 按实体查询时条件中的Blob也按同样的规则保存，得到的摘要才能和行中的比较
+     */
+    @Override
+    public void getValues(T entity, ColumnValues values) {
+        for (int i = 0; i < fields.length; i++) {
+            Blob blob = get(fields[i], entity);
+            if(blob == null) {
+                continue;
+            }
+            try {
+                if(blob.isExternal()) {
+                    //其它数据库读出来的，文件要复制过来
+                    if(!store.fileOf(blob.getKey()).equals(blob.getFile())) {
+                        store.save(blob);
+                    }
+                } else if(blob.length() > inlineLimits[i]) {
+                    store.save(blob);
+                }
+            } catch (IOException e) {
+                throw new StorageException("保存 " + blob + " 失败", e);
+            }
+        }
+        mapper.getValues(entity, values);
+    }
+
+    private static Blob get(Field field, Object entity) {
+        try {
+            return (Blob) field.get(entity);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
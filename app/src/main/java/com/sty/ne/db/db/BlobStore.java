@@ -0,0 +1,292 @@
+package com.sty.ne.db.db;
+
+import android.util.Log;
+
+import com.sty.ne.db.storage.Cursor;
+import com.sty.ne.db.storage.Database;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * 外部Blob的文件，放在数据库旁边的目录（数据库路径 + "-blobs"）中，
+ * 按内容寻址：文件名是内容的SHA-256，前两位作为子目录，相同的内容只保存一份
+ *
+ * 文件先写入临时文件并sync，再改名为最终的文件名，不会出现内容不完整的文件；
+ * 删除行、更新为其它内容都不直接删除文件（可能还有别的行引用），由collectGarbage统一回收
+ * 引用了Blob的表和列记录在数据库的nedb_blob_columns表中，回收时查询这些列得到还在使用的文件
+ * @Author: tian
+ * @UpdateDate: 2020/12/17 8:40 PM
+ */
+public class BlobStore {
+    private static final String TAG = BlobStore.class.getSimpleName();
+    public static final String TABLE_NAME = "nedb_blob_columns";
+    public static final String SUFFIX = "-blobs";
+    //回收时保留这段时间内写入或者再次引用的文件，留给还没有提交的事务
+    public static final long DEFAULT_MIN_AGE = 60 * 60 * 1000L;
+    private static final String TEMP_PREFIX = "tmp-";
+    private static final int BUFFER_SIZE = 8192;
+
+    //key:目录，同一个数据库文件的多个连接共用一个BlobStore
+    private static final HashMap<String, BlobStore> stores = new HashMap<>();
+
+    private final File directory;
+
+    private BlobStore(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @return 内存数据库没有对应的目录，返回null，这时所有的Blob都存在行中
+     */
+    public static BlobStore forDatabase(Database database) {
+        String path = database.getPath();
+        if(path == null || path.isEmpty() || ":memory:".equals(path)) {
+            return null;
+        }
+        File directory = new File(path + SUFFIX).getAbsoluteFile();
+        synchronized (stores) {
+            BlobStore store = stores.get(directory.getPath());
+            if(store == null) {
+                store = new BlobStore(directory);
+                stores.put(directory.getPath(), store);
+            }
+            return store;
+        }
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    File fileOf(String key) {
+        if(!isKey(key)) {
+            throw new IllegalArgumentException("不是Blob的摘要: " + key);
+        }
+        return new File(directory, key.substring(0, 2) + File.separator + key.substring(2));
+    }
+
+    /**
+     * 把Blob的内容保存为文件，之后写入行中的只有摘要；内容已经存在时只更新文件的修改时间
+     * BaseDao在写入超过inlineLimit的Blob、其它数据库读出来的外部Blob之前自动调用
+     */
+    public void save(Blob blob) throws IOException {
+        String key = blob.peekKey();
+        if(key == null && blob.getFile() == null) {
+            //内存中的内容先计算摘要，已经存在时不用再写
+            key = blob.getKey();
+        }
+        if(key != null && reuse(blob, key)) {
+            return;
+        }
+        //复制的同时计算摘要，不用再读一遍
+        MessageDigest digest = newDigest();
+        File temp = writeTemp(blob, digest);
+        key = toHex(digest.digest());
+        synchronized (this) {
+            File target = fileOf(key);
+            if(target.exists()) {
+                temp.delete();
+                touch(target);
+            } else {
+                target.getParentFile().mkdirs();
+                if(!temp.renameTo(target)) {
+                    temp.delete();
+                    throw new IOException("rename " + temp + " -> " + target + " failed");
+                }
+            }
+            blob.markStored(key, target);
+        }
+    }
+
+    //相同内容的文件已经存在
+    private synchronized boolean reuse(Blob blob, String key) {
+        File target = fileOf(key);
+        if(!target.exists()) {
+            return false;
+        }
+        //再次引用的文件按新写入的处理，不会被正在进行的回收删除
+        touch(target);
+        blob.markStored(key, target);
+        return true;
+    }
+
+    private File writeTemp(Blob blob, MessageDigest digest) throws IOException {
+        directory.mkdirs();
+        File temp = File.createTempFile(TEMP_PREFIX, null, directory);
+        boolean success = false;
+        InputStream in = blob.openStream();
+        try {
+            FileOutputStream out = new FileOutputStream(temp);
+            try {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int count;
+                while ((count = in.read(buffer)) != -1) {
+                    digest.update(buffer, 0, count);
+                    out.write(buffer, 0, count);
+                }
+                //行提交之前文件必须已经落盘
+                out.getFD().sync();
+            } finally {
+                out.close();
+            }
+            success = true;
+            return temp;
+        } finally {
+            in.close();
+            if(!success) {
+                temp.delete();
+            }
+        }
+    }
+
+    private static void touch(File file) {
+        if(!file.setLastModified(System.currentTimeMillis())) {
+            Log.w(TAG, "setLastModified failed: " + file);
+        }
+    }
+
+    //记录引用了Blob的列，每个DAO初始化时调用；数据库文件可能被删除重建，不在内存中记录是否已经写入
+    static void register(Database database, String tableName, String columnName) {
+        createTable(database);
+        database.execSQL("insert or ignore into " + TABLE_NAME + "(table_name, column_name) values(?,?)",
+                new Object[]{tableName, columnName});
+    }
+
+    private static void createTable(Database database) {
+        database.execSQL("create table if not exists " + TABLE_NAME
+                + "(table_name TEXT, column_name TEXT, PRIMARY KEY(table_name, column_name))");
+    }
+
+    public int collectGarbage(Database database) {
+        return collectGarbage(database, DEFAULT_MIN_AGE);
+    }
+
+    /**
+     * 删除没有被任何行引用的文件，database是这个目录对应的数据库（写连接）
+     * 最近minAgeMillis内写入或者再次引用的文件不删除：它们可能属于还没有提交的事务
+     * 已经映射到内存的文件被删除之后，映射仍然可以读取
+     * @return 删除的文件数
+     */
+    public int collectGarbage(Database database, long minAgeMillis) {
+        HashSet<String> live = queryLiveKeys(database);
+        long deadline = System.currentTimeMillis() - minAgeMillis;
+        int deleted = 0;
+        synchronized (this) {
+            File[] children = directory.listFiles();
+            if(children == null) {
+                return 0;
+            }
+            for (File child : children) {
+                if(!child.isDirectory()) {
+                    //中断的保存留下的临时文件
+                    if(child.getName().startsWith(TEMP_PREFIX) && child.lastModified() <= deadline) {
+                        child.delete();
+                    }
+                    continue;
+                }
+                File[] files = child.listFiles();
+                if(files == null) {
+                    continue;
+                }
+                int remaining = files.length;
+                for (File file : files) {
+                    String key = child.getName() + file.getName();
+                    if(!live.contains(key) && file.lastModified() <= deadline && file.delete()) {
+                        deleted++;
+                        remaining--;
+                    }
+                }
+                if(remaining == 0) {
+                    child.delete();
+                }
+            }
+        }
+        Log.i(TAG, "collectGarbage " + directory + ": live=" + live.size() + ", deleted=" + deleted);
+        return deleted;
+    }
+
+    //所有登记过的列中引用的摘要，外部Blob在行中是TEXT，存在行中的是BLOB
+    private static HashSet<String> queryLiveKeys(Database database) {
+        createTable(database);
+        List<String[]> columns = new ArrayList<>();
+        Cursor cursor = database.rawQuery("select table_name, column_name from " + TABLE_NAME, null);
+        try {
+            while (cursor.moveToNext()) {
+                columns.add(new String[]{cursor.getString(0), cursor.getString(1)});
+            }
+        } finally {
+            cursor.close();
+        }
+        HashSet<String> live = new HashSet<>();
+        for (String[] column : columns) {
+            //删除了的表不再引用任何文件
+            if(database.longForQuery("select count(*) from sqlite_master where type = 'table' and name = ?",
+                    new Object[]{column[0]}) == 0) {
+                continue;
+            }
+            cursor = database.rawQuery("select distinct " + column[1] + " from " + column[0]
+                    + " where typeof(" + column[1] + ") = 'text'", null);
+            try {
+                while (cursor.moveToNext()) {
+                    live.add(cursor.getString(0));
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        return live;
+    }
+
+    private static boolean isKey(String key) {
+        if(key == null || key.length() != 64) {
+            return false;
+        }
+        for (int i = 0; i < key.length(); i++) {
+            if(Character.digit(key.charAt(i), 16) == -1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static String hash(byte[] data) {
+        MessageDigest digest = newDigest();
+        digest.update(data);
+        return toHex(digest.digest());
+    }
+
+    static String hash(InputStream in) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            digest.update(buffer, 0, count);
+        }
+        return toHex(digest.digest());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,250 @@
+package com.sty.ne.db.db;
+
+import com.sty.ne.db.storage.Cursor;
+import com.sty.ne.db.storage.Statement;
+
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * 实体一行的值，按EntityMapper.getColumnNames()的顺序排列
+ * 整数和浮点数（按位存放）放在long[]中，绑定时直接bindLong/bindDouble，不装箱也不转成字符串
+ *
+ * 没有赋值的列（null、空字符串、基本类型成员变量的0/false）不作为按实体查询的条件，也不参与update的set；
+ * 基本类型的0/false在insert时照常写入（主键除外，为0时由SQLite分配rowid）
+ * @Author: tian
+ * @UpdateDate: 2020/12/16 8:20 PM
+ */
+public final class ColumnValues {
+    //每一列的类型，Cursor.FIELD_TYPE_*
+    private final byte[] types;
+    //FIELD_TYPE_INTEGER的值，FIELD_TYPE_FLOAT时为Double.doubleToRawLongBits
+    private final long[] numbers;
+    //String或byte[]
+    private final Object[] objects;
+    //不为null的列，insert时写入
+    private long presentMask;
+    //不为null且不是基本类型默认值的列
+    private long assignedMask;
+
+    public ColumnValues(int size) {
+        if(size > 64) {
+            throw new IllegalArgumentException("size > 64");
+        }
+        types = new byte[size];
+        numbers = new long[size];
+        objects = new Object[size];
+    }
+
+    public int size() {
+        return types.length;
+    }
+
+    //批量操作时每一行重复使用同一个对象
+    public void clear() {
+        Arrays.fill(types, (byte) Cursor.FIELD_TYPE_NULL);
+        Arrays.fill(objects, null);
+        presentMask = 0;
+        assignedMask = 0;
+    }
+
+    public void putNull(int index) {
+        types[index] = (byte) Cursor.FIELD_TYPE_NULL;
+        objects[index] = null;
+        presentMask &= ~(1L << index);
+        assignedMask &= ~(1L << index);
+    }
+
+    public void putLong(int index, long value) {
+        types[index] = (byte) Cursor.FIELD_TYPE_INTEGER;
+        numbers[index] = value;
+        objects[index] = null;
+        present(index, true);
+    }
+
+    public void putDouble(int index, double value) {
+        types[index] = (byte) Cursor.FIELD_TYPE_FLOAT;
+        numbers[index] = Double.doubleToRawLongBits(value);
+        objects[index] = null;
+        present(index, true);
+    }
+
+    //空字符串与null一样视为没有赋值
+    public void putString(int index, String value) {
+        if(value == null || value.isEmpty()) {
+            putNull(index);
+            return;
+        }
+        types[index] = (byte) Cursor.FIELD_TYPE_STRING;
+        objects[index] = value;
+        present(index, true);
+    }
+
+    public void putBlob(int index, byte[] value) {
+        if(value == null) {
+            putNull(index);
+            return;
+        }
+        types[index] = (byte) Cursor.FIELD_TYPE_BLOB;
+        objects[index] = value;
+        present(index, true);
+    }
+
+    //int、long、boolean(1/0)成员变量，0视为没有赋值
+    public void putPrimitive(int index, long value) {
+        putLong(index, value);
+        present(index, value != 0);
+    }
+
+    //double成员变量，0视为没有赋值
+    public void putPrimitive(int index, double value) {
+        putDouble(index, value);
+        present(index, value != 0);
+    }
+
+    /**
+     * 按运行时的类型放入，findById等参数类型不确定的地方使用
+     * 枚举按name()、Date按毫秒数，与EnumConverter、DateConverter一致
+     */
+    public void putObject(int index, Object value) {
+        value = toBindArg(value);
+        if(value == null) {
+            putNull(index);
+        } else if(value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            putLong(index, ((Number) value).longValue());
+        } else if(value instanceof Double || value instanceof Float) {
+            putDouble(index, ((Number) value).doubleValue());
+        } else if(value instanceof Boolean) {
+            putLong(index, (Boolean) value ? 1 : 0);
+        } else if(value instanceof byte[]) {
+            putBlob(index, (byte[]) value);
+        } else {
+            putString(index, value.toString());
+        }
+    }
+
+    private void present(int index, boolean assigned) {
+        presentMask |= 1L << index;
+        if(assigned) {
+            assignedMask |= 1L << index;
+        } else {
+            assignedMask &= ~(1L << index);
+        }
+    }
+
+    public int getType(int index) {
+        return types[index];
+    }
+
+    public long getLong(int index) {
+        return numbers[index];
+    }
+
+    public double getDouble(int index) {
+        return Double.longBitsToDouble(numbers[index]);
+    }
+
+    //FIELD_TYPE_STRING时为String，FIELD_TYPE_BLOB时为byte[]
+    public Object getObject(int index) {
+        return objects[index];
+    }
+
+    //装箱后的值，只在生成查询参数、缓存的键时使用
+    public Object get(int index) {
+        switch (types[index]) {
+            case Cursor.FIELD_TYPE_INTEGER:
+                return numbers[index];
+            case Cursor.FIELD_TYPE_FLOAT:
+                return getDouble(index);
+            default:
+                return objects[index];
+        }
+    }
+
+    public boolean isAssigned(int index) {
+        return (assignedMask & (1L << index)) != 0;
+    }
+
+    //不为null的列对应的位为1
+    public long getPresentMask() {
+        return presentMask;
+    }
+
+    //赋了值的列对应的位为1，按实体查询、更新时只用这些列
+    public long getAssignedMask() {
+        return assignedMask;
+    }
+
+    /**
+     * 按列的顺序绑定mask中的列，没有值的列绑定null
+     * @return 下一个参数的位置
+     */
+    public int bind(Statement statement, int index, long mask) {
+        for (int i = 0; i < types.length; i++) {
+            if((mask & (1L << i)) == 0) {
+                continue;
+            }
+            switch (types[i]) {
+                case Cursor.FIELD_TYPE_INTEGER:
+                    statement.bindLong(index++, numbers[i]);
+                    break;
+                case Cursor.FIELD_TYPE_FLOAT:
+                    statement.bindDouble(index++, getDouble(i));
+                    break;
+                case Cursor.FIELD_TYPE_STRING:
+                    statement.bindString(index++, (String) objects[i]);
+                    break;
+                case Cursor.FIELD_TYPE_BLOB:
+                    statement.bindBlob(index++, (byte[]) objects[i]);
+                    break;
+                default:
+                    statement.bindNull(index++);
+                    break;
+            }
+        }
+        return index;
+    }
+
+    //mask中的列按顺序排列的查询参数
+    public Object[] toArgs(long mask) {
+        Object[] args = new Object[Long.bitCount(mask)];
+        int index = 0;
+        for (int i = 0; i < types.length; i++) {
+            if((mask & (1L << i)) != 0) {
+                args[index++] = get(i);
+            }
+        }
+        return args;
+    }
+
+    /**
+     * Criteria等传入的参数：枚举转换为name()，Date转换为毫秒数，其它的原样返回，由存储层按类型绑定
+     */
+    static Object toBindArg(Object value) {
+        if(value instanceof Enum) {
+            return ((Enum<?>) value).name();
+        } else if(value instanceof Date) {
+            return ((Date) value).getTime();
+        }
+        return value;
+    }
+
+    static Object[] toBindArgs(Object[] values) {
+        Object[] args = new Object[values.length];
+        for (int i = 0; i < values.length; i++) {
+            args[i] = toBindArg(values[i]);
+        }
+        return args;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < types.length; i++) {
+            Object value = get(i);
+            sb.append(i == 0 ? "" : ", ")
+                    .append(value instanceof byte[] ? "byte[" + ((byte[]) value).length + "]" : value);
+        }
+        return sb.append("]").toString();
+    }
+}
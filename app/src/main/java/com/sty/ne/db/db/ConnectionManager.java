@@ -0,0 +1,246 @@
+package com.sty.ne.db.db;
+
+import android.util.Log;
+
+import com.sty.ne.db.storage.Database;
+import com.sty.ne.db.storage.Storage;
+import com.sty.ne.db.storage.StorageException;
+import com.sty.ne.db.storage.Storages;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 一个数据库文件的连接管理：一个写连接 + 若干只读连接
+ *
+ * 打开WAL（write-ahead logging）之后读和写互不阻塞，读连接只能看到已经提交的数据，
+ * 所以长时间的查询（比如扫描所有照片）不会挡住登录这样的写操作
+ * 读连接按需打开，最多maxReaders个，都在用时等待归还，等待的时间记录在统计中，用来调整连接数
+ * WAL打开失败（比如内存数据库）或者maxReaders为0时所有操作都走写连接
+ * @Author: tian
+ * @UpdateDate: 2020/12/3 8:30 PM
+ */
+public class ConnectionManager {
+    private static final String TAG = ConnectionManager.class.getSimpleName();
+    public static final int DEFAULT_MAX_READERS = 2;
+    //等待读连接时每隔一段时间检查一次能不能新开连接
+    private static final long WAIT_SLICE_MS = 50;
+
+    private final Storage storage;
+    private final String path;
+    private final Database writer;
+    private final boolean walEnabled;
+    private final LinkedBlockingQueue<Database> idleReaders = new LinkedBlockingQueue<>();
+    private int maxReaders;
+    //已经打开的读连接，包括正在使用的
+    private int openReaders;
+    private boolean closed;
+
+    //统计
+    private final AtomicLong acquireCount = new AtomicLong();
+    private final AtomicLong waitCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    public ConnectionManager(String path, int maxReaders) {
+        this(Storages.getDefault(), path, maxReaders);
+    }
+
+    public ConnectionManager(Storage storage, String path, int maxReaders) {
+        if(maxReaders < 0) {
+            throw new IllegalArgumentException("maxReaders < 0");
+        }
+        this.storage = storage;
+        this.path = path;
+        this.writer = storage.open(path, false);
+        this.walEnabled = writer.enableWriteAheadLogging();
+        if(!walEnabled) {
+            Log.e(TAG, "enable write-ahead logging failed, all queries use the writer: " + path);
+        }
+        this.maxReaders = maxReaders;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    //所有的写操作和事务都在这个连接上
+    public Database getWriter() {
+        return writer;
+    }
+
+    public boolean isWalEnabled() {
+        return walEnabled;
+    }
+
+    /**
+     * 取出一个读连接，用完之后必须调用releaseReader归还
+     * 没有可用的读连接时返回写连接（归还时会被忽略）
+     */
+    public Database acquireReader() {
+        if(!walEnabled) {
+            return writer;
+        }
+        acquireCount.incrementAndGet();
+        Database reader = idleReaders.poll();
+        if(reader == null) {
+            reader = openReader();
+        }
+        if(reader != null) {
+            return reader;
+        }
+        if(getMaxReaders() == 0) {
+            return writer;
+        }
+        long start = System.nanoTime();
+        try {
+            while (reader == null) {
+                reader = idleReaders.poll(WAIT_SLICE_MS, TimeUnit.MILLISECONDS);
+                if(reader == null) {
+                    //等待期间可能调大了maxReaders或者关闭了一个读连接
+                    reader = openReader();
+                }
+                if(reader == null && isClosed()) {
+                    return writer;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return writer;
+        } finally {
+            recordWait(System.nanoTime() - start);
+        }
+        return reader;
+    }
+
+    public void releaseReader(Database reader) {
+        if(reader == null || reader == writer) {
+            return;
+        }
+        boolean close;
+        synchronized (this) {
+            //连接数调小了或者已经关闭，多出来的连接直接关掉
+            close = closed || openReaders > maxReaders;
+            if(close) {
+                openReaders--;
+            }
+        }
+        if(close) {
+            reader.close();
+        } else {
+            idleReaders.offer(reader);
+        }
+    }
+
+    //还没有达到maxReaders时打开一个新的读连接，否则返回null
+    private Database openReader() {
+        synchronized (this) {
+            if(closed || openReaders >= maxReaders) {
+                return null;
+            }
+            openReaders++;
+        }
+        try {
+            return storage.open(path, true);
+        } catch (StorageException e) {
+            Log.e(TAG, "open reader failed: " + path, e);
+            synchronized (this) {
+                openReaders--;
+            }
+            return null;
+        }
+    }
+
+    private void recordWait(long nanos) {
+        waitCount.incrementAndGet();
+        totalWaitNanos.addAndGet(nanos);
+        long max = maxWaitNanos.get();
+        while (nanos > max && !maxWaitNanos.compareAndSet(max, nanos)) {
+            max = maxWaitNanos.get();
+        }
+    }
+
+    /**
+     * 调整读连接的上限，调小时多出来的连接在归还时关闭
+     */
+    public void setMaxReaders(int maxReaders) {
+        if(maxReaders < 0) {
+            throw new IllegalArgumentException("maxReaders < 0");
+        }
+        synchronized (this) {
+            this.maxReaders = maxReaders;
+        }
+        Database reader;
+        while (getOpenReaders() > maxReaders && (reader = idleReaders.poll()) != null) {
+            synchronized (this) {
+                openReaders--;
+            }
+            reader.close();
+        }
+    }
+
+    public synchronized int getMaxReaders() {
+        return maxReaders;
+    }
+
+    public synchronized int getOpenReaders() {
+        return openReaders;
+    }
+
+    public int getIdleReaders() {
+        return idleReaders.size();
+    }
+
+    private synchronized boolean isClosed() {
+        return closed;
+    }
+
+    //关闭所有连接，正在使用的读连接在归还时关闭
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        Database reader;
+        while ((reader = idleReaders.poll()) != null) {
+            synchronized (this) {
+                openReaders--;
+            }
+            reader.close();
+        }
+        writer.close();
+    }
+
+    //获取读连接的次数
+    public long getAcquireCount() {
+        return acquireCount.get();
+    }
+
+    //需要等待的次数
+    public long getWaitCount() {
+        return waitCount.get();
+    }
+
+    public long getTotalWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.get());
+    }
+
+    public long getMaxWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get());
+    }
+
+    //平均每次获取读连接等待的时间（包括不需要等待的）
+    public double getAverageWaitMillis() {
+        long count = acquireCount.get();
+        return count != 0 ? totalWaitNanos.get() / 1e6 / count : 0;
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionManager[wal=" + walEnabled + ",maxReaders=" + getMaxReaders()
+                + ",openReaders=" + getOpenReaders() + ",idleReaders=" + getIdleReaders()
+                + ",acquires=" + getAcquireCount() + ",waits=" + getWaitCount()
+                + ",avgWaitMs=" + String.format("%.3f", getAverageWaitMillis())
+                + ",maxWaitMs=" + getMaxWaitMillis() + "]";
+    }
+}
@@ -0,0 +1,225 @@
+package com.sty.ne.db.db;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 查询条件构造器，所有的值都以参数绑定，过滤在SQLite中完成，可以用上索引
+ *
+ * Criteria.where("time").between("2020-11-01", "2020-11-30")
+ *         .and("path").like("%.jpg")
+ *         .and(Criteria.where("u_id").in(1, 2, 3).or("status").isNull())
+ * --> time between ? and ? and path like ? and (u_id in (?,?,?) or status is null)
+ *
+ * and/or按SQL的优先级结合（and先于or），需要改变结合顺序时用and(Criteria)/or(Criteria)加括号
+ * 列名会在BaseDao中与实体映射的列校验
+ * @Author: tian
+ * @UpdateDate: 2020/11/30 8:40 PM
+ */
+public class Criteria {
+    private final StringBuilder clause = new StringBuilder();
+    private final ArrayList<Object> args = new ArrayList<>();
+    private final ArrayList<String> columns = new ArrayList<>();
+    //where/and/or指定了列，还没有指定运算符
+    private String pendingColumn;
+    private String pendingConnector;
+
+    private Criteria() {
+    }
+
+    public static Criteria where(String column) {
+        Criteria criteria = new Criteria();
+        criteria.pendingColumn = checkColumn(column);
+        return criteria;
+    }
+
+    //没有条件，匹配所有行
+    public static Criteria all() {
+        return new Criteria();
+    }
+
+    public Criteria and(String column) {
+        return next(" and ", column);
+    }
+
+    public Criteria or(String column) {
+        return next(" or ", column);
+    }
+
+    //and (group)
+    public Criteria and(Criteria group) {
+        return appendGroup(" and ", group);
+    }
+
+    //or (group)
+    public Criteria or(Criteria group) {
+        return appendGroup(" or ", group);
+    }
+
+    public Criteria eq(Object value) {
+        return compare(" = ?", value);
+    }
+
+    public Criteria ne(Object value) {
+        return compare(" <> ?", value);
+    }
+
+    public Criteria gt(Object value) {
+        return compare(" > ?", value);
+    }
+
+    public Criteria ge(Object value) {
+        return compare(" >= ?", value);
+    }
+
+    public Criteria lt(Object value) {
+        return compare(" < ?", value);
+    }
+
+    public Criteria le(Object value) {
+        return compare(" <= ?", value);
+    }
+
+    public Criteria like(String pattern) {
+        return compare(" like ?", pattern);
+    }
+
+    public Criteria notLike(String pattern) {
+        return compare(" not like ?", pattern);
+    }
+
+    public Criteria between(Object from, Object to) {
+        checkValue(from);
+        checkValue(to);
+        return append(" between ? and ?", Arrays.asList(from, to));
+    }
+
+    public Criteria in(Object... values) {
+        return in(Arrays.asList(values));
+    }
+
+    public Criteria in(Collection<?> values) {
+        return inList(" in (", values);
+    }
+
+    public Criteria notIn(Object... values) {
+        return notIn(Arrays.asList(values));
+    }
+
+    public Criteria notIn(Collection<?> values) {
+        return inList(" not in (", values);
+    }
+
+    public Criteria isNull() {
+        return append(" is null", Collections.emptyList());
+    }
+
+    public Criteria isNotNull() {
+        return append(" is not null", Collections.emptyList());
+    }
+
+    //where后面的部分，没有条件时为1=1
+    public String getWhereClause() {
+        checkComplete();
+        return clause.length() == 0 ? "1=1" : clause.toString();
+    }
+
+    //按?的顺序排列的参数
+    public Object[] getArgs() {
+        checkComplete();
+        return args.toArray();
+    }
+
+    //条件中用到的所有列
+    public List<String> getColumns() {
+        return Collections.unmodifiableList(columns);
+    }
+
+    @Override
+    public String toString() {
+        return getWhereClause() + " " + args;
+    }
+
+    private Criteria next(String connector, String column) {
+        checkComplete();
+        if(clause.length() == 0) {
+            throw new IllegalStateException("use where(column) for the first condition");
+        }
+        pendingConnector = connector;
+        pendingColumn = checkColumn(column);
+        return this;
+    }
+
+    private Criteria appendGroup(String connector, Criteria group) {
+        checkComplete();
+        if(group == this) {
+            throw new IllegalArgumentException("group == this");
+        }
+        if(group.clause.length() == 0) {
+            return this;
+        }
+        if(clause.length() > 0) {
+            clause.append(connector);
+        }
+        clause.append("(").append(group.getWhereClause()).append(")");
+        args.addAll(group.args);
+        columns.addAll(group.columns);
+        return this;
+    }
+
+    private Criteria compare(String operator, Object value) {
+        checkValue(value);
+        return append(operator, Collections.singletonList(value));
+    }
+
+    private Criteria inList(String operator, Collection<?> values) {
+        if(values == null || values.isEmpty()) {
+            throw new IllegalArgumentException("values is empty");
+        }
+        StringBuilder sb = new StringBuilder(operator);
+        for (Object value : values) {
+            checkValue(value);
+            sb.append(sb.length() == operator.length() ? "?" : ",?");
+        }
+        sb.append(")");
+        return append(sb.toString(), values);
+    }
+
+    private Criteria append(String expression, Collection<?> values) {
+        if(pendingColumn == null) {
+            throw new IllegalStateException("call where/and/or before an operator");
+        }
+        if(clause.length() > 0) {
+            clause.append(pendingConnector);
+        }
+        clause.append(pendingColumn).append(expression);
+        args.addAll(values);
+        columns.add(pendingColumn);
+        pendingColumn = null;
+        pendingConnector = null;
+        return this;
+    }
+
+    private void checkComplete() {
+        if(pendingColumn != null) {
+            throw new IllegalStateException("missing operator after " + pendingColumn);
+        }
+    }
+
+    private static String checkColumn(String column) {
+        if(column == null || column.isEmpty()) {
+            throw new IllegalArgumentException("column is empty");
+        }
+        return column;
+    }
+
+    private static void checkValue(Object value) {
+        if(value == null) {
+            //null不能用=比较
+            throw new IllegalArgumentException("value is null, use isNull()/isNotNull()");
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.sty.ne.db.db;
+
+/**
+ * 异步操作的结果回调，见DaoFuture.addCallback
+ * @Author: tian
+ * @UpdateDate: 2020/12/4 8:20 PM
+ */
+public interface DaoCallback<V> {
+
+    void onSuccess(V result);
+
+    /**
+     * @param error 操作抛出的异常；被取消时为CancellationException
+     */
+    void onFailure(Throwable error);
+}
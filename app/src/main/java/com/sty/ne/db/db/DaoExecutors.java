@@ -0,0 +1,101 @@
+package com.sty.ne.db.db;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 数据库操作的线程：
+ * 写操作在同一个线程上按提交的顺序执行（只有一个写连接，多线程写也只能排队）
+ * 读操作在固定大小的线程池上并行执行，线程数与读连接数相同
+ * @Author: tian
+ * @UpdateDate: 2020/12/4 8:35 PM
+ */
+public class DaoExecutors {
+    private final ThreadPoolExecutor writeExecutor;
+    private final ThreadPoolExecutor readExecutor;
+    private static volatile Executor mainThread;
+
+    private static class LazyHolder {
+        private static DaoExecutors instance = new DaoExecutors(ConnectionManager.DEFAULT_MAX_READERS);
+    }
+
+    public DaoExecutors(int readThreads) {
+        if(readThreads <= 0) {
+            throw new IllegalArgumentException("readThreads <= 0");
+        }
+        writeExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), new NamedThreadFactory("db-writer"));
+        readExecutor = new ThreadPoolExecutor(readThreads, readThreads, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new NamedThreadFactory("db-reader"));
+        readExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    //BaseDaoFactory的数据库共用的线程
+    public static DaoExecutors getDefault() {
+        return LazyHolder.instance;
+    }
+
+    //在主线程上执行，用来在回调中更新界面
+    public static Executor mainThread() {
+        if(mainThread == null) {
+            final Handler handler = new Handler(Looper.getMainLooper());
+            mainThread = new Executor() {
+                @Override
+                public void execute(Runnable command) {
+                    handler.post(command);
+                }
+            };
+        }
+        return mainThread;
+    }
+
+    //在写线程上按顺序执行，比如一组需要在同一个事务中完成的操作
+    public <V> DaoFuture<V> submitWrite(Callable<V> callable) {
+        DaoFuture<V> future = new DaoFuture<>(callable);
+        writeExecutor.execute(future);
+        return future;
+    }
+
+    public <V> DaoFuture<V> submitRead(Callable<V> callable) {
+        DaoFuture<V> future = new DaoFuture<>(callable);
+        readExecutor.execute(future);
+        return future;
+    }
+
+    //等待队列中的写操作
+    public int getPendingWrites() {
+        return writeExecutor.getQueue().size();
+    }
+
+    public int getPendingReads() {
+        return readExecutor.getQueue().size();
+    }
+
+    //不再接受新的操作，已经提交的会执行完
+    public void shutdown() {
+        writeExecutor.shutdown();
+        readExecutor.shutdown();
+    }
+
+    private static class NamedThreadFactory implements ThreadFactory {
+        private final String name;
+        private final AtomicInteger count = new AtomicInteger();
+
+        NamedThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            return new Thread(r, name + "-" + count.incrementAndGet());
+        }
+    }
+}
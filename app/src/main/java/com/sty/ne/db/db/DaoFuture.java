@@ -0,0 +1,82 @@
+package com.sty.ne.db.db;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+/**
+ * 异步DAO操作的结果
+ * minSdk 21用不了CompletableFuture（API 24），在FutureTask上加了完成回调：
+ * 可以get()阻塞等待，也可以addCallback在指定的线程上收到结果或异常
+ *
+ * cancel()在操作开始之前调用时操作不会执行；已经开始的SQL不会被中断，结果被丢弃
+ * @Author: tian
+ * @UpdateDate: 2020/12/4 8:25 PM
+ */
+public class DaoFuture<V> extends FutureTask<V> {
+    private List<Runnable> listeners = new ArrayList<>();
+
+    public DaoFuture(Callable<V> callable) {
+        super(callable);
+    }
+
+    /**
+     * 完成（成功、失败或取消）时在executor上回调，已经完成时立即回调
+     */
+    public DaoFuture<V> addCallback(final DaoCallback<? super V> callback, final Executor executor) {
+        Runnable listener = new Runnable() {
+            @Override
+            public void run() {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        deliver(callback);
+                    }
+                });
+            }
+        };
+        synchronized (this) {
+            if(listeners != null) {
+                listeners.add(listener);
+                return this;
+            }
+        }
+        listener.run();
+        return this;
+    }
+
+    private void deliver(DaoCallback<? super V> callback) {
+        V result;
+        try {
+            result = get();
+        } catch (CancellationException e) {
+            callback.onFailure(e);
+            return;
+        } catch (ExecutionException e) {
+            callback.onFailure(e.getCause());
+            return;
+        } catch (InterruptedException e) {
+            //已经完成，get()不会阻塞
+            Thread.currentThread().interrupt();
+            callback.onFailure(e);
+            return;
+        }
+        callback.onSuccess(result);
+    }
+
+    @Override
+    protected void done() {
+        List<Runnable> toRun;
+        synchronized (this) {
+            toRun = listeners;
+            listeners = null;
+        }
+        for (Runnable listener : toRun) {
+            listener.run();
+        }
+    }
+}
@@ -0,0 +1,435 @@
+package com.sty.ne.db.db;
+
+import android.util.Log;
+
+import com.sty.ne.db.storage.Cursor;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * BaseDao操作的统计：按表和SQL的形状（参数都是?）汇总延迟分布、读写的行数、
+ * 花在SQLite中和花在实体映射上的时间、CursorWindow填充的次数
+ *
+ * 每次操作结束时回调所有的Listener，超过慢查询阈值的操作打印到日志并保留最近的SLOW_LOG_SIZE条
+ * 嵌套的操作（比如upsert中的insert）各自记录一次
+ * DaoMetrics.getInstance().setSlowThresholdMillis(50);
+ * DaoMetrics.getInstance().addListener(listener);
+ * @Author: tian
+ * @UpdateDate: 2020/12/12 8:30 PM
+ */
+public class DaoMetrics {
+    private static final String TAG = DaoMetrics.class.getSimpleName();
+    public static final long DEFAULT_SLOW_THRESHOLD_MILLIS = 100;
+    private static final int SLOW_LOG_SIZE = 32;
+
+    public static final String INSERT = "insert";
+    public static final String UPDATE = "update";
+    public static final String DELETE = "delete";
+    public static final String UPSERT = "upsert";
+    public static final String QUERY = "query";
+    public static final String COUNT = "count";
+    public static final String PAGE = "page";
+    public static final String INSERT_ALL = "insertAll";
+    public static final String UPDATE_ALL = "updateAll";
+    public static final String DELETE_ALL = "deleteAll";
+
+    private static class LazyHolder {
+        private static DaoMetrics instance = new DaoMetrics();
+    }
+
+    /**
+     * 在执行操作的线程上回调，不要做耗时的事情
+     */
+    public interface Listener {
+        void onOperation(Event event);
+    }
+
+    //关闭统计时所有操作共用，不记录任何东西；查询缓存命中时解析缓存的行也用它
+    static final Event DISABLED = new Event(null, null, false);
+
+    private volatile boolean enabled = true;
+    private volatile long slowThresholdNanos = DEFAULT_SLOW_THRESHOLD_MILLIS * 1000000;
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    //key:表名 + 形状
+    private final ConcurrentHashMap<String, Stats> stats = new ConcurrentHashMap<>();
+    private final ArrayDeque<Event> slowLog = new ArrayDeque<>();
+
+    public static DaoMetrics getInstance() {
+        return LazyHolder.instance;
+    }
+
+    //关闭之后BaseDao不再计时，也不回调Listener
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param millis 小于0时不记录慢查询
+     */
+    public void setSlowThresholdMillis(long millis) {
+        slowThresholdNanos = millis < 0 ? Long.MAX_VALUE : millis * 1000000;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * 开始一次操作，没有开启统计时返回的Event什么都不记录
+     */
+    Event begin(String tableName, String operation) {
+        return enabled ? new Event(tableName, operation, true) : DISABLED;
+    }
+
+    //操作结束（包括失败），sql为这次操作的形状
+    void end(Event event, String sql) {
+        if(!event.recording) {
+            return;
+        }
+        event.sql = sql;
+        event.totalNanos = System.nanoTime() - event.startNanos;
+        String key = event.tableName + '\n' + sql;
+        Stats stat = stats.get(key);
+        if(stat == null) {
+            Stats created = new Stats(event.tableName, event.operation, sql);
+            stat = stats.putIfAbsent(key, created);
+            if(stat == null) {
+                stat = created;
+            }
+        }
+        stat.add(event);
+        if(event.totalNanos >= slowThresholdNanos) {
+            Log.w(TAG, "slow " + event);
+            synchronized (slowLog) {
+                if(slowLog.size() == SLOW_LOG_SIZE) {
+                    slowLog.removeFirst();
+                }
+                slowLog.addLast(event);
+            }
+        }
+        for (Listener listener : listeners) {
+            listener.onOperation(event);
+        }
+    }
+
+    //所有形状的统计，按总耗时从高到低排列
+    public List<Stats> getStats() {
+        List<Stats> list = new ArrayList<>(stats.values());
+        Collections.sort(list, new Comparator<Stats>() {
+            @Override
+            public int compare(Stats a, Stats b) {
+                long x = a.getTotalNanos();
+                long y = b.getTotalNanos();
+                return x > y ? -1 : (x == y ? 0 : 1);
+            }
+        });
+        return list;
+    }
+
+    //最近的慢操作，最早的在前面
+    public List<Event> getSlowOperations() {
+        synchronized (slowLog) {
+            return new ArrayList<>(slowLog);
+        }
+    }
+
+    public void reset() {
+        stats.clear();
+        synchronized (slowLog) {
+            slowLog.clear();
+        }
+    }
+
+    /**
+     * 一次操作，BaseDao在执行过程中填写
+     */
+    public static class Event {
+        private final String tableName;
+        private final String operation;
+        private final boolean recording;
+        private final long startNanos;
+        //上一次markSqlite/markMapping的时间
+        private long markNanos;
+        //上一次看到的CursorWindow的起始行，变化说明游标重新填充了一次
+        private int windowStart = -1;
+        private String sql;
+        private long totalNanos;
+        //执行SQL、移动游标（填充CursorWindow）的时间
+        private long sqliteNanos;
+        //实体和列值之间转换的时间
+        private long mappingNanos;
+        private int rowsRead;
+        private long rowsWritten;
+        private int windowFills;
+        private Throwable error;
+
+        Event(String tableName, String operation, boolean recording) {
+            this.tableName = tableName;
+            this.operation = operation;
+            this.recording = recording;
+            this.startNanos = recording ? System.nanoTime() : 0;
+            this.markNanos = startNanos;
+        }
+
+        boolean isRecording() {
+            return recording;
+        }
+
+        //从上一次标记到现在的时间算在SQLite上
+        void markSqlite() {
+            if(recording) {
+                long now = System.nanoTime();
+                sqliteNanos += now - markNanos;
+                markNanos = now;
+            }
+        }
+
+        //从上一次标记到现在的时间算在实体映射上
+        void markMapping() {
+            if(recording) {
+                long now = System.nanoTime();
+                mappingNanos += now - markNanos;
+                markNanos = now;
+            }
+        }
+
+        //游标移动到了新的一行
+        void readRow(Cursor cursor) {
+            if(!recording) {
+                return;
+            }
+            rowsRead++;
+            int start = cursor.getWindowStartPosition();
+            if(start != -1 && start != windowStart) {
+                windowStart = start;
+                windowFills++;
+            }
+        }
+
+        void addRowsRead(int rows) {
+            if(recording) {
+                rowsRead += rows;
+            }
+        }
+
+        void addRowsWritten(long rows) {
+            if(recording && rows > 0) {
+                rowsWritten += rows;
+            }
+        }
+
+        void fail(Throwable e) {
+            if(recording) {
+                error = e;
+            }
+        }
+
+        public String getTableName() {
+            return tableName;
+        }
+
+        public String getOperation() {
+            return operation;
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public long getSqliteNanos() {
+            return sqliteNanos;
+        }
+
+        public long getMappingNanos() {
+            return mappingNanos;
+        }
+
+        public int getRowsRead() {
+            return rowsRead;
+        }
+
+        public long getRowsWritten() {
+            return rowsWritten;
+        }
+
+        public int getWindowFills() {
+            return windowFills;
+        }
+
+        //失败时的异常，成功时为null
+        public Throwable getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return tableName + " " + operation + " " + totalNanos / 1000 + "us (sqlite " + sqliteNanos / 1000
+                    + "us, mapping " + mappingNanos / 1000 + "us) read=" + rowsRead + " written=" + rowsWritten
+                    + " windowFills=" + windowFills + (error != null ? " error=" + error : "") + ": " + sql;
+        }
+    }
+
+    /**
+     * 同一张表同一个形状的累计值，线程安全
+     */
+    public static class Stats {
+        private final String tableName;
+        private final String operation;
+        private final String sql;
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong sqliteNanos = new AtomicLong();
+        private final AtomicLong mappingNanos = new AtomicLong();
+        private final AtomicLong rowsRead = new AtomicLong();
+        private final AtomicLong rowsWritten = new AtomicLong();
+        private final AtomicLong windowFills = new AtomicLong();
+        private final LatencyHistogram histogram = new LatencyHistogram();
+
+        Stats(String tableName, String operation, String sql) {
+            this.tableName = tableName;
+            this.operation = operation;
+            this.sql = sql;
+        }
+
+        void add(Event event) {
+            count.incrementAndGet();
+            if(event.error != null) {
+                errors.incrementAndGet();
+            }
+            totalNanos.addAndGet(event.totalNanos);
+            sqliteNanos.addAndGet(event.sqliteNanos);
+            mappingNanos.addAndGet(event.mappingNanos);
+            rowsRead.addAndGet(event.rowsRead);
+            rowsWritten.addAndGet(event.rowsWritten);
+            windowFills.addAndGet(event.windowFills);
+            histogram.add(event.totalNanos);
+        }
+
+        public String getTableName() {
+            return tableName;
+        }
+
+        public String getOperation() {
+            return operation;
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        public long getErrors() {
+            return errors.get();
+        }
+
+        public long getTotalNanos() {
+            return totalNanos.get();
+        }
+
+        public long getSqliteNanos() {
+            return sqliteNanos.get();
+        }
+
+        public long getMappingNanos() {
+            return mappingNanos.get();
+        }
+
+        public long getRowsRead() {
+            return rowsRead.get();
+        }
+
+        public long getRowsWritten() {
+            return rowsWritten.get();
+        }
+
+        public long getWindowFills() {
+            return windowFills.get();
+        }
+
+        public LatencyHistogram getHistogram() {
+            return histogram;
+        }
+
+        @Override
+        public String toString() {
+            return tableName + " " + operation + " count=" + getCount() + " errors=" + getErrors()
+                    + " total=" + getTotalNanos() / 1000000 + "ms sqlite=" + getSqliteNanos() / 1000000
+                    + "ms mapping=" + getMappingNanos() / 1000000 + "ms read=" + getRowsRead()
+                    + " written=" + getRowsWritten() + " windowFills=" + getWindowFills()
+                    + " " + histogram + ": " + sql;
+        }
+    }
+
+    /**
+     * 按2的幂分桶的延迟分布，第i个桶是[2^i, 2^(i+1))微秒，最后一个桶包括更慢的
+     */
+    public static class LatencyHistogram {
+        public static final int BUCKETS = 24;
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+        void add(long nanos) {
+            long micros = nanos / 1000;
+            int bucket = micros <= 0 ? 0 : 63 - Long.numberOfLeadingZeros(micros);
+            counts.incrementAndGet(Math.min(bucket, BUCKETS - 1));
+        }
+
+        public long getCount(int bucket) {
+            return counts.get(bucket);
+        }
+
+        /**
+         * 百分位延迟的上界（所在桶的上限）
+         * @param percentile 0~100
+         */
+        public long getPercentileMicros(double percentile) {
+            long total = 0;
+            long[] snapshot = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                snapshot[i] = counts.get(i);
+                total += snapshot[i];
+            }
+            if(total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(total * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += snapshot[i];
+                if(seen >= rank && snapshot[i] > 0) {
+                    return 1L << (i + 1);
+                }
+            }
+            return 1L << BUCKETS;
+        }
+
+        @Override
+        public String toString() {
+            return "p50<" + getPercentileMicros(50) + "us p95<" + getPercentileMicros(95)
+                    + "us p99<" + getPercentileMicros(99) + "us";
+        }
+    }
+}
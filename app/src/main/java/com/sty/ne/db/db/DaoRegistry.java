@@ -0,0 +1,126 @@
+package com.sty.ne.db.db;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * DAO的注册表，按(数据库, DAO类, 实体类)缓存，同一个键只创建、init一次
+ *
+ * 已经创建的DAO查找时不加锁（ConcurrentHashMap.get + volatile读）；
+ * 第一次创建时只锁住这个键，不同的键可以同时创建
+ * @Author: tian
+ * @UpdateDate: 2020/12/19 9:30 PM
+ */
+public class DaoRegistry {
+    private final ConcurrentHashMap<Key, Holder> daos = new ConcurrentHashMap<>();
+
+    /**
+     * 创建DAO之后的初始化，比如 dao.init(connectionManager, entityClass)
+     */
+    public interface DaoInitializer {
+        //返回false表示初始化失败（比如数据库已经关闭），下次获取时会重新创建
+        <M> boolean init(BaseDao<M> dao, Class<M> entityClass);
+    }
+
+    /**
+     * @param database 数据库的标识，一般是数据库文件的路径
+     * @throws IllegalStateException DAO创建或者初始化失败
+     */
+    public <T extends BaseDao<M>, M> T get(String database, Class<T> daoClass, Class<M> entityClass,
+                                          DaoInitializer initializer) {
+        Key key = new Key(database, daoClass, entityClass);
+        Holder holder = daos.get(key);
+        if(holder != null) {
+            BaseDao<?> dao = holder.dao;
+            if(dao != null) {
+                return daoClass.cast(dao);
+            }
+        } else {
+            Holder created = new Holder();
+            holder = daos.putIfAbsent(key, created);
+            if(holder == null) {
+                holder = created;
+            }
+        }
+        synchronized (holder) {
+            if(holder.dao == null) {
+                holder.dao = create(daoClass, entityClass, initializer);
+            }
+            return daoClass.cast(holder.dao);
+        }
+    }
+
+    private <T extends BaseDao<M>, M> T create(Class<T> daoClass, Class<M> entityClass,
+                                               DaoInitializer initializer) {
+        T dao;
+        try {
+            dao = daoClass.newInstance();
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(daoClass.getName() + " 需要一个public的无参构造函数", e);
+        } catch (InstantiationException e) {
+            throw new IllegalStateException(daoClass.getName() + " 需要一个public的无参构造函数", e);
+        }
+        if(!initializer.init(dao, entityClass)) {
+            throw new IllegalStateException("init " + daoClass.getName() + " for " + entityClass.getName() + " failed");
+        }
+        return dao;
+    }
+
+    //是否已经创建过这个DAO
+    public boolean contains(String database, Class<?> daoClass, Class<?> entityClass) {
+        Holder holder = daos.get(new Key(database, daoClass, entityClass));
+        return holder != null && holder.dao != null;
+    }
+
+    //移除一个DAO，下次获取时重新创建
+    public void remove(String database, Class<?> daoClass, Class<?> entityClass) {
+        daos.remove(new Key(database, daoClass, entityClass));
+    }
+
+    //数据库关闭之后移除它的所有DAO
+    public void removeDatabase(String database) {
+        for (Key key : daos.keySet()) {
+            if(key.database.equals(database)) {
+                daos.remove(key);
+            }
+        }
+    }
+
+    public int size() {
+        return daos.size();
+    }
+
+    private static class Holder {
+        private volatile BaseDao<?> dao;
+    }
+
+    private static class Key {
+        private final String database;
+        private final Class<?> daoClass;
+        private final Class<?> entityClass;
+        private final int hashCode;
+
+        Key(String database, Class<?> daoClass, Class<?> entityClass) {
+            this.database = database;
+            this.daoClass = daoClass;
+            this.entityClass = entityClass;
+            this.hashCode = 31 * (31 * database.hashCode() + daoClass.hashCode()) + entityClass.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(this == o) {
+                return true;
+            }
+            if(!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return daoClass == key.daoClass && entityClass == key.entityClass && database.equals(key.database);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
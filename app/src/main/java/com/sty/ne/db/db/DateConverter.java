@@ -0,0 +1,28 @@
+package com.sty.ne.db.db;
+
+import com.sty.ne.db.storage.Cursor;
+
+import java.util.Date;
+
+/**
+ * java.util.Date按毫秒数存为BIGINT，可以直接比较和排序
+ * @Author: tian
+ * @UpdateDate: 2020/12/16 8:45 PM
+ */
+public class DateConverter implements TypeConverter<Date> {
+
+    @Override
+    public String getSqlType() {
+        return "BIGINT";
+    }
+
+    @Override
+    public void write(Date value, ColumnValues values, int index) {
+        values.putLong(index, value.getTime());
+    }
+
+    @Override
+    public Date read(Cursor cursor, int columnIndex) {
+        return new Date(cursor.getLong(columnIndex));
+    }
+}
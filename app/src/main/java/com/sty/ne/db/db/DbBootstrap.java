@@ -0,0 +1,158 @@
+package com.sty.ne.db.db;
+
+import android.util.Log;
+
+import com.sty.ne.db.storage.Database;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 启动时一次性初始化主库中所有的DAO，而不是在第一次使用时各自建表
+ *
+ * 所有的表在同一个事务中创建和检查，只提交一次；
+ * 表结构记录在SchemaMetadata中，之后的进程摘要一致就不再执行任何建表、探测列名的SQL
+ * 任何一张表失败时整个事务回滚，SchemaMetadata重新从数据库读出，这次创建的DAO也全部移除，
+ * 之后获取DAO时重新建表
+ * 每个阶段的耗时记录在Report中，用来监控冷启动
+ *
+ * DbBootstrap.Report report = new DbBootstrap()
+ *         .register(UserDao.class, User.class)
+ *         .run();
+ * @Author: tian
+ * @UpdateDate: 2020/12/19 9:30 PM
+ */
+public class DbBootstrap {
+    private static final String TAG = DbBootstrap.class.getSimpleName();
+
+    private final List<Registration<?, ?>> registrations = new ArrayList<>();
+    //为null时使用BaseDaoFactory.getInstance()
+    private final BaseDaoFactory factory;
+
+    public DbBootstrap() {
+        this(null);
+    }
+
+    DbBootstrap(BaseDaoFactory factory) {
+        this.factory = factory;
+    }
+
+    public <T extends BaseDao<M>, M> DbBootstrap register(Class<T> daoClass, Class<M> entityClass) {
+        registrations.add(new Registration<>(daoClass, entityClass));
+        return this;
+    }
+
+    /**
+     * 在调用的线程上执行，应该放在后台线程（比如DaoExecutors的写线程）
+     */
+    public Report run() {
+        Report report = new Report();
+        long start = System.nanoTime();
+        //第一次获取时打开数据库
+        BaseDaoFactory factory = this.factory != null ? this.factory : BaseDaoFactory.getInstance();
+        Database database = factory.getConnectionManager().getWriter();
+        report.addPhase("open", start);
+
+        long phaseStart = System.nanoTime();
+        SchemaMetadata metadata = SchemaMetadata.forDatabase(database);
+        report.addPhase("metadata", phaseStart);
+
+        phaseStart = System.nanoTime();
+        //这次创建的DAO，回滚时移除
+        List<Registration<?, ?>> created = new ArrayList<>();
+        boolean succeeded = false;
+        database.beginTransaction();
+        try {
+            for (Registration<?, ?> registration : registrations) {
+                long tableStart = System.nanoTime();
+                if(!factory.hasBaseDao(registration.daoClass, registration.entityClass)) {
+                    created.add(registration);
+                }
+                BaseDao<?> dao = registration.getBaseDao(factory);
+                report.addTable(dao.getTableName(), tableStart);
+            }
+            database.setTransactionSuccessful();
+            succeeded = true;
+        } finally {
+            report.addPhase("tables", phaseStart);
+            phaseStart = System.nanoTime();
+            database.endTransaction();
+            if(!succeeded) {
+                //表和记录都回滚了，内存中的记录和DAO不能再用
+                metadata.reload();
+                for (Registration<?, ?> registration : created) {
+                    factory.removeBaseDao(registration.daoClass, registration.entityClass);
+                }
+            }
+            report.addPhase("commit", phaseStart);
+        }
+        report.totalNanos = System.nanoTime() - start;
+        Log.i(TAG, report.toString());
+        return report;
+    }
+
+    //保留register时的类型参数，getBaseDao不需要强转
+    private static class Registration<T extends BaseDao<M>, M> {
+        private final Class<T> daoClass;
+        private final Class<M> entityClass;
+
+        Registration(Class<T> daoClass, Class<M> entityClass) {
+            this.daoClass = daoClass;
+            this.entityClass = entityClass;
+        }
+
+        T getBaseDao(BaseDaoFactory factory) {
+            return factory.getBaseDao(daoClass, entityClass);
+        }
+    }
+
+    //启动各阶段的耗时
+    public static class Report {
+        private final LinkedHashMap<String, Long> phaseNanos = new LinkedHashMap<>();
+        private final LinkedHashMap<String, Long> tableNanos = new LinkedHashMap<>();
+        private long totalNanos;
+
+        private void addPhase(String phase, long startNanos) {
+            phaseNanos.put(phase, System.nanoTime() - startNanos);
+        }
+
+        private void addTable(String tableName, long startNanos) {
+            tableNanos.put(tableName, System.nanoTime() - startNanos);
+        }
+
+        //阶段 --> 毫秒：open、metadata、tables、commit
+        public Map<String, Double> getPhaseMillis() {
+            return toMillis(phaseNanos);
+        }
+
+        //表名 --> 毫秒
+        public Map<String, Double> getTableMillis() {
+            return toMillis(tableNanos);
+        }
+
+        public double getTotalMillis() {
+            return totalNanos / 1e6;
+        }
+
+        private static Map<String, Double> toMillis(Map<String, Long> nanos) {
+            LinkedHashMap<String, Double> millis = new LinkedHashMap<>();
+            for (Map.Entry<String, Long> entry : nanos.entrySet()) {
+                millis.put(entry.getKey(), entry.getValue() / 1e6);
+            }
+            return millis;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("bootstrap ");
+            sb.append(String.format("%.2f", getTotalMillis())).append("ms");
+            for (Map.Entry<String, Double> entry : getPhaseMillis().entrySet()) {
+                sb.append(", ").append(entry.getKey()).append("=").append(String.format("%.2f", entry.getValue())).append("ms");
+            }
+            sb.append(", tables ").append(getTableMillis());
+            return sb.toString();
+        }
+    }
+}
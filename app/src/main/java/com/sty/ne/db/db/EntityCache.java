@@ -0,0 +1,113 @@
+package com.sty.ne.db.db;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 按主键缓存实体的LRU缓存（identity map），同一个主键在缓存中只有一个对象
+ * 缓存中的对象是共享的，调用者不要修改它们
+ *
+ * 线程安全。每次失效都会增加generation，读数据库之前记下generation，
+ * 写回缓存时如果期间发生过失效就放弃写回，避免把读到的旧数据放进缓存
+ * @Author: tian
+ * @UpdateDate: 2020/12/1 8:15 PM
+ */
+public class EntityCache<T> {
+    private final LinkedHashMap<String, T> entities;
+    private int maxSize;
+    private long generation;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    public EntityCache(int maxSize) {
+        if(maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+        this.maxSize = maxSize;
+        this.entities = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    public synchronized T get(String primaryKey) {
+        T entity = entities.get(primaryKey);
+        if(entity != null) {
+            hitCount++;
+        } else {
+            missCount++;
+        }
+        return entity;
+    }
+
+    //当前的generation，在读数据库之前获取
+    public synchronized long generation() {
+        return generation;
+    }
+
+    /**
+     * 读取期间没有发生过失效时才放入缓存
+     * @param generation 读数据库之前通过generation()获取的值
+     */
+    public synchronized void put(String primaryKey, T entity, long generation) {
+        if(this.generation != generation) {
+            return;
+        }
+        entities.put(primaryKey, entity);
+        trimToSize(maxSize);
+    }
+
+    public synchronized void remove(String primaryKey) {
+        generation++;
+        entities.remove(primaryKey);
+    }
+
+    public synchronized void clear() {
+        generation++;
+        entities.clear();
+    }
+
+    public synchronized void setMaxSize(int maxSize) {
+        if(maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+        this.maxSize = maxSize;
+        trimToSize(maxSize);
+    }
+
+    private void trimToSize(int size) {
+        Iterator<Map.Entry<String, T>> iterator = entities.entrySet().iterator();
+        while (entities.size() > size && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+            evictionCount++;
+        }
+    }
+
+    public synchronized int size() {
+        return entities.size();
+    }
+
+    public synchronized int maxSize() {
+        return maxSize;
+    }
+
+    public synchronized long hitCount() {
+        return hitCount;
+    }
+
+    public synchronized long missCount() {
+        return missCount;
+    }
+
+    public synchronized long evictionCount() {
+        return evictionCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        long accesses = hitCount + missCount;
+        int hitPercent = accesses != 0 ? (int) (100 * hitCount / accesses) : 0;
+        return "EntityCache[size=" + entities.size() + ",maxSize=" + maxSize + ",hits=" + hitCount
+                + ",misses=" + missCount + ",evictions=" + evictionCount + ",hitRate=" + hitPercent + "%]";
+    }
+}
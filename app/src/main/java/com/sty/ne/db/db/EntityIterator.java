@@ -0,0 +1,66 @@
+package com.sty.ne.db.db;
+
+import com.sty.ne.db.storage.Cursor;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * 基于游标的查询结果，遍历时才逐行解析，不会把整张表读进内存
+ * 遍历结束时自动关闭游标，提前退出时需要调用close()
+ * @Author: tian
+ * @UpdateDate: 2020/11/27 8:25 PM
+ */
+public class EntityIterator<T> implements Iterator<T>, Closeable {
+    private final Cursor cursor;
+    private final EntityMapper<T> mapper;
+    private final int[] columnIndexes;
+    //不为null时每一行都复用这个对象
+    private final T reusedEntity;
+    //游标是否已经移动到下一行（hasNext()的结果）
+    private boolean fetched;
+    private boolean hasNext;
+
+    EntityIterator(Cursor cursor, EntityMapper<T> mapper, int[] columnIndexes, boolean reuseEntity) {
+        this.cursor = cursor;
+        this.mapper = mapper;
+        this.columnIndexes = columnIndexes;
+        this.reusedEntity = reuseEntity ? mapper.newInstance() : null;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if(!fetched) {
+            hasNext = !cursor.isClosed() && cursor.moveToNext();
+            fetched = true;
+            if(!hasNext) {
+                close();
+            }
+        }
+        return hasNext;
+    }
+
+    @Override
+    public T next() {
+        if(!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        fetched = false;
+        T entity = reusedEntity != null ? reusedEntity : mapper.newInstance();
+        mapper.readCursor(cursor, columnIndexes, entity);
+        return entity;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("remove");
+    }
+
+    @Override
+    public void close() {
+        if(!cursor.isClosed()) {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.sty.ne.db.db;
+
+import com.sty.ne.db.storage.Cursor;
+
+/**
+ * 实体与数据表之间的映射器
+ * 编译期由注解处理器为每个@DbTable实体生成（类名为 实体类名 + "_Mapper"），
+ * 找不到生成类时由ReflectionEntityMapper通过反射实现
+ * @Author: tian
+ * @UpdateDate: 2020/11/25 9:10 PM
+ */
+public interface EntityMapper<T> {
+    //生成类名的后缀
+    String SUFFIX = "_Mapper";
+
+    String getTableName();
+
+    //create table if not exists ...
+    String getCreateTableSql();
+
+    //所有映射的列名，下面的数组参数和返回值都按这个顺序排列
+    String[] getColumnNames();
+
+    //@DbPrimaryKey列在getColumnNames()中的位置，没有声明主键时为-1
+    int getPrimaryKeyIndex();
+
+    //create [unique] index if not exists ...，没有索引时为空数组
+    String[] getCreateIndexSqls();
+
+    T newInstance();
+
+    /**
+     * 把游标当前行的数据读入entity
+     * @param columnIndexes 每一列在游标中的位置，-1表示游标中没有该列
+     */
+    void readCursor(Cursor cursor, int[] columnIndexes, T entity);
+
+    /**
+     * 把entity各列的值按类型放入values（大小为列数，已经clear），null的列调用putNull
+     */
+    void getValues(T entity, ColumnValues values);
+}
@@ -0,0 +1,49 @@
+package com.sty.ne.db.db;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 查找注解处理器生成的EntityMapper
+ * @Author: tian
+ * @UpdateDate: 2020/11/25 9:18 PM
+ */
+public final class EntityMappers {
+    //没有生成类时也缓存下来，避免每次都去Class.forName
+    private static final Object NONE = new Object();
+    private static final Map<Class<?>, Object> cache = new HashMap<>();
+
+    private EntityMappers() {
+    }
+
+    /**
+     * @return 生成的映射器，实体没有被注解处理器处理过时返回null
+     */
+    @SuppressWarnings("unchecked")
+    public static synchronized <T> EntityMapper<T> getGenerated(Class<T> entityClass) {
+        Object mapper = cache.get(entityClass);
+        if(mapper == null) {
+            mapper = loadGenerated(entityClass);
+            cache.put(entityClass, mapper);
+        }
+        return mapper == NONE ? null : (EntityMapper<T>) mapper;
+    }
+
+    //生成的类存在却无法实例化说明生成的代码有问题，直接抛出，不能悄悄退回反射
+    private static Object loadGenerated(Class<?> entityClass) {
+        String mapperName = entityClass.getName() + EntityMapper.SUFFIX;
+        try {
+            Class<?> mapperClass = Class.forName(mapperName, true, entityClass.getClassLoader());
+            if(EntityMapper.class.isAssignableFrom(mapperClass)) {
+                return mapperClass.newInstance();
+            }
+        } catch (ClassNotFoundException e) {
+            //没有生成，走反射
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(mapperName + " 无法实例化", e);
+        } catch (InstantiationException e) {
+            throw new IllegalStateException(mapperName + " 无法实例化", e);
+        }
+        return NONE;
+    }
+}
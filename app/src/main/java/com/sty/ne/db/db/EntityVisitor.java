@@ -0,0 +1,15 @@
+package com.sty.ne.db.db;
+
+/**
+ * 逐行访问查询结果
+ * @Author: tian
+ * @UpdateDate: 2020/11/27 8:20 PM
+ */
+public interface EntityVisitor<T> {
+
+    /**
+     * @param entity 当前行，forEach中每一行复用同一个对象，需要保留时请自行拷贝
+     * @return false表示不再继续访问后面的行
+     */
+    boolean visit(T entity);
+}
@@ -0,0 +1,36 @@
+package com.sty.ne.db.db;
+
+import com.sty.ne.db.storage.Cursor;
+
+/**
+ * 枚举按name()存为TEXT，调整枚举的顺序不影响已有的数据
+ * @Author: tian
+ * @UpdateDate: 2020/12/16 8:45 PM
+ */
+public class EnumConverter<E extends Enum<E>> implements TypeConverter<E> {
+    private final Class<E> enumClass;
+
+    public EnumConverter(Class<E> enumClass) {
+        this.enumClass = enumClass;
+    }
+
+    @Override
+    public String getSqlType() {
+        return "TEXT";
+    }
+
+    @Override
+    public void write(E value, ColumnValues values, int index) {
+        values.putString(index, value.name());
+    }
+
+    //旧版本写入的、已经删除的枚举值读出来为null
+    @Override
+    public E read(Cursor cursor, int columnIndex) {
+        try {
+            return Enum.valueOf(enumClass, cursor.getString(columnIndex));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.sty.ne.db.db;
 
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -10,10 +11,77 @@ public interface IBaseDao<T> {
 
     long insert(T entity);
 
+    /**
+     * 按条件批量更新：一条 update tableName set status=? where 1=1 and status =? 更新所有符合条件的行
+     * @param entity 非null的成员变量为要更新的列
+     * @param where 非null的成员变量为条件
+     */
     long update(T entity, T where);
 
     int delete(T where);
 
+    /**
+     * 按@DbPrimaryKey插入或更新：主键已存在时更新非null的列，否则插入
+     * 低版本的SQLite不支持insert ... on conflict do update，在同一个事务中先update，没有更新到再insert
+     * @return 写入的行数，失败时为-1，这时事务回滚；在外层事务中调用时整个外层事务都会回滚
+     */
+    long upsert(T entity);
+
+    /**
+     * 按@DbPrimaryKey查询一行，开启实体缓存时优先从缓存中取
+     * @return 不存在时为null
+     */
+    T findById(Object primaryKey);
+
+    /**
+     * 批量操作：所有行在同一个事务中执行，相同形状的SQL只编译一次
+     * 单行失败不会影响其它行
+     * @return insertAll返回插入成功的行数，updateAll/deleteAll返回受影响的总行数
+     */
+    int insertAll(Collection<T> entities);
+
+    //entities与wheres一一对应
+    int updateAll(List<T> entities, List<T> wheres);
+
+    int deleteAll(Collection<T> wheres);
+
+    /**
+     * 按Criteria更新/删除/查询，支持比较、in、between、like、is null和or
+     */
+    long update(T entity, Criteria criteria);
+
+    int delete(Criteria criteria);
+
+    List<T> query(Criteria criteria, String orderBy, Integer startIndex, Integer limit);
+
+    long count(T where);
+
+    long count(Criteria criteria);
+
     List<T> query(T where);
     List<T> query(T where, String orderBy, Integer startIndex, Integer limit);
+
+    /**
+     * 只查询并解析指定的列，其余成员变量保持为null
+     * @param columns 要查询的列名，必须是实体映射的列，为null时查询所有列
+     */
+    List<T> query(T where, String[] columns, String orderBy, Integer startIndex, Integer limit);
+
+    /**
+     * 流式查询，遍历时才从游标中逐行解析，内存占用与表的大小无关
+     * 遍历结束前占用一个读连接，提前结束时要调用close
+     * @param reuseEntity 为true时每一行复用同一个对象
+     */
+    EntityIterator<T> iterate(T where, String orderBy, boolean reuseEntity);
+
+    //逐行访问，每一行复用同一个对象，结束后自动关闭游标
+    void forEach(T where, String orderBy, EntityVisitor<T> visitor);
+
+    /**
+     * 键集分页：从上一页最后一行的(sortColumn, rowid)之后接着取，而不是用limit offset跳过前面的行，
+     * 所以不管翻到多深，每页的代价都一样
+     * @param sortColumn 排序的列，为null时按rowid排序
+     * @param pageToken 上一页返回的Page.getNextPageToken()，第一页传null
+     */
+    Page<T> queryPage(T where, String sortColumn, boolean descending, int limit, String pageToken);
 }
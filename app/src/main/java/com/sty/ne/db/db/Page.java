@@ -0,0 +1,31 @@
+package com.sty.ne.db.db;
+
+import java.util.List;
+
+/**
+ * 键集分页的一页结果
+ * @Author: tian
+ * @UpdateDate: 2020/11/28 3:10 PM
+ */
+public class Page<T> {
+    private final List<T> items;
+    //下一页的续传标记，null表示已经没有下一页
+    private final String nextPageToken;
+
+    public Page(List<T> items, String nextPageToken) {
+        this.items = items;
+        this.nextPageToken = nextPageToken;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    public String getNextPageToken() {
+        return nextPageToken;
+    }
+
+    public boolean hasNext() {
+        return nextPageToken != null;
+    }
+}
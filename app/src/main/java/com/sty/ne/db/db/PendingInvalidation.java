@@ -0,0 +1,107 @@
+package com.sty.ne.db.db;
+
+import com.sty.ne.db.storage.Database;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 当前线程在事务中写过的表和实体缓存，最外层的事务结束之后再失效一次
+ *
+ * 事务中的写操作在提交之前就让缓存失效了，这期间别的线程（WAL下的读连接）读到的仍然是旧的行，
+ * 它们放进缓存的结果在提交之后就过期了，所以提交之后要再失效一次；
+ * 回滚时整个清空实体缓存，不依赖事务中记下的主键
+ * 只有BaseDao开始的事务（runInTransaction、upsert、批量操作）会在结束时调用finish，
+ * 直接调用database.beginTransaction的事务中的写操作要等下一个BaseDao事务结束
+ * @Author: tian
+ * @UpdateDate: 2020/12/1 9:10 PM
+ */
+class PendingInvalidation {
+    //key:数据库，同一个线程可以同时在多个数据库的事务中
+    private static final ThreadLocal<Map<Database, PendingInvalidation>> pending =
+            new ThreadLocal<Map<Database, PendingInvalidation>>() {
+                @Override
+                protected Map<Database, PendingInvalidation> initialValue() {
+                    return new HashMap<>();
+                }
+            };
+
+    private final Set<String> tables = new HashSet<>();
+    //value为null时整个清空
+    private final Map<EntityCache<?>, Set<String>> entityKeys = new IdentityHashMap<>();
+    private boolean rolledBack;
+
+    private PendingInvalidation() {
+    }
+
+    private static PendingInvalidation get(Database database) {
+        Map<Database, PendingInvalidation> map = pending.get();
+        PendingInvalidation invalidation = map.get(database);
+        if(invalidation == null) {
+            invalidation = new PendingInvalidation();
+            map.put(database, invalidation);
+        }
+        return invalidation;
+    }
+
+    /**
+     * 事务中写了表，事务结束之后表的版本号再加一
+     * @param cache 表的实体缓存，没有开启时为null
+     * @param primaryKey 写入的行的主键，为null时整个清空实体缓存
+     */
+    static void add(Database database, String tableName, EntityCache<?> cache, String primaryKey) {
+        PendingInvalidation invalidation = get(database);
+        invalidation.tables.add(tableName);
+        if(cache == null) {
+            return;
+        }
+        if(primaryKey == null) {
+            invalidation.entityKeys.put(cache, null);
+            return;
+        }
+        if(invalidation.entityKeys.containsKey(cache)) {
+            Set<String> keys = invalidation.entityKeys.get(cache);
+            if(keys != null) {
+                keys.add(primaryKey);
+            }
+        } else {
+            Set<String> keys = new HashSet<>();
+            keys.add(primaryKey);
+            invalidation.entityKeys.put(cache, keys);
+        }
+    }
+
+    /**
+     * BaseDao开始的事务endTransaction之后调用，外层的事务还没有结束时只记下是否回滚
+     * @param succeeded 本层是否调用了setTransactionSuccessful，没有时整个事务都会回滚
+     */
+    static void finish(Database database, QueryCache queryCache, boolean succeeded) {
+        Map<Database, PendingInvalidation> map = pending.get();
+        PendingInvalidation invalidation = map.get(database);
+        if(invalidation == null) {
+            return;
+        }
+        if(!succeeded) {
+            invalidation.rolledBack = true;
+        }
+        if(database.inTransaction()) {
+            return;
+        }
+        map.remove(database);
+        for (String tableName : invalidation.tables) {
+            queryCache.bumpVersion(tableName);
+        }
+        for (Map.Entry<EntityCache<?>, Set<String>> entry : invalidation.entityKeys.entrySet()) {
+            if(invalidation.rolledBack || entry.getValue() == null) {
+                entry.getKey().clear();
+            } else {
+                for (String primaryKey : entry.getValue()) {
+                    entry.getKey().remove(primaryKey);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package com.sty.ne.db.db;
+
+import com.sty.ne.db.storage.Database;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 查询结果缓存，每个数据库一个，该数据库上所有的DAO共用
+ *
+ * 每张表有一个版本号，任何DAO通过BaseDao写这张表都会让版本号加一，
+ * 缓存的结果记录了查询前的版本号，版本号不一致就作废，所以不需要逐条失效
+ * 绕过BaseDao直接执行的SQL不会更新版本号，需要调用bumpVersion/invalidateAll
+ *
+ * 按估算的字节数限制总大小，超出时淘汰最久没有使用的结果
+ * 缓存的是行的原始值（RowSnapshot），每次命中都重新解析成新的实体，调用者可以修改返回的实体
+ * @Author: tian
+ * @UpdateDate: 2020/12/19 9:05 PM
+ */
+public class QueryCache {
+    //默认最多缓存1M
+    public static final int DEFAULT_MAX_BYTES = 1024 * 1024;
+
+    private static final Map<Database, QueryCache> caches = new WeakHashMap<>();
+
+    //key:表名 value:版本号
+    private final ConcurrentHashMap<String, AtomicLong> versions = new ConcurrentHashMap<>();
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    //key:表名 value:{命中次数, 未命中次数}
+    private final HashMap<String, long[]> tableStats = new HashMap<>();
+    private int maxBytes = DEFAULT_MAX_BYTES;
+    private int bytes;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    //同一个数据库返回同一个缓存
+    public static QueryCache forDatabase(Database database) {
+        synchronized (caches) {
+            QueryCache cache = caches.get(database);
+            if(cache == null) {
+                cache = new QueryCache();
+                caches.put(database, cache);
+            }
+            return cache;
+        }
+    }
+
+    public long getVersion(String tableName) {
+        AtomicLong version = versions.get(tableName);
+        return version != null ? version.get() : 0;
+    }
+
+    //表的数据变化了，该表之前缓存的结果全部作废
+    public void bumpVersion(String tableName) {
+        AtomicLong version = versions.get(tableName);
+        if(version == null) {
+            AtomicLong created = new AtomicLong();
+            version = versions.putIfAbsent(tableName, created);
+            if(version == null) {
+                version = created;
+            }
+        }
+        version.incrementAndGet();
+    }
+
+    //所有的表都变化了，比如执行了升级脚本
+    public synchronized void invalidateAll() {
+        for (AtomicLong version : versions.values()) {
+            version.incrementAndGet();
+        }
+        entries.clear();
+        bytes = 0;
+    }
+
+    /**
+     * @return 缓存的结果，没有或者表已经被修改过时为null
+     */
+    public synchronized RowSnapshot get(Key key) {
+        long[] stats = getTableStats(key.tableName);
+        Entry entry = entries.get(key);
+        if(entry != null && entry.version != getVersion(key.tableName)) {
+            removeEntry(key);
+            entry = null;
+        }
+        if(entry == null) {
+            missCount++;
+            stats[1]++;
+            return null;
+        }
+        hitCount++;
+        stats[0]++;
+        return entry.rows;
+    }
+
+    /**
+     * 查询期间表没有被修改过时才放入缓存
+     * @param version 查询之前通过getVersion获取的版本号
+     * @param size 结果估算的字节数，见RowSnapshot.estimateSize
+     */
+    public synchronized void put(Key key, RowSnapshot rows, long version, int size) {
+        if(version != getVersion(key.tableName)) {
+            return;
+        }
+        size += key.estimateSize();
+        if(size > maxBytes) {
+            //单个结果超过了总大小，不缓存
+            return;
+        }
+        removeEntry(key);
+        entries.put(key, new Entry(rows, version, size));
+        bytes += size;
+        trimToSize(maxBytes);
+    }
+
+    public synchronized void setMaxBytes(int maxBytes) {
+        if(maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes <= 0");
+        }
+        this.maxBytes = maxBytes;
+        trimToSize(maxBytes);
+    }
+
+    private void trimToSize(int size) {
+        Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+        while (bytes > size && iterator.hasNext()) {
+            bytes -= iterator.next().getValue().size;
+            iterator.remove();
+            evictionCount++;
+        }
+    }
+
+    private void removeEntry(Key key) {
+        Entry entry = entries.remove(key);
+        if(entry != null) {
+            bytes -= entry.size;
+        }
+    }
+
+    private long[] getTableStats(String tableName) {
+        long[] stats = tableStats.get(tableName);
+        if(stats == null) {
+            stats = new long[2];
+            tableStats.put(tableName, stats);
+        }
+        return stats;
+    }
+
+    //估算查询参数、缓存的一行的字节数
+    static int estimateSize(Object[] values) {
+        //对象头和数组
+        int size = 16 + 4 * values.length;
+        for (Object value : values) {
+            if(value instanceof String) {
+                size += 40 + 2 * ((String) value).length();
+            } else if(value instanceof byte[]) {
+                size += 16 + ((byte[]) value).length;
+            } else if(value != null) {
+                size += 16;
+            }
+        }
+        return size;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized int bytes() {
+        return bytes;
+    }
+
+    public synchronized int maxBytes() {
+        return maxBytes;
+    }
+
+    public synchronized long hitCount() {
+        return hitCount;
+    }
+
+    public synchronized long missCount() {
+        return missCount;
+    }
+
+    public synchronized long evictionCount() {
+        return evictionCount;
+    }
+
+    //命中率，0~1，没有访问过时为0
+    public synchronized float hitRatio() {
+        long accesses = hitCount + missCount;
+        return accesses != 0 ? (float) hitCount / accesses : 0;
+    }
+
+    public synchronized float hitRatio(String tableName) {
+        long[] stats = tableStats.get(tableName);
+        if(stats == null || stats[0] + stats[1] == 0) {
+            return 0;
+        }
+        return (float) stats[0] / (stats[0] + stats[1]);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "QueryCache[size=" + entries.size() + ",bytes=" + bytes + ",maxBytes=" + maxBytes
+                + ",hits=" + hitCount + ",misses=" + missCount + ",evictions=" + evictionCount
+                + ",hitRate=" + (int) (100 * hitRatio()) + "%]";
+    }
+
+    private static class Entry {
+        private final RowSnapshot rows;
+        private final long version;
+        private final int size;
+
+        Entry(RowSnapshot rows, long version, int size) {
+            this.rows = rows;
+            this.version = version;
+            this.size = size;
+        }
+    }
+
+    /**
+     * 缓存的键：表名 + 规范化的查询语句 + 参数
+     * 参数按值和类型比较，1和"1"是不同的键
+     */
+    public static class Key {
+        private final String tableName;
+        private final String sql;
+        private final Object[] args;
+
+        /**
+         * @param columns 查询的列，null表示所有列
+         * @param selection where后面的部分，参数用?表示
+         * @param limit 比如 "0 , 10"，没有时为null
+         */
+        public Key(String tableName, String[] columns, String selection, Object[] args,
+                   String orderBy, String limit) {
+            StringBuilder sb = new StringBuilder("select ");
+            if(columns == null) {
+                sb.append("*");
+            } else {
+                for (int i = 0; i < columns.length; i++) {
+                    sb.append(i == 0 ? "" : ",").append(columns[i]);
+                }
+            }
+            sb.append(" from ").append(tableName).append(" where ").append(normalize(selection));
+            if(orderBy != null && !orderBy.trim().isEmpty()) {
+                sb.append(" order by ").append(normalize(orderBy));
+            }
+            if(limit != null) {
+                sb.append(" limit ").append(limit.replace(" ", ""));
+            }
+            this.tableName = tableName;
+            this.sql = sb.toString();
+            this.args = args != null ? args.clone() : new Object[0];
+        }
+
+        //去掉多余的空白，"time  desc " --> "time desc"
+        private static String normalize(String s) {
+            return s.trim().replaceAll("\\s+", " ");
+        }
+
+        public String getTableName() {
+            return tableName;
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        private int estimateSize() {
+            return 64 + QueryCache.estimateSize(args) + 2 * sql.length();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(this == o) {
+                return true;
+            }
+            if(!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            //参数可能是byte[]
+            return tableName.equals(key.tableName) && sql.equals(key.sql) && Arrays.deepEquals(args, key.args);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * sql.hashCode() + Arrays.deepHashCode(args);
+        }
+
+        @Override
+        public String toString() {
+            return sql + " " + Arrays.toString(args);
+        }
+    }
+}
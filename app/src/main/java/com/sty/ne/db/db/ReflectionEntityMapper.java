@@ -0,0 +1,340 @@
+package com.sty.ne.db.db;
+
+import com.sty.ne.db.annotation.DbConvert;
+import com.sty.ne.db.storage.Cursor;
+
+import java.lang.reflect.Field;
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * 没有生成映射器时的后备实现，通过反射读写成员变量
+ * 基本类型用Field.getInt/setInt等读写，不装箱
+ * @Author: tian
+ * @UpdateDate: 2020/12/19 9:40 PM
+ */
+class ReflectionEntityMapper<T> implements EntityMapper<T> {
+    private static final int STRING = 0;
+    private static final int INTEGER = 1;
+    private static final int LONG = 2;
+    private static final int DOUBLE = 3;
+    private static final int BOOLEAN = 4;
+    private static final int BLOB = 5;
+    private static final int PRIMITIVE_INT = 6;
+    private static final int PRIMITIVE_LONG = 7;
+    private static final int PRIMITIVE_DOUBLE = 8;
+    private static final int PRIMITIVE_BOOLEAN = 9;
+    //枚举、Date和@DbConvert
+    private static final int CONVERTED = 10;
+
+    private final Class<T> entityClass;
+    private final String tableName;
+    private final String createTableSql;
+    private final String[] columnNames;
+    private final Field[] fields;
+    //每个成员变量的读写方式，见kindOf
+    private final int[] kinds;
+    //kinds为CONVERTED的成员变量使用的转换器
+    private final TypeConverter<?>[] converters;
+    private final String[] createIndexSqls;
+    //实体中有、表中还没有的列，key:列名 value:成员变量
+    private final Map<String, Field> missingColumns;
+    private int primaryKeyIndex = -1;
+
+    /**
+     * @param cacheMap key:列名 value:成员变量，只包含表中真实存在的列
+     * @param missingColumns 表中还没有的列，这些成员变量赋了值时getValues抛出IllegalArgumentException
+     */
+    ReflectionEntityMapper(Class<T> entityClass, String tableName, String createTableSql,
+                           String primaryKeyColumn, String[] createIndexSqls, Map<String, Field> cacheMap,
+                           Map<String, Field> missingColumns) {
+        this.entityClass = entityClass;
+        this.missingColumns = missingColumns;
+        for (Field field : missingColumns.values()) {
+            field.setAccessible(true);
+        }
+        this.tableName = tableName;
+        this.createTableSql = createTableSql;
+        this.createIndexSqls = createIndexSqls;
+        this.columnNames = new String[cacheMap.size()];
+        this.fields = new Field[cacheMap.size()];
+        this.kinds = new int[cacheMap.size()];
+        this.converters = new TypeConverter<?>[cacheMap.size()];
+        int i = 0;
+        for (Map.Entry<String, Field> entry : cacheMap.entrySet()) {
+            columnNames[i] = entry.getKey();
+            fields[i] = entry.getValue();
+            fields[i].setAccessible(true);
+            kinds[i] = kindOf(fields[i]);
+            if(kinds[i] == CONVERTED) {
+                converters[i] = newConverter(fields[i]);
+            }
+            if(entry.getKey().equals(primaryKeyColumn)) {
+                primaryKeyIndex = i;
+            }
+            i++;
+        }
+    }
+
+    @Override
+    public String getTableName() {
+        return tableName;
+    }
+
+    @Override
+    public String getCreateTableSql() {
+        return createTableSql;
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return columnNames;
+    }
+
+    @Override
+    public int getPrimaryKeyIndex() {
+        return primaryKeyIndex;
+    }
+
+    @Override
+    public String[] getCreateIndexSqls() {
+        return createIndexSqls;
+    }
+
+    @Override
+    public T newInstance() {
+        try {
+            return entityClass.newInstance();
+        } catch (InstantiationException e) {
+            throw new IllegalStateException(entityClass.getName() + " 需要一个无参构造函数", e);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(entityClass.getName() + " 需要一个无参构造函数", e);
+        }
+    }
+
+    @Override
+    public void readCursor(Cursor cursor, int[] columnIndexes, T entity) {
+        for (int i = 0; i < fields.length; i++) {
+            int columnIndex = columnIndexes[i];
+            if(columnIndex == -1) {
+                continue;
+            }
+            Field field = fields[i];
+            try {
+                //基本类型的列为null时读出来是0/false
+                switch (kinds[i]) {
+                    case PRIMITIVE_INT:
+                        field.setInt(entity, cursor.getInt(columnIndex));
+                        continue;
+                    case PRIMITIVE_LONG:
+                        field.setLong(entity, cursor.getLong(columnIndex));
+                        continue;
+                    case PRIMITIVE_DOUBLE:
+                        field.setDouble(entity, cursor.getDouble(columnIndex));
+                        continue;
+                    case PRIMITIVE_BOOLEAN:
+                        field.setBoolean(entity, cursor.getLong(columnIndex) != 0);
+                        continue;
+                    default:
+                        break;
+                }
+                if(cursor.isNull(columnIndex)) {
+                    field.set(entity, null);
+                    continue;
+                }
+                switch (kinds[i]) {
+                    case STRING:
+                        field.set(entity, cursor.getString(columnIndex));
+                        break;
+                    case INTEGER:
+                        field.set(entity, cursor.getInt(columnIndex));
+                        break;
+                    case LONG:
+                        field.set(entity, cursor.getLong(columnIndex));
+                        break;
+                    case DOUBLE:
+                        field.set(entity, cursor.getDouble(columnIndex));
+                        break;
+                    case BOOLEAN:
+                        field.set(entity, cursor.getLong(columnIndex) != 0);
+                        break;
+                    case BLOB:
+                        field.set(entity, cursor.getBlob(columnIndex));
+                        break;
+                    case CONVERTED:
+                        field.set(entity, converters[i].read(cursor, columnIndex));
+                        break;
+                    default:
+                        break;
+                }
+            } catch (IllegalAccessException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    @Override
+    public void getValues(T entity, ColumnValues values) {
+        checkMissingColumns(entity);
+        for (int i = 0; i < fields.length; i++) {
+            Field field = fields[i];
+            try {
+                switch (kinds[i]) {
+                    case PRIMITIVE_INT:
+                        values.putPrimitive(i, field.getInt(entity));
+                        continue;
+                    case PRIMITIVE_LONG:
+                        values.putPrimitive(i, field.getLong(entity));
+                        continue;
+                    case PRIMITIVE_DOUBLE:
+                        values.putPrimitive(i, field.getDouble(entity));
+                        continue;
+                    case PRIMITIVE_BOOLEAN:
+                        values.putPrimitive(i, field.getBoolean(entity) ? 1 : 0);
+                        continue;
+                    default:
+                        break;
+                }
+                Object value = field.get(entity);
+                if(value == null) {
+                    values.putNull(i);
+                    continue;
+                }
+                switch (kinds[i]) {
+                    case STRING:
+                        values.putString(i, (String) value);
+                        break;
+                    case INTEGER:
+                    case LONG:
+                        values.putLong(i, ((Number) value).longValue());
+                        break;
+                    case DOUBLE:
+                        values.putDouble(i, (Double) value);
+                        break;
+                    case BOOLEAN:
+                        values.putLong(i, (Boolean) value ? 1 : 0);
+                        break;
+                    case BLOB:
+                        values.putBlob(i, (byte[]) value);
+                        break;
+                    case CONVERTED:
+                        write(converters[i], value, values, i);
+                        break;
+                    default:
+                        values.putNull(i);
+                        break;
+                }
+            } catch (IllegalAccessException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    //转换器是按这个成员变量的类型创建的，value一定是它能写入的类型
+    @SuppressWarnings("unchecked")
+    private static void write(TypeConverter<?> converter, Object value, ColumnValues values, int index) {
+        ((TypeConverter<Object>) converter).write(value, values, index);
+    }
+
+    //赋了值的成员变量不能悄悄丢掉；基本类型总有值，分不出是否赋值，不检查
+    private void checkMissingColumns(T entity) {
+        for (Map.Entry<String, Field> entry : missingColumns.entrySet()) {
+            Field field = entry.getValue();
+            if(field.getType().isPrimitive()) {
+                continue;
+            }
+            Object value;
+            try {
+                value = field.get(entity);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+            if(value != null) {
+                throw new IllegalArgumentException(tableName + " has no column " + entry.getKey() + ", "
+                        + entityClass.getSimpleName() + "." + field.getName() + " must be null until the table is migrated");
+            }
+        }
+    }
+
+    //成员变量的读写方式，不支持的类型为-1
+    static int kindOf(Field field) {
+        Class<?> type = field.getType();
+        if(field.getAnnotation(DbConvert.class) != null || type.isEnum() || type == Date.class || type == Blob.class) {
+            return CONVERTED;
+        } else if(type == String.class) {
+            return STRING;
+        } else if(type == Integer.class) {
+            return INTEGER;
+        } else if(type == Long.class) {
+            return LONG;
+        } else if(type == Double.class) {
+            return DOUBLE;
+        } else if(type == Boolean.class) {
+            return BOOLEAN;
+        } else if(type == byte[].class) {
+            return BLOB;
+        } else if(type == int.class) {
+            return PRIMITIVE_INT;
+        } else if(type == long.class) {
+            return PRIMITIVE_LONG;
+        } else if(type == double.class) {
+            return PRIMITIVE_DOUBLE;
+        } else if(type == boolean.class) {
+            return PRIMITIVE_BOOLEAN;
+        }
+        return -1;
+    }
+
+    /**
+     * 建表时列的类型，与注解处理器生成的一致，不支持的类型为null
+     */
+    static String sqlTypeOf(Field field) {
+        switch (kindOf(field)) {
+            case STRING:
+                return "TEXT";
+            case INTEGER:
+            case BOOLEAN:
+            case PRIMITIVE_INT:
+            case PRIMITIVE_BOOLEAN:
+                return "INTEGER";
+            case LONG:
+            case PRIMITIVE_LONG:
+                return "BIGINT";
+            case DOUBLE:
+            case PRIMITIVE_DOUBLE:
+                return "DOUBLE";
+            case BLOB:
+                return "BLOB";
+            case CONVERTED:
+                return newConverter(field).getSqlType();
+            default:
+                return null;
+        }
+    }
+
+    //@DbConvert指定的转换器，枚举、Date和Blob使用默认的
+    private static TypeConverter<?> newConverter(Field field) {
+        DbConvert convert = field.getAnnotation(DbConvert.class);
+        if(convert == null) {
+            if(field.getType() == Date.class) {
+                return new DateConverter();
+            } else if(field.getType() == Blob.class) {
+                return new BlobConverter();
+            }
+            return newEnumConverter(field.getType());
+        }
+        try {
+            return convert.value().newInstance();
+        } catch (InstantiationException e) {
+            throw new IllegalStateException(convert.value().getName() + " 需要一个无参构造函数", e);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(convert.value().getName() + " 需要一个无参构造函数", e);
+        }
+    }
+
+    //只有kindOf判断为枚举时才调用，运行时拿不到Class<E>中的E，只能用原始类型创建
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static TypeConverter<?> newEnumConverter(Class<?> enumClass) {
+        return new EnumConverter(enumClass);
+    }
+}
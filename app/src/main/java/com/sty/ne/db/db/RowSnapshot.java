@@ -0,0 +1,243 @@
+package com.sty.ne.db.db;
+
+import com.sty.ne.db.storage.Cursor;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+
+/**
+ * 查询结果缓存中保存的一次查询的结果：游标中每一行的原始值，按EntityMapper.getColumnNames()的顺序排列
+ * 缓存中不放实体，命中时通过cursor()重新解析成新的实体，调用者修改返回的实体不会影响缓存
+ * 放进缓存之后只读，多个线程可以同时调用cursor()
+ * @Author: tian
+ * @UpdateDate: 2020/12/19 8:30 PM
+ */
+final class RowSnapshot {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    //游标中没有的列为null
+    private final String[] columnNames;
+    //Long、Double、String、byte[]或null
+    private final ArrayList<Object[]> rows = new ArrayList<>();
+    private int size;
+
+    /**
+     * @param columnNames EntityMapper.getColumnNames()的副本，游标中没有的列在add时置为null
+     */
+    RowSnapshot(String[] columnNames) {
+        this.columnNames = columnNames;
+    }
+
+    /**
+     * 复制游标当前行的值
+     * @param columnIndexes 每一列在游标中的位置，-1表示游标中没有该列，见EntityMapper.readCursor
+     */
+    void add(Cursor cursor, int[] columnIndexes) {
+        Object[] row = new Object[columnIndexes.length];
+        for (int i = 0; i < columnIndexes.length; i++) {
+            int columnIndex = columnIndexes[i];
+            if(columnIndex == -1) {
+                //只查询了部分列，解析缓存的行时这些成员变量也保持不变
+                columnNames[i] = null;
+                continue;
+            }
+            switch (cursor.getType(columnIndex)) {
+                case Cursor.FIELD_TYPE_INTEGER:
+                    row[i] = cursor.getLong(columnIndex);
+                    break;
+                case Cursor.FIELD_TYPE_FLOAT:
+                    row[i] = cursor.getDouble(columnIndex);
+                    break;
+                case Cursor.FIELD_TYPE_STRING:
+                    row[i] = cursor.getString(columnIndex);
+                    break;
+                case Cursor.FIELD_TYPE_BLOB:
+                    row[i] = cursor.getBlob(columnIndex);
+                    break;
+                default:
+                    break;
+            }
+        }
+        rows.add(row);
+        size += QueryCache.estimateSize(row);
+    }
+
+    int getCount() {
+        return rows.size();
+    }
+
+    //所有行估算的字节数
+    int estimateSize() {
+        return size;
+    }
+
+    //从第一行之前开始的游标，每次调用返回一个新的
+    Cursor cursor() {
+        return new SnapshotCursor();
+    }
+
+    private class SnapshotCursor implements Cursor {
+        private int position = -1;
+        private boolean closed;
+
+        private Object get(int columnIndex) {
+            return rows.get(position)[columnIndex];
+        }
+
+        @Override
+        public int getCount() {
+            return rows.size();
+        }
+
+        @Override
+        public int getPosition() {
+            return position;
+        }
+
+        @Override
+        public boolean moveToPosition(int position) {
+            if(position < 0) {
+                this.position = -1;
+                return false;
+            }
+            if(position >= rows.size()) {
+                this.position = rows.size();
+                return false;
+            }
+            this.position = position;
+            return true;
+        }
+
+        @Override
+        public boolean moveToFirst() {
+            return moveToPosition(0);
+        }
+
+        @Override
+        public boolean moveToNext() {
+            return moveToPosition(position + 1);
+        }
+
+        @Override
+        public boolean moveToPrevious() {
+            return moveToPosition(position - 1);
+        }
+
+        @Override
+        public int getColumnCount() {
+            return columnNames.length;
+        }
+
+        @Override
+        public int getColumnIndex(String columnName) {
+            for (int i = 0; i < columnNames.length; i++) {
+                if(columnName.equals(columnNames[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public String[] getColumnNames() {
+            return columnNames.clone();
+        }
+
+        @Override
+        public int getType(int columnIndex) {
+            Object value = get(columnIndex);
+            if(value instanceof Long) {
+                return FIELD_TYPE_INTEGER;
+            } else if(value instanceof Double) {
+                return FIELD_TYPE_FLOAT;
+            } else if(value instanceof String) {
+                return FIELD_TYPE_STRING;
+            } else if(value instanceof byte[]) {
+                return FIELD_TYPE_BLOB;
+            }
+            return FIELD_TYPE_NULL;
+        }
+
+        @Override
+        public boolean isNull(int columnIndex) {
+            return get(columnIndex) == null;
+        }
+
+        //和SQLite一样，数字转成字符串，blob按UTF-8解码
+        @Override
+        public String getString(int columnIndex) {
+            Object value = get(columnIndex);
+            if(value instanceof byte[]) {
+                return new String((byte[]) value, UTF_8);
+            }
+            return value != null ? value.toString() : null;
+        }
+
+        @Override
+        public int getInt(int columnIndex) {
+            return (int) getLong(columnIndex);
+        }
+
+        @Override
+        public long getLong(int columnIndex) {
+            Object value = get(columnIndex);
+            if(value instanceof Number) {
+                return ((Number) value).longValue();
+            }
+            if(value instanceof String) {
+                try {
+                    return Long.parseLong(((String) value).trim());
+                } catch (NumberFormatException e) {
+                    //不是整数时按浮点数解析
+                }
+            }
+            return (long) parseDouble(value);
+        }
+
+        @Override
+        public double getDouble(int columnIndex) {
+            Object value = get(columnIndex);
+            if(value instanceof Number) {
+                return ((Number) value).doubleValue();
+            }
+            return parseDouble(value);
+        }
+
+        //文本按数字解析，不是数字时为0
+        private double parseDouble(Object value) {
+            if(value instanceof String) {
+                try {
+                    return Double.parseDouble(((String) value).trim());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+            return 0;
+        }
+
+        //返回副本，实体中的byte[]被修改时不影响缓存
+        @Override
+        public byte[] getBlob(int columnIndex) {
+            Object value = get(columnIndex);
+            if(value instanceof byte[]) {
+                return ((byte[]) value).clone();
+            }
+            return value != null ? getString(columnIndex).getBytes(UTF_8) : null;
+        }
+
+        @Override
+        public int getWindowStartPosition() {
+            return 0;
+        }
+
+        @Override
+        public boolean isClosed() {
+            return closed;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
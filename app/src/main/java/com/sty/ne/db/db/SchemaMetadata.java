@@ -0,0 +1,161 @@
+package com.sty.ne.db.db;
+
+import android.text.TextUtils;
+
+import com.sty.ne.db.storage.Cursor;
+import com.sty.ne.db.storage.Database;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * 持久化的表结构信息，保存在每个数据库的nedb_schema表中
+ *
+ * 每张表记录建表、建索引语句的摘要和表中实际存在的列：
+ * 摘要一致时说明表和索引已经建好，BaseDao.init不再执行create table/create index，
+ * 也不再用 select * limit 1,0 探测列名，直接使用记录的列
+ * 绕过BaseDao修改表结构（比如升级脚本）之后要调用clear
+ * @Author: tian
+ * @UpdateDate: 2020/12/7 8:30 PM
+ */
+public class SchemaMetadata {
+    public static final String TABLE_NAME = "nedb_schema";
+    /**
+     * 实体类对应的表结构版本，和assets/updateXml.xml中最高的versionTo一致，修改实体、增加升级步骤时一起加一
+     * 新建的库按实体建表，直接记为这个版本
+     */
+    public static final int SCHEMA_VERSION = 4;
+    //记录的格式变化时加一，旧的记录全部失效
+    private static final int FORMAT_VERSION = 1;
+
+    private static final Map<Database, SchemaMetadata> metadatas = new WeakHashMap<>();
+
+    private final Database database;
+    //key:表名 value:{摘要, 逗号分隔的列名}
+    private final HashMap<String, String[]> tables = new HashMap<>();
+
+    private SchemaMetadata(Database database) {
+        this.database = database;
+        createTable(database);
+        load();
+    }
+
+    private void load() {
+        Cursor cursor = database.rawQuery("select table_name, schema_hash, columns from " + TABLE_NAME, null);
+        try {
+            while (cursor.moveToNext()) {
+                tables.put(cursor.getString(0), new String[]{cursor.getString(1), cursor.getString(2)});
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * 写入记录的事务回滚之后调用，丢掉内存中没有提交的记录，重新从数据库读出
+     */
+    synchronized void reload() {
+        tables.clear();
+        load();
+    }
+
+    //第一次调用时从数据库读出所有记录，之后都在内存中
+    public static SchemaMetadata forDatabase(Database database) {
+        synchronized (metadatas) {
+            SchemaMetadata metadata = metadatas.get(database);
+            if(metadata == null) {
+                metadata = new SchemaMetadata(database);
+                metadatas.put(database, metadata);
+            }
+            return metadata;
+        }
+    }
+
+    private static void createTable(Database database) {
+        database.execSQL("create table if not exists " + TABLE_NAME
+                + "(table_name TEXT PRIMARY KEY, schema_hash TEXT, columns TEXT)");
+    }
+
+    /**
+     * 建表之前调用：还没有任何实体的表（新建的库）并且没有记录过版本时，把user_version设为SCHEMA_VERSION，
+     * 接下来的表都按当前的实体创建，升级时不用再执行任何步骤；
+     * 已经有表但user_version为0的是记录版本之前建的库，升级时按updateXml.xml中的baseVersion处理
+     * 在建表的事务中执行，回滚时版本号一起回滚
+     */
+    static void stampNewDatabase(Database database) {
+        if(database.getVersion() != 0) {
+            return;
+        }
+        //nedb_开头的是内部的表，sqlite_开头的是SQLite自己的
+        long tables = database.longForQuery("select count(*) from sqlite_master where type = 'table'"
+                + " and name not like 'nedb\\_%' escape '\\' and name not like 'sqlite\\_%' escape '\\'", null);
+        if(tables == 0) {
+            database.setVersion(SCHEMA_VERSION);
+        }
+    }
+
+    /**
+     * @return 摘要一致时返回记录的列名，否则为null
+     */
+    public synchronized String[] getColumns(String tableName, String schemaHash) {
+        String[] record = tables.get(tableName);
+        if(record == null || !schemaHash.equals(record[0])) {
+            return null;
+        }
+        return TextUtils.isEmpty(record[1]) ? new String[0] : record[1].split(",");
+    }
+
+    //建好表和索引之后记录下来
+    public synchronized void put(String tableName, String schemaHash, String[] columns) {
+        String joined = TextUtils.join(",", columns);
+        database.execSQL("insert or replace into " + TABLE_NAME + "(table_name, schema_hash, columns) values(?,?,?)",
+                new Object[]{tableName, schemaHash, joined});
+        tables.put(tableName, new String[]{schemaHash, joined});
+    }
+
+    //表结构被修改过，下次启动时重新检查所有的表
+    public synchronized void invalidate() {
+        database.execSQL("delete from " + TABLE_NAME);
+        tables.clear();
+    }
+
+    /**
+     * 清空某个数据库的记录，用于没有通过forDatabase打开的数据库（比如升级时单独打开的分库）
+     */
+    public static void clear(Database database) {
+        synchronized (metadatas) {
+            SchemaMetadata metadata = metadatas.get(database);
+            if(metadata != null) {
+                metadata.invalidate();
+                return;
+            }
+        }
+        createTable(database);
+        database.execSQL("delete from " + TABLE_NAME);
+    }
+
+    //建表语句和建索引语句的摘要
+    public static String hash(String createTableSql, String[] createIndexSqls) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(FORMAT_VERSION).append('\n').append(createTableSql);
+        for (String sql : createIndexSqls) {
+            sb.append('\n').append(sql);
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(sb.toString().getBytes("UTF-8"));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
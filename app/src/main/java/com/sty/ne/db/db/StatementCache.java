@@ -0,0 +1,202 @@
+package com.sty.ne.db.db;
+
+import com.sty.ne.db.storage.Database;
+import com.sty.ne.db.storage.Statement;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 编译好的Statement的LRU缓存，key为SQL的形状（操作类型 + 赋值的列 + where的列）
+ * 命中时只需要绑定参数再执行，不用每次都重新解析SQL
+ *
+ * 线程安全。acquire()把语句从缓存中取出交给调用者独占，用完后通过release()放回，
+ * 所以绑定参数和执行时不需要再加锁；两个线程同时需要同一个形状时，后来的那个会另外编译一条
+ * @Author: tian
+ * @UpdateDate: 2020/11/26 8:30 PM
+ */
+public class StatementCache {
+    public static final int DEFAULT_MAX_SIZE = 16;
+
+    public static final int INSERT = 1;
+    public static final int UPDATE = 2;
+    public static final int DELETE = 3;
+
+    /**
+     * 缓存未命中时根据key生成SQL
+     */
+    public interface SqlFactory {
+        String createSql(Key key);
+    }
+
+    private final Database database;
+    private final SqlFactory sqlFactory;
+    private final LinkedHashMap<Key, Statement> statements;
+    private int maxSize;
+    private boolean closed;
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    public StatementCache(Database database, SqlFactory sqlFactory, int maxSize) {
+        if(maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+        this.database = database;
+        this.sqlFactory = sqlFactory;
+        this.maxSize = maxSize;
+        //accessOrder为true，按访问顺序排列，最久没用的在最前面
+        this.statements = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * 取出（必要时编译）对应形状的语句，用完后必须调用release(key, statement)
+     * 编译失败（比如表中没有某一列）时抛出StorageException
+     */
+    public Statement acquire(Key key) {
+        synchronized (this) {
+            Statement statement = statements.remove(key);
+            if(statement != null) {
+                hitCount++;
+                return statement;
+            }
+            missCount++;
+        }
+        //编译不占用缓存的锁
+        return database.compileStatement(sqlFactory.createSql(key));
+    }
+
+    //acquire在try中失败时statement为null，直接返回，调用者不用在finally中再判断
+    public void release(Key key, Statement statement) {
+        if(statement == null) {
+            return;
+        }
+        statement.clearBindings();
+        synchronized (this) {
+            if(!closed && !statements.containsKey(key)) {
+                statements.put(key, statement);
+                trimToSize(maxSize);
+                return;
+            }
+        }
+        //已经有同形状的语句被放回，或者缓存已关闭
+        statement.close();
+    }
+
+    public synchronized void setMaxSize(int maxSize) {
+        if(maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+        this.maxSize = maxSize;
+        trimToSize(maxSize);
+    }
+
+    //关闭所有缓存的语句，之后放回的语句会被直接关闭
+    public synchronized void close() {
+        closed = true;
+        trimToSize(0);
+    }
+
+    private void trimToSize(int size) {
+        Iterator<Map.Entry<Key, Statement>> iterator = statements.entrySet().iterator();
+        while (statements.size() > size && iterator.hasNext()) {
+            Statement eldest = iterator.next().getValue();
+            iterator.remove();
+            eldest.close();
+            evictionCount++;
+        }
+    }
+
+    public synchronized int size() {
+        return statements.size();
+    }
+
+    public synchronized int maxSize() {
+        return maxSize;
+    }
+
+    public synchronized long hitCount() {
+        return hitCount;
+    }
+
+    public synchronized long missCount() {
+        return missCount;
+    }
+
+    public synchronized long evictionCount() {
+        return evictionCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        long accesses = hitCount + missCount;
+        int hitPercent = accesses != 0 ? (int) (100 * hitCount / accesses) : 0;
+        return "StatementCache[size=" + statements.size() + ",maxSize=" + maxSize + ",hits=" + hitCount
+                + ",misses=" + missCount + ",evictions=" + evictionCount + ",hitRate=" + hitPercent + "%]";
+    }
+
+    /**
+     * SQL的形状：列按EntityMapper.getColumnNames()的顺序编号，第i列对应掩码的第i位
+     * 条件来自Criteria时，where的形状就是Criteria生成的条件语句
+     */
+    public static final class Key {
+        private final int operation;
+        private final long columnMask;
+        private final long whereMask;
+        private final String whereClause;
+
+        public Key(int operation, long columnMask, long whereMask) {
+            this.operation = operation;
+            this.columnMask = columnMask;
+            this.whereMask = whereMask;
+            this.whereClause = null;
+        }
+
+        public Key(int operation, long columnMask, String whereClause) {
+            this.operation = operation;
+            this.columnMask = columnMask;
+            this.whereMask = 0;
+            this.whereClause = whereClause;
+        }
+
+        public int getOperation() {
+            return operation;
+        }
+
+        public long getColumnMask() {
+            return columnMask;
+        }
+
+        public long getWhereMask() {
+            return whereMask;
+        }
+
+        //为null时where的形状由whereMask表示
+        public String getWhereClause() {
+            return whereClause;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(this == o) {
+                return true;
+            }
+            if(!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return operation == key.operation && columnMask == key.columnMask && whereMask == key.whereMask
+                    && (whereClause == null ? key.whereClause == null : whereClause.equals(key.whereClause));
+        }
+
+        @Override
+        public int hashCode() {
+            int result = operation;
+            result = 31 * result + (int) (columnMask ^ (columnMask >>> 32));
+            result = 31 * result + (int) (whereMask ^ (whereMask >>> 32));
+            result = 31 * result + (whereClause != null ? whereClause.hashCode() : 0);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.sty.ne.db.db;
+
+import com.sty.ne.db.storage.Cursor;
+
+/**
+ * 成员变量类型与列之间的转换，用@DbConvert指定在成员变量上
+ * 枚举、java.util.Date和Blob不需要指定，默认使用EnumConverter、DateConverter和BlobConverter
+ *
+ * 写入时直接调用ColumnValues.putLong等方法，读取时直接从游标取值，中间不装箱
+ * 同一个实体的所有行共用一个实例，实现必须是无状态的，并且有一个public的无参构造函数
+ * @Author: tian
+ * @UpdateDate: 2020/12/16 8:40 PM
+ */
+public interface TypeConverter<T> {
+
+    //建表时列的类型，比如 INTEGER、BIGINT、DOUBLE、TEXT、BLOB
+    String getSqlType();
+
+    //value不为null，把转换后的值放入values的第index列
+    void write(T value, ColumnValues values, int index);
+
+    //列的值不为null时才调用
+    T read(Cursor cursor, int columnIndex);
+}
@@ -13,32 +13,81 @@ import java.util.List;
  */
 public class UserDao extends BaseDao<User> {
     private static final String TAG = UserDao.class.getSimpleName();
+    //当前登录用户的id，配合实体缓存避免每次都按status查询
+    private volatile Integer currentUserId;
 
-    @Override
-    public long insert(User entity) {
-        //查询该表中所有的用户记录
-        List<User> list = query(new User());
-        User where;
-        for (User user : list) {
-            where = new User();
-            where.setId(user.getId());
-            where.setStatus(0);
-            update(user, where);
-            Log.e(TAG, "用户 " + user.getName() + " 更改为未登录状态");
-        }
-        entity.setStatus(1);
+    public UserDao() {
+        setEntityCacheSize(16);
+    }
+
+    /**
+     * 登录：其它用户全部改为未登录，再按u_id插入或更新当前用户，在同一个事务中完成
+     * @return 写入的行数，失败时为-1，这时其它用户的登录状态也不会改变
+     */
+    public long login(final User entity) {
+        final long[] result = new long[1];
+        runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                //update tb_user set status=? where 1=1 and status =?
+                User loggedOut = new User();
+                loggedOut.setStatus(0);
+                User where = new User();
+                where.setStatus(1);
+                long count = update(loggedOut, where);
+                Log.e(TAG, count + " 个用户更改为未登录状态");
+                entity.setStatus(1);
+                result[0] = upsert(entity);
+            }
+        });
+        currentUserId = result[0] > 0 ? entity.getId() : null;
         Log.e(TAG, "用户 " + entity.getName() + " 登录");
-        return super.insert(entity);
+        return result[0];
     }
 
     //获取当前登录的User
     public User getCurrentUser() {
+        User cached = findCurrentUserById();
+        if(cached != null) {
+            return cached;
+        }
         User user = new User();
         user.setStatus(1);
         List<User> list = query(user);
         if(list != null && list.size() > 0) {
+            currentUserId = list.get(0).getId();
             return list.get(0);
         }
         return null;
     }
+
+    //只需要当前登录用户的id时，只查询u_id这一列
+    public Integer getCurrentUserId() {
+        User cached = findCurrentUserById();
+        if(cached != null) {
+            return cached.getId();
+        }
+        User user = new User();
+        user.setStatus(1);
+        List<User> list = query(user, new String[]{"u_id"}, null, 0, 1);
+        if(list != null && list.size() > 0) {
+            currentUserId = list.get(0).getId();
+            return list.get(0).getId();
+        }
+        return null;
+    }
+
+    //按记住的id从实体缓存中取，别的地方改了登录状态时返回null重新查询
+    private User findCurrentUserById() {
+        Integer id = currentUserId;
+        if(id == null) {
+            return null;
+        }
+        User user = findById(id);
+        if(user != null && user.getStatus() != null && user.getStatus() == 1) {
+            return user;
+        }
+        currentUserId = null;
+        return null;
+    }
 }
@@ -0,0 +1,278 @@
+package com.sty.ne.db.db;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 延迟批量写入：insert只把实体放进有界队列，后台线程凑够maxBatchSize行或者等了flushIntervalMs毫秒，
+ * 就用insertAll在一个事务中提交一批，每行一次提交变成每批一次提交
+ *
+ * 代价是一个小的持久化窗口：insert返回时数据还在内存里，进程被杀掉时队列中的行会丢失
+ * 需要确认写入时调用flush()；不再使用时调用close()，会先写完队列中的行
+ * 队列满时insert阻塞，直到后台线程腾出空间（背压）；容量只限制行数，控制标记总能放进队列
+ *
+ * WriteBehindInserter<Photo> inserter = new WriteBehindInserter<>(photoDao, 200, 100, 2000);
+ * inserter.insert(photo);
+ * @Author: tian
+ * @UpdateDate: 2020/12/19 9:10 PM
+ */
+public class WriteBehindInserter<T> {
+    private static final String TAG = WriteBehindInserter.class.getSimpleName();
+    //队列中的控制标记
+    private static final Object FLUSH = new Object();
+    private static final Object CLOSE = new Object();
+
+    private final IBaseDao<T> dao;
+    private final int maxBatchSize;
+    private final long flushIntervalNanos;
+    private final int capacity;
+    //不限长度，行数由permits限制
+    private final LinkedBlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+    //队列中还能放的行数，后台线程取走一行时归还
+    private final Semaphore permits;
+    private final Thread worker;
+
+    //以下都由this保护
+    //close之后不再放入行，检查closed和放入队列在同一个锁内，close之前放入的行都在CLOSE前面
+    private boolean closed;
+    //放入队列的行数和已经写完（成功或失败）的行数，flush等待后者追上前者
+    private long enqueuedRows;
+    private long writtenRows;
+    private long insertedRows;
+    private long batchCount;
+    private long failedBatchCount;
+    private int maxBatch;
+    private long totalFlushNanos;
+    private long maxFlushNanos;
+
+    /**
+     * @param maxBatchSize 每批最多的行数
+     * @param flushIntervalMs 一批中第一行最多等待的时间
+     * @param capacity 队列的容量，满了之后insert阻塞
+     */
+    public WriteBehindInserter(IBaseDao<T> dao, int maxBatchSize, long flushIntervalMs, int capacity) {
+        if(maxBatchSize <= 0 || flushIntervalMs < 0 || capacity <= 0) {
+            throw new IllegalArgumentException("maxBatchSize, capacity must be > 0 and flushIntervalMs >= 0");
+        }
+        this.dao = dao;
+        this.maxBatchSize = maxBatchSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        this.capacity = capacity;
+        this.permits = new Semaphore(capacity);
+        this.worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runWorker();
+            }
+        }, "db-write-behind");
+        worker.start();
+    }
+
+    /**
+     * 放入队列，队列满时阻塞
+     * @throws IllegalStateException 已经close
+     */
+    public void insert(T entity) throws InterruptedException {
+        checkOpen();
+        permits.acquire();
+        enqueue(entity);
+    }
+
+    /**
+     * 放入队列，队列满时最多等待timeout
+     * @return 超时没有放入时为false
+     */
+    public boolean offer(T entity, long timeout, TimeUnit unit) throws InterruptedException {
+        checkOpen();
+        if(!permits.tryAcquire(timeout, unit)) {
+            return false;
+        }
+        enqueue(entity);
+        return true;
+    }
+
+    //已经拿到一个permit；close之后放入的行不会被写入，直接拒绝并归还permit
+    private void enqueue(T entity) {
+        synchronized (this) {
+            if(!closed) {
+                queue.add(entity);
+                enqueuedRows++;
+                return;
+            }
+        }
+        permits.release();
+        checkOpen();
+    }
+
+    /**
+     * 立即提交队列中的行，等到调用之前放入的行全部写完再返回
+     */
+    public void flush() throws InterruptedException {
+        long target;
+        synchronized (this) {
+            target = enqueuedRows;
+        }
+        if(worker.isAlive()) {
+            queue.add(FLUSH);
+        }
+        synchronized (this) {
+            while (writtenRows < target && worker.isAlive()) {
+                wait(100);
+            }
+        }
+    }
+
+    /**
+     * 写完队列中的行，停止后台线程，之后不能再insert
+     */
+    public void close() throws InterruptedException {
+        synchronized (this) {
+            if(closed) {
+                return;
+            }
+            closed = true;
+            queue.add(CLOSE);
+        }
+        worker.join();
+    }
+
+    private synchronized void checkOpen() {
+        if(closed) {
+            throw new IllegalStateException("WriteBehindInserter is closed");
+        }
+    }
+
+    private void runWorker() {
+        List<T> batch = new ArrayList<>(maxBatchSize);
+        boolean stop = false;
+        try {
+            while (!stop) {
+                Object first = queue.take();
+                if(first == CLOSE) {
+                    stop = true;
+                } else if(first != FLUSH) {
+                    add(batch, first);
+                    long deadline = System.nanoTime() + flushIntervalNanos;
+                    while (batch.size() < maxBatchSize) {
+                        long remaining = deadline - System.nanoTime();
+                        Object next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                        if(next == null || next == FLUSH) {
+                            break;
+                        }
+                        if(next == CLOSE) {
+                            stop = true;
+                            break;
+                        }
+                        add(batch, next);
+                    }
+                }
+                writeBatch(batch);
+            }
+        } catch (InterruptedException e) {
+            Log.e(TAG, "write-behind thread interrupted", e);
+        } finally {
+            //被中断时没有经过close，这里关闭之后不会再有行放进来，取出剩下的行
+            synchronized (this) {
+                closed = true;
+            }
+            Object next;
+            while ((next = queue.poll()) != null) {
+                if(next != FLUSH && next != CLOSE) {
+                    add(batch, next);
+                }
+            }
+            writeBatch(batch);
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void add(List<T> batch, Object entity) {
+        batch.add((T) entity);
+        permits.release();
+    }
+
+    //一批在一个事务中提交
+    private void writeBatch(List<T> batch) {
+        if(batch.isEmpty()) {
+            synchronized (this) {
+                notifyAll();
+            }
+            return;
+        }
+        long start = System.nanoTime();
+        int inserted = 0;
+        boolean failed = false;
+        try {
+            inserted = dao.insertAll(batch);
+        } catch (RuntimeException e) {
+            //insertAll自己处理单行的失败，这里是整个事务失败
+            Log.e(TAG, "write " + batch.size() + " rows failed", e);
+            failed = true;
+        }
+        long nanos = System.nanoTime() - start;
+        synchronized (this) {
+            writtenRows += batch.size();
+            insertedRows += inserted;
+            batchCount++;
+            if(failed) {
+                failedBatchCount++;
+            }
+            maxBatch = Math.max(maxBatch, batch.size());
+            totalFlushNanos += nanos;
+            maxFlushNanos = Math.max(maxFlushNanos, nanos);
+            notifyAll();
+        }
+        batch.clear();
+    }
+
+    //队列中等待写入的行数，不含控制标记
+    public int getQueueSize() {
+        return capacity - permits.availablePermits();
+    }
+
+    public synchronized long getInsertedRows() {
+        return insertedRows;
+    }
+
+    public synchronized long getBatchCount() {
+        return batchCount;
+    }
+
+    public synchronized long getFailedBatchCount() {
+        return failedBatchCount;
+    }
+
+    public synchronized int getMaxBatchSize() {
+        return maxBatch;
+    }
+
+    public synchronized double getAverageBatchSize() {
+        return batchCount != 0 ? (double) writtenRows / batchCount : 0;
+    }
+
+    //每批提交的平均耗时
+    public synchronized double getAverageFlushMillis() {
+        return batchCount != 0 ? totalFlushNanos / 1e6 / batchCount : 0;
+    }
+
+    public synchronized double getMaxFlushMillis() {
+        return maxFlushNanos / 1e6;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "WriteBehindInserter[queued=" + getQueueSize() + ",inserted=" + insertedRows
+                + ",batches=" + batchCount + ",failedBatches=" + failedBatchCount
+                + ",avgBatch=" + String.format("%.1f", getAverageBatchSize()) + ",maxBatch=" + maxBatch
+                + ",avgFlushMs=" + String.format("%.2f", getAverageFlushMillis())
+                + ",maxFlushMs=" + String.format("%.2f", getMaxFlushMillis()) + "]";
+    }
+}
@@ -0,0 +1,72 @@
+package com.sty.ne.db.model;
+
+import com.sty.ne.db.annotation.DbField;
+import com.sty.ne.db.annotation.DbPrimaryKey;
+import com.sty.ne.db.annotation.DbTable;
+
+/**
+ * 分库升级的完成记录，保存在主库中，中断之后重新升级时跳过已经完成的库
+ * @Author: tian
+ * @UpdateDate: 2020/12/9 8:20 PM
+ */
+@DbTable("tb_migration_log")
+public class MigrationRecord {
+    //目标版本 + "/" + 数据库路径
+    @DbPrimaryKey
+    @DbField("m_id")
+    private String id;
+    private String versionTo;
+    private String path;
+    //升级耗时，毫秒
+    private Long millis;
+    private Long finishTime;
+
+    public MigrationRecord() {
+    }
+
+    public MigrationRecord(String versionTo, String path) {
+        this.id = versionTo + "/" + path;
+        this.versionTo = versionTo;
+        this.path = path;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getVersionTo() {
+        return versionTo;
+    }
+
+    public void setVersionTo(String versionTo) {
+        this.versionTo = versionTo;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    public Long getMillis() {
+        return millis;
+    }
+
+    public void setMillis(Long millis) {
+        this.millis = millis;
+    }
+
+    public Long getFinishTime() {
+        return finishTime;
+    }
+
+    public void setFinishTime(Long finishTime) {
+        this.finishTime = finishTime;
+    }
+}
@@ -1,6 +1,9 @@
 package com.sty.ne.db.model;
 
+import com.sty.ne.db.annotation.DbBlob;
+import com.sty.ne.db.annotation.DbIndex;
 import com.sty.ne.db.annotation.DbTable;
+import com.sty.ne.db.db.Blob;
 
 /**
  * @Author: tian
@@ -8,8 +11,13 @@ import com.sty.ne.db.annotation.DbTable;
  */
 @DbTable("tb_photo")
 public class Photo {
+    //按时间排序、分页
+    @DbIndex
     private String time;
     private String path;
+    //照片内容，超过inlineLimit的存为分库旁边的文件，读取时映射到内存
+    @DbBlob
+    private Blob image;
 
     public String getTime() {
         return time;
@@ -26,4 +34,12 @@ public class Photo {
     public void setPath(String path) {
         this.path = path;
     }
+
+    public Blob getImage() {
+        return image;
+    }
+
+    public void setImage(Blob image) {
+        this.image = image;
+    }
 }
@@ -1,6 +1,8 @@
 package com.sty.ne.db.model;
 
 import com.sty.ne.db.annotation.DbField;
+import com.sty.ne.db.annotation.DbIndex;
+import com.sty.ne.db.annotation.DbPrimaryKey;
 import com.sty.ne.db.annotation.DbTable;
 
 /**
@@ -12,9 +14,12 @@ import com.sty.ne.db.annotation.DbTable;
 public class User {
     //得到User对象对应列名
     @DbField("u_id")
+    @DbPrimaryKey
     private Integer id;
     private String name;
     private String pwd;
+    //getCurrentUser()按登录状态查询
+    @DbIndex
     private Integer status;
 
     public User() {
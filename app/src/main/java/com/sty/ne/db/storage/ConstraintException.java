@@ -0,0 +1,12 @@
+package com.sty.ne.db.storage;
+
+/**
+ * 违反了约束（主键、唯一索引、not null等）
+ * @Author: tian
+ * @UpdateDate: 2020/12/14 8:30 PM
+ */
+public class ConstraintException extends StorageException {
+    public ConstraintException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,62 @@
+package com.sty.ne.db.storage;
+
+import java.io.Closeable;
+
+/**
+ * 查询结果，初始位置在第一行之前，列从0开始编号
+ * 取值时的类型转换和SQLite一样：null读成0或null，不能转换的文本读成0
+ * @Author: tian
+ * @UpdateDate: 2020/12/14 8:30 PM
+ */
+public interface Cursor extends Closeable {
+    int FIELD_TYPE_NULL = 0;
+    int FIELD_TYPE_INTEGER = 1;
+    int FIELD_TYPE_FLOAT = 2;
+    int FIELD_TYPE_STRING = 3;
+    int FIELD_TYPE_BLOB = 4;
+
+    int getCount();
+
+    int getPosition();
+
+    boolean moveToPosition(int position);
+
+    boolean moveToFirst();
+
+    boolean moveToNext();
+
+    boolean moveToPrevious();
+
+    int getColumnCount();
+
+    //没有该列时返回-1
+    int getColumnIndex(String columnName);
+
+    String[] getColumnNames();
+
+    //FIELD_TYPE_*
+    int getType(int columnIndex);
+
+    boolean isNull(int columnIndex);
+
+    String getString(int columnIndex);
+
+    int getInt(int columnIndex);
+
+    long getLong(int columnIndex);
+
+    double getDouble(int columnIndex);
+
+    byte[] getBlob(int columnIndex);
+
+    /**
+     * 当前窗口的第一行，变化说明游标重新填充了一次窗口（比如Android的CursorWindow），DaoMetrics用来统计填充次数
+     * @return 后端没有窗口的概念时为-1
+     */
+    int getWindowStartPosition();
+
+    boolean isClosed();
+
+    @Override
+    void close();
+}
@@ -0,0 +1,113 @@
+package com.sty.ne.db.storage;
+
+/**
+ * 把所有调用转给被包装的游标，子类只需要覆盖要改变的方法
+ * @Author: tian
+ * @UpdateDate: 2020/12/14 8:30 PM
+ */
+public class CursorWrapper implements Cursor {
+    protected final Cursor cursor;
+
+    public CursorWrapper(Cursor cursor) {
+        this.cursor = cursor;
+    }
+
+    public Cursor getWrappedCursor() {
+        return cursor;
+    }
+
+    @Override
+    public int getCount() {
+        return cursor.getCount();
+    }
+
+    @Override
+    public int getPosition() {
+        return cursor.getPosition();
+    }
+
+    @Override
+    public boolean moveToPosition(int position) {
+        return cursor.moveToPosition(position);
+    }
+
+    @Override
+    public boolean moveToFirst() {
+        return cursor.moveToFirst();
+    }
+
+    @Override
+    public boolean moveToNext() {
+        return cursor.moveToNext();
+    }
+
+    @Override
+    public boolean moveToPrevious() {
+        return cursor.moveToPrevious();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return cursor.getColumnCount();
+    }
+
+    @Override
+    public int getColumnIndex(String columnName) {
+        return cursor.getColumnIndex(columnName);
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return cursor.getColumnNames();
+    }
+
+    @Override
+    public int getType(int columnIndex) {
+        return cursor.getType(columnIndex);
+    }
+
+    @Override
+    public boolean isNull(int columnIndex) {
+        return cursor.isNull(columnIndex);
+    }
+
+    @Override
+    public String getString(int columnIndex) {
+        return cursor.getString(columnIndex);
+    }
+
+    @Override
+    public int getInt(int columnIndex) {
+        return cursor.getInt(columnIndex);
+    }
+
+    @Override
+    public long getLong(int columnIndex) {
+        return cursor.getLong(columnIndex);
+    }
+
+    @Override
+    public double getDouble(int columnIndex) {
+        return cursor.getDouble(columnIndex);
+    }
+
+    @Override
+    public byte[] getBlob(int columnIndex) {
+        return cursor.getBlob(columnIndex);
+    }
+
+    @Override
+    public int getWindowStartPosition() {
+        return cursor.getWindowStartPosition();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return cursor.isClosed();
+    }
+
+    @Override
+    public void close() {
+        cursor.close();
+    }
+}
@@ -0,0 +1,50 @@
+package com.sty.ne.db.storage;
+
+/**
+ * 一个打开的数据库连接，由Storage.open创建，线程安全
+ * SchemaMetadata、QueryCache按对象区分数据库，同一个文件的同一个连接应该只有一个Database对象
+ * @Author: tian
+ * @UpdateDate: 2020/12/14 8:30 PM
+ */
+public interface Database extends Transaction {
+    String getPath();
+
+    boolean isOpen();
+
+    boolean isReadOnly();
+
+    void close();
+
+    void execSQL(String sql);
+
+    /**
+     * bindArgs按类型绑定：整数、浮点数、byte[]、null，其它的按toString绑定为字符串
+     */
+    void execSQL(String sql, Object[] bindArgs);
+
+    //编译好的语句可以重复绑定、执行，用完必须close
+    Statement compileStatement(String sql);
+
+    /**
+     * bindArgs和execSQL一样按类型绑定，传入String[]时都按字符串绑定
+     * 返回的游标用完必须close
+     */
+    Cursor rawQuery(String sql, Object[] bindArgs);
+
+    /**
+     * 查询结果第一行第一列的整数，bindArgs按类型绑定
+     * @throws StorageException 没有结果时
+     */
+    long longForQuery(String sql, Object[] bindArgs);
+
+    //PRAGMA user_version
+    int getVersion();
+
+    void setVersion(int version);
+
+    /**
+     * 打开WAL，之后同一个文件上的只读连接和写连接互不阻塞
+     * @return 内存数据库、只读连接等不支持时为false
+     */
+    boolean enableWriteAheadLogging();
+}
@@ -0,0 +1,39 @@
+package com.sty.ne.db.storage;
+
+/**
+ * 编译好的SQL语句，参数从1开始编号；绑定的参数在执行之后保留，直到clearBindings
+ * 一个语句同一时间只能被一个线程使用
+ * @Author: tian
+ * @UpdateDate: 2020/12/14 8:30 PM
+ */
+public interface Statement {
+    void bindNull(int index);
+
+    void bindLong(int index, long value);
+
+    void bindDouble(int index, double value);
+
+    //value不能为null，null用bindNull
+    void bindString(int index, String value);
+
+    void bindBlob(int index, byte[] value);
+
+    void clearBindings();
+
+    void execute();
+
+    /**
+     * @return 插入的行的rowid，没有插入时为-1
+     */
+    long executeInsert();
+
+    //update/delete影响的行数
+    int executeUpdateDelete();
+
+    /**
+     * @throws StorageException 没有结果时
+     */
+    long simpleQueryForLong();
+
+    void close();
+}
@@ -0,0 +1,19 @@
+package com.sty.ne.db.storage;
+
+/**
+ * 存储后端：DAO层只通过Database、Statement、Cursor访问数据库，不直接依赖android.database
+ * Android上是AndroidStorage（SQLiteDatabase），JVM上是JdbcStorage（sqlite-jdbc），
+ * 两者通过同一套一致性测试（StorageConformanceTest）
+ * @Author: tian
+ * @UpdateDate: 2020/12/14 8:30 PM
+ */
+public interface Storage {
+    /**
+     * 打开数据库文件，readOnly为false时文件不存在则创建
+     * @throws StorageException 打开失败
+     */
+    Database open(String path, boolean readOnly);
+
+    //后端名称，用于日志和基准测试的结果
+    String getName();
+}
@@ -0,0 +1,16 @@
+package com.sty.ne.db.storage;
+
+/**
+ * 后端执行SQL出错，原始异常（android.database.SQLException、java.sql.SQLException）作为cause
+ * @Author: tian
+ * @UpdateDate: 2020/12/14 8:30 PM
+ */
+public class StorageException extends RuntimeException {
+    public StorageException(String message) {
+        super(message);
+    }
+
+    public StorageException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,53 @@
+package com.sty.ne.db.storage;
+
+/**
+ * 默认的存储后端，BaseDaoFactory、TenantDatabaseManager等通过它打开数据库
+ * 没有调用setDefault时按顺序查找classpath中存在的后端：app中是AndroidStorage，
+ * jvm模块不包含AndroidStorage，找到的是JdbcStorage
+ * @Author: tian
+ * @UpdateDate: 2020/12/14 8:30 PM
+ */
+public final class Storages {
+    private static final String[] BACKENDS = {
+            "com.sty.ne.db.storage.android.AndroidStorage",
+            "com.sty.ne.db.storage.jdbc.JdbcStorage"
+    };
+
+    private static Storage defaultStorage;
+
+    private Storages() {
+    }
+
+    public static synchronized Storage getDefault() {
+        if(defaultStorage == null) {
+            defaultStorage = loadDefault();
+        }
+        return defaultStorage;
+    }
+
+    /**
+     * 指定后端，要在第一次打开数据库之前调用
+     */
+    public static synchronized void setDefault(Storage storage) {
+        if(storage == null) {
+            throw new IllegalArgumentException("storage == null");
+        }
+        defaultStorage = storage;
+    }
+
+    private static Storage loadDefault() {
+        for (String name : BACKENDS) {
+            try {
+                Class<?> storageClass = Class.forName(name, true, Storages.class.getClassLoader());
+                return (Storage) storageClass.newInstance();
+            } catch (ClassNotFoundException e) {
+                //没有打包这个后端
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("create " + name + " failed", e);
+            } catch (InstantiationException e) {
+                throw new IllegalStateException("create " + name + " failed", e);
+            }
+        }
+        throw new IllegalStateException("no storage backend on the classpath");
+    }
+}
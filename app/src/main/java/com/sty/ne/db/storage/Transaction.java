@@ -0,0 +1,27 @@
+package com.sty.ne.db.storage;
+
+/**
+ * 事务：和SQLiteDatabase一样可以嵌套，最外层endTransaction时才提交，
+ * 任何一层没有调用setTransactionSuccessful时整个事务回滚
+ * 事务属于开始它的线程，其它线程在同一个连接上的操作等待事务结束
+ *
+ * database.beginTransaction();
+ * try {
+ *     ...
+ *     database.setTransactionSuccessful();
+ * } finally {
+ *     database.endTransaction();
+ * }
+ * @Author: tian
+ * @UpdateDate: 2020/12/14 8:30 PM
+ */
+public interface Transaction {
+    void beginTransaction();
+
+    void setTransactionSuccessful();
+
+    void endTransaction();
+
+    //当前线程是否在事务中
+    boolean inTransaction();
+}
@@ -0,0 +1,142 @@
+package com.sty.ne.db.storage.android;
+
+import android.database.AbstractWindowedCursor;
+import android.database.CursorWindow;
+import android.database.SQLException;
+
+import com.sty.ne.db.storage.Cursor;
+
+/**
+ * android.database.Cursor的包装；移动游标时可能执行查询、填充CursorWindow，这些操作转换异常
+ * @Author: tian
+ * @UpdateDate: 2020/12/14 8:30 PM
+ */
+class AndroidCursor implements Cursor {
+    private final android.database.Cursor cursor;
+
+    AndroidCursor(android.database.Cursor cursor) {
+        this.cursor = cursor;
+    }
+
+    @Override
+    public int getCount() {
+        try {
+            return cursor.getCount();
+        } catch (SQLException e) {
+            throw AndroidStorage.convert(e);
+        }
+    }
+
+    @Override
+    public int getPosition() {
+        return cursor.getPosition();
+    }
+
+    @Override
+    public boolean moveToPosition(int position) {
+        try {
+            return cursor.moveToPosition(position);
+        } catch (SQLException e) {
+            throw AndroidStorage.convert(e);
+        }
+    }
+
+    @Override
+    public boolean moveToFirst() {
+        try {
+            return cursor.moveToFirst();
+        } catch (SQLException e) {
+            throw AndroidStorage.convert(e);
+        }
+    }
+
+    @Override
+    public boolean moveToNext() {
+        try {
+            return cursor.moveToNext();
+        } catch (SQLException e) {
+            throw AndroidStorage.convert(e);
+        }
+    }
+
+    @Override
+    public boolean moveToPrevious() {
+        try {
+            return cursor.moveToPrevious();
+        } catch (SQLException e) {
+            throw AndroidStorage.convert(e);
+        }
+    }
+
+    @Override
+    public int getColumnCount() {
+        return cursor.getColumnCount();
+    }
+
+    @Override
+    public int getColumnIndex(String columnName) {
+        return cursor.getColumnIndex(columnName);
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return cursor.getColumnNames();
+    }
+
+    //FIELD_TYPE_*的取值和android.database.Cursor相同
+    @Override
+    public int getType(int columnIndex) {
+        return cursor.getType(columnIndex);
+    }
+
+    @Override
+    public boolean isNull(int columnIndex) {
+        return cursor.isNull(columnIndex);
+    }
+
+    @Override
+    public String getString(int columnIndex) {
+        return cursor.getString(columnIndex);
+    }
+
+    @Override
+    public int getInt(int columnIndex) {
+        return cursor.getInt(columnIndex);
+    }
+
+    @Override
+    public long getLong(int columnIndex) {
+        return cursor.getLong(columnIndex);
+    }
+
+    @Override
+    public double getDouble(int columnIndex) {
+        return cursor.getDouble(columnIndex);
+    }
+
+    @Override
+    public byte[] getBlob(int columnIndex) {
+        return cursor.getBlob(columnIndex);
+    }
+
+    @Override
+    public int getWindowStartPosition() {
+        if(cursor instanceof AbstractWindowedCursor) {
+            CursorWindow window = ((AbstractWindowedCursor) cursor).getWindow();
+            if(window != null) {
+                return window.getStartPosition();
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public boolean isClosed() {
+        return cursor.isClosed();
+    }
+
+    @Override
+    public void close() {
+        cursor.close();
+    }
+}
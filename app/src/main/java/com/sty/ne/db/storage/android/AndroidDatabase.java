@@ -0,0 +1,180 @@
+package com.sty.ne.db.storage.android;
+
+import android.database.DatabaseUtils;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteCursor;
+import android.database.sqlite.SQLiteCursorDriver;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQuery;
+import android.database.sqlite.SQLiteStatement;
+
+import com.sty.ne.db.storage.Cursor;
+import com.sty.ne.db.storage.Database;
+import com.sty.ne.db.storage.Statement;
+
+/**
+ * SQLiteDatabase的包装，android.database.SQLException转换为StorageException
+ * @Author: tian
+ * @UpdateDate: 2020/12/14 8:30 PM
+ */
+class AndroidDatabase implements Database {
+    private final SQLiteDatabase database;
+
+    AndroidDatabase(SQLiteDatabase database) {
+        this.database = database;
+    }
+
+    @Override
+    public String getPath() {
+        return database.getPath();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return database.isOpen();
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return database.isReadOnly();
+    }
+
+    @Override
+    public void close() {
+        database.close();
+    }
+
+    @Override
+    public void beginTransaction() {
+        try {
+            database.beginTransaction();
+        } catch (SQLException e) {
+            throw AndroidStorage.convert(e);
+        }
+    }
+
+    @Override
+    public void setTransactionSuccessful() {
+        database.setTransactionSuccessful();
+    }
+
+    @Override
+    public void endTransaction() {
+        try {
+            database.endTransaction();
+        } catch (SQLException e) {
+            throw AndroidStorage.convert(e);
+        }
+    }
+
+    @Override
+    public boolean inTransaction() {
+        return database.inTransaction();
+    }
+
+    @Override
+    public void execSQL(String sql) {
+        try {
+            database.execSQL(sql);
+        } catch (SQLException e) {
+            throw AndroidStorage.convert(e);
+        }
+    }
+
+    @Override
+    public void execSQL(String sql, Object[] bindArgs) {
+        try {
+            database.execSQL(sql, bindArgs);
+        } catch (SQLException e) {
+            throw AndroidStorage.convert(e);
+        }
+    }
+
+    @Override
+    public Statement compileStatement(String sql) {
+        try {
+            return new AndroidStatement(database.compileStatement(sql));
+        } catch (SQLException e) {
+            throw AndroidStorage.convert(e);
+        }
+    }
+
+    @Override
+    public Cursor rawQuery(String sql, Object[] bindArgs) {
+        try {
+            if(bindArgs == null || bindArgs instanceof String[]) {
+                return new AndroidCursor(database.rawQuery(sql, (String[]) bindArgs));
+            }
+            //rawQuery只能绑定字符串，在创建游标之前由factory按类型绑定
+            return new AndroidCursor(database.rawQueryWithFactory(new TypedCursorFactory(bindArgs), sql, null, null));
+        } catch (SQLException e) {
+            throw AndroidStorage.convert(e);
+        }
+    }
+
+    @Override
+    public long longForQuery(String sql, Object[] bindArgs) {
+        try {
+            if(bindArgs == null || bindArgs instanceof String[]) {
+                return DatabaseUtils.longForQuery(database, sql, (String[]) bindArgs);
+            }
+            SQLiteStatement statement = database.compileStatement(sql);
+            try {
+                for (int i = 0; i < bindArgs.length; i++) {
+                    DatabaseUtils.bindObjectToProgram(statement, i + 1, bindArgs[i]);
+                }
+                return statement.simpleQueryForLong();
+            } finally {
+                statement.close();
+            }
+        } catch (SQLException e) {
+            throw AndroidStorage.convert(e);
+        }
+    }
+
+    @Override
+    public int getVersion() {
+        try {
+            return database.getVersion();
+        } catch (SQLException e) {
+            throw AndroidStorage.convert(e);
+        }
+    }
+
+    @Override
+    public void setVersion(int version) {
+        try {
+            database.setVersion(version);
+        } catch (SQLException e) {
+            throw AndroidStorage.convert(e);
+        }
+    }
+
+    @Override
+    public boolean enableWriteAheadLogging() {
+        return database.enableWriteAheadLogging();
+    }
+
+    @Override
+    public String toString() {
+        return "AndroidDatabase: " + database.getPath();
+    }
+
+    //查询编译之后、执行之前按类型绑定参数：整数、浮点数、byte[]、null，其它的按toString绑定
+    private static class TypedCursorFactory implements SQLiteDatabase.CursorFactory {
+        private final Object[] bindArgs;
+
+        TypedCursorFactory(Object[] bindArgs) {
+            this.bindArgs = bindArgs;
+        }
+
+        @Override
+        public android.database.Cursor newCursor(SQLiteDatabase db, SQLiteCursorDriver masterQuery,
+                                                 String editTable, SQLiteQuery query) {
+            for (int i = 0; i < bindArgs.length; i++) {
+                DatabaseUtils.bindObjectToProgram(query, i + 1, bindArgs[i]);
+            }
+            return new SQLiteCursor(masterQuery, editTable, query);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.sty.ne.db.storage.android;
+
+import android.database.SQLException;
+import android.database.sqlite.SQLiteStatement;
+
+import com.sty.ne.db.storage.Statement;
+
+/**
+ * SQLiteStatement的包装，绑定参数不会出错，只在执行时转换异常
+ * @Author: tian
+ * @UpdateDate: 2020/12/14 8:30 PM
+ */
+class AndroidStatement implements Statement {
+    private final SQLiteStatement statement;
+
+    AndroidStatement(SQLiteStatement statement) {
+        this.statement = statement;
+    }
+
+    @Override
+    public void bindNull(int index) {
+        statement.bindNull(index);
+    }
+
+    @Override
+    public void bindLong(int index, long value) {
+        statement.bindLong(index, value);
+    }
+
+    @Override
+    public void bindDouble(int index, double value) {
+        statement.bindDouble(index, value);
+    }
+
+    @Override
+    public void bindString(int index, String value) {
+        statement.bindString(index, value);
+    }
+
+    @Override
+    public void bindBlob(int index, byte[] value) {
+        statement.bindBlob(index, value);
+    }
+
+    @Override
+    public void clearBindings() {
+        statement.clearBindings();
+    }
+
+    @Override
+    public void execute() {
+        try {
+            statement.execute();
+        } catch (SQLException e) {
+            throw AndroidStorage.convert(e);
+        }
+    }
+
+    @Override
+    public long executeInsert() {
+        try {
+            return statement.executeInsert();
+        } catch (SQLException e) {
+            throw AndroidStorage.convert(e);
+        }
+    }
+
+    @Override
+    public int executeUpdateDelete() {
+        try {
+            return statement.executeUpdateDelete();
+        } catch (SQLException e) {
+            throw AndroidStorage.convert(e);
+        }
+    }
+
+    @Override
+    public long simpleQueryForLong() {
+        try {
+            return statement.simpleQueryForLong();
+        } catch (SQLException e) {
+            throw AndroidStorage.convert(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        statement.close();
+    }
+
+    @Override
+    public String toString() {
+        return statement.toString();
+    }
+}
@@ -0,0 +1,49 @@
+package com.sty.ne.db.storage.android;
+
+import android.database.SQLException;
+import android.database.sqlite.SQLiteConstraintException;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.sty.ne.db.storage.ConstraintException;
+import com.sty.ne.db.storage.Database;
+import com.sty.ne.db.storage.Storage;
+import com.sty.ne.db.storage.StorageException;
+
+/**
+ * 基于android.database.sqlite的存储后端，App中的默认后端
+ * @Author: tian
+ * @UpdateDate: 2020/12/14 8:30 PM
+ */
+public class AndroidStorage implements Storage {
+    public static final String NAME = "android";
+
+    @Override
+    public Database open(String path, boolean readOnly) {
+        try {
+            return new AndroidDatabase(SQLiteDatabase.openDatabase(path, null,
+                    readOnly ? SQLiteDatabase.OPEN_READONLY : SQLiteDatabase.CREATE_IF_NECESSARY));
+        } catch (SQLException e) {
+            throw convert(e);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    /**
+     * 包装一个已经打开的SQLiteDatabase（比如测试中用Context.openOrCreateDatabase打开的），
+     * 同一个数据库要一直使用同一个包装对象
+     */
+    public static Database wrap(SQLiteDatabase database) {
+        return new AndroidDatabase(database);
+    }
+
+    static StorageException convert(SQLException e) {
+        if(e instanceof SQLiteConstraintException) {
+            return new ConstraintException(e.getMessage(), e);
+        }
+        return new StorageException(e.getMessage(), e);
+    }
+}
@@ -1,46 +1,122 @@
 package com.sty.ne.db.subdb;
 
-import android.database.sqlite.SQLiteDatabase;
-
 import com.sty.ne.db.db.BaseDao;
 import com.sty.ne.db.db.BaseDaoFactory;
+import com.sty.ne.db.db.ConnectionManager;
+import com.sty.ne.db.db.DaoRegistry;
+import com.sty.ne.db.storage.Database;
+
+import java.util.IdentityHashMap;
 
 /**
+ * 当前用户分库的DAO，分库的打开和关闭由TenantDatabaseManager管理，不打开主库
+ *
+ * DAO只能在占住分库期间使用，否则分库可能被LRU关闭：
+ * BaseDaoSubFactory.Lease lease = BaseDaoSubFactory.getInstance().acquire();
+ * try {
+ *     lease.getBaseDao(PhotoDao.class, Photo.class).insert(photo);
+ * } finally {
+ *     lease.release();
+ * }
  * @Author: tian
- * @UpdateDate: 2020/11/23 10:14 PM
+ * @UpdateDate: 2020/12/19 10:00 PM
  */
 public class BaseDaoSubFactory extends BaseDaoFactory {
-    //定义一个用来实现分库的数据库实现
-    protected SQLiteDatabase subSqLiteDatabase;
+    private final TenantDatabaseManager tenantManager = TenantDatabaseManager.getInstance();
+    //每个打开的分库一个注册表，DAO和创建它的数据库绑定，数据库关闭时一起丢弃
+    private final IdentityHashMap<Database, DaoRegistry> registries = new IdentityHashMap<>();
     private static class LazyHolder {
         private static BaseDaoSubFactory instance = new BaseDaoSubFactory();
     }
 
     private BaseDaoSubFactory() {
         super();
+        tenantManager.addOnInvalidateListener(new TenantDatabaseManager.OnInvalidateListener() {
+            @Override
+            public void onInvalidate(Database database) {
+                synchronized (registries) {
+                    registries.remove(database);
+                }
+            }
+        });
     }
 
     public static BaseDaoSubFactory getInstance() {
         return LazyHolder.instance;
     }
 
-    //生产BaseDao对象
+    /**
+     * 占住当前用户的分库，用完必须调用Lease.release
+     * @throws IllegalStateException 没有登录用户
+     */
+    public Lease acquire() {
+        String path = tenantManager.getCurrentPath();
+        if(path.isEmpty()) {
+            throw new IllegalStateException("no user logged in, no private database to open");
+        }
+        return new Lease(path, tenantManager.acquire(path));
+    }
+
+    //分库的DAO不能脱离Lease使用，通过acquire().getBaseDao获取
+    @Override
     public <T extends BaseDao<M>, M> T getBaseDao(Class<T> daoClass, Class<M> entityClass) {
-        BaseDao baseDao = map.get(PrivateDatabaseEnums.database.getValue());
-        if(baseDao != null) {
-            return (T) baseDao;
+        throw new UnsupportedOperationException("use BaseDaoSubFactory.acquire().getBaseDao() for private databases");
+    }
+
+    //分库没有读写分离的连接
+    @Override
+    public ConnectionManager getConnectionManager() {
+        throw new UnsupportedOperationException("private databases are managed by TenantDatabaseManager");
+    }
+
+    private DaoRegistry registryOf(Database database) {
+        synchronized (registries) {
+            DaoRegistry registry = registries.get(database);
+            if(registry == null) {
+                registry = new DaoRegistry();
+                registries.put(database, registry);
+            }
+            return registry;
         }
-        subSqLiteDatabase = SQLiteDatabase.openOrCreateDatabase(PrivateDatabaseEnums.database.getValue(), null);
-        try {
-            //baseDao = BaseDao.class.newInstance();
-            baseDao = daoClass.newInstance();
-            baseDao.init(subSqLiteDatabase, entityClass);
-            map.put(PrivateDatabaseEnums.database.getValue(), baseDao);
-        } catch (IllegalAccessException e) {
-            e.printStackTrace();
-        } catch (InstantiationException e) {
-            e.printStackTrace();
+    }
+
+    /**
+     * 占住的一个分库，release之前不会被关闭；在它上面取得的DAO只能在release之前使用
+     * 不是线程安全的，在一个线程中使用
+     */
+    public class Lease {
+        private final String path;
+        private final Database database;
+        private boolean released;
+
+        private Lease(String path, Database database) {
+            this.path = path;
+            this.database = database;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        //同一个分库上的DAO只创建、init一次
+        public <T extends BaseDao<M>, M> T getBaseDao(Class<T> daoClass, Class<M> entityClass) {
+            if(released) {
+                throw new IllegalStateException("lease of " + path + " already released");
+            }
+            return registryOf(database).get(path, daoClass, entityClass, new DaoRegistry.DaoInitializer() {
+                @Override
+                public <E> boolean init(BaseDao<E> dao, Class<E> entityClass) {
+                    return dao.init(database, entityClass);
+                }
+            });
+        }
+
+        public void release() {
+            if(released) {
+                return;
+            }
+            released = true;
+            tenantManager.release(database);
         }
-        return (T) baseDao;
     }
 }
@@ -1,6 +1,7 @@
 package com.sty.ne.db.subdb;
 
 import com.sty.ne.db.db.BaseDao;
+import com.sty.ne.db.model.Photo;
 
 import java.util.List;
 
@@ -8,9 +9,9 @@ import java.util.List;
  * @Author: tian
  * @UpdateDate: 2020/11/23 10:43 PM
  */
-public class PhotoDao extends BaseDao {
+public class PhotoDao extends BaseDao<Photo> {
 
-    public List getPhotoFromTwoTables() {
+    public List<Photo> getPhotoFromTwoTables() {
         return null;
     }
 }
@@ -1,11 +1,5 @@
 package com.sty.ne.db.subdb;
 
-import com.sty.ne.db.db.BaseDaoFactory;
-import com.sty.ne.db.db.UserDao;
-import com.sty.ne.db.model.User;
-
-import java.io.File;
-
 /**
  * @Author: tian
  * @UpdateDate: 2020/11/23 10:22 PM
@@ -18,18 +12,8 @@ public enum PrivateDatabaseEnums {
 
     }
 
+    //当前用户的数据库路径，由TenantDatabaseManager缓存，切换用户时更新
     public String getValue() {
-        UserDao userDao = BaseDaoFactory.getInstance().getBaseDao(UserDao.class, User.class);
-        if(userDao != null) {
-            User currentUser = userDao.getCurrentUser();
-            if(currentUser != null) {
-                File file = new File("data/data/com.sty.ne.db/");
-                if(!file.exists()) {
-                    file.mkdirs();
-                }
-                return file.getAbsolutePath() + "/u_" + currentUser.getId() + "_private.db";
-            }
-        }
-        return "";
+        return TenantDatabaseManager.getInstance().getCurrentPath();
     }
 }
@@ -0,0 +1,256 @@
+package com.sty.ne.db.subdb;
+
+import android.util.Log;
+
+import com.sty.ne.db.db.BaseDaoFactory;
+import com.sty.ne.db.db.UserDao;
+import com.sty.ne.db.model.User;
+import com.sty.ne.db.storage.Database;
+import com.sty.ne.db.storage.Storage;
+import com.sty.ne.db.storage.Storages;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 每个用户一个私有数据库（分库）的管理
+ *
+ * 当前用户的数据库路径只解析一次，登录切换用户时通过switchTenant更新，不用每次都查询当前用户
+ * 打开的数据库按LRU保留最多maxOpen个，超出时关闭最久没有使用的；
+ * 正在使用（acquire之后还没有release）的数据库等最后一个使用者release之后再关闭
+ * 在数据库上创建的DAO只能在acquire和release之间使用，数据库真正关闭时通知OnInvalidateListener丢弃这些DAO
+ * @Author: tian
+ * @UpdateDate: 2020/12/19 10:00 PM
+ */
+public class TenantDatabaseManager {
+    private static final String TAG = TenantDatabaseManager.class.getSimpleName();
+    public static final int DEFAULT_MAX_OPEN = 4;
+    private static final String DIRECTORY = "data/data/com.sty.ne.db/";
+
+    private static class LazyHolder {
+        private static TenantDatabaseManager instance = new TenantDatabaseManager(DEFAULT_MAX_OPEN);
+    }
+
+    /**
+     * 在数据库上创建的DAO不能再使用时回调，用来丢弃这些DAO
+     * 数据库关闭之前调用，这时已经没有使用者，之后也不会再被acquire；
+     * 或者表结构在DAO之外被修改之后通过invalidate调用
+     */
+    public interface OnInvalidateListener {
+        void onInvalidate(Database database);
+    }
+
+    private final Storage storage;
+    private final int maxOpen;
+    //分库所在的目录
+    private final String directory;
+    //key:路径，按访问顺序排列
+    private final LinkedHashMap<String, Handle> openHandles = new LinkedHashMap<>(16, 0.75f, true);
+    //所有还没有关闭的数据库，包括已经被淘汰、等待release的
+    private final IdentityHashMap<Database, Handle> liveHandles = new IdentityHashMap<>();
+    private final CopyOnWriteArrayList<OnInvalidateListener> listeners = new CopyOnWriteArrayList<>();
+    //当前用户的数据库路径，还没有查询或者没有登录用户时为null
+    private volatile String currentPath;
+    private volatile boolean directoryReady;
+    private long evictionCount;
+
+    public TenantDatabaseManager(int maxOpen) {
+        this(Storages.getDefault(), maxOpen);
+    }
+
+    public TenantDatabaseManager(Storage storage, int maxOpen) {
+        this(storage, maxOpen, DIRECTORY);
+    }
+
+    public TenantDatabaseManager(Storage storage, int maxOpen, String directory) {
+        if(maxOpen <= 0) {
+            throw new IllegalArgumentException("maxOpen <= 0");
+        }
+        this.storage = storage;
+        this.maxOpen = maxOpen;
+        this.directory = directory;
+    }
+
+    public static TenantDatabaseManager getInstance() {
+        return LazyHolder.instance;
+    }
+
+    public void addOnInvalidateListener(OnInvalidateListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * 当前登录用户的数据库路径，第一次调用时查询当前用户，之后直接返回
+     * @return 没有登录用户时为""，不缓存，下次调用时重新查询
+     */
+    public String getCurrentPath() {
+        String path = currentPath;
+        if(path == null) {
+            UserDao userDao = BaseDaoFactory.getInstance().getBaseDao(UserDao.class, User.class);
+            Integer userId = userDao.getCurrentUserId();
+            if(userId == null) {
+                return "";
+            }
+            path = getPath(userId);
+            currentPath = path;
+        }
+        return path;
+    }
+
+    /**
+     * 登录之后切换到新用户的数据库，之前用户的数据库留在LRU中，超出maxOpen时关闭
+     * @param userId 为null时表示没有登录用户
+     */
+    public void switchTenant(Integer userId) {
+        currentPath = userId != null ? getPath(userId) : null;
+        Log.i(TAG, "switch tenant to " + currentPath);
+    }
+
+    public String getPath(Integer userId) {
+        if(userId == null) {
+            return "";
+        }
+        File directory = new File(this.directory);
+        if(!directoryReady) {
+            if(!directory.exists()) {
+                directory.mkdirs();
+            }
+            directoryReady = true;
+        }
+        return directory.getAbsolutePath() + "/u_" + userId + "_private.db";
+    }
+
+    /**
+     * 取得数据库并标记为正在使用，用完必须调用release，在此期间不会被关闭
+     */
+    public Database acquire(String path) {
+        if(path.isEmpty()) {
+            //getPath(null)，没有登录用户
+            throw new IllegalArgumentException("empty database path, no user logged in");
+        }
+        List<Handle> evicted = new ArrayList<>();
+        Handle handle;
+        synchronized (this) {
+            handle = openHandles.get(path);
+            if(handle == null) {
+                handle = new Handle(path, storage.open(path, false));
+                openHandles.put(path, handle);
+                liveHandles.put(handle.database, handle);
+            }
+            handle.inFlight++;
+            evict(evicted);
+        }
+        closeEvicted(evicted);
+        return handle.database;
+    }
+
+    public void release(Database database) {
+        Handle handle;
+        synchronized (this) {
+            handle = liveHandles.get(database);
+            if(handle == null || handle.inFlight == 0) {
+                throw new IllegalStateException("release without acquire: " + database);
+            }
+            handle.inFlight--;
+            if(!handle.evicted || handle.inFlight > 0) {
+                return;
+            }
+            liveHandles.remove(database);
+        }
+        close(handle);
+    }
+
+    /**
+     * 表结构在DAO之外被修改之后调用（比如执行了升级脚本），丢弃在这个数据库上创建的DAO，之后获取时重新初始化
+     * 调用者需要占住这个数据库
+     */
+    public void invalidate(Database database) {
+        for (OnInvalidateListener listener : listeners) {
+            listener.onInvalidate(database);
+        }
+    }
+
+    //淘汰超出maxOpen的数据库，放入evicted，在锁外关闭
+    private void evict(List<Handle> evicted) {
+        Iterator<Map.Entry<String, Handle>> iterator = openHandles.entrySet().iterator();
+        while (openHandles.size() > maxOpen && iterator.hasNext()) {
+            Handle handle = iterator.next().getValue();
+            iterator.remove();
+            markEvicted(handle, evicted);
+            evictionCount++;
+        }
+    }
+
+    private void markEvicted(Handle handle, List<Handle> evicted) {
+        handle.evicted = true;
+        handle.closeNow = handle.inFlight == 0;
+        if(handle.closeNow) {
+            liveHandles.remove(handle.database);
+        }
+        evicted.add(handle);
+    }
+
+    //没有在使用的立即关闭，正在使用的等最后一个release
+    private void closeEvicted(List<Handle> evicted) {
+        for (Handle handle : evicted) {
+            if(handle.closeNow) {
+                close(handle);
+            }
+        }
+    }
+
+    //已经从liveHandles中移除，不会再被acquire，先丢弃在它上面创建的DAO再关闭
+    private void close(Handle handle) {
+        for (OnInvalidateListener listener : listeners) {
+            listener.onInvalidate(handle.database);
+        }
+        handle.database.close();
+        Log.i(TAG, "close " + handle.path);
+    }
+
+    //关闭所有没有在使用的数据库，正在使用的在release时关闭
+    public void closeAll() {
+        List<Handle> evicted = new ArrayList<>();
+        synchronized (this) {
+            for (Handle handle : openHandles.values()) {
+                markEvicted(handle, evicted);
+            }
+            openHandles.clear();
+        }
+        closeEvicted(evicted);
+    }
+
+    public synchronized int getOpenCount() {
+        return liveHandles.size();
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "TenantDatabaseManager[current=" + currentPath + ",open=" + openHandles.keySet()
+                + ",live=" + liveHandles.size() + ",maxOpen=" + maxOpen + ",evictions=" + evictionCount + "]";
+    }
+
+    private static class Handle {
+        private final String path;
+        private final Database database;
+        private int inFlight;
+        private boolean evicted;
+        //淘汰时没有在使用，可以立即关闭
+        private boolean closeNow;
+
+        Handle(String path, Database database) {
+            this.path = path;
+            this.database = database;
+        }
+    }
+}
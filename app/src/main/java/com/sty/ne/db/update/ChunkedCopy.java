@@ -0,0 +1,78 @@
+package com.sty.ne.db.update;
+
+import com.sty.ne.db.storage.Database;
+import com.sty.ne.db.storage.Statement;
+
+/**
+ * 按rowid区间分块复制一张表，用来代替大表上的一条 insert ... select
+ *
+ * 每次只复制rowid在(afterRowid, 下一块的最大rowid]之间的最多chunkRows行，
+ * 调用方把每一块和进度记录放在同一个事务中提交，写锁和日志都只占用一块的大小
+ * <copy_chunked from="bak_tb_photo" to="tb_photo" columns="time, path" chunkRows="2000"/>
+ * @Author: tian
+ * @UpdateDate: 2020/12/11 8:30 PM
+ */
+public class ChunkedCopy {
+    public static final int DEFAULT_CHUNK_ROWS = 2000;
+
+    private final String from;
+    private final String to;
+    //逗号分隔，源表和目标表的列名相同
+    private final String columns;
+    private final int chunkRows;
+
+    public ChunkedCopy(String from, String to, String columns, int chunkRows) {
+        if(from == null || to == null || columns == null) {
+            throw new IllegalArgumentException("copy_chunked needs from, to and columns");
+        }
+        if(chunkRows <= 0) {
+            throw new IllegalArgumentException("chunkRows <= 0");
+        }
+        this.from = from;
+        this.to = to;
+        this.columns = columns;
+        this.chunkRows = chunkRows;
+    }
+
+    /**
+     * 下一块最后一行的rowid，没有剩下的行时返回afterRowid
+     */
+    public long nextChunkEnd(Database database, long afterRowid) {
+        //都是数字，直接拼在语句中，不按字符串绑定
+        return database.longForQuery("select ifnull(max(rowid), " + afterRowid + ") from (select rowid from "
+                + from + " where rowid > " + afterRowid + " order by rowid limit " + chunkRows + ")", null);
+    }
+
+    /**
+     * 复制rowid在(afterRowid, lastRowid]之间的行，在调用方的事务中执行
+     * @return 复制的行数
+     */
+    public int copyRange(Database database, long afterRowid, long lastRowid) {
+        Statement statement = database.compileStatement("insert into " + to + "(" + columns + ") select "
+                + columns + " from " + from + " where rowid > ? and rowid <= ?");
+        try {
+            statement.bindLong(1, afterRowid);
+            statement.bindLong(2, lastRowid);
+            return statement.executeUpdateDelete();
+        } finally {
+            statement.close();
+        }
+    }
+
+    public String getFrom() {
+        return from;
+    }
+
+    public String getTo() {
+        return to;
+    }
+
+    public int getChunkRows() {
+        return chunkRows;
+    }
+
+    @Override
+    public String toString() {
+        return "copy " + from + " -> " + to + " by " + chunkRows;
+    }
+}
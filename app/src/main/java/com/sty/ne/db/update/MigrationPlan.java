@@ -0,0 +1,201 @@
+package com.sty.ne.db.update;
+
+import android.content.Context;
+import android.util.Log;
+
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 编译好的升级计划：从updateXml.xml解析一次，进程内缓存
+ *
+ * 版本号"V003"对应数据库的PRAGMA user_version = 3，目标版本是脚本中最高的versionTo
+ * 每个updateStep是从versionFrom到versionTo的一条边，按广度优先找出从当前版本到目标版本步数最少的一串升级，
+ * 同一个起始版本的结果也缓存下来，所有库共用
+ * @Author: tian
+ * @UpdateDate: 2020/12/10 8:40 PM
+ */
+public class MigrationPlan {
+    private static final String TAG = MigrationPlan.class.getSimpleName();
+    public static final String ASSET_NAME = "updateXml.xml";
+
+    //和已经是目标版本时返回的空列表区分开
+    private static final List<UpdateDb.Statement> NO_PATH = new ArrayList<>(0);
+    private static volatile MigrationPlan instance;
+
+    private final int baseVersion;
+    private final int targetVersion;
+    //key:起始版本
+    private final Map<Integer, List<Edge>> edges = new HashMap<>();
+    //key:起始版本 value:升级到目标版本要执行的语句，没有路径时为NO_PATH
+    private final ConcurrentHashMap<Integer, List<UpdateDb.Statement>> chains = new ConcurrentHashMap<>();
+
+    public MigrationPlan(UpdateXml updateXml) {
+        int target = 0;
+        for (UpdateStep step : updateXml.getUpdateSteps()) {
+            if(step.getVersionFrom() == null || step.getVersionTo() == null) {
+                continue;
+            }
+            int to = parseVersion(step.getVersionTo());
+            List<UpdateDb.Statement> statements = new ArrayList<>();
+            for (UpdateDb updateDb : step.getUpdateDbs()) {
+                statements.addAll(updateDb.getStatements());
+            }
+            for (String from : step.getVersionFrom().split(",")) {
+                int fromVersion = parseVersion(from);
+                List<Edge> list = edges.get(fromVersion);
+                if(list == null) {
+                    list = new ArrayList<>();
+                    edges.put(fromVersion, list);
+                }
+                list.add(new Edge(to, statements));
+            }
+            target = Math.max(target, to);
+        }
+        this.targetVersion = target;
+        this.baseVersion = updateXml.getBaseVersion() == null ? 0 : parseVersion(updateXml.getBaseVersion());
+    }
+
+    /**
+     * 第一次调用时解析assets中的脚本，之后直接返回
+     */
+    public static MigrationPlan get(Context context) throws IOException {
+        MigrationPlan plan = instance;
+        if(plan == null) {
+            synchronized (MigrationPlan.class) {
+                plan = instance;
+                if(plan == null) {
+                    plan = load(context);
+                    instance = plan;
+                }
+            }
+        }
+        return plan;
+    }
+
+    private static MigrationPlan load(Context context) throws IOException {
+        long start = System.nanoTime();
+        InputStream is = context.getAssets().open(ASSET_NAME);
+        try {
+            MigrationPlan plan = new MigrationPlan(UpdateXml.parse(is));
+            Log.i(TAG, "parse " + ASSET_NAME + " " + (System.nanoTime() - start) / 1000 + "us, " + plan);
+            return plan;
+        } catch (XmlPullParserException e) {
+            throw new IOException("bad " + ASSET_NAME, e);
+        } finally {
+            is.close();
+        }
+    }
+
+    //"V003" --> 3
+    public static int parseVersion(String version) {
+        String digits = version.trim();
+        if(digits.length() > 0 && (digits.charAt(0) == 'V' || digits.charAt(0) == 'v')) {
+            digits = digits.substring(1);
+        }
+        return Integer.parseInt(digits);
+    }
+
+    //3 --> "V003"
+    public static String formatVersion(int version) {
+        return String.format("V%03d", version);
+    }
+
+    public int getTargetVersion() {
+        return targetVersion;
+    }
+
+    /**
+     * 数据库中读出的user_version，0表示表是记录版本之前建的，按脚本中的baseVersion处理
+     * 新建的库在建第一张表时就记为SchemaMetadata.SCHEMA_VERSION（见SchemaMetadata.stampNewDatabase），不会走到这里
+     */
+    public int resolveVersion(int userVersion) {
+        return userVersion == 0 ? baseVersion : userVersion;
+    }
+
+    /**
+     * @param fromVersion 当前版本
+     * @return 从fromVersion升级到目标版本要按顺序执行的语句，已经是目标版本时为空；没有路径时为null
+     */
+    public List<UpdateDb.Statement> getChain(int fromVersion) {
+        List<UpdateDb.Statement> chain = chains.get(fromVersion);
+        if(chain == null) {
+            chain = findChain(fromVersion);
+            chains.put(fromVersion, chain == null ? NO_PATH : chain);
+        } else if(chain == NO_PATH) {
+            return null;
+        }
+        return chain;
+    }
+
+    private List<UpdateDb.Statement> findChain(int fromVersion) {
+        if(fromVersion == targetVersion) {
+            return Collections.emptyList();
+        }
+        //key:版本 value:到达这个版本的边
+        HashMap<Integer, Edge> reachedBy = new HashMap<>();
+        HashMap<Integer, Integer> previous = new HashMap<>();
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        queue.add(fromVersion);
+        previous.put(fromVersion, fromVersion);
+        while (!queue.isEmpty()) {
+            int version = queue.poll();
+            List<Edge> list = edges.get(version);
+            if(list == null) {
+                continue;
+            }
+            for (Edge edge : list) {
+                if(previous.containsKey(edge.to)) {
+                    continue;
+                }
+                previous.put(edge.to, version);
+                reachedBy.put(edge.to, edge);
+                if(edge.to == targetVersion) {
+                    return collect(fromVersion, previous, reachedBy);
+                }
+                queue.add(edge.to);
+            }
+        }
+        return null;
+    }
+
+    private List<UpdateDb.Statement> collect(int fromVersion, HashMap<Integer, Integer> previous, HashMap<Integer, Edge> reachedBy) {
+        ArrayList<Edge> path = new ArrayList<>();
+        int version = targetVersion;
+        while (version != fromVersion) {
+            path.add(reachedBy.get(version));
+            version = previous.get(version);
+        }
+        Collections.reverse(path);
+        List<UpdateDb.Statement> statements = new ArrayList<>();
+        for (Edge edge : path) {
+            statements.addAll(edge.statements);
+        }
+        return Collections.unmodifiableList(statements);
+    }
+
+    @Override
+    public String toString() {
+        return "MigrationPlan[base=" + formatVersion(baseVersion) + ",target=" + formatVersion(targetVersion)
+                + ",fromVersions=" + edges.keySet() + "]";
+    }
+
+    private static class Edge {
+        private final int to;
+        private final List<UpdateDb.Statement> statements;
+
+        Edge(int to, List<UpdateDb.Statement> statements) {
+            this.to = to;
+            this.statements = statements;
+        }
+    }
+}
@@ -0,0 +1,417 @@
+package com.sty.ne.db.update;
+
+import android.util.Log;
+
+import com.sty.ne.db.db.BaseDao;
+import com.sty.ne.db.db.BaseDaoFactory;
+import com.sty.ne.db.db.QueryCache;
+import com.sty.ne.db.db.SchemaMetadata;
+import com.sty.ne.db.model.MigrationRecord;
+import com.sty.ne.db.storage.Cursor;
+import com.sty.ne.db.storage.Database;
+import com.sty.ne.db.subdb.TenantDatabaseManager;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 在固定大小的线程池上并行升级所有用户的分库
+ *
+ * 每个库先读PRAGMA user_version，已经是目标版本的什么都不执行；
+ * 否则按MigrationPlan找出的升级链在一个事务中执行所有语句并写入新的user_version；
+ * 升级链中有copy_chunked时分成多个小事务，按rowid分块复制大表，每一块提交时记录进度，进程被杀之后可以接着复制
+ * 提交之后再在主库的tb_migration_log中记一笔，重新执行时按主库的记录跳过，连数据库都不用打开
+ * 中断之后可以接着升级，不会重复执行
+ * 执行过升级语句的库作废查询缓存，并通知TenantDatabaseManager丢弃在它上面创建的DAO
+ * 数据库文件不存在时跳过，单个库失败不影响其它库
+ * @Author: tian
+ * @UpdateDate: 2020/12/19 10:30 PM
+ */
+public class MigrationRunner {
+    private static final String TAG = MigrationRunner.class.getSimpleName();
+    //分块复制的进度，和每一块在同一个事务中提交
+    private static final String PROGRESS_TABLE = "nedb_migration_progress";
+
+    public enum Status {
+        //本次升级完成
+        MIGRATED,
+        //之前已经升级过
+        ALREADY_DONE,
+        //数据库文件不存在
+        MISSING,
+        FAILED
+    }
+
+    //每完成一个库回调一次，在调用run的线程上
+    public interface ProgressListener {
+        void onProgress(int finished, int total, Result result);
+    }
+
+    private final int threads;
+    private final TenantDatabaseManager tenants;
+    //主库中的升级记录，为null时在run中从BaseDaoFactory获取
+    private final BaseDao<MigrationRecord> recordDao;
+
+    /**
+     * @param threads 同时升级的库的个数
+     */
+    public MigrationRunner(int threads) {
+        this(threads, TenantDatabaseManager.getInstance(), null);
+    }
+
+    //指定分库和记录所在的主库，测试时使用
+    MigrationRunner(int threads, TenantDatabaseManager tenants, BaseDao<MigrationRecord> recordDao) {
+        if(threads <= 0) {
+            throw new IllegalArgumentException("threads <= 0");
+        }
+        this.threads = threads;
+        this.tenants = tenants;
+        this.recordDao = recordDao;
+    }
+
+    /**
+     * 阻塞直到所有库处理完，调用的线程被中断时取消还没有开始的库
+     * @param plan 所有库升级到plan的目标版本
+     */
+    public Summary run(List<Integer> userIds, final MigrationPlan plan, ProgressListener listener) {
+        long start = System.nanoTime();
+        final String versionTo = MigrationPlan.formatVersion(plan.getTargetVersion());
+        final BaseDao<MigrationRecord> recordDao = this.recordDao != null ? this.recordDao
+                : BaseDaoFactory.getInstance().getBaseDao(BaseDao.<MigrationRecord>type(), MigrationRecord.class);
+        final Set<String> finished = loadFinished(recordDao, versionTo);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        ExecutorCompletionService<Result> completionService = new ExecutorCompletionService<>(executor);
+        for (final Integer userId : userIds) {
+            completionService.submit(new Callable<Result>() {
+                @Override
+                public Result call() {
+                    return migrate(userId, plan, versionTo, finished, recordDao);
+                }
+            });
+        }
+        executor.shutdown();
+
+        Summary summary = new Summary();
+        try {
+            for (int i = 0; i < userIds.size(); i++) {
+                Result result = completionService.take().get();
+                summary.add(result);
+                if(result.status == Status.FAILED) {
+                    Log.e(TAG, "migrate " + result.path + " failed", result.error);
+                }
+                if(listener != null) {
+                    listener.onProgress(i + 1, userIds.size(), result);
+                }
+            }
+        } catch (InterruptedException e) {
+            //已经开始的库会执行完，没有开始的留到下次
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+            summary.interrupted = true;
+        } catch (ExecutionException e) {
+            //migrate自己处理了所有异常
+            throw new IllegalStateException(e.getCause());
+        }
+        summary.totalNanos = System.nanoTime() - start;
+        Log.i(TAG, summary.toString());
+        return summary;
+    }
+
+    //主库中记录的已经升级到versionTo的库
+    private static Set<String> loadFinished(BaseDao<MigrationRecord> recordDao, String versionTo) {
+        MigrationRecord where = new MigrationRecord();
+        where.setVersionTo(versionTo);
+        Set<String> paths = new HashSet<>();
+        for (MigrationRecord record : recordDao.query(where, new String[]{"path"}, null, null, null)) {
+            paths.add(record.getPath());
+        }
+        return paths;
+    }
+
+    private Result migrate(Integer userId, MigrationPlan plan, String versionTo, Set<String> finished,
+                           BaseDao<MigrationRecord> recordDao) {
+        long start = System.nanoTime();
+        String path = tenants.getPath(userId);
+        if(finished.contains(path)) {
+            return new Result(userId, path, Status.ALREADY_DONE, start, null, null);
+        }
+        if(!new File(path).exists()) {
+            return new Result(userId, path, Status.MISSING, start, null, null);
+        }
+        Database database = tenants.acquire(path);
+        CopyCounter counter = new CopyCounter();
+        Status status = null;
+        try {
+            status = executeSql(database, plan, counter) ? Status.MIGRATED : Status.ALREADY_DONE;
+        } catch (RuntimeException e) {
+            return new Result(userId, path, Status.FAILED, start, e, counter);
+        } finally {
+            //分块复制失败时已经提交了一部分，表结构也可能变了
+            if(status != Status.ALREADY_DONE) {
+                invalidate(database);
+            }
+            tenants.release(database);
+        }
+        Result result = new Result(userId, path, status, start, null, counter);
+        MigrationRecord record = new MigrationRecord(versionTo, path);
+        record.setMillis(result.millis);
+        record.setFinishTime(System.currentTimeMillis());
+        recordDao.upsert(record);
+        return result;
+    }
+
+    /**
+     * 执行升级链并写入新的user_version
+     * 没有分块复制时所有语句在一个事务中执行，出错时回滚
+     * @return 已经是目标版本时为false，除了读版本号什么都不执行
+     */
+    private static boolean executeSql(Database database, MigrationPlan plan, CopyCounter counter) {
+        int version = plan.resolveVersion(database.getVersion());
+        if(version == plan.getTargetVersion()) {
+            return false;
+        }
+        List<UpdateDb.Statement> statements = plan.getChain(version);
+        if(statements == null) {
+            throw new IllegalStateException("no migration path from " + MigrationPlan.formatVersion(version)
+                    + " to " + MigrationPlan.formatVersion(plan.getTargetVersion()));
+        }
+        if(hasChunkedCopy(statements)) {
+            executeChunked(database, plan, MigrationPlan.formatVersion(version) + "->"
+                    + MigrationPlan.formatVersion(plan.getTargetVersion()), statements, counter);
+            return true;
+        }
+        database.beginTransaction();
+        try {
+            for (UpdateDb.Statement statement : statements) {
+                database.execSQL(statement.getSql());
+            }
+            finish(database, plan);
+            database.setTransactionSuccessful();
+            return true;
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    private static boolean hasChunkedCopy(List<UpdateDb.Statement> statements) {
+        for (UpdateDb.Statement statement : statements) {
+            if(statement.getCopy() != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 分多个事务执行：连续的sql语句一个事务，分块复制每一块一个事务，
+     * 每个事务提交时在PROGRESS_TABLE中记下执行到的语句和复制到的rowid，
+     * 进程被杀之后重新执行会从记录的位置接着复制；最后一个事务写入user_version并删除进度
+     */
+    private static void executeChunked(Database database, MigrationPlan plan, String chain,
+                                       List<UpdateDb.Statement> statements, CopyCounter counter) {
+        database.execSQL("create table if not exists " + PROGRESS_TABLE
+                + "(chain TEXT PRIMARY KEY, statement INTEGER, last_rowid INTEGER)");
+        int index = 0;
+        long lastRowid = 0;
+        Cursor cursor = database.rawQuery("select chain, statement, last_rowid from " + PROGRESS_TABLE, null);
+        try {
+            if(cursor.moveToFirst()) {
+                if(!chain.equals(cursor.getString(0))) {
+                    //升级脚本变了，之前执行了一半的升级链无法接着执行
+                    throw new IllegalStateException("unfinished migration " + cursor.getString(0) + ", expected " + chain);
+                }
+                index = cursor.getInt(1);
+                lastRowid = cursor.getLong(2);
+                Log.i(TAG, "resume " + chain + " at statement " + index + ", rowid " + lastRowid);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        while (index < statements.size()) {
+            ChunkedCopy copy = statements.get(index).getCopy();
+            long start = System.nanoTime();
+            database.beginTransaction();
+            try {
+                if(copy == null) {
+                    while (index < statements.size() && statements.get(index).getCopy() == null) {
+                        database.execSQL(statements.get(index).getSql());
+                        index++;
+                    }
+                    lastRowid = 0;
+                } else {
+                    long chunkEnd = copy.nextChunkEnd(database, lastRowid);
+                    if(chunkEnd == lastRowid) {
+                        index++;
+                        lastRowid = 0;
+                    } else {
+                        counter.rows += copy.copyRange(database, lastRowid, chunkEnd);
+                        lastRowid = chunkEnd;
+                    }
+                }
+                if(index == statements.size()) {
+                    database.execSQL("delete from " + PROGRESS_TABLE);
+                    finish(database, plan);
+                } else {
+                    database.execSQL("insert or replace into " + PROGRESS_TABLE + "(chain, statement, last_rowid) values(?,?,?)",
+                            new Object[]{chain, index, lastRowid});
+                }
+                database.setTransactionSuccessful();
+            } finally {
+                database.endTransaction();
+            }
+            if(copy != null) {
+                counter.nanos += System.nanoTime() - start;
+            }
+        }
+    }
+
+    //缓存的查询结果和DAO读取的列名都是升级之前的
+    private void invalidate(Database database) {
+        QueryCache.forDatabase(database).invalidateAll();
+        tenants.invalidate(database);
+    }
+
+    //和最后的升级语句在同一个事务中执行
+    private static void finish(Database database, MigrationPlan plan) {
+        database.setVersion(plan.getTargetVersion());
+        //表结构变了，下次初始化DAO时重新建表、读取列名
+        SchemaMetadata.clear(database);
+    }
+
+    //分块复制的行数和耗时（包括每一块的提交）
+    private static class CopyCounter {
+        private long rows;
+        private long nanos;
+    }
+
+    private static long rowsPerSecond(long rows, long nanos) {
+        return nanos == 0 ? 0 : rows * 1000000000L / nanos;
+    }
+
+    //一个库的升级结果
+    public static class Result {
+        private final Integer userId;
+        private final String path;
+        private final Status status;
+        private final long millis;
+        private final Throwable error;
+        private final long copiedRows;
+        private final long copyNanos;
+
+        Result(Integer userId, String path, Status status, long startNanos, Throwable error, CopyCounter counter) {
+            this.userId = userId;
+            this.path = path;
+            this.status = status;
+            this.millis = (System.nanoTime() - startNanos) / 1000000;
+            this.error = error;
+            this.copiedRows = counter != null ? counter.rows : 0;
+            this.copyNanos = counter != null ? counter.nanos : 0;
+        }
+
+        public Integer getUserId() {
+            return userId;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+
+        public Throwable getError() {
+            return error;
+        }
+
+        //分块复制的行数，失败时是失败之前已经提交的行数
+        public long getCopiedRows() {
+            return copiedRows;
+        }
+
+        public long getCopyRowsPerSecond() {
+            return rowsPerSecond(copiedRows, copyNanos);
+        }
+
+        @Override
+        public String toString() {
+            return path + " " + status + " " + millis + "ms"
+                    + (copiedRows > 0 ? " copied " + copiedRows + " rows " + getCopyRowsPerSecond() + " rows/s" : "")
+                    + (error != null ? " " + error : "");
+        }
+    }
+
+    public static class Summary {
+        private final List<Result> results = new ArrayList<>();
+        private final int[] counts = new int[Status.values().length];
+        private long totalNanos;
+        private boolean interrupted;
+        private long copiedRows;
+        private long copyNanos;
+
+        private void add(Result result) {
+            results.add(result);
+            counts[result.status.ordinal()]++;
+            copiedRows += result.copiedRows;
+            copyNanos += result.copyNanos;
+        }
+
+        //按完成的顺序排列
+        public List<Result> getResults() {
+            return Collections.unmodifiableList(results);
+        }
+
+        public int getCount(Status status) {
+            return counts[status.ordinal()];
+        }
+
+        public long getTotalMillis() {
+            return totalNanos / 1000000;
+        }
+
+        public long getCopiedRows() {
+            return copiedRows;
+        }
+
+        //每个线程的平均复制速度，多个库同时复制时总的吞吐约为它乘以线程数
+        public long getCopyRowsPerSecond() {
+            return rowsPerSecond(copiedRows, copyNanos);
+        }
+
+        //被中断时还有库没有处理，下次重新执行会接着升级
+        public boolean isInterrupted() {
+            return interrupted;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("migration ");
+            sb.append(getTotalMillis()).append("ms");
+            for (Status status : Status.values()) {
+                sb.append(", ").append(status).append("=").append(getCount(status));
+            }
+            if(copiedRows > 0) {
+                sb.append(", copied ").append(copiedRows).append(" rows ").append(getCopyRowsPerSecond()).append(" rows/s");
+            }
+            if(interrupted) {
+                sb.append(", interrupted");
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -1,45 +1,81 @@
 package com.sty.ne.db.update;
 
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
+ * 一组升级语句，<updateDb>下所有sql_开头的节点（sql_rename、sql_create、sql_insert、sql_delete...）
+ * 和copy_chunked节点按出现的顺序执行
  * @Author: tian
- * @UpdateDate: 2020/11/24 8:48 PM
+ * @UpdateDate: 2020/12/11 8:30 PM
  */
 public class UpdateDb {
-    private String sql_rename;
-    private String sql_create;
-    private String sql_insert;
-    private String sql_delete;
-
-    public UpdateDb(Element element) {
-        NodeList sqls = element.getElementsByTagName("sql_rename");
-        this.sql_rename = sqls.item(0).getTextContent();
-
-        sqls = element.getElementsByTagName("sql_create");
-        this.sql_create = sqls.item(0).getTextContent();
+    private final List<Statement> statements;
 
-        sqls = element.getElementsByTagName("sql_insert");
-        this.sql_insert = sqls.item(0).getTextContent();
-
-        sqls = element.getElementsByTagName("sql_delete");
-        this.sql_delete = sqls.item(0).getTextContent();
+    public UpdateDb(List<Statement> statements) {
+        this.statements = Collections.unmodifiableList(statements);
     }
 
-    public String getSql_rename() {
-        return sql_rename;
+    //解析器停在<updateDb>上，读到对应的</updateDb>为止
+    static UpdateDb parse(XmlPullParser parser) throws XmlPullParserException, IOException {
+        List<Statement> statements = new ArrayList<>();
+        int depth = parser.getDepth();
+        int event = parser.next();
+        while (!(event == XmlPullParser.END_TAG && parser.getDepth() == depth)
+                && event != XmlPullParser.END_DOCUMENT) {
+            if(event == XmlPullParser.START_TAG && "copy_chunked".equals(parser.getName())) {
+                String chunkRows = parser.getAttributeValue(null, "chunkRows");
+                statements.add(new Statement(new ChunkedCopy(parser.getAttributeValue(null, "from"),
+                        parser.getAttributeValue(null, "to"), parser.getAttributeValue(null, "columns"),
+                        chunkRows == null ? ChunkedCopy.DEFAULT_CHUNK_ROWS : Integer.parseInt(chunkRows))));
+            } else if(event == XmlPullParser.START_TAG && parser.getName().startsWith("sql_")) {
+                //nextText之后停在对应的END_TAG上
+                String sql = parser.nextText().replace("\r\n", " ").replace("\n", " ").trim();
+                if(sql.length() > 0) {
+                    statements.add(new Statement(sql));
+                }
+            }
+            event = parser.next();
+        }
+        return new UpdateDb(statements);
     }
 
-    public String getSql_create() {
-        return sql_create;
+    public List<Statement> getStatements() {
+        return statements;
     }
 
-    public String getSql_insert() {
-        return sql_insert;
-    }
+    //一条sql语句或者一次分块复制
+    public static class Statement {
+        private final String sql;
+        private final ChunkedCopy copy;
+
+        public Statement(String sql) {
+            this.sql = sql;
+            this.copy = null;
+        }
+
+        public Statement(ChunkedCopy copy) {
+            this.sql = null;
+            this.copy = copy;
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        //不是分块复制时为null
+        public ChunkedCopy getCopy() {
+            return copy;
+        }
 
-    public String getSql_delete() {
-        return sql_delete;
+        @Override
+        public String toString() {
+            return copy != null ? copy.toString() : sql;
+        }
     }
 }
@@ -1,30 +1,44 @@
 package com.sty.ne.db.update;
 
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
  * @Author: tian
- * @UpdateDate: 2020/11/24 8:44 PM
+ * @UpdateDate: 2020/12/10 8:20 PM
  */
 public class UpdateStep {
-    private String versionFrom;
-    private String versionTo;
-    private List<UpdateDb> updateDbs;
-
-    public UpdateStep(Element ele) {
-        versionFrom = ele.getAttribute("versionFrom");
-        versionTo = ele.getAttribute("versionTo");
-        this.updateDbs = new ArrayList<>();
-        NodeList dbs = ele.getElementsByTagName("updateDb");
-        for (int i = 0; i < dbs.getLength(); i++) {
-            Element db = (Element) dbs.item(i);
-            UpdateDb updateDb = new UpdateDb(db);
-            this.updateDbs.add(updateDb);
+    //可以是逗号分隔的多个版本
+    private final String versionFrom;
+    private final String versionTo;
+    private final List<UpdateDb> updateDbs;
+
+    public UpdateStep(String versionFrom, String versionTo, List<UpdateDb> updateDbs) {
+        this.versionFrom = versionFrom;
+        this.versionTo = versionTo;
+        this.updateDbs = Collections.unmodifiableList(updateDbs);
+    }
+
+    //解析器停在<updateStep>上，读到对应的</updateStep>为止
+    static UpdateStep parse(XmlPullParser parser) throws XmlPullParserException, IOException {
+        String versionFrom = parser.getAttributeValue(null, "versionFrom");
+        String versionTo = parser.getAttributeValue(null, "versionTo");
+        List<UpdateDb> dbs = new ArrayList<>();
+        int depth = parser.getDepth();
+        int event = parser.next();
+        while (!(event == XmlPullParser.END_TAG && parser.getDepth() == depth)
+                && event != XmlPullParser.END_DOCUMENT) {
+            if(event == XmlPullParser.START_TAG && "updateDb".equals(parser.getName())) {
+                dbs.add(UpdateDb.parse(parser));
+            }
+            event = parser.next();
         }
+        return new UpdateStep(versionFrom, versionTo, dbs);
     }
 
     public String getVersionFrom() {
@@ -1,30 +1,56 @@
 package com.sty.ne.db.update;
 
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
+import android.util.Xml;
 
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 /**
  * xml 文件的根节点
+ *
+ * 用pull解析器顺序读一遍，不在内存中建DOM树
  * @Author: tian
- * @UpdateDate: 2020/11/24 8:42 PM
+ * @UpdateDate: 2020/12/10 8:20 PM
  */
 public class UpdateXml {
-    private List<UpdateStep> updateSteps;
-
-    public UpdateXml(Document document) {
-        //获取升级的脚本，解析根节点
-        NodeList updateSteps = document.getElementsByTagName("updateStep");
-        this.updateSteps = new ArrayList<>();
-        for (int i = 0; i < updateSteps.getLength(); i++) {
-            Element ele = (Element) updateSteps.item(i);
-            UpdateStep step = new UpdateStep(ele);
-            this.updateSteps.add(step);
+    //user_version为0（还没有记录版本）的库按这个版本处理
+    private final String baseVersion;
+    private final List<UpdateStep> updateSteps;
+
+    public UpdateXml(String baseVersion, List<UpdateStep> updateSteps) {
+        this.baseVersion = baseVersion;
+        this.updateSteps = Collections.unmodifiableList(updateSteps);
+    }
+
+    public static UpdateXml parse(InputStream is) throws XmlPullParserException, IOException {
+        XmlPullParser parser = Xml.newPullParser();
+        parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, false);
+        parser.setInput(is, "UTF-8");
+
+        String baseVersion = null;
+        List<UpdateStep> steps = new ArrayList<>();
+        int event = parser.getEventType();
+        while (event != XmlPullParser.END_DOCUMENT) {
+            if(event == XmlPullParser.START_TAG) {
+                if("updateXml".equals(parser.getName())) {
+                    baseVersion = parser.getAttributeValue(null, "baseVersion");
+                } else if("updateStep".equals(parser.getName())) {
+                    steps.add(UpdateStep.parse(parser));
+                }
+            }
+            event = parser.next();
         }
+        return new UpdateXml(baseVersion, steps);
+    }
+
+    public String getBaseVersion() {
+        return baseVersion;
     }
 
     public List<UpdateStep> getUpdateSteps() {
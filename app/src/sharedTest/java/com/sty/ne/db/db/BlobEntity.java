@@ -0,0 +1,20 @@
+package com.sty.ne.db.db;
+
+import com.sty.ne.db.annotation.DbBlob;
+import com.sty.ne.db.annotation.DbPrimaryKey;
+import com.sty.ne.db.annotation.DbTable;
+
+/**
+ * BlobStoreTest用的实体，由注解处理器生成映射器
+ * @Author: tian
+ * @UpdateDate: 2020/12/17 9:30 PM
+ */
+@DbTable("tb_blob")
+public class BlobEntity {
+    @DbPrimaryKey
+    long id;
+    String name;
+    //超过16字节的存为文件
+    @DbBlob(inlineLimit = 16)
+    Blob data;
+}
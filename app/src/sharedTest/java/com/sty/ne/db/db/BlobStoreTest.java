@@ -0,0 +1,265 @@
+package com.sty.ne.db.db;
+
+import com.sty.ne.db.annotation.DbBlob;
+import com.sty.ne.db.annotation.DbPrimaryKey;
+import com.sty.ne.db.annotation.DbTable;
+import com.sty.ne.db.storage.Database;
+import com.sty.ne.db.storage.Storage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Blob按大小存在行中或者存为外部文件、映射读取、相同内容只存一份、回收不再引用的文件
+ * 每个后端一个子类：AndroidBlobStoreTest（androidTest）、JdbcBlobStoreTest（jvm模块）
+ * @Author: tian
+ * @UpdateDate: 2020/12/17 9:30 PM
+ */
+public abstract class BlobStoreTest {
+    private static final String[] SUFFIXES = {"", "-journal", "-wal", "-shm"};
+
+    private File dbFile;
+    private Database database;
+    private BaseDao<BlobEntity> blobDao;
+    private BlobStore store;
+
+    protected abstract Storage createStorage();
+
+    protected abstract File getDatabaseFile(String name);
+
+    @Before
+    public void setUp() {
+        dbFile = getDatabaseFile("blob_store.db");
+        deleteDatabase();
+        database = createStorage().open(dbFile.getPath(), false);
+        blobDao = new BaseDao<>();
+        blobDao.init(database, BlobEntity.class);
+        store = blobDao.getBlobStore();
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+        deleteDatabase();
+    }
+
+    private void deleteDatabase() {
+        for (String suffix : SUFFIXES) {
+            new File(dbFile.getPath() + suffix).delete();
+        }
+        delete(new File(dbFile.getPath() + BlobStore.SUFFIX));
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if(children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static byte[] content(int length, int seed) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (i * 31 + seed);
+        }
+        return data;
+    }
+
+    private static BlobEntity newEntity(String name, Blob data) {
+        BlobEntity entity = new BlobEntity();
+        entity.name = name;
+        entity.data = data;
+        return entity;
+    }
+
+    //目录中的Blob文件数，不包括临时文件
+    private int countFiles() {
+        int count = 0;
+        File[] children = store.getDirectory().listFiles();
+        if(children != null) {
+            for (File child : children) {
+                String[] files = child.list();
+                count += files != null ? files.length : 0;
+            }
+        }
+        return count;
+    }
+
+    private static byte[] read(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static byte[] read(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void smallBlobStaysInRow() throws IOException {
+        byte[] data = content(16, 1);
+        long rowId = blobDao.insert(newEntity("small", Blob.of(data)));
+        assertEquals(1, database.longForQuery("select count(*) from tb_blob where typeof(data) = 'blob'", null));
+        assertEquals(0, countFiles());
+
+        BlobEntity loaded = blobDao.findById(rowId);
+        assertFalse(loaded.data.isExternal());
+        assertNull(loaded.data.getFile());
+        assertArrayEquals(data, read(loaded.data.getBuffer()));
+    }
+
+    @Test
+    public void largeBlobIsStoredAsFile() throws IOException {
+        byte[] data = content(256 * 1024, 2);
+        Blob blob = Blob.of(data);
+        long rowId = blobDao.insert(newEntity("large", blob));
+        assertTrue(blob.isExternal());
+        //行中只有摘要
+        assertEquals(1, database.longForQuery("select count(*) from tb_blob where typeof(data) = 'text'"
+                + " and length(data) = 64", null));
+        assertEquals(1, countFiles());
+
+        BlobEntity loaded = blobDao.findById(rowId);
+        assertTrue(loaded.data.isExternal());
+        assertEquals(blob.getKey(), loaded.data.getKey());
+        assertEquals(data.length, loaded.data.length());
+        ByteBuffer buffer = loaded.data.getBuffer();
+        //映射的文件，不在Java堆中
+        assertTrue(buffer.isDirect());
+        assertTrue(buffer.isReadOnly());
+        assertArrayEquals(data, read(buffer));
+        //每次返回独立的position
+        assertEquals(0, loaded.data.getBuffer().position());
+        assertArrayEquals(data, read(loaded.data.openStream()));
+    }
+
+    @Test
+    public void sameContentIsStoredOnce() throws IOException {
+        byte[] data = content(1024, 3);
+        blobDao.insert(newEntity("a", Blob.of(data)));
+        blobDao.insert(newEntity("b", Blob.of(data.clone())));
+        blobDao.insert(newEntity("c", Blob.of(content(1024, 4))));
+        assertEquals(2, countFiles());
+        assertEquals(2, database.longForQuery("select count(distinct data) from tb_blob", null));
+
+        //按读出来的Blob查询，比较的是摘要
+        BlobEntity where = new BlobEntity();
+        where.data = blobDao.query(new BlobEntity(), "name", null, null).get(0).data;
+        assertEquals(2, blobDao.count(where));
+    }
+
+    @Test
+    public void fileIsCopiedWithoutLoading() throws IOException {
+        byte[] data = content(64 * 1024, 5);
+        File source = new File(dbFile.getPath() + ".source");
+        FileOutputStream out = new FileOutputStream(source);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+        try {
+            Blob blob = Blob.of(source);
+            long rowId = blobDao.insert(newEntity("file", blob));
+            assertTrue(blob.isExternal());
+            assertEquals(BlobStore.hash(data), blob.getKey());
+            //源文件不受影响
+            assertTrue(source.exists());
+
+            BlobEntity loaded = blobDao.findById(rowId);
+            assertArrayEquals(data, loaded.data.toByteArray());
+        } finally {
+            source.delete();
+        }
+    }
+
+    @Test
+    public void collectsUnreferencedFiles() throws IOException {
+        byte[] kept = content(1024, 6);
+        byte[] removed = content(1024, 7);
+        blobDao.insert(newEntity("kept", Blob.of(kept)));
+        long rowId = blobDao.insert(newEntity("removed", Blob.of(removed)));
+        BlobEntity loaded = blobDao.findById(rowId);
+        ByteBuffer mapped = loaded.data.getBuffer();
+
+        BlobEntity where = new BlobEntity();
+        where.name = "removed";
+        assertEquals(1, blobDao.delete(where));
+        assertEquals(2, countFiles());
+        //刚写入的文件可能属于还没有提交的事务，不回收
+        assertEquals(0, store.collectGarbage(database));
+        assertEquals(1, store.collectGarbage(database, 0));
+        assertEquals(1, countFiles());
+        assertFalse(loaded.data.getFile().exists());
+        //已经映射的内容仍然可以读取
+        assertArrayEquals(removed, read(mapped));
+
+        //更新为其它内容之后旧的文件也被回收
+        BlobEntity update = new BlobEntity();
+        update.data = Blob.of(content(1024, 8));
+        where.name = "kept";
+        assertEquals(1, blobDao.update(update, where));
+        assertEquals(1, store.collectGarbage(database, 0));
+        assertEquals(1, countFiles());
+        assertArrayEquals(content(1024, 8), blobDao.query(where).get(0).data.toByteArray());
+    }
+
+    @Test
+    public void reflectionMapper() throws IOException {
+        BaseDao<ReflectedBlobEntity> reflectedDao = new BaseDao<>();
+        reflectedDao.init(database, ReflectedBlobEntity.class);
+        assertNull(EntityMappers.getGenerated(ReflectedBlobEntity.class));
+
+        byte[] data = content(5000, 9);
+        ReflectedBlobEntity entity = new ReflectedBlobEntity();
+        entity.image = Blob.of(data);
+        entity.thumbnail = Blob.of(content(100, 10));
+        long rowId = reflectedDao.insert(entity);
+
+        ReflectedBlobEntity loaded = reflectedDao.findById(rowId);
+        //默认的inlineLimit是4096
+        assertTrue(loaded.image.isExternal());
+        assertFalse(loaded.thumbnail.isExternal());
+        assertArrayEquals(data, read(loaded.image.getBuffer()));
+        //两张表的列都记录下来，回收时都会查询
+        assertEquals(0, store.collectGarbage(database, 0));
+        assertEquals(1, countFiles());
+    }
+
+    //嵌套类不生成映射器，走反射
+    @DbTable("tb_blob_reflected")
+    public static class ReflectedBlobEntity {
+        @DbPrimaryKey
+        private long id;
+        private Blob image;
+        @DbBlob(inlineLimit = 1024)
+        private Blob thumbnail;
+    }
+}
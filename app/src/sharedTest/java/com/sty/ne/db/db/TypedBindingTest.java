@@ -0,0 +1,253 @@
+package com.sty.ne.db.db;
+
+import com.sty.ne.db.annotation.DbPrimaryKey;
+import com.sty.ne.db.annotation.DbTable;
+import com.sty.ne.db.storage.Cursor;
+import com.sty.ne.db.storage.Database;
+import com.sty.ne.db.storage.Storage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 各列按类型写入和比较：基本类型、枚举、Date、byte[]和@DbConvert，生成的映射器和反射各测一遍
+ * 每个后端一个子类：AndroidTypedBindingTest（androidTest）、JdbcTypedBindingTest（jvm模块）
+ * @Author: tian
+ * @UpdateDate: 2020/12/16 9:30 PM
+ */
+public abstract class TypedBindingTest {
+    private static final String[] SUFFIXES = {"", "-journal", "-wal", "-shm"};
+
+    private File dbFile;
+    private Database database;
+    private BaseDao<TypedEntity> typedDao;
+
+    protected abstract Storage createStorage();
+
+    protected abstract File getDatabaseFile(String name);
+
+    @Before
+    public void setUp() {
+        dbFile = getDatabaseFile("typed_binding.db");
+        deleteDatabase();
+        database = createStorage().open(dbFile.getPath(), false);
+        typedDao = new BaseDao<>();
+        typedDao.init(database, TypedEntity.class);
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+        deleteDatabase();
+    }
+
+    private void deleteDatabase() {
+        for (String suffix : SUFFIXES) {
+            new File(dbFile.getPath() + suffix).delete();
+        }
+    }
+
+    private static TypedEntity newEntity(int count) {
+        TypedEntity entity = new TypedEntity();
+        entity.count = count;
+        entity.score = count + 0.5;
+        entity.setEnabled(count % 2 == 1);
+        entity.flagged = count % 2 == 0;
+        entity.size = 1L << 40;
+        entity.name = "name" + count;
+        entity.status = count % 2 == 0 ? TypedEntity.Status.NEW : TypedEntity.Status.DONE;
+        entity.created = new Date(1607000000000L + count);
+        entity.data = new byte[]{(byte) count, 0, (byte) 0xff};
+        entity.tags = Arrays.asList("a" + count, "b");
+        return entity;
+    }
+
+    @Test
+    public void generatedMapperIsUsed() {
+        assertTrue(EntityMappers.getGenerated(TypedEntity.class) != null);
+    }
+
+    @Test
+    public void roundTrip() {
+        TypedEntity entity = newEntity(3);
+        long rowId = typedDao.insert(entity);
+        //主键是基本类型的0，由SQLite分配
+        assertTrue(rowId > 0);
+
+        TypedEntity loaded = typedDao.findById(rowId);
+        assertEquals(rowId, loaded.id);
+        assertEquals(3, loaded.count);
+        assertEquals(3.5, loaded.score, 0);
+        assertTrue(loaded.isEnabled());
+        assertEquals(Boolean.FALSE, loaded.flagged);
+        assertEquals(Long.valueOf(1L << 40), loaded.size);
+        assertEquals("name3", loaded.name);
+        assertEquals(TypedEntity.Status.DONE, loaded.status);
+        assertEquals(entity.created, loaded.created);
+        assertArrayEquals(entity.data, loaded.data);
+        assertEquals(entity.tags, loaded.tags);
+    }
+
+    @Test
+    public void columnsAreStoredWithTheirTypes() {
+        typedDao.insert(newEntity(2));
+        Cursor cursor = database.rawQuery("select typeof(count), typeof(score), typeof(enabled), typeof(size),"
+                + " typeof(status), typeof(created), typeof(data), typeof(tags) from tb_typed", null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            String[] expected = {"integer", "real", "integer", "integer", "text", "integer", "blob", "text"};
+            for (int i = 0; i < expected.length; i++) {
+                assertEquals(cursor.getColumnNames()[i], expected[i], cursor.getString(i));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void nullsAndPrimitiveDefaults() {
+        long rowId = typedDao.insert(new TypedEntity());
+        TypedEntity loaded = typedDao.findById(rowId);
+        assertEquals(0, loaded.count);
+        assertFalse(loaded.isEnabled());
+        assertNull(loaded.flagged);
+        assertNull(loaded.status);
+        assertNull(loaded.created);
+        assertNull(loaded.data);
+        assertNull(loaded.tags);
+        //基本类型的0照常写入，不是null
+        assertEquals(1, database.longForQuery("select count(*) from tb_typed where count = 0 and enabled = 0", null));
+        assertEquals(1, database.longForQuery("select count(*) from tb_typed where flagged is null", null));
+    }
+
+    @Test
+    public void queryByExampleIgnoresPrimitiveDefaults() {
+        for (int i = 1; i <= 4; i++) {
+            typedDao.insert(newEntity(i));
+        }
+        assertEquals(4, typedDao.query(new TypedEntity()).size());
+
+        TypedEntity where = new TypedEntity();
+        where.setEnabled(true);
+        assertEquals(2, typedDao.query(where).size());
+
+        where = new TypedEntity();
+        where.status = TypedEntity.Status.NEW;
+        where.created = new Date(1607000000000L + 2);
+        List<TypedEntity> found = typedDao.query(where);
+        assertEquals(1, found.size());
+        assertEquals(2, found.get(0).count);
+
+        //只更新赋了值的列
+        TypedEntity update = new TypedEntity();
+        update.score = 9.25;
+        assertEquals(1, typedDao.update(update, where));
+        TypedEntity loaded = typedDao.query(where).get(0);
+        assertEquals(9.25, loaded.score, 0);
+        assertEquals("name2", loaded.name);
+    }
+
+    @Test
+    public void criteriaArgumentsAreTyped() {
+        for (int i = 1; i <= 5; i++) {
+            typedDao.insert(newEntity(i));
+        }
+        assertEquals(3, typedDao.count(Criteria.where("count").ge(3)));
+        assertEquals(2, typedDao.count(Criteria.where("score").lt(2.6)));
+        assertEquals(3, typedDao.count(Criteria.where("status").eq(TypedEntity.Status.DONE)));
+        assertEquals(2, typedDao.count(Criteria.where("created").gt(new Date(1607000000000L + 3))));
+        assertEquals(3, typedDao.count(Criteria.where("enabled").eq(true)));
+        assertEquals(1, typedDao.count(Criteria.where("data").eq(new byte[]{4, 0, (byte) 0xff})));
+        //整数列与字符串比较不再依赖类型亲和性
+        List<TypedEntity> found = typedDao.query(Criteria.where("size").eq(1L << 40), "count", null, null);
+        assertEquals(5, found.size());
+        assertEquals(1, found.get(0).count);
+        assertEquals(2, typedDao.delete(Criteria.where("count").in(1, 2)));
+        assertEquals(3, typedDao.count(new TypedEntity()));
+    }
+
+    @Test
+    public void pagesByIntegerAndRealColumns() {
+        List<TypedEntity> entities = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            //每3行排序列的值相同，按rowid续传
+            entities.add(newEntity(20 - i / 3));
+        }
+        typedDao.insertAll(entities);
+        for (String sortColumn : new String[]{"count", "score"}) {
+            List<Integer> counts = new ArrayList<>();
+            String token = null;
+            do {
+                Page<TypedEntity> page = typedDao.queryPage(new TypedEntity(), sortColumn, true, 4, token);
+                for (TypedEntity entity : page.getItems()) {
+                    counts.add(entity.count);
+                }
+                token = page.getNextPageToken();
+            } while (token != null);
+            assertEquals(25, counts.size());
+            for (int i = 1; i < counts.size(); i++) {
+                assertTrue(counts.get(i - 1) >= counts.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void reflectionMapper() {
+        BaseDao<ReflectedEntity> reflectedDao = new BaseDao<>();
+        reflectedDao.init(database, ReflectedEntity.class);
+        assertNull(EntityMappers.getGenerated(ReflectedEntity.class));
+
+        ReflectedEntity entity = new ReflectedEntity();
+        entity.count = 7;
+        entity.score = 1.25;
+        entity.enabled = true;
+        entity.status = TypedEntity.Status.DONE;
+        entity.created = new Date(1607000000000L);
+        entity.data = new byte[]{1, 2};
+        long rowId = reflectedDao.insert(entity);
+        assertTrue(rowId > 0);
+        reflectedDao.insert(new ReflectedEntity());
+
+        ReflectedEntity loaded = reflectedDao.findById(rowId);
+        assertEquals(7, loaded.count);
+        assertEquals(1.25, loaded.score, 0);
+        assertTrue(loaded.enabled);
+        assertEquals(TypedEntity.Status.DONE, loaded.status);
+        assertEquals(entity.created, loaded.created);
+        assertArrayEquals(entity.data, loaded.data);
+
+        ReflectedEntity where = new ReflectedEntity();
+        where.enabled = true;
+        assertEquals(1, reflectedDao.count(where));
+        assertEquals(2, reflectedDao.count(new ReflectedEntity()));
+        assertEquals(1, reflectedDao.count(Criteria.where("status").eq(TypedEntity.Status.DONE)));
+        assertEquals(1, database.longForQuery("select count(*) from tb_typed_reflected where typeof(score) = 'real'"
+                + " and typeof(created) = 'integer' and typeof(data) = 'blob'", null));
+    }
+
+    //嵌套类不生成映射器，走反射
+    @DbTable("tb_typed_reflected")
+    public static class ReflectedEntity {
+        @DbPrimaryKey
+        private long id;
+        private int count;
+        private double score;
+        private boolean enabled;
+        private TypedEntity.Status status;
+        private Date created;
+        private byte[] data;
+    }
+}
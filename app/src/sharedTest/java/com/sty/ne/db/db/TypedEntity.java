@@ -0,0 +1,67 @@
+package com.sty.ne.db.db;
+
+import com.sty.ne.db.annotation.DbConvert;
+import com.sty.ne.db.annotation.DbPrimaryKey;
+import com.sty.ne.db.annotation.DbTable;
+import com.sty.ne.db.storage.Cursor;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * TypedBindingTest用的实体，包含所有支持的成员变量类型，由注解处理器生成映射器
+ * @Author: tian
+ * @UpdateDate: 2020/12/16 9:30 PM
+ */
+@DbTable("tb_typed")
+public class TypedEntity {
+    public enum Status {
+        NEW, DONE
+    }
+
+    @DbPrimaryKey
+    long id;
+    int count;
+    double score;
+    private boolean enabled;
+    Boolean flagged;
+    Long size;
+    String name;
+    Status status;
+    Date created;
+    byte[] data;
+    @DbConvert(TagsConverter.class)
+    List<String> tags;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    //标签用逗号连接存为TEXT
+    public static class TagsConverter implements TypeConverter<List<String>> {
+
+        @Override
+        public String getSqlType() {
+            return "TEXT";
+        }
+
+        @Override
+        public void write(List<String> value, ColumnValues values, int index) {
+            StringBuilder sb = new StringBuilder();
+            for (String tag : value) {
+                sb.append(sb.length() == 0 ? "" : ",").append(tag);
+            }
+            values.putString(index, sb.toString());
+        }
+
+        @Override
+        public List<String> read(Cursor cursor, int columnIndex) {
+            return Arrays.asList(cursor.getString(columnIndex).split(","));
+        }
+    }
+}
@@ -0,0 +1,447 @@
+package com.sty.ne.db.storage;
+
+import com.sty.ne.db.db.BaseDao;
+import com.sty.ne.db.model.User;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 所有存储后端都要通过的一致性测试，DAO层只依赖这里检查的行为
+ * 每个后端一个子类：AndroidStorageConformanceTest（androidTest）、JdbcStorageConformanceTest（jvm模块）
+ * @Author: tian
+ * @UpdateDate: 2020/12/14 8:30 PM
+ */
+public abstract class StorageConformanceTest {
+    private static final String[] SUFFIXES = {"", "-journal", "-wal", "-shm"};
+
+    private File dbFile;
+    private Storage storage;
+    private Database database;
+
+    protected abstract Storage createStorage();
+
+    //测试用的数据库文件，可以已经存在（会被删除）
+    protected abstract File getDatabaseFile(String name);
+
+    @Before
+    public void setUp() {
+        storage = createStorage();
+        dbFile = getDatabaseFile("storage_conformance.db");
+        deleteDatabase(dbFile);
+        database = storage.open(dbFile.getPath(), false);
+        database.execSQL("create table t(id INTEGER PRIMARY KEY, i INTEGER, r REAL, s TEXT, b BLOB)");
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+        deleteDatabase(dbFile);
+    }
+
+    static void deleteDatabase(File file) {
+        for (String suffix : SUFFIXES) {
+            new File(file.getPath() + suffix).delete();
+        }
+    }
+
+    private long insert(Object i, Object r, Object s, Object b) {
+        Statement statement = database.compileStatement("insert into t(i, r, s, b) values(?,?,?,?)");
+        try {
+            Object[] args = {i, r, s, b};
+            for (int index = 0; index < args.length; index++) {
+                bind(statement, index + 1, args[index]);
+            }
+            return statement.executeInsert();
+        } finally {
+            statement.close();
+        }
+    }
+
+    private static void bind(Statement statement, int index, Object arg) {
+        if(arg == null) {
+            statement.bindNull(index);
+        } else if(arg instanceof Long) {
+            statement.bindLong(index, (Long) arg);
+        } else if(arg instanceof Double) {
+            statement.bindDouble(index, (Double) arg);
+        } else if(arg instanceof byte[]) {
+            statement.bindBlob(index, (byte[]) arg);
+        } else {
+            statement.bindString(index, arg.toString());
+        }
+    }
+
+    @Test
+    public void openAndClose() {
+        assertTrue(database.isOpen());
+        assertFalse(database.isReadOnly());
+        assertEquals(dbFile.getPath(), database.getPath());
+        assertTrue(dbFile.exists());
+    }
+
+    @Test
+    public void executeInsertReturnsRowid() {
+        assertEquals(1, insert(1L, null, null, null));
+        assertEquals(2, insert(2L, null, null, null));
+        database.execSQL("insert into t(id, i) values(?,?)", new Object[]{10, 10});
+        assertEquals(11, insert(11L, null, null, null));
+    }
+
+    @Test
+    public void bindTypesRoundTrip() {
+        byte[] blob = {0, 1, 2, (byte) 0xff};
+        insert(Long.MAX_VALUE, 3.25, "中文 text", blob);
+        insert(null, null, null, null);
+        Cursor cursor = database.rawQuery("select i, r, s, b from t order by id", null);
+        try {
+            assertEquals(2, cursor.getCount());
+            assertTrue(cursor.moveToNext());
+            assertEquals(Cursor.FIELD_TYPE_INTEGER, cursor.getType(0));
+            assertEquals(Cursor.FIELD_TYPE_FLOAT, cursor.getType(1));
+            assertEquals(Cursor.FIELD_TYPE_STRING, cursor.getType(2));
+            assertEquals(Cursor.FIELD_TYPE_BLOB, cursor.getType(3));
+            assertEquals(Long.MAX_VALUE, cursor.getLong(0));
+            assertEquals(3.25, cursor.getDouble(1), 0);
+            assertEquals("中文 text", cursor.getString(2));
+            assertArrayEquals(blob, cursor.getBlob(3));
+
+            assertTrue(cursor.moveToNext());
+            for (int column = 0; column < 4; column++) {
+                assertEquals(Cursor.FIELD_TYPE_NULL, cursor.getType(column));
+                assertTrue(cursor.isNull(column));
+            }
+            assertEquals(0, cursor.getLong(0));
+            assertEquals(0, cursor.getInt(0));
+            assertEquals(0, cursor.getDouble(1), 0);
+            assertNull(cursor.getString(2));
+            assertNull(cursor.getBlob(3));
+            assertFalse(cursor.moveToNext());
+        } finally {
+            cursor.close();
+        }
+        assertTrue(cursor.isClosed());
+    }
+
+    @Test
+    public void execSQLBindsByType() {
+        database.execSQL("insert into t(i, r, s, b) values(?,?,?,?)", new Object[]{7, 1.5f, "x", new byte[]{9}});
+        Cursor cursor = database.rawQuery("select typeof(i), typeof(r), typeof(s), typeof(b) from t", null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals("integer", cursor.getString(0));
+            assertEquals("real", cursor.getString(1));
+            assertEquals("text", cursor.getString(2));
+            assertEquals("blob", cursor.getString(3));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void conversionsFollowSqlite() {
+        insert(7L, 2.5, "42", null);
+        Cursor cursor = database.rawQuery("select i, r, s from t", null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals("7", cursor.getString(0));
+            assertEquals(7.0, cursor.getDouble(0), 0);
+            assertEquals(2, cursor.getLong(1));
+            assertEquals(42, cursor.getInt(2));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void selectionArgsAreStrings() {
+        insert(5L, null, "a", null);
+        insert(6L, null, "b", null);
+        Cursor cursor = database.rawQuery("select i from t where s = ?", new String[]{"b"});
+        try {
+            assertEquals(1, cursor.getCount());
+            assertTrue(cursor.moveToFirst());
+            assertEquals(6, cursor.getInt(0));
+        } finally {
+            cursor.close();
+        }
+        //整数列和字符串参数比较时按列的类型转换
+        assertEquals(1, database.longForQuery("select count(*) from t where i = ?", new String[]{"5"}));
+    }
+
+    @Test
+    public void cursorNavigation() {
+        for (long i = 0; i < 3; i++) {
+            insert(i, null, "row" + i, null);
+        }
+        Cursor cursor = database.rawQuery("select id, s from t order by id", null);
+        try {
+            assertEquals(-1, cursor.getPosition());
+            assertEquals(2, cursor.getColumnCount());
+            assertEquals(Arrays.asList("id", "s"), Arrays.asList(cursor.getColumnNames()));
+            assertEquals(1, cursor.getColumnIndex("s"));
+            assertEquals(-1, cursor.getColumnIndex("missing"));
+            assertTrue(cursor.moveToNext());
+            assertTrue(cursor.moveToNext());
+            assertTrue(cursor.moveToNext());
+            assertEquals("row2", cursor.getString(1));
+            assertFalse(cursor.moveToNext());
+            assertEquals(3, cursor.getPosition());
+            assertTrue(cursor.moveToPrevious());
+            assertEquals("row2", cursor.getString(1));
+            assertTrue(cursor.moveToPosition(1));
+            assertEquals("row1", cursor.getString(1));
+            assertTrue(cursor.moveToFirst());
+            assertEquals("row0", cursor.getString(1));
+            int windowStart = cursor.getWindowStartPosition();
+            assertTrue(windowStart == -1 || windowStart == 0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void emptyResult() {
+        Cursor cursor = database.rawQuery("select * from t", null);
+        try {
+            assertEquals(0, cursor.getCount());
+            assertFalse(cursor.moveToFirst());
+            assertFalse(cursor.moveToNext());
+            assertEquals(5, cursor.getColumnCount());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void statementReuse() {
+        Statement insert = database.compileStatement("insert into t(i, s) values(?,?)");
+        try {
+            for (long i = 0; i < 5; i++) {
+                insert.bindLong(1, i);
+                insert.bindString(2, "v" + i);
+                assertTrue(insert.executeInsert() > 0);
+                insert.clearBindings();
+            }
+            //clearBindings之后没有绑定的参数为null
+            insert.executeInsert();
+        } finally {
+            insert.close();
+        }
+        assertEquals(6, database.longForQuery("select count(*) from t", null));
+        assertEquals(1, database.longForQuery("select count(*) from t where i is null and s is null", null));
+
+        Statement update = database.compileStatement("update t set s = ? where i < ?");
+        try {
+            update.bindString(1, "small");
+            update.bindLong(2, 3);
+            assertEquals(3, update.executeUpdateDelete());
+        } finally {
+            update.close();
+        }
+        Statement count = database.compileStatement("select count(*) from t where s = ?");
+        try {
+            count.bindString(1, "small");
+            assertEquals(3, count.simpleQueryForLong());
+        } finally {
+            count.close();
+        }
+    }
+
+    @Test
+    public void noRowsForSimpleQueryThrows() {
+        try {
+            database.longForQuery("select i from t", null);
+            fail();
+        } catch (StorageException e) {
+            //没有结果
+        }
+    }
+
+    @Test
+    public void constraintViolation() {
+        database.execSQL("insert into t(id, i) values(1, 1)");
+        try {
+            database.execSQL("insert into t(id, i) values(1, 2)");
+            fail();
+        } catch (ConstraintException e) {
+            //主键冲突
+        }
+        Statement statement = database.compileStatement("insert into t(id) values(?)");
+        try {
+            statement.bindLong(1, 1);
+            statement.executeInsert();
+            fail();
+        } catch (ConstraintException e) {
+            //主键冲突
+        } finally {
+            statement.close();
+        }
+    }
+
+    @Test
+    public void invalidSql() {
+        try {
+            database.execSQL("selec * from t");
+            fail();
+        } catch (StorageException e) {
+            //语法错误
+        }
+        try {
+            database.rawQuery("select * from missing", null);
+            fail();
+        } catch (StorageException e) {
+            //没有这张表
+        }
+    }
+
+    @Test
+    public void transactionCommit() {
+        assertFalse(database.inTransaction());
+        database.beginTransaction();
+        try {
+            assertTrue(database.inTransaction());
+            insert(1L, null, null, null);
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+        assertFalse(database.inTransaction());
+        assertEquals(1, database.longForQuery("select count(*) from t", null));
+    }
+
+    @Test
+    public void transactionRollback() {
+        database.beginTransaction();
+        try {
+            insert(1L, null, null, null);
+            assertEquals(1, database.longForQuery("select count(*) from t", null));
+        } finally {
+            database.endTransaction();
+        }
+        assertEquals(0, database.longForQuery("select count(*) from t", null));
+    }
+
+    @Test
+    public void failedInnerTransactionRollsBackOuter() {
+        database.beginTransaction();
+        try {
+            insert(1L, null, null, null);
+            database.beginTransaction();
+            try {
+                insert(2L, null, null, null);
+            } finally {
+                database.endTransaction();
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+        assertEquals(0, database.longForQuery("select count(*) from t", null));
+    }
+
+    @Test
+    public void nestedTransactionCommitsOnce() {
+        database.beginTransaction();
+        try {
+            database.beginTransaction();
+            try {
+                insert(1L, null, null, null);
+                database.setTransactionSuccessful();
+            } finally {
+                database.endTransaction();
+            }
+            assertTrue(database.inTransaction());
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+        assertEquals(1, database.longForQuery("select count(*) from t", null));
+    }
+
+    @Test
+    public void userVersion() {
+        assertEquals(0, database.getVersion());
+        database.setVersion(3);
+        assertEquals(3, database.getVersion());
+        database.close();
+        database = storage.open(dbFile.getPath(), false);
+        assertEquals(3, database.getVersion());
+    }
+
+    @Test
+    public void readOnlyConnection() {
+        insert(1L, null, null, null);
+        Database reader = storage.open(dbFile.getPath(), true);
+        try {
+            assertTrue(reader.isReadOnly());
+            assertEquals(1, reader.longForQuery("select count(*) from t", null));
+            try {
+                reader.execSQL("insert into t(i) values(2)");
+                fail();
+            } catch (StorageException e) {
+                //只读
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    //WAL下读连接不被写事务阻塞，只能看到已经提交的数据，ConnectionManager依赖这一点
+    @Test
+    public void walReaderSeesCommittedRows() {
+        assertTrue(database.enableWriteAheadLogging());
+        insert(1L, null, null, null);
+        Database reader = storage.open(dbFile.getPath(), true);
+        try {
+            database.beginTransaction();
+            try {
+                insert(2L, null, null, null);
+                assertEquals(1, reader.longForQuery("select count(*) from t", null));
+                database.setTransactionSuccessful();
+            } finally {
+                database.endTransaction();
+            }
+            assertEquals(2, reader.longForQuery("select count(*) from t", null));
+        } finally {
+            reader.close();
+        }
+    }
+
+    //DAO层在这个后端上的基本操作
+    @Test
+    public void baseDaoRoundTrip() {
+        BaseDao<User> userDao = new BaseDao<>();
+        assertTrue(userDao.init(database, User.class));
+        User user = new User(1, "sty", "123");
+        user.setStatus(1);
+        assertEquals(1, userDao.insert(user));
+        userDao.insert(new User(2, "tian", "456"));
+
+        List<User> found = userDao.query(new User(null, "sty", null));
+        assertEquals(1, found.size());
+        assertEquals(Integer.valueOf(1), found.get(0).getId());
+        assertEquals("123", found.get(0).getPwd());
+        assertEquals(Integer.valueOf(1), found.get(0).getStatus());
+
+        assertEquals(1, userDao.update(new User(null, null, "789"), new User(1, null, null)));
+        assertEquals("789", userDao.query(new User(1, null, null)).get(0).getPwd());
+        assertEquals(2, userDao.count(new User()));
+        assertEquals(1, userDao.delete(new User(2, null, null)));
+        assertEquals(1, userDao.query(new User()).size());
+        //主键冲突时insert返回-1
+        assertEquals(-1, userDao.insert(new User(1, "dup", "000")));
+    }
+}
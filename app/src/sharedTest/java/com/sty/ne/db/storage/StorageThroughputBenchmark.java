@@ -0,0 +1,126 @@
+package com.sty.ne.db.storage;
+
+import com.sty.ne.db.db.BaseDao;
+import com.sty.ne.db.model.User;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 同一组操作在不同存储后端上的吞吐量，结果按 行/秒 输出到标准输出
+ * 每个后端一个子类：AndroidStorageThroughputBenchmark（androidTest）、JdbcStorageThroughputBenchmark（jvm模块）
+ * @Author: tian
+ * @UpdateDate: 2020/12/14 9:10 PM
+ */
+public abstract class StorageThroughputBenchmark {
+    private static final int ROWS = 20000;
+    private static final int LOOKUPS = 5000;
+
+    private File dbFile;
+    private Storage storage;
+    private Database database;
+
+    protected abstract Storage createStorage();
+
+    protected abstract File getDatabaseFile(String name);
+
+    @Before
+    public void setUp() {
+        storage = createStorage();
+        dbFile = getDatabaseFile("storage_throughput.db");
+        StorageConformanceTest.deleteDatabase(dbFile);
+        database = storage.open(dbFile.getPath(), false);
+        database.enableWriteAheadLogging();
+        database.execSQL("create table t(id INTEGER PRIMARY KEY, i INTEGER, s TEXT)");
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+        StorageConformanceTest.deleteDatabase(dbFile);
+    }
+
+    @Test
+    public void rawStatements() {
+        long start = System.nanoTime();
+        Statement insert = database.compileStatement("insert into t(i, s) values(?,?)");
+        database.beginTransaction();
+        try {
+            for (int i = 0; i < ROWS; i++) {
+                insert.bindLong(1, i);
+                insert.bindString(2, "value" + i);
+                insert.executeInsert();
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+            insert.close();
+        }
+        report("insert", ROWS, start);
+
+        start = System.nanoTime();
+        int read = 0;
+        Cursor cursor = database.rawQuery("select id, i, s from t", null);
+        try {
+            while (cursor.moveToNext()) {
+                cursor.getLong(0);
+                cursor.getLong(1);
+                cursor.getString(2);
+                read++;
+            }
+        } finally {
+            cursor.close();
+        }
+        assertEquals(ROWS, read);
+        report("scan", read, start);
+
+        start = System.nanoTime();
+        Statement lookup = database.compileStatement("select i from t where id = ?");
+        try {
+            for (int i = 0; i < LOOKUPS; i++) {
+                lookup.bindLong(1, i % ROWS + 1);
+                lookup.simpleQueryForLong();
+            }
+        } finally {
+            lookup.close();
+        }
+        report("point lookup", LOOKUPS, start);
+    }
+
+    @Test
+    public void baseDao() {
+        BaseDao<User> userDao = new BaseDao<>();
+        userDao.init(database, User.class);
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < ROWS; i++) {
+            users.add(new User(i + 1, "user" + i, "pwd" + i));
+        }
+        long start = System.nanoTime();
+        userDao.insertAll(users);
+        report("BaseDao insertAll", ROWS, start);
+
+        start = System.nanoTime();
+        List<User> all = userDao.query(new User());
+        assertEquals(ROWS, all.size());
+        report("BaseDao query", all.size(), start);
+
+        start = System.nanoTime();
+        for (int i = 0; i < LOOKUPS; i++) {
+            userDao.query(new User(i % ROWS + 1, null, null));
+        }
+        report("BaseDao query by key", LOOKUPS, start);
+    }
+
+    private void report(String name, int rows, long startNanos) {
+        long nanos = System.nanoTime() - startNanos;
+        System.out.println(String.format("[%s] %s: %d rows in %dms, %.0f rows/s",
+                storage.getName(), name, rows, nanos / 1000000, rows * 1e9 / nanos));
+    }
+}
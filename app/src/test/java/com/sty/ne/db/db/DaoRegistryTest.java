@@ -0,0 +1,82 @@
+package com.sty.ne.db.db;
+
+import com.sty.ne.db.model.Photo;
+import com.sty.ne.db.model.User;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * 多线程同时获取DAO：每个(数据库, DAO类, 实体类)只创建、init一次
+ * 在JVM上运行，不需要设备，DAO的init被替换成计数，不打开数据库
+ * @Author: tian
+ * @UpdateDate: 2020/12/6 8:40 PM
+ */
+public class DaoRegistryTest {
+    private static final String DATABASE = "data/data/com.sty.ne.db/ne.db";
+    private static final int THREADS = 8;
+
+    private final AtomicInteger initCount = new AtomicInteger();
+    private final DaoRegistry.DaoInitializer initializer = new DaoRegistry.DaoInitializer() {
+        @Override
+        public <M> boolean init(BaseDao<M> dao, Class<M> entityClass) {
+            initCount.incrementAndGet();
+            return true;
+        }
+    };
+
+    @Test
+    public void initOncePerKey() throws Exception {
+        final DaoRegistry registry = new DaoRegistry();
+        runConcurrently(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 1000; i++) {
+                    registry.get(DATABASE, BaseDao.class, User.class, initializer);
+                    registry.get(DATABASE, BaseDao.class, Photo.class, initializer);
+                    registry.get("other.db", BaseDao.class, User.class, initializer);
+                }
+            }
+        });
+        assertEquals(3, initCount.get());
+        assertEquals(3, registry.size());
+        //同一个DAO类用于不同的实体不会冲突
+        assertNotSame(registry.get(DATABASE, BaseDao.class, User.class, initializer),
+                registry.get(DATABASE, BaseDao.class, Photo.class, initializer));
+        assertSame(registry.get(DATABASE, BaseDao.class, User.class, initializer),
+                registry.get(DATABASE, BaseDao.class, User.class, initializer));
+    }
+
+    //THREADS个线程同时开始执行，等全部结束
+    private static void runConcurrently(final Runnable runnable) throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(THREADS);
+        final Throwable[] error = new Throwable[1];
+        for (int i = 0; i < THREADS; i++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        runnable.run();
+                    } catch (Throwable e) {
+                        error[0] = e;
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        start.countDown();
+        done.await();
+        if(error[0] != null) {
+            throw new AssertionError(error[0]);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.sty.ne.db.db;
+
+import com.sty.ne.db.model.User;
+import com.sty.ne.db.storage.Database;
+import com.sty.ne.db.storage.Storages;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BaseDao的热点路径：insert、query + getResult解析、count
+ * 只走public的接口，getValues和where子句的拼接计在按条件的query和count里
+ * rows是表中已有的行数，width是name和pwd两列字符串的长度，metrics为DaoMetrics是否打开
+ * ./gradlew :benchmark:jmh -Pjmh.include=BaseDaoBenchmark
+ * @Author: tian
+ * @UpdateDate: 2020/12/13 8:30 PM
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BaseDaoBenchmark {
+    @Param({"100", "10000"})
+    public int rows;
+
+    @Param({"16", "1024"})
+    public int width;
+
+    @Param({"true", "false"})
+    public boolean metrics;
+
+    private File dbFile;
+    private Database database;
+    private BaseDao<User> userDao;
+    private User sample;
+    private int nextKey;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        DaoMetrics.getInstance().setEnabled(metrics);
+        dbFile = File.createTempFile("nedb_dao", ".db");
+        database = Storages.getDefault().open(dbFile.getPath(), false);
+        userDao = new BaseDao<>();
+        userDao.init(database, User.class);
+
+        List<User> users = new ArrayList<>(rows);
+        for (int i = 1; i <= rows; i++) {
+            users.add(newUser(i));
+        }
+        userDao.insertAll(users);
+        sample = newUser(rows / 2 + 1);
+    }
+
+    private User newUser(int id) {
+        char[] text = new char[width];
+        Arrays.fill(text, (char) ('a' + id % 26));
+        User user = new User(id, new String(text), new String(text));
+        user.setStatus(id % 2);
+        return user;
+    }
+
+    //每轮迭代前删掉上一轮insert的行，表的大小保持在rows
+    @Setup(Level.Iteration)
+    public void resetInserted() {
+        database.execSQL("delete from " + userDao.getTableName() + " where u_id > " + rows);
+        nextKey = rows;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.close();
+        dbFile.delete();
+        DaoMetrics.getInstance().reset();
+    }
+
+    @Benchmark
+    public long insert() {
+        return userDao.insert(newUser(++nextKey));
+    }
+
+    //整表查询，时间主要在游标的解析上
+    @Benchmark
+    public List<User> queryAll() {
+        return userDao.query(new User());
+    }
+
+    //按主键查询一行
+    @Benchmark
+    public List<User> queryByKey() {
+        return userDao.query(new User(sample.getId(), null, null));
+    }
+
+    //按非主键的两列查询，包含getValues和where子句的拼接
+    @Benchmark
+    public List<User> queryByName() {
+        return userDao.query(new User(null, sample.getName(), sample.getPwd()));
+    }
+
+    @Benchmark
+    public long count() {
+        User where = new User();
+        where.setStatus(sample.getStatus());
+        return userDao.count(where);
+    }
+}
@@ -0,0 +1,56 @@
+package com.sty.ne.db.db;
+
+import com.sty.ne.db.model.Photo;
+import com.sty.ne.db.model.User;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BaseDaoFactory.getBaseDao在DAO已经创建之后的查找，单线程和4个线程同时查找
+ * 主库在工作目录下的data/data/com.sty.ne.db/ne.db
+ * ./gradlew :benchmark:jmh -Pjmh.include=DaoLookupBenchmark
+ * @Author: tian
+ * @UpdateDate: 2020/12/13 8:30 PM
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DaoLookupBenchmark {
+    private BaseDaoFactory factory;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        new File("data/data/com.sty.ne.db").mkdirs();
+        factory = BaseDaoFactory.getInstance();
+        //第一次调用创建DAO并建表，不计入测量
+        factory.getBaseDao(UserDao.class, User.class);
+        factory.getBaseDao(BaseDao.class, Photo.class);
+    }
+
+    @Benchmark
+    public UserDao lookup() {
+        return factory.getBaseDao(UserDao.class, User.class);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public UserDao lookupContended() {
+        return factory.getBaseDao(UserDao.class, User.class);
+    }
+
+    @Benchmark
+    public BaseDao<Photo> lookupGeneric() {
+        return factory.getBaseDao(BaseDao.class, Photo.class);
+    }
+}
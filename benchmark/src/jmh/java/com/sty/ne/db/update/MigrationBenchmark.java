@@ -0,0 +1,127 @@
+package com.sty.ne.db.update;
+
+import android.content.Context;
+import android.content.res.AssetManager;
+
+import com.sty.ne.db.db.BaseDao;
+import com.sty.ne.db.db.BaseDaoFactory;
+import com.sty.ne.db.db.UserDao;
+import com.sty.ne.db.model.MigrationRecord;
+import com.sty.ne.db.model.User;
+import com.sty.ne.db.storage.Database;
+import com.sty.ne.db.storage.Statement;
+import com.sty.ne.db.storage.Storages;
+import com.sty.ne.db.subdb.TenantDatabaseManager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * UpdateManager.startUpdateDb把tenants个分库从V002升级到脚本中的最新版本，每个库的tb_photo有photoRows行，
+ * 包括按rowid分块复制；每次调用前重新创建所有分库并清空主库中的升级记录，准备的时间不计入测量
+ * width是path列字符串的长度
+ * ./gradlew :benchmark:jmh -Pjmh.include=MigrationBenchmark
+ * @Author: tian
+ * @UpdateDate: 2020/12/13 8:30 PM
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+public class MigrationBenchmark {
+    @Param({"4"})
+    public int tenants;
+
+    @Param({"1000", "100000"})
+    public int photoRows;
+
+    @Param({"16", "1024"})
+    public int width;
+
+    private final Context context = new Context() {
+        private final AssetManager assets = new AssetManager();
+
+        @Override
+        public AssetManager getAssets() {
+            return assets;
+        }
+    };
+    private Database mainDatabase;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        new File("data/data/com.sty.ne.db").mkdirs();
+        BaseDaoFactory factory = BaseDaoFactory.getInstance();
+        mainDatabase = factory.getConnectionManager().getWriter();
+        //建好tb_user和tb_migration_log
+        factory.getBaseDao(UserDao.class, User.class);
+        factory.getBaseDao(BaseDao.class, MigrationRecord.class);
+        mainDatabase.execSQL("delete from tb_user");
+        for (int i = 1; i <= tenants; i++) {
+            mainDatabase.execSQL("insert into tb_user(u_id, name, pwd) values(?,?,?)",
+                    new Object[]{i, "user" + i, "123"});
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void createTenants() {
+        TenantDatabaseManager manager = TenantDatabaseManager.getInstance();
+        manager.closeAll();
+        mainDatabase.execSQL("delete from tb_migration_log");
+        char[] text = new char[width];
+        Arrays.fill(text, 'p');
+        String path = new String(text);
+        for (int i = 1; i <= tenants; i++) {
+            String dbPath = manager.getPath(i);
+            for (String suffix : new String[]{"", "-wal", "-shm", "-journal"}) {
+                new File(dbPath + suffix).delete();
+            }
+            Database database = Storages.getDefault().open(dbPath, false);
+            try {
+                //V002的表结构，user_version为0按baseVersion处理
+                database.execSQL("create table tb_photo(time TEXT, path TEXT)");
+                database.beginTransaction();
+                try {
+                    Statement statement = database.compileStatement("insert into tb_photo(time, path) values(?,?)");
+                    try {
+                        for (int row = 0; row < photoRows; row++) {
+                            statement.bindString(1, String.valueOf(row));
+                            statement.bindString(2, path);
+                            statement.executeInsert();
+                        }
+                    } finally {
+                        statement.close();
+                    }
+                    database.setTransactionSuccessful();
+                } finally {
+                    database.endTransaction();
+                }
+            } finally {
+                database.close();
+            }
+        }
+    }
+
+    @Benchmark
+    public MigrationRunner.Summary startUpdateDb() {
+        MigrationRunner.Summary summary = new UpdateManager().startUpdateDb(context);
+        if(summary == null || summary.getCount(MigrationRunner.Status.MIGRATED) != tenants) {
+            throw new IllegalStateException("migration failed: " + summary);
+        }
+        return summary;
+    }
+}
@@ -0,0 +1,51 @@
+package com.sty.ne.db.update;
+
+import android.content.res.AssetManager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 升级脚本的解析和升级链的查找：parse只在第一次升级时发生一次，getChain每个分库一次
+ * ./gradlew :benchmark:jmh -Pjmh.include=MigrationPlanBenchmark
+ * @Author: tian
+ * @UpdateDate: 2020/12/13 8:30 PM
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MigrationPlanBenchmark {
+    private final AssetManager assets = new AssetManager();
+    private MigrationPlan plan;
+
+    @Setup
+    public void setUp() throws IOException, XmlPullParserException {
+        plan = parse();
+    }
+
+    @Benchmark
+    public MigrationPlan parse() throws IOException, XmlPullParserException {
+        InputStream is = assets.open(MigrationPlan.ASSET_NAME);
+        try {
+            return new MigrationPlan(UpdateXml.parse(is));
+        } finally {
+            is.close();
+        }
+    }
+
+    @Benchmark
+    public List<UpdateDb.Statement> getChain() {
+        return plan.getChain(plan.resolveVersion(0));
+    }
+}
@@ -0,0 +1,574 @@
+package com.sty.ne.db.compiler;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * 编译期读取@DbTable/@DbField，为每个实体生成 实体类名_Mapper，
+ * 运行时BaseDao用它代替反射来建表、解析游标和取值
+ * 不满足生成条件的实体（没有无参构造、成员变量既不可见又没有getter/setter）只输出提示，运行时继续走反射
+ * @Author: tian
+ * @UpdateDate: 2020/11/25 9:40 PM
+ */
+public class DbTableProcessor extends AbstractProcessor {
+    private static final String DB_TABLE = "com.sty.ne.db.annotation.DbTable";
+    private static final String DB_FIELD = "com.sty.ne.db.annotation.DbField";
+    private static final String DB_PRIMARY_KEY = "com.sty.ne.db.annotation.DbPrimaryKey";
+    private static final String DB_INDEX = "com.sty.ne.db.annotation.DbIndex";
+    private static final String DB_COMPOSITE_INDEX = "com.sty.ne.db.annotation.DbCompositeIndex";
+    private static final String DB_COMPOSITE_INDEXES = "com.sty.ne.db.annotation.DbCompositeIndexes";
+    private static final String DB_CONVERT = "com.sty.ne.db.annotation.DbConvert";
+    private static final String ENTITY_MAPPER = "com.sty.ne.db.db.EntityMapper";
+    private static final String COLUMN_VALUES = "com.sty.ne.db.db.ColumnValues";
+    private static final String TYPE_CONVERTER = "com.sty.ne.db.db.TypeConverter";
+    private static final String ENUM_CONVERTER = "com.sty.ne.db.db.EnumConverter";
+    private static final String DATE_CONVERTER = "com.sty.ne.db.db.DateConverter";
+    private static final String BLOB = "com.sty.ne.db.db.Blob";
+    private static final String BLOB_CONVERTER = "com.sty.ne.db.db.BlobConverter";
+    //存储层的游标，生成的代码不依赖android.database
+    private static final String CURSOR = "com.sty.ne.db.storage.Cursor";
+    private static final String SUFFIX = "_Mapper";
+
+    private Messager messager;
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        messager = processingEnv.getMessager();
+    }
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Collections.singleton(DB_TABLE);
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        TypeElement dbTable = processingEnv.getElementUtils().getTypeElement(DB_TABLE);
+        if(dbTable == null) {
+            return false;
+        }
+        for (Element element : roundEnv.getElementsAnnotatedWith(dbTable)) {
+            if(element.getKind() != ElementKind.CLASS) {
+                continue;
+            }
+            TypeElement entity = (TypeElement) element;
+            EntityInfo info = analyse(entity);
+            if(info == null) {
+                continue;
+            }
+            try {
+                write(entity, info);
+            } catch (IOException e) {
+                messager.printMessage(Diagnostic.Kind.ERROR, "生成" + info.mapperName + "失败: " + e, entity);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 解析实体，不能生成时返回null
+     */
+    private EntityInfo analyse(TypeElement entity) {
+        if(entity.getNestingKind() != NestingKind.TOP_LEVEL
+                || entity.getModifiers().contains(Modifier.ABSTRACT)) {
+            skip(entity, "只支持顶层的非抽象类");
+            return null;
+        }
+        if(!hasNoArgConstructor(entity)) {
+            skip(entity, "没有可访问的无参构造函数");
+            return null;
+        }
+        EntityInfo info = new EntityInfo();
+        info.packageName = ((PackageElement) entity.getEnclosingElement()).getQualifiedName().toString();
+        info.entityName = entity.getSimpleName().toString();
+        info.mapperName = info.entityName + SUFFIX;
+        //和反射时一样，没有指定表名就用类的全名
+        String tableName = annotationValue(entity, DB_TABLE);
+        info.tableName = isEmpty(tableName) ? entity.getQualifiedName().toString() : tableName;
+
+        List<ExecutableElement> methods = ElementFilter.methodsIn(entity.getEnclosedElements());
+        for (VariableElement field : ElementFilter.fieldsIn(entity.getEnclosedElements())) {
+            if(field.getModifiers().contains(Modifier.STATIC)) {
+                continue;
+            }
+            ColumnInfo column = new ColumnInfo();
+            column.fieldType = field.asType().toString();
+            column.converter = converterOf(field);
+            column.type = column.converter != null ? ColumnType.CONVERTED : ColumnType.of(field.asType());
+            if(column.type == null) {
+                //不支持的数据类型
+                continue;
+            }
+            String fieldName = field.getSimpleName().toString();
+            String columnName = annotationValue(field, DB_FIELD);
+            column.columnName = isEmpty(columnName) ? fieldName : columnName;
+            if(!field.getModifiers().contains(Modifier.PRIVATE)) {
+                column.getter = fieldName;
+                column.setter = fieldName;
+                column.directAccess = true;
+            } else {
+                String capitalized = Character.toUpperCase(fieldName.charAt(0)) + fieldName.substring(1);
+                column.getter = findMethod(methods, "get" + capitalized, 0, field.asType());
+                if(column.getter == null && (column.type == ColumnType.BOOLEAN
+                        || column.type == ColumnType.PRIMITIVE_BOOLEAN)) {
+                    column.getter = findMethod(methods, "is" + capitalized, 0, field.asType());
+                }
+                column.setter = findMethod(methods, "set" + capitalized, 1, field.asType());
+                if(column.getter == null || column.setter == null) {
+                    skip(entity, "成员变量" + fieldName + "是private且缺少getter/setter");
+                    return null;
+                }
+            }
+            AnnotationMirror primaryKey = findAnnotation(field, DB_PRIMARY_KEY);
+            if(primaryKey != null) {
+                if(info.primaryKeyIndex != -1) {
+                    messager.printMessage(Diagnostic.Kind.ERROR, "只能有一个@DbPrimaryKey", field);
+                    return null;
+                }
+                info.primaryKeyIndex = info.columns.size();
+                column.autoIncrement = Boolean.TRUE.equals(annotationValue(primaryKey, "autoIncrement"));
+            }
+            AnnotationMirror index = findAnnotation(field, DB_INDEX);
+            if(index != null) {
+                info.indexSqls.add(createIndexSql(info.tableName, (String) annotationValue(index, "name"),
+                        Collections.singletonList(column.columnName),
+                        Boolean.TRUE.equals(annotationValue(index, "unique"))));
+            }
+            info.columns.add(column);
+        }
+        //类上的多列索引
+        AnnotationMirror compositeIndex = findAnnotation(entity, DB_COMPOSITE_INDEX);
+        if(compositeIndex != null) {
+            info.indexSqls.add(compositeIndexSql(info.tableName, compositeIndex));
+        }
+        AnnotationMirror compositeIndexes = findAnnotation(entity, DB_COMPOSITE_INDEXES);
+        if(compositeIndexes != null) {
+            for (Object value : (List<?>) annotationValue(compositeIndexes, "value")) {
+                info.indexSqls.add(compositeIndexSql(info.tableName,
+                        (AnnotationMirror) ((AnnotationValue) value).getValue()));
+            }
+        }
+        return info;
+    }
+
+    /**
+     * 需要转换的成员变量：@DbConvert指定的转换器，没有指定时枚举用EnumConverter、Date用DateConverter、
+     * Blob用BlobConverter
+     * @return 创建转换器的表达式，不需要转换时为null
+     */
+    private String converterOf(VariableElement field) {
+        AnnotationMirror convert = findAnnotation(field, DB_CONVERT);
+        if(convert != null) {
+            return "new " + annotationValue(convert, "value") + "()";
+        }
+        TypeMirror type = field.asType();
+        if(type.getKind() != TypeKind.DECLARED) {
+            return null;
+        }
+        if(processingEnv.getTypeUtils().asElement(type).getKind() == ElementKind.ENUM) {
+            return "new EnumConverter<" + type + ">(" + type + ".class)";
+        }
+        if("java.util.Date".equals(type.toString())) {
+            return "new DateConverter()";
+        }
+        if(BLOB.equals(type.toString())) {
+            return "new BlobConverter()";
+        }
+        return null;
+    }
+
+    private String compositeIndexSql(String tableName, AnnotationMirror index) {
+        List<String> columns = new ArrayList<>();
+        for (Object value : (List<?>) annotationValue(index, "columns")) {
+            columns.add((String) ((AnnotationValue) value).getValue());
+        }
+        return createIndexSql(tableName, (String) annotationValue(index, "name"), columns,
+                Boolean.TRUE.equals(annotationValue(index, "unique")));
+    }
+
+    //与BaseDao.createIndexSql()生成的语句保持一致
+    private static String createIndexSql(String tableName, String name, List<String> columns, boolean unique) {
+        StringBuilder sb = new StringBuilder();
+        if(isEmpty(name)) {
+            sb.append("idx_").append(tableName);
+            for (String column : columns) {
+                sb.append("_").append(column);
+            }
+            name = sb.toString().replaceAll("\\W", "_");
+            sb.setLength(0);
+        }
+        sb.append(unique ? "create unique index if not exists " : "create index if not exists ")
+                .append(name).append(" on ").append(tableName).append("(");
+        for (int i = 0; i < columns.size(); i++) {
+            sb.append(i == 0 ? "" : ",").append(columns.get(i));
+        }
+        sb.append(")");
+        return sb.toString();
+    }
+
+    private boolean hasNoArgConstructor(TypeElement entity) {
+        List<ExecutableElement> constructors = ElementFilter.constructorsIn(entity.getEnclosedElements());
+        for (ExecutableElement constructor : constructors) {
+            if(constructor.getParameters().isEmpty()
+                    && !constructor.getModifiers().contains(Modifier.PRIVATE)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String findMethod(List<ExecutableElement> methods, String name, int paramCount, TypeMirror type) {
+        for (ExecutableElement method : methods) {
+            if(!method.getSimpleName().contentEquals(name)
+                    || method.getParameters().size() != paramCount
+                    || method.getModifiers().contains(Modifier.PRIVATE)
+                    || method.getModifiers().contains(Modifier.STATIC)) {
+                continue;
+            }
+            TypeMirror methodType = paramCount == 0
+                    ? method.getReturnType() : method.getParameters().get(0).asType();
+            if(processingEnv.getTypeUtils().isSameType(methodType, type)) {
+                return name;
+            }
+        }
+        return null;
+    }
+
+    //注解中value()的值，没有该注解时为null
+    private String annotationValue(Element element, String annotationName) {
+        AnnotationMirror mirror = findAnnotation(element, annotationName);
+        return mirror != null ? String.valueOf(annotationValue(mirror, "value")) : null;
+    }
+
+    private AnnotationMirror findAnnotation(Element element, String annotationName) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            TypeElement type = (TypeElement) mirror.getAnnotationType().asElement();
+            if(type.getQualifiedName().contentEquals(annotationName)) {
+                return mirror;
+            }
+        }
+        return null;
+    }
+
+    //包括默认值
+    private Object annotationValue(AnnotationMirror mirror, String name) {
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry
+                : processingEnv.getElementUtils().getElementValuesWithDefaults(mirror).entrySet()) {
+            if(entry.getKey().getSimpleName().contentEquals(name)) {
+                return entry.getValue().getValue();
+            }
+        }
+        return null;
+    }
+
+    private void skip(TypeElement entity, String reason) {
+        messager.printMessage(Diagnostic.Kind.NOTE,
+                entity.getQualifiedName() + " 不生成" + SUFFIX + "（" + reason + "），运行时使用反射", entity);
+    }
+
+    private void write(TypeElement entity, EntityInfo info) throws IOException {
+        String qualifiedName = info.packageName.isEmpty()
+                ? info.mapperName : info.packageName + "." + info.mapperName;
+        JavaFileObject file = processingEnv.getFiler().createSourceFile(qualifiedName, entity);
+        Writer writer = file.openWriter();
+        try {
+            writer.write(generate(info));
+        } finally {
+            writer.close();
+        }
+    }
+
+    private String generate(EntityInfo info) {
+        String entity = info.entityName;
+        StringBuilder sb = new StringBuilder();
+        if(!info.packageName.isEmpty()) {
+            sb.append("package ").append(info.packageName).append(";\n\n");
+        }
+        boolean enumConverter = false;
+        boolean dateConverter = false;
+        boolean blobConverter = false;
+        boolean converter = false;
+        for (ColumnInfo column : info.columns) {
+            if(column.converter != null) {
+                converter = true;
+                enumConverter |= column.converter.startsWith("new EnumConverter<");
+                dateConverter |= column.converter.equals("new DateConverter()");
+                blobConverter |= column.converter.equals("new BlobConverter()");
+            }
+        }
+        if(blobConverter) {
+            sb.append("import ").append(BLOB_CONVERTER).append(";\n");
+        }
+        sb.append("import ").append(COLUMN_VALUES).append(";\n");
+        if(dateConverter) {
+            sb.append("import ").append(DATE_CONVERTER).append(";\n");
+        }
+        if(enumConverter) {
+            sb.append("import ").append(ENUM_CONVERTER).append(";\n");
+        }
+        sb.append("import ").append(ENTITY_MAPPER).append(";\n");
+        if(converter) {
+            sb.append("import ").append(TYPE_CONVERTER).append(";\n");
+        }
+        sb.append("import ").append(CURSOR).append(";\n\n");
+        sb.append("/**\n * 由DbTableProcessor生成，不要手动修改\n */\n");
+        sb.append("public final class ").append(info.mapperName)
+                .append(" implements EntityMapper<").append(entity).append("> {\n");
+
+        //列名
+        sb.append("    private static final String[] COLUMN_NAMES = {");
+        for (int i = 0; i < info.columns.size(); i++) {
+            sb.append(i == 0 ? "" : ", ").append(quote(info.columns.get(i).columnName));
+        }
+        sb.append("};\n");
+        //转换器，所有行共用
+        for (int i = 0; i < info.columns.size(); i++) {
+            ColumnInfo column = info.columns.get(i);
+            if(column.converter != null) {
+                sb.append("    private static final TypeConverter<").append(column.fieldType).append("> C").append(i)
+                        .append(" = ").append(column.converter).append(";\n");
+            }
+        }
+        sb.append("\n");
+
+        sb.append("    @Override\n    public String getTableName() {\n        return ")
+                .append(quote(info.tableName)).append(";\n    }\n\n");
+
+        sb.append("    @Override\n    public String getCreateTableSql() {\n        return ")
+                .append(createTableSql(info)).append(";\n    }\n\n");
+
+        sb.append("    @Override\n    public String[] getColumnNames() {\n        return COLUMN_NAMES;\n    }\n\n");
+
+        sb.append("    @Override\n    public int getPrimaryKeyIndex() {\n        return ")
+                .append(info.primaryKeyIndex).append(";\n    }\n\n");
+
+        sb.append("    @Override\n    public String[] getCreateIndexSqls() {\n        return new String[] {");
+        for (int i = 0; i < info.indexSqls.size(); i++) {
+            sb.append(i == 0 ? "\n" : ",\n").append("                ").append(quote(info.indexSqls.get(i)));
+        }
+        sb.append(info.indexSqls.isEmpty() ? "};\n    }\n\n" : "\n        };\n    }\n\n");
+
+        sb.append("    @Override\n    public ").append(entity).append(" newInstance() {\n        return new ")
+                .append(entity).append("();\n    }\n\n");
+
+        //游标 --> 实体
+        sb.append("    @Override\n    public void readCursor(Cursor cursor, int[] columnIndexes, ")
+                .append(entity).append(" entity) {\n");
+        sb.append("        int index;\n");
+        for (int i = 0; i < info.columns.size(); i++) {
+            ColumnInfo column = info.columns.get(i);
+            String read;
+            switch (column.type) {
+                case PRIMITIVE_INT:
+                case PRIMITIVE_LONG:
+                case PRIMITIVE_DOUBLE:
+                    //null读出来是0
+                    read = "cursor." + column.type.cursorGetter + "(index)";
+                    break;
+                case PRIMITIVE_BOOLEAN:
+                    read = "cursor.getLong(index) != 0";
+                    break;
+                case BOOLEAN:
+                    read = "cursor.isNull(index) ? null : cursor.getLong(index) != 0";
+                    break;
+                case CONVERTED:
+                    read = "cursor.isNull(index) ? null : C" + i + ".read(cursor, index)";
+                    break;
+                default:
+                    read = "cursor.isNull(index) ? null : cursor." + column.type.cursorGetter + "(index)";
+                    break;
+            }
+            sb.append("        index = columnIndexes[").append(i).append("];\n");
+            sb.append("        if (index != -1) {\n");
+            if(column.directAccess) {
+                sb.append("            entity.").append(column.setter).append(" = ").append(read).append(";\n");
+            } else {
+                sb.append("            entity.").append(column.setter).append("(").append(read).append(");\n");
+            }
+            sb.append("        }\n");
+        }
+        sb.append("    }\n\n");
+
+        //实体 --> 值，按类型放入，基本类型不装箱
+        sb.append("    @Override\n    public void getValues(").append(entity)
+                .append(" entity, ColumnValues values) {\n");
+        for (int i = 0; i < info.columns.size(); i++) {
+            ColumnInfo column = info.columns.get(i);
+            String get = "entity." + column.getter + (column.directAccess ? "" : "()");
+            switch (column.type) {
+                case STRING:
+                    sb.append("        values.putString(").append(i).append(", ").append(get).append(");\n");
+                    break;
+                case BLOB:
+                    sb.append("        values.putBlob(").append(i).append(", ").append(get).append(");\n");
+                    break;
+                case PRIMITIVE_INT:
+                case PRIMITIVE_LONG:
+                case PRIMITIVE_DOUBLE:
+                    sb.append("        values.putPrimitive(").append(i).append(", ").append(get).append(");\n");
+                    break;
+                case PRIMITIVE_BOOLEAN:
+                    sb.append("        values.putPrimitive(").append(i).append(", ").append(get).append(" ? 1 : 0);\n");
+                    break;
+                default:
+                    //可能为null的包装类型和需要转换的类型
+                    String put;
+                    if(column.type == ColumnType.CONVERTED) {
+                        put = "C" + i + ".write(c" + i + ", values, " + i + ")";
+                    } else if(column.type == ColumnType.BOOLEAN) {
+                        put = "values.putLong(" + i + ", c" + i + " ? 1 : 0)";
+                    } else if(column.type == ColumnType.DOUBLE) {
+                        put = "values.putDouble(" + i + ", c" + i + ")";
+                    } else {
+                        put = "values.putLong(" + i + ", c" + i + ")";
+                    }
+                    sb.append("        ").append(column.fieldType).append(" c").append(i).append(" = ").append(get)
+                            .append(";\n");
+                    sb.append("        if (c").append(i).append(" == null) {\n");
+                    sb.append("            values.putNull(").append(i).append(");\n");
+                    sb.append("        } else {\n");
+                    sb.append("            ").append(put).append(";\n");
+                    sb.append("        }\n");
+                    break;
+            }
+        }
+        sb.append("    }\n");
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    /**
+     * 建表语句的Java表达式，与BaseDao.getCreateTableSql()生成的语句保持一致
+     * 需要转换的列的类型由转换器在运行时给出："...,status " + C3.getSqlType() + ",..."
+     */
+    private String createTableSql(EntityInfo info) {
+        StringBuilder expression = new StringBuilder();
+        StringBuilder sb = new StringBuilder();
+        sb.append("create table if not exists ").append(info.tableName).append("(");
+        for (int i = 0; i < info.columns.size(); i++) {
+            ColumnInfo column = info.columns.get(i);
+            sb.append(i == 0 ? "" : ",").append(column.columnName).append(" ");
+            if(i == info.primaryKeyIndex && column.type.integerKey) {
+                //INTEGER PRIMARY KEY才是rowid的别名
+                sb.append("INTEGER PRIMARY KEY").append(column.autoIncrement ? " AUTOINCREMENT" : "");
+                continue;
+            }
+            if(column.type == ColumnType.CONVERTED) {
+                expression.append(quote(sb.toString())).append(" + C").append(i).append(".getSqlType() + ");
+                sb.setLength(0);
+            } else {
+                sb.append(column.type.sqlType);
+            }
+            if(i == info.primaryKeyIndex) {
+                sb.append(" PRIMARY KEY");
+            }
+        }
+        sb.append(")");
+        return expression.append(quote(sb.toString())).toString();
+    }
+
+    private static String quote(String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    private static boolean isEmpty(String value) {
+        return value == null || value.isEmpty();
+    }
+
+    private static class EntityInfo {
+        String packageName;
+        String entityName;
+        String mapperName;
+        String tableName;
+        List<ColumnInfo> columns = new ArrayList<>();
+        int primaryKeyIndex = -1;
+        List<String> indexSqls = new ArrayList<>();
+    }
+
+    private static class ColumnInfo {
+        String columnName;
+        ColumnType type;
+        //成员变量的类型，比如 java.lang.Integer、int
+        String fieldType;
+        //创建转换器的表达式，type为CONVERTED时不为null
+        String converter;
+        //directAccess时是成员变量名，否则是getter/setter方法名
+        String getter;
+        String setter;
+        boolean directAccess;
+        boolean autoIncrement;
+    }
+
+    //支持的成员变量类型，与ReflectionEntityMapper中反射支持的类型一致
+    private enum ColumnType {
+        STRING("java.lang.String", "TEXT", "getString", false),
+        INTEGER("java.lang.Integer", "INTEGER", "getInt", true),
+        LONG("java.lang.Long", "BIGINT", "getLong", true),
+        DOUBLE("java.lang.Double", "DOUBLE", "getDouble", false),
+        BOOLEAN("java.lang.Boolean", "INTEGER", "getLong", false),
+        BLOB("byte[]", "BLOB", "getBlob", false),
+        PRIMITIVE_INT("int", "INTEGER", "getInt", true),
+        PRIMITIVE_LONG("long", "BIGINT", "getLong", true),
+        PRIMITIVE_DOUBLE("double", "DOUBLE", "getDouble", false),
+        PRIMITIVE_BOOLEAN("boolean", "INTEGER", "getLong", false),
+        //枚举、Date和@DbConvert，列的类型由转换器决定
+        CONVERTED(null, null, null, false);
+
+        final String javaType;
+        final String sqlType;
+        final String cursorGetter;
+        //作为主键时是rowid的别名
+        final boolean integerKey;
+
+        ColumnType(String javaType, String sqlType, String cursorGetter, boolean integerKey) {
+            this.javaType = javaType;
+            this.sqlType = sqlType;
+            this.cursorGetter = cursorGetter;
+            this.integerKey = integerKey;
+        }
+
+        static ColumnType of(TypeMirror type) {
+            if(type.getKind() == TypeKind.ARRAY) {
+                return "byte[]".equals(type.toString()) ? BLOB : null;
+            }
+            for (ColumnType columnType : values()) {
+                if(type.toString().equals(columnType.javaType)) {
+                    return columnType;
+                }
+            }
+            return null;
+        }
+    }
+}
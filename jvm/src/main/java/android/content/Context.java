@@ -0,0 +1,12 @@
+package android.content;
+
+import android.content.res.AssetManager;
+
+/**
+ * android.content.Context的替身，升级只用到assets
+ * @Author: tian
+ * @UpdateDate: 2020/12/13 8:30 PM
+ */
+public abstract class Context {
+    public abstract AssetManager getAssets();
+}
@@ -0,0 +1,20 @@
+package android.content.res;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * android.content.res.AssetManager的替身：app的assets目录作为资源打包进来，从classpath读取
+ * @Author: tian
+ * @UpdateDate: 2020/12/13 8:30 PM
+ */
+public final class AssetManager {
+    public InputStream open(String fileName) throws IOException {
+        InputStream is = AssetManager.class.getClassLoader().getResourceAsStream(fileName);
+        if(is == null) {
+            throw new FileNotFoundException(fileName);
+        }
+        return is;
+    }
+}
@@ -0,0 +1,19 @@
+package android.os;
+
+/**
+ * android.os.Handler的替身，只支持post
+ * @Author: tian
+ * @UpdateDate: 2020/12/13 8:30 PM
+ */
+public class Handler {
+    private final Looper looper;
+
+    public Handler(Looper looper) {
+        this.looper = looper;
+    }
+
+    public final boolean post(Runnable r) {
+        looper.executor.execute(r);
+        return true;
+    }
+}
@@ -0,0 +1,30 @@
+package android.os;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * android.os.Looper的替身：主线程用一个后台线程代替
+ * @Author: tian
+ * @UpdateDate: 2020/12/13 8:30 PM
+ */
+public final class Looper {
+    private static final Looper MAIN = new Looper();
+
+    final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "main");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private Looper() {
+    }
+
+    public static Looper getMainLooper() {
+        return MAIN;
+    }
+}
@@ -0,0 +1,40 @@
+package android.text;
+
+import java.util.Iterator;
+
+/**
+ * android.text.TextUtils的替身，只有DAO用到的方法
+ * @Author: tian
+ * @UpdateDate: 2020/12/19 9:30 PM
+ */
+public final class TextUtils {
+    private TextUtils() {
+    }
+
+    public static boolean isEmpty(CharSequence str) {
+        return str == null || str.length() == 0;
+    }
+
+    public static String join(CharSequence delimiter, Object[] tokens) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < tokens.length; i++) {
+            if(i > 0) {
+                sb.append(delimiter);
+            }
+            sb.append(tokens[i]);
+        }
+        return sb.toString();
+    }
+
+    public static String join(CharSequence delimiter, Iterable<?> tokens) {
+        StringBuilder sb = new StringBuilder();
+        Iterator<?> iterator = tokens.iterator();
+        while (iterator.hasNext()) {
+            sb.append(iterator.next());
+            if(iterator.hasNext()) {
+                sb.append(delimiter);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,50 @@
+package android.util;
+
+/**
+ * android.util.Log的替身：默认只输出警告和错误，-Dnedb.log.verbose=true时全部输出
+ * 基准测试中日志不应该成为热点
+ * @Author: tian
+ * @UpdateDate: 2020/12/13 8:30 PM
+ */
+public final class Log {
+    private static final boolean VERBOSE = Boolean.getBoolean("nedb.log.verbose");
+
+    private Log() {
+    }
+
+    public static int v(String tag, String msg) {
+        return VERBOSE ? print("V", tag, msg, null) : 0;
+    }
+
+    public static int d(String tag, String msg) {
+        return VERBOSE ? print("D", tag, msg, null) : 0;
+    }
+
+    public static int i(String tag, String msg) {
+        return VERBOSE ? print("I", tag, msg, null) : 0;
+    }
+
+    public static int w(String tag, String msg) {
+        return print("W", tag, msg, null);
+    }
+
+    public static int w(String tag, String msg, Throwable tr) {
+        return print("W", tag, msg, tr);
+    }
+
+    public static int e(String tag, String msg) {
+        return print("E", tag, msg, null);
+    }
+
+    public static int e(String tag, String msg, Throwable tr) {
+        return print("E", tag, msg, tr);
+    }
+
+    private static int print(String level, String tag, String msg, Throwable tr) {
+        System.err.println(level + "/" + tag + ": " + msg);
+        if(tr != null) {
+            tr.printStackTrace();
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,18 @@
+package android.util;
+
+import org.kxml2.io.KXmlParser;
+import org.xmlpull.v1.XmlPullParser;
+
+/**
+ * android.util.Xml的替身，Android内置的也是kxml2
+ * @Author: tian
+ * @UpdateDate: 2020/12/13 8:30 PM
+ */
+public final class Xml {
+    private Xml() {
+    }
+
+    public static XmlPullParser newPullParser() {
+        return new KXmlParser();
+    }
+}
@@ -0,0 +1,246 @@
+package com.sty.ne.db.storage.jdbc;
+
+import com.sty.ne.db.storage.Cursor;
+import com.sty.ne.db.storage.StorageException;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 查询结果：创建时从ResultSet中读出所有的行
+ *
+ * 移动到当前窗口之外的行时重新"填充"窗口，从这一行开始最多装WINDOW_BYTES字节（和Android默认的2MB一样），
+ * 所以getWindowStartPosition变化的次数就是同样的查询在Android上填充CursorWindow的次数
+ * @Author: tian
+ * @UpdateDate: 2020/12/14 8:30 PM
+ */
+class JdbcCursor implements Cursor {
+    private static final int WINDOW_BYTES = 2 * 1024 * 1024;
+
+    private final String[] columnNames;
+    private final List<Object[]> rows = new ArrayList<>();
+    private final List<Integer> rowBytes = new ArrayList<>();
+    private int position = -1;
+    //当前窗口的第一行和行数
+    private int windowStart = -1;
+    private int windowRows;
+    private boolean closed;
+
+    JdbcCursor(String[] columnNames, ResultSet resultSet) throws SQLException {
+        if(resultSet == null) {
+            this.columnNames = columnNames;
+            return;
+        }
+        ResultSetMetaData metaData = resultSet.getMetaData();
+        int count = metaData.getColumnCount();
+        this.columnNames = new String[count];
+        for (int i = 0; i < count; i++) {
+            this.columnNames[i] = metaData.getColumnLabel(i + 1);
+        }
+        while (resultSet.next()) {
+            Object[] row = new Object[count];
+            int bytes = 0;
+            for (int i = 0; i < count; i++) {
+                Object value = resultSet.getObject(i + 1);
+                row[i] = value;
+                bytes += sizeOf(value);
+            }
+            rows.add(row);
+            rowBytes.add(bytes);
+        }
+    }
+
+    private static int sizeOf(Object value) {
+        if(value == null) {
+            return 1;
+        } else if(value instanceof String) {
+            return ((String) value).length() * 2 + 1;
+        } else if(value instanceof byte[]) {
+            return ((byte[]) value).length;
+        }
+        return 8;
+    }
+
+    //position不在当前窗口中时，从position开始重新填充
+    private void fillWindow(int position) {
+        if(windowStart != -1 && position >= windowStart && position < windowStart + windowRows) {
+            return;
+        }
+        windowStart = position;
+        windowRows = 0;
+        int bytes = 0;
+        for (int i = position; i < rows.size(); i++) {
+            bytes += rowBytes.get(i);
+            if(bytes > WINDOW_BYTES && i > position) {
+                break;
+            }
+            windowRows++;
+        }
+    }
+
+    @Override
+    public int getCount() {
+        return rows.size();
+    }
+
+    @Override
+    public int getPosition() {
+        return position;
+    }
+
+    @Override
+    public boolean moveToPosition(int position) {
+        if(position >= rows.size()) {
+            this.position = rows.size();
+            return false;
+        }
+        if(position < 0) {
+            this.position = -1;
+            return false;
+        }
+        this.position = position;
+        fillWindow(position);
+        return true;
+    }
+
+    @Override
+    public boolean moveToFirst() {
+        return moveToPosition(0);
+    }
+
+    @Override
+    public boolean moveToNext() {
+        return moveToPosition(position + 1);
+    }
+
+    @Override
+    public boolean moveToPrevious() {
+        return moveToPosition(position - 1);
+    }
+
+    @Override
+    public int getColumnIndex(String columnName) {
+        for (int i = 0; i < columnNames.length; i++) {
+            if(columnNames[i].equalsIgnoreCase(columnName)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return columnNames.clone();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return columnNames.length;
+    }
+
+    private Object value(int columnIndex) {
+        if(closed) {
+            throw new IllegalStateException("cursor is closed");
+        }
+        if(position < 0 || position >= rows.size()) {
+            throw new IllegalStateException("index " + position + " requested, with a size of " + rows.size());
+        }
+        return rows.get(position)[columnIndex];
+    }
+
+    @Override
+    public byte[] getBlob(int columnIndex) {
+        Object value = value(columnIndex);
+        if(value == null || value instanceof byte[]) {
+            return (byte[]) value;
+        }
+        return value.toString().getBytes();
+    }
+
+    @Override
+    public String getString(int columnIndex) {
+        Object value = value(columnIndex);
+        if(value instanceof byte[]) {
+            throw new StorageException("unable to convert BLOB to string");
+        }
+        return value == null ? null : value.toString();
+    }
+
+    @Override
+    public int getInt(int columnIndex) {
+        return (int) getLong(columnIndex);
+    }
+
+    //和SQLite一样，不能转换的文本按0处理
+    @Override
+    public long getLong(int columnIndex) {
+        Object value = value(columnIndex);
+        if(value instanceof Number) {
+            return ((Number) value).longValue();
+        } else if(value instanceof String) {
+            try {
+                return (long) Double.parseDouble(((String) value).trim());
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        } else if(value instanceof byte[]) {
+            throw new StorageException("unable to convert BLOB to long");
+        }
+        return 0;
+    }
+
+    @Override
+    public double getDouble(int columnIndex) {
+        Object value = value(columnIndex);
+        if(value instanceof Number) {
+            return ((Number) value).doubleValue();
+        } else if(value instanceof String) {
+            try {
+                return Double.parseDouble(((String) value).trim());
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        } else if(value instanceof byte[]) {
+            throw new StorageException("unable to convert BLOB to double");
+        }
+        return 0;
+    }
+
+    @Override
+    public int getType(int columnIndex) {
+        Object value = value(columnIndex);
+        if(value == null) {
+            return FIELD_TYPE_NULL;
+        } else if(value instanceof Integer || value instanceof Long) {
+            return FIELD_TYPE_INTEGER;
+        } else if(value instanceof Number) {
+            return FIELD_TYPE_FLOAT;
+        } else if(value instanceof byte[]) {
+            return FIELD_TYPE_BLOB;
+        }
+        return FIELD_TYPE_STRING;
+    }
+
+    @Override
+    public int getWindowStartPosition() {
+        return windowStart;
+    }
+
+    @Override
+    public boolean isNull(int columnIndex) {
+        return value(columnIndex) == null;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+}
@@ -0,0 +1,266 @@
+package com.sty.ne.db.storage.jdbc;
+
+import com.sty.ne.db.storage.Cursor;
+import com.sty.ne.db.storage.Database;
+import com.sty.ne.db.storage.Statement;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 一个JDBC连接
+ *
+ * 和SQLiteDatabase一样同一时间只有一个线程使用连接：事务从beginTransaction到最外层的endTransaction一直占用，
+ * 其它线程的操作等待事务结束；事务可以嵌套，任何一层没有setTransactionSuccessful时整个事务回滚
+ * 查询的结果在查询时全部读出，由JdbcCursor按2MB一个窗口模拟CursorWindow的填充
+ * @Author: tian
+ * @UpdateDate: 2020/12/14 8:30 PM
+ */
+class JdbcDatabase implements Database {
+    private final String path;
+    private final Connection connection;
+    private final boolean readOnly;
+    private final ReentrantLock lock = new ReentrantLock();
+    //每一层事务是否调用了setTransactionSuccessful，最外层在最底下
+    private final ArrayDeque<Boolean> transactions = new ArrayDeque<>();
+    //有一层没有成功，最外层结束时回滚
+    private boolean transactionFailed;
+    private volatile boolean open = true;
+
+    JdbcDatabase(String path, Connection connection, boolean readOnly) {
+        this.path = path;
+        this.connection = connection;
+        this.readOnly = readOnly;
+    }
+
+    @Override
+    public String getPath() {
+        return path;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    @Override
+    public void close() {
+        if(!open) {
+            return;
+        }
+        lock.lock();
+        try {
+            if(open) {
+                open = false;
+                connection.close();
+            }
+        } catch (SQLException e) {
+            throw JdbcStorage.convert(e, "close");
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void beginTransaction() {
+        lock();
+        boolean started = false;
+        try {
+            if(transactions.isEmpty()) {
+                transactionFailed = false;
+                execute("BEGIN EXCLUSIVE");
+            }
+            transactions.push(Boolean.FALSE);
+            started = true;
+        } finally {
+            if(!started) {
+                unlock();
+            }
+        }
+    }
+
+    @Override
+    public void setTransactionSuccessful() {
+        if(!inTransaction()) {
+            throw new IllegalStateException("no transaction pending");
+        }
+        if(transactions.peek()) {
+            throw new IllegalStateException("setTransactionSuccessful may only be called once per call to beginTransaction");
+        }
+        transactions.pop();
+        transactions.push(Boolean.TRUE);
+    }
+
+    @Override
+    public void endTransaction() {
+        if(!inTransaction()) {
+            throw new IllegalStateException("no transaction pending");
+        }
+        try {
+            if(!transactions.pop()) {
+                transactionFailed = true;
+            }
+            if(transactions.isEmpty()) {
+                execute(transactionFailed ? "ROLLBACK" : "COMMIT");
+            }
+        } finally {
+            //beginTransaction时加的锁
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean inTransaction() {
+        return lock.isHeldByCurrentThread() && !transactions.isEmpty();
+    }
+
+    @Override
+    public void execSQL(String sql) {
+        lock();
+        try {
+            execute(sql);
+        } finally {
+            unlock();
+        }
+    }
+
+    @Override
+    public void execSQL(String sql, Object[] bindArgs) {
+        JdbcStatement statement = (JdbcStatement) compileStatement(sql);
+        try {
+            if(bindArgs != null) {
+                for (int i = 0; i < bindArgs.length; i++) {
+                    statement.bind(i + 1, bindArgs[i]);
+                }
+            }
+            statement.execute();
+        } finally {
+            statement.close();
+        }
+    }
+
+    @Override
+    public Statement compileStatement(String sql) {
+        lock();
+        try {
+            return new JdbcStatement(this, connection.prepareStatement(sql), sql);
+        } catch (SQLException e) {
+            throw JdbcStorage.convert(e, sql);
+        } finally {
+            unlock();
+        }
+    }
+
+    @Override
+    public Cursor rawQuery(String sql, Object[] bindArgs) {
+        lock();
+        try {
+            PreparedStatement statement = connection.prepareStatement(sql);
+            try {
+                if(bindArgs != null) {
+                    JdbcStatement binder = new JdbcStatement(this, statement, sql);
+                    for (int i = 0; i < bindArgs.length; i++) {
+                        binder.bind(i + 1, bindArgs[i]);
+                    }
+                }
+                if(!statement.execute()) {
+                    return new JdbcCursor(new String[0], null);
+                }
+                ResultSet resultSet = statement.getResultSet();
+                try {
+                    return new JdbcCursor(null, resultSet);
+                } finally {
+                    resultSet.close();
+                }
+            } finally {
+                statement.close();
+            }
+        } catch (SQLException e) {
+            throw JdbcStorage.convert(e, sql);
+        } finally {
+            unlock();
+        }
+    }
+
+    @Override
+    public long longForQuery(String sql, Object[] bindArgs) {
+        JdbcStatement statement = (JdbcStatement) compileStatement(sql);
+        try {
+            if(bindArgs != null) {
+                for (int i = 0; i < bindArgs.length; i++) {
+                    statement.bind(i + 1, bindArgs[i]);
+                }
+            }
+            return statement.simpleQueryForLong();
+        } finally {
+            statement.close();
+        }
+    }
+
+    @Override
+    public int getVersion() {
+        return (int) longForQuery("PRAGMA user_version", null);
+    }
+
+    @Override
+    public void setVersion(int version) {
+        execSQL("PRAGMA user_version = " + version);
+    }
+
+    //内存数据库和只读连接不能切换到WAL
+    @Override
+    public boolean enableWriteAheadLogging() {
+        if(readOnly || ":memory:".equals(path) || path.isEmpty()) {
+            return false;
+        }
+        Cursor cursor = rawQuery("PRAGMA journal_mode=WAL", null);
+        try {
+            return cursor.moveToFirst() && "wal".equalsIgnoreCase(cursor.getString(0));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    //在锁内执行
+    private void execute(String sql) {
+        try {
+            java.sql.Statement statement = connection.createStatement();
+            try {
+                statement.execute(sql);
+            } finally {
+                statement.close();
+            }
+        } catch (SQLException e) {
+            throw JdbcStorage.convert(e, sql);
+        }
+    }
+
+    void lock() {
+        if(!open) {
+            throw new IllegalStateException("attempt to re-open an already-closed object: " + path);
+        }
+        lock.lock();
+    }
+
+    void unlock() {
+        lock.unlock();
+    }
+
+    Connection getConnection() {
+        return connection;
+    }
+
+    @Override
+    public String toString() {
+        return "JdbcDatabase: " + path;
+    }
+}
@@ -0,0 +1,185 @@
+package com.sty.ne.db.storage.jdbc;
+
+import com.sty.ne.db.storage.Statement;
+import com.sty.ne.db.storage.StorageException;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * 包装一个PreparedStatement，执行时占用JdbcDatabase的锁
+ * @Author: tian
+ * @UpdateDate: 2020/12/14 8:30 PM
+ */
+class JdbcStatement implements Statement {
+    private final JdbcDatabase database;
+    private final PreparedStatement statement;
+    private final String sql;
+
+    JdbcStatement(JdbcDatabase database, PreparedStatement statement, String sql) {
+        this.database = database;
+        this.statement = statement;
+        this.sql = sql;
+    }
+
+    @Override
+    public void bindNull(int index) {
+        try {
+            statement.setNull(index, Types.NULL);
+        } catch (SQLException e) {
+            throw JdbcStorage.convert(e, sql);
+        }
+    }
+
+    @Override
+    public void bindLong(int index, long value) {
+        try {
+            statement.setLong(index, value);
+        } catch (SQLException e) {
+            throw JdbcStorage.convert(e, sql);
+        }
+    }
+
+    @Override
+    public void bindDouble(int index, double value) {
+        try {
+            statement.setDouble(index, value);
+        } catch (SQLException e) {
+            throw JdbcStorage.convert(e, sql);
+        }
+    }
+
+    @Override
+    public void bindString(int index, String value) {
+        if(value == null) {
+            throw new IllegalArgumentException("the bind value at index " + index + " is null");
+        }
+        try {
+            statement.setString(index, value);
+        } catch (SQLException e) {
+            throw JdbcStorage.convert(e, sql);
+        }
+    }
+
+    @Override
+    public void bindBlob(int index, byte[] value) {
+        if(value == null) {
+            throw new IllegalArgumentException("the bind value at index " + index + " is null");
+        }
+        try {
+            statement.setBytes(index, value);
+        } catch (SQLException e) {
+            throw JdbcStorage.convert(e, sql);
+        }
+    }
+
+    //execSQL、rawQuery、longForQuery的Object[]参数按类型绑定
+    void bind(int index, Object value) {
+        if(value == null) {
+            bindNull(index);
+        } else if(value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            bindLong(index, ((Number) value).longValue());
+        } else if(value instanceof Double || value instanceof Float) {
+            bindDouble(index, ((Number) value).doubleValue());
+        } else if(value instanceof Boolean) {
+            bindLong(index, (Boolean) value ? 1 : 0);
+        } else if(value instanceof byte[]) {
+            bindBlob(index, (byte[]) value);
+        } else {
+            bindString(index, value.toString());
+        }
+    }
+
+    @Override
+    public void clearBindings() {
+        try {
+            statement.clearParameters();
+        } catch (SQLException e) {
+            throw JdbcStorage.convert(e, sql);
+        }
+    }
+
+    @Override
+    public void execute() {
+        database.lock();
+        try {
+            statement.execute();
+        } catch (SQLException e) {
+            throw JdbcStorage.convert(e, sql);
+        } finally {
+            database.unlock();
+        }
+    }
+
+    @Override
+    public int executeUpdateDelete() {
+        database.lock();
+        try {
+            return statement.executeUpdate();
+        } catch (SQLException e) {
+            throw JdbcStorage.convert(e, sql);
+        } finally {
+            database.unlock();
+        }
+    }
+
+    /**
+     * @return 插入的行的rowid，没有插入时为-1
+     */
+    @Override
+    public long executeInsert() {
+        database.lock();
+        try {
+            if(statement.executeUpdate() == 0) {
+                return -1;
+            }
+            java.sql.Statement rowid = database.getConnection().createStatement();
+            try {
+                ResultSet resultSet = rowid.executeQuery("select last_insert_rowid()");
+                return resultSet.next() ? resultSet.getLong(1) : -1;
+            } finally {
+                rowid.close();
+            }
+        } catch (SQLException e) {
+            throw JdbcStorage.convert(e, sql);
+        } finally {
+            database.unlock();
+        }
+    }
+
+    @Override
+    public long simpleQueryForLong() {
+        database.lock();
+        try {
+            ResultSet resultSet = statement.executeQuery();
+            try {
+                if(!resultSet.next()) {
+                    throw new StorageException("no rows: " + sql);
+                }
+                return resultSet.getLong(1);
+            } finally {
+                resultSet.close();
+            }
+        } catch (SQLException e) {
+            throw JdbcStorage.convert(e, sql);
+        } finally {
+            database.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            throw JdbcStorage.convert(e, sql);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "JdbcStatement: " + sql;
+    }
+}
@@ -0,0 +1,52 @@
+package com.sty.ne.db.storage.jdbc;
+
+import com.sty.ne.db.storage.ConstraintException;
+import com.sty.ne.db.storage.Database;
+import com.sty.ne.db.storage.Storage;
+import com.sty.ne.db.storage.StorageException;
+
+import org.sqlite.SQLiteConfig;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+
+/**
+ * 基于sqlite-jdbc的存储后端，在普通的JVM上使用（服务端、基准测试），每个Database一个JDBC连接
+ * @Author: tian
+ * @UpdateDate: 2020/12/14 8:30 PM
+ */
+public class JdbcStorage implements Storage {
+    public static final String NAME = "jdbc";
+    //SQLITE_CONSTRAINT的主错误码
+    private static final int SQLITE_CONSTRAINT = 19;
+
+    @Override
+    public Database open(String path, boolean readOnly) {
+        if(readOnly && !new File(path).exists()) {
+            throw new StorageException("unable to open database file: " + path);
+        }
+        SQLiteConfig config = new SQLiteConfig();
+        config.setReadOnly(readOnly);
+        try {
+            Connection connection = DriverManager.getConnection("jdbc:sqlite:" + path, config.toProperties());
+            return new JdbcDatabase(path, connection, readOnly);
+        } catch (SQLException e) {
+            throw new StorageException("unable to open database file: " + path, e);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    static StorageException convert(SQLException e, String sql) {
+        String message = e.getMessage() + ", while executing: " + sql;
+        if((e.getErrorCode() & 0xff) == SQLITE_CONSTRAINT) {
+            return new ConstraintException(message, e);
+        }
+        return new StorageException(message, e);
+    }
+}
@@ -0,0 +1,184 @@
+package com.sty.ne.db.db;
+
+import com.sty.ne.db.model.User;
+import com.sty.ne.db.storage.Database;
+import com.sty.ne.db.storage.jdbc.JdbcStorage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 异步DAO：写操作按提交的顺序在同一个线程上执行，读操作并行，异常和取消交给调用者
+ * @Author: tian
+ * @UpdateDate: 2020/12/14 10:50 PM
+ */
+public class AsyncDaoTest {
+    //回调直接在完成的线程上执行
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private Database database;
+    private BaseDao<User> userDao;
+    private DaoExecutors executors;
+    private AsyncDao<User> async;
+
+    @Before
+    public void setUp() {
+        database = new JdbcStorage().open(":memory:", false);
+        userDao = new BaseDao<>();
+        userDao.init(database, User.class);
+        executors = new DaoExecutors(2);
+        async = new AsyncDao<>(userDao, executors);
+    }
+
+    @After
+    public void tearDown() {
+        executors.shutdown();
+        database.close();
+    }
+
+    private static User withName(String name) {
+        User user = new User();
+        user.setName(name);
+        return user;
+    }
+
+    @Test
+    public void writesRunInSubmissionOrder() throws Exception {
+        final List<String> threads = Collections.synchronizedList(new ArrayList<String>());
+        List<DaoFuture<Long>> futures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            futures.add(async.insert(new User(null, "u" + i, "p")));
+            async.submitWrite(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    threads.add(Thread.currentThread().getName());
+                    return null;
+                }
+            });
+        }
+        //后提交的update在所有insert之后执行
+        DaoFuture<Long> update = async.update(withName("last"), withName("u99"));
+        assertEquals(Long.valueOf(1), update.get(5, TimeUnit.SECONDS));
+        for (int i = 0; i < futures.size(); i++) {
+            //rowid按执行的顺序分配
+            assertEquals(Long.valueOf(i + 1), futures.get(i).get());
+        }
+        List<User> users = async.query(new User(), "u_id", null, null).get(5, TimeUnit.SECONDS);
+        assertEquals(100, users.size());
+        assertEquals("u0", users.get(0).getName());
+        assertEquals("last", users.get(99).getName());
+        //所有写操作在同一个线程上
+        assertEquals(100, threads.size());
+        assertEquals(1, new HashSet<>(threads).size());
+    }
+
+    @Test
+    public void readsRunInParallel() throws Exception {
+        final CountDownLatch bothStarted = new CountDownLatch(2);
+        Callable<Boolean> read = new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws InterruptedException {
+                bothStarted.countDown();
+                //只有两个读操作同时在执行时才能等到
+                return bothStarted.await(5, TimeUnit.SECONDS);
+            }
+        };
+        DaoFuture<Boolean> first = async.submitRead(read);
+        DaoFuture<Boolean> second = async.submitRead(read);
+        assertTrue(first.get(10, TimeUnit.SECONDS));
+        assertTrue(second.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void errorIsDeliveredToCaller() throws Exception {
+        final IllegalStateException error = new IllegalStateException("boom");
+        final CountDownLatch delivered = new CountDownLatch(1);
+        final AtomicReference<Throwable> received = new AtomicReference<>();
+        DaoFuture<Void> future = async.submitWrite(new Callable<Void>() {
+            @Override
+            public Void call() {
+                throw error;
+            }
+        }).addCallback(new DaoCallback<Void>() {
+            @Override
+            public void onSuccess(Void result) {
+                delivered.countDown();
+            }
+
+            @Override
+            public void onFailure(Throwable e) {
+                received.set(e);
+                delivered.countDown();
+            }
+        }, DIRECT);
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("future should fail");
+        } catch (ExecutionException e) {
+            assertSame(error, e.getCause());
+        }
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        assertSame(error, received.get());
+        //失败之后写线程继续执行后面的操作
+        assertTrue(async.insert(new User(1, "a", "p")).get(5, TimeUnit.SECONDS) != -1);
+    }
+
+    @Test
+    public void cancelledWriteDoesNotRun() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        //占住写线程
+        DaoFuture<Void> blocker = async.submitWrite(new Callable<Void>() {
+            @Override
+            public Void call() throws InterruptedException {
+                release.await(5, TimeUnit.SECONDS);
+                return null;
+            }
+        });
+        final AtomicReference<Throwable> received = new AtomicReference<>();
+        DaoFuture<Long> insert = async.insert(new User(1, "a", "p")).addCallback(new DaoCallback<Long>() {
+            @Override
+            public void onSuccess(Long result) {
+            }
+
+            @Override
+            public void onFailure(Throwable e) {
+                received.set(e);
+            }
+        }, DIRECT);
+        assertTrue(insert.cancel(false));
+        release.countDown();
+        blocker.get(5, TimeUnit.SECONDS);
+        //排在取消的操作后面的写操作执行完时，取消的那个已经被跳过
+        async.submitWrite(new Callable<Void>() {
+            @Override
+            public Void call() {
+                return null;
+            }
+        }).get(5, TimeUnit.SECONDS);
+        assertEquals(0, userDao.count(new User()));
+        assertTrue(received.get() instanceof CancellationException);
+    }
+}
@@ -0,0 +1,183 @@
+package com.sty.ne.db.db;
+
+import com.sty.ne.db.model.User;
+import com.sty.ne.db.storage.Database;
+import com.sty.ne.db.storage.jdbc.JdbcStorage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+/**
+ * 批量写操作：所有行在一个事务中提交，失败的行跳过；语句编译失败时insert返回-1，批量操作结束事务，统计事件照常结束
+ * @Author: tian
+ * @UpdateDate: 2020/12/14 8:40 PM
+ */
+public class BaseDaoWriteTest {
+    private static final String[] SUFFIXES = {"", "-journal", "-wal", "-shm"};
+
+    private File dbFile;
+    private Database database;
+    private BaseDao<User> userDao;
+    private final List<DaoMetrics.Event> events = new ArrayList<>();
+    private final DaoMetrics.Listener listener = new DaoMetrics.Listener() {
+        @Override
+        public void onOperation(DaoMetrics.Event event) {
+            events.add(event);
+        }
+    };
+
+    @Before
+    public void setUp() {
+        dbFile = new File(System.getProperty("java.io.tmpdir"), "base_dao_write.db");
+        deleteDatabase();
+        database = new JdbcStorage().open(dbFile.getPath(), false);
+        userDao = new BaseDao<>();
+        userDao.init(database, User.class);
+        DaoMetrics.getInstance().addListener(listener);
+    }
+
+    @After
+    public void tearDown() {
+        DaoMetrics.getInstance().removeListener(listener);
+        database.close();
+        deleteDatabase();
+    }
+
+    private void deleteDatabase() {
+        for (String suffix : SUFFIXES) {
+            new File(dbFile.getPath() + suffix).delete();
+        }
+    }
+
+    //表被换成了缺少列的结构，之后编译insert/update/delete语句都会失败
+    private void breakTable() {
+        database.execSQL("drop table tb_user");
+        database.execSQL("create table tb_user(u_id INTEGER PRIMARY KEY)");
+    }
+
+    private long count() {
+        return database.longForQuery("select count(*) from tb_user", null);
+    }
+
+    private DaoMetrics.Event lastEvent(String operation) {
+        for (int i = events.size() - 1; i >= 0; i--) {
+            if(operation.equals(events.get(i).getOperation())) {
+                return events.get(i);
+            }
+        }
+        return null;
+    }
+
+    private static List<User> users(int count) {
+        List<User> users = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            users.add(new User(i, "u" + i, "p"));
+        }
+        return users;
+    }
+
+    @Test
+    public void batchWritesCommitTogether() {
+        assertEquals(3, userDao.insertAll(users(3)));
+        assertEquals(3, count());
+
+        List<User> entities = new ArrayList<>();
+        List<User> wheres = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            User entity = new User();
+            entity.setPwd("q");
+            entities.add(entity);
+            User where = new User();
+            where.setId(i);
+            wheres.add(where);
+        }
+        assertEquals(3, userDao.updateAll(entities, wheres));
+        User changed = new User();
+        changed.setPwd("q");
+        assertEquals(3, userDao.query(changed).size());
+
+        assertEquals(2, userDao.deleteAll(wheres.subList(0, 2)));
+        assertEquals(1, count());
+    }
+
+    @Test
+    public void failedRowIsSkipped() {
+        database.execSQL("create trigger reject_user before insert on tb_user when new.name = 'u2'"
+                + " begin select raise(abort, 'rejected'); end");
+        //被拒绝的行跳过，其它行照常提交
+        assertEquals(2, userDao.insertAll(users(3)));
+        assertEquals(2, count());
+    }
+
+    @Test
+    public void insertAllEndsTransactionWhenStatementCannotCompile() {
+        breakTable();
+        try {
+            userDao.insertAll(users(2));
+            fail("insertAll should throw");
+        } catch (RuntimeException expected) {
+        }
+        assertFalse(database.inTransaction());
+        DaoMetrics.Event event = lastEvent(DaoMetrics.INSERT_ALL);
+        assertNotNull(event);
+        assertNotNull(event.getError());
+
+        //事务已经结束，其它连接可以写入
+        Database other = new JdbcStorage().open(dbFile.getPath(), false);
+        try {
+            other.execSQL("insert into tb_user(u_id) values(3)");
+        } finally {
+            other.close();
+        }
+        assertEquals(1, count());
+    }
+
+    @Test
+    public void insertReturnsMinusOneWhenStatementCannotCompile() {
+        breakTable();
+        assertEquals(-1, userDao.insert(new User(1, "a", "p")));
+        DaoMetrics.Event event = lastEvent(DaoMetrics.INSERT);
+        assertNotNull(event);
+        assertNotNull(event.getError());
+        //失败之后可以继续使用
+        assertEquals(-1, userDao.insert(new User(2, "b", "p")));
+        assertEquals(0, userDao.getStatementCache().size());
+    }
+
+    @Test
+    public void criteriaWritesEndEventWhenStatementCannotCompile() {
+        breakTable();
+        User entity = new User();
+        entity.setName("x");
+        try {
+            userDao.update(entity, Criteria.where("u_id").eq(1));
+        } catch (RuntimeException expected) {
+        }
+        DaoMetrics.Event event = lastEvent(DaoMetrics.UPDATE);
+        assertNotNull(event);
+        assertNotNull(event.getError());
+        assertEquals(0, userDao.getStatementCache().size());
+    }
+
+    @Test
+    public void updateAllAndDeleteAllEndTransactionWhenStatementCannotCompile() {
+        List<User> users = users(1);
+        breakTable();
+        //每一行都编译失败，记录之后跳过，事务照常结束
+        assertEquals(0, userDao.updateAll(users, users));
+        assertFalse(database.inTransaction());
+        assertEquals(0, userDao.deleteAll(users));
+        assertFalse(database.inTransaction());
+        assertEquals(0, userDao.getStatementCache().size());
+    }
+}
@@ -0,0 +1,194 @@
+package com.sty.ne.db.db;
+
+import com.sty.ne.db.model.User;
+import com.sty.ne.db.storage.Database;
+import com.sty.ne.db.storage.jdbc.JdbcStorage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * 实体缓存和查询缓存在事务提交、回滚之后的失效
+ * 别的线程在提交之前读到旧的行并放进缓存，用事务中直接调用put模拟
+ * @Author: tian
+ * @UpdateDate: 2020/12/14 9:10 PM
+ */
+public class CacheTransactionTest {
+    private static final String[] SUFFIXES = {"", "-journal", "-wal", "-shm"};
+
+    private File dbFile;
+    private Database database;
+    private BaseDao<User> userDao;
+
+    @Before
+    public void setUp() {
+        dbFile = new File(System.getProperty("java.io.tmpdir"), "cache_transaction.db");
+        deleteDatabase();
+        database = new JdbcStorage().open(dbFile.getPath(), false);
+        userDao = newDao();
+        userDao.insert(new User(1, "a", "p"));
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+        deleteDatabase();
+    }
+
+    private void deleteDatabase() {
+        for (String suffix : SUFFIXES) {
+            new File(dbFile.getPath() + suffix).delete();
+        }
+    }
+
+    private BaseDao<User> newDao() {
+        BaseDao<User> dao = new BaseDao<>();
+        dao.init(database, User.class);
+        dao.setEntityCacheSize(10);
+        dao.setQueryCacheEnabled(true);
+        return dao;
+    }
+
+    private static User byId(int id) {
+        User where = new User();
+        where.setId(id);
+        return where;
+    }
+
+    private static User withName(String name) {
+        User entity = new User();
+        entity.setName(name);
+        return entity;
+    }
+
+    @Test
+    public void findByIdInTransactionDoesNotPopulateCache() {
+        userDao.runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                userDao.update(withName("b"), byId(1));
+                //事务中读到自己的修改，但不放进缓存
+                assertEquals("b", userDao.findById(1).getName());
+                assertEquals(0, userDao.getEntityCache().size());
+            }
+        });
+        assertEquals("b", userDao.findById(1).getName());
+        assertEquals(1, userDao.getEntityCache().size());
+    }
+
+    @Test
+    public void staleEntityCachedBeforeCommitIsDropped() {
+        final User old = userDao.findById(1);
+        final EntityCache<User> cache = userDao.getEntityCache();
+        userDao.runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                userDao.update(withName("b"), byId(1));
+                //别的读连接在提交之前读到旧的行
+                cache.put("1", old, cache.generation());
+            }
+        });
+        assertEquals("b", userDao.findById(1).getName());
+    }
+
+    @Test
+    public void rollbackClearsEntityCache() {
+        final User old = userDao.findById(1);
+        final EntityCache<User> cache = userDao.getEntityCache();
+        try {
+            userDao.runInTransaction(new Runnable() {
+                @Override
+                public void run() {
+                    userDao.update(withName("b"), byId(1));
+                    //事务中的实体不应该留在缓存中
+                    cache.put("1", userDao.findById(1), cache.generation());
+                    throw new IllegalStateException("rollback");
+                }
+            });
+            fail("runnable should throw");
+        } catch (IllegalStateException expected) {
+        }
+        assertEquals(0, cache.size());
+        assertEquals(old.getName(), userDao.findById(1).getName());
+    }
+
+    @Test
+    public void nestedWriteOfAnotherDaoIsInvalidatedAfterOuterCommit() {
+        final BaseDao<User> otherDao = newDao();
+        final User old = otherDao.findById(1);
+        final EntityCache<User> cache = otherDao.getEntityCache();
+        userDao.runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                otherDao.update(withName("b"), byId(1));
+                cache.put("1", old, cache.generation());
+            }
+        });
+        assertNull(cache.get("1"));
+        assertEquals("b", otherDao.findById(1).getName());
+    }
+
+    @Test
+    public void failedUpsertInsideTransactionClearsEntityCache() {
+        userDao.findById(1);
+        database.execSQL("create trigger reject_user before insert on tb_user when new.name = 'bad'"
+                + " begin select raise(abort, 'rejected'); end");
+        final EntityCache<User> cache = userDao.getEntityCache();
+        userDao.runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                userDao.update(withName("b"), byId(1));
+                assertEquals(-1, userDao.upsert(new User(2, "bad", "p")));
+            }
+        });
+        //upsert没有标记成功，整个事务回滚
+        assertEquals(0, cache.size());
+        assertEquals("a", userDao.findById(1).getName());
+    }
+
+    @Test
+    public void queryCacheVersionChangesAfterCommitAndRollback() {
+        QueryCache queryCache = userDao.getQueryCache();
+        assertEquals(1, userDao.query(withName("a")).size());
+        assertEquals(1, userDao.query(withName("a")).size());
+        assertEquals(1, queryCache.hitCount());
+
+        final long[] versionInTransaction = new long[1];
+        final BaseDao<User> otherDao = newDao();
+        userDao.runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                otherDao.update(withName("b"), byId(1));
+                //别的线程在提交之前查询时记下的版本号
+                versionInTransaction[0] = userDao.getQueryCache().getVersion("tb_user");
+            }
+        });
+        assertNotEquals(versionInTransaction[0], queryCache.getVersion("tb_user"));
+        assertEquals(0, userDao.query(withName("a")).size());
+        assertEquals(1, userDao.query(withName("b")).size());
+
+        try {
+            userDao.runInTransaction(new Runnable() {
+                @Override
+                public void run() {
+                    userDao.update(withName("c"), byId(1));
+                    versionInTransaction[0] = userDao.getQueryCache().getVersion("tb_user");
+                    throw new IllegalStateException("rollback");
+                }
+            });
+            fail("runnable should throw");
+        } catch (IllegalStateException expected) {
+        }
+        assertNotEquals(versionInTransaction[0], queryCache.getVersion("tb_user"));
+        assertEquals(1, userDao.query(withName("b")).size());
+        assertEquals(0, userDao.query(withName("c")).size());
+    }
+}
@@ -0,0 +1,140 @@
+package com.sty.ne.db.db;
+
+import com.sty.ne.db.model.User;
+import com.sty.ne.db.storage.Database;
+import com.sty.ne.db.storage.jdbc.JdbcStorage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * WAL下的写连接 + 读连接池：复用、上限、等待统计，查询不被写事务阻塞
+ * @Author: tian
+ * @UpdateDate: 2020/12/14 10:40 PM
+ */
+public class ConnectionManagerTest {
+    private static final String[] SUFFIXES = {"", "-journal", "-wal", "-shm"};
+
+    private File dbFile;
+    private ConnectionManager manager;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        dbFile = new File(System.getProperty("java.io.tmpdir"), "connection_manager.db");
+        deleteDatabase();
+        manager = new ConnectionManager(new JdbcStorage(), dbFile.getPath(), 2);
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        manager.close();
+        deleteDatabase();
+    }
+
+    private void deleteDatabase() {
+        for (String suffix : SUFFIXES) {
+            new File(dbFile.getPath() + suffix).delete();
+        }
+    }
+
+    @Test
+    public void readersAreReusedUpToMax() {
+        assertTrue(manager.isWalEnabled());
+        Database first = manager.acquireReader();
+        Database second = manager.acquireReader();
+        assertNotSame(manager.getWriter(), first);
+        assertNotSame(first, second);
+        assertEquals(2, manager.getOpenReaders());
+        manager.releaseReader(first);
+        assertSame(first, manager.acquireReader());
+        manager.releaseReader(first);
+        manager.releaseReader(second);
+        assertEquals(2, manager.getIdleReaders());
+        assertEquals(0, manager.getWaitCount());
+    }
+
+    @Test
+    public void memoryDatabaseUsesWriter() {
+        ConnectionManager memory = new ConnectionManager(new JdbcStorage(), ":memory:", 2);
+        try {
+            assertFalse(memory.isWalEnabled());
+            assertSame(memory.getWriter(), memory.acquireReader());
+        } finally {
+            memory.close();
+        }
+    }
+
+    @Test
+    public void busyPoolWaitsAndRecordsWaitTime() throws Exception {
+        manager.setMaxReaders(1);
+        final Database reader = manager.acquireReader();
+        Future<Database> waiting = executor.submit(new Callable<Database>() {
+            @Override
+            public Database call() {
+                return manager.acquireReader();
+            }
+        });
+        Thread.sleep(200);
+        assertFalse(waiting.isDone());
+        manager.releaseReader(reader);
+        assertSame(reader, waiting.get(5, TimeUnit.SECONDS));
+        assertEquals(1, manager.getWaitCount());
+        assertTrue(manager.getMaxWaitMillis() >= 100);
+        manager.releaseReader(reader);
+    }
+
+    @Test
+    public void shrinkingPoolClosesExtraReaders() {
+        Database first = manager.acquireReader();
+        Database second = manager.acquireReader();
+        manager.releaseReader(first);
+        manager.setMaxReaders(1);
+        assertEquals(1, manager.getOpenReaders());
+        //正在使用的连接归还时不再超出上限，留下来
+        manager.releaseReader(second);
+        assertEquals(1, manager.getOpenReaders());
+        assertEquals(1, manager.getIdleReaders());
+    }
+
+    @Test
+    public void queryIsNotBlockedByWriteTransaction() throws Exception {
+        final BaseDao<User> userDao = new BaseDao<>();
+        userDao.init(manager, User.class);
+        userDao.insert(new User(1, "a", "p"));
+
+        Database writer = manager.getWriter();
+        writer.beginTransaction();
+        try {
+            userDao.insert(new User(2, "b", "p"));
+            //别的线程在读连接上查询，只能看到已经提交的行
+            Future<Long> count = executor.submit(new Callable<Long>() {
+                @Override
+                public Long call() {
+                    return userDao.count(new User());
+                }
+            });
+            assertEquals(Long.valueOf(1), count.get(5, TimeUnit.SECONDS));
+            writer.setTransactionSuccessful();
+        } finally {
+            writer.endTransaction();
+        }
+        assertEquals(2, userDao.count(new User()));
+    }
+}
@@ -0,0 +1,107 @@
+package com.sty.ne.db.db;
+
+import com.sty.ne.db.model.User;
+import com.sty.ne.db.storage.Database;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 启动时某张表失败，整个事务回滚之后不留下表结构记录和DAO
+ * @Author: tian
+ * @UpdateDate: 2020/12/14 9:30 PM
+ */
+public class DbBootstrapTest {
+    private static final String[] SUFFIXES = {"", "-journal", "-wal", "-shm"};
+
+    private File dbFile;
+    private BaseDaoFactory factory;
+    private Database database;
+
+    //没有public的无参构造函数，创建时失败
+    public static class BrokenDao extends BaseDao<User> {
+        private BrokenDao() {
+        }
+    }
+
+    @Before
+    public void setUp() {
+        dbFile = new File(System.getProperty("java.io.tmpdir"), "db_bootstrap.db");
+        deleteDatabase();
+        factory = new BaseDaoFactory(dbFile.getPath());
+        database = factory.getConnectionManager().getWriter();
+    }
+
+    @After
+    public void tearDown() {
+        factory.getConnectionManager().close();
+        deleteDatabase();
+    }
+
+    private void deleteDatabase() {
+        for (String suffix : SUFFIXES) {
+            new File(dbFile.getPath() + suffix).delete();
+        }
+    }
+
+    private boolean tableExists(String tableName) {
+        return database.longForQuery("select count(*) from sqlite_master where type = 'table' and name = ?",
+                new String[]{tableName}) > 0;
+    }
+
+    @Test
+    public void failedBootstrapLeavesNoMetadataOrDaos() {
+        try {
+            new DbBootstrap(factory)
+                    .register(UserDao.class, User.class)
+                    .register(BrokenDao.class, User.class)
+                    .run();
+            fail("bootstrap should fail");
+        } catch (IllegalStateException expected) {
+        }
+        assertFalse(database.inTransaction());
+        assertFalse(tableExists("tb_user"));
+        assertEquals(0, database.longForQuery("select count(*) from " + SchemaMetadata.TABLE_NAME, null));
+        assertFalse(factory.hasBaseDao(UserDao.class, User.class));
+
+        //重新获取时建表，而不是相信回滚掉的记录
+        UserDao userDao = factory.getBaseDao(UserDao.class, User.class);
+        assertTrue(tableExists("tb_user"));
+        assertEquals(1, userDao.insert(new User(1, "a", "p")));
+    }
+
+    @Test
+    public void existingDaosSurviveFailedBootstrap() {
+        UserDao userDao = factory.getBaseDao(UserDao.class, User.class);
+        try {
+            new DbBootstrap(factory)
+                    .register(UserDao.class, User.class)
+                    .register(BrokenDao.class, User.class)
+                    .run();
+            fail("bootstrap should fail");
+        } catch (IllegalStateException expected) {
+        }
+        //启动之前已经建好的表和DAO不受影响
+        assertTrue(factory.hasBaseDao(UserDao.class, User.class));
+        assertSame(userDao, factory.getBaseDao(UserDao.class, User.class));
+        assertEquals(1, userDao.insert(new User(1, "a", "p")));
+    }
+
+    @Test
+    public void successfulBootstrapKeepsDaos() {
+        new DbBootstrap(factory).register(UserDao.class, User.class).run();
+        assertTrue(factory.hasBaseDao(UserDao.class, User.class));
+        assertTrue(tableExists("tb_user"));
+        assertEquals(1, database.longForQuery("select count(*) from " + SchemaMetadata.TABLE_NAME
+                + " where table_name = 'tb_user'", null));
+    }
+}
@@ -0,0 +1,24 @@
+package com.sty.ne.db.db;
+
+import com.sty.ne.db.storage.Storage;
+import com.sty.ne.db.storage.jdbc.JdbcStorage;
+
+import java.io.File;
+
+/**
+ * JDBC后端的外部Blob测试
+ * @Author: tian
+ * @UpdateDate: 2020/12/17 9:40 PM
+ */
+public class JdbcBlobStoreTest extends BlobStoreTest {
+
+    @Override
+    protected Storage createStorage() {
+        return new JdbcStorage();
+    }
+
+    @Override
+    protected File getDatabaseFile(String name) {
+        return new File(System.getProperty("java.io.tmpdir"), name);
+    }
+}
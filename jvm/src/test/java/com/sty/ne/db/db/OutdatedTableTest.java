@@ -0,0 +1,131 @@
+package com.sty.ne.db.db;
+
+import com.sty.ne.db.model.Photo;
+import com.sty.ne.db.storage.Database;
+import com.sty.ne.db.storage.jdbc.JdbcStorage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 旧版本建的表缺少实体新加的列（tb_photo没有image）：
+ * 升级之前只读写实际存在的列，缺少的列赋了值时拒绝写入，也不记录表结构；升级加上列之后按生成的映射器读写所有列
+ * @Author: tian
+ * @UpdateDate: 2020/12/17 10:10 PM
+ */
+public class OutdatedTableTest {
+    private static final String[] SUFFIXES = {"", "-journal", "-wal", "-shm"};
+
+    private File dbFile;
+    private Database database;
+
+    @Before
+    public void setUp() {
+        dbFile = new File(System.getProperty("java.io.tmpdir"), "outdated_table.db");
+        deleteDatabase();
+        database = new JdbcStorage().open(dbFile.getPath(), false);
+        //V003的tb_photo
+        database.execSQL("create table tb_photo(time TEXT, path TEXT, name TEXT, lastUpdateTime TEXT,"
+                + " user_id Integer primary key)");
+        database.setVersion(3);
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+        deleteDatabase();
+    }
+
+    private void deleteDatabase() {
+        for (String suffix : SUFFIXES) {
+            new File(dbFile.getPath() + suffix).delete();
+        }
+    }
+
+    private BaseDao<Photo> newDao() {
+        BaseDao<Photo> dao = new BaseDao<>();
+        dao.init(database, Photo.class);
+        return dao;
+    }
+
+    private static Photo photo(String time, byte[] image) {
+        Photo photo = new Photo();
+        photo.setTime(time);
+        photo.setPath("/sdcard/" + time + ".jpg");
+        if(image != null) {
+            photo.setImage(Blob.of(image));
+        }
+        return photo;
+    }
+
+    //生成的映射器的建表摘要
+    private static String schemaHash() {
+        EntityMapper<Photo> generated = EntityMappers.getGenerated(Photo.class);
+        return SchemaMetadata.hash(generated.getCreateTableSql(), generated.getCreateIndexSqls());
+    }
+
+    @Test
+    public void insertIntoTableMissingColumnSkipsIt() throws Exception {
+        BaseDao<Photo> photoDao = newDao();
+        assertNotEquals(-1, photoDao.insert(photo("1", null)));
+        List<Photo> photos = photoDao.query(new Photo());
+        assertEquals(1, photos.size());
+        assertEquals("1", photos.get(0).getTime());
+        assertNull(photos.get(0).getImage());
+        //没有记录，下次启动再检查
+        assertNull(SchemaMetadata.forDatabase(database).getColumns("tb_photo", schemaHash()));
+        //旧的版本号不变，升级脚本照常添加image列
+        assertEquals(3, database.getVersion());
+    }
+
+    @Test
+    public void valueForMissingColumnIsRejected() throws Exception {
+        BaseDao<Photo> photoDao = newDao();
+        try {
+            photoDao.insert(photo("1", new byte[]{1, 2, 3}));
+            fail("insert should throw");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            photoDao.insertAll(Arrays.asList(photo("2", null), photo("3", new byte[]{4})));
+            fail("insertAll should throw");
+        } catch (IllegalArgumentException expected) {
+        }
+        //整个批量操作回滚，不会只写入一部分
+        assertEquals(0, photoDao.count(new Photo()));
+        assertFalse(database.inTransaction());
+    }
+
+    @Test
+    public void columnAddedByMigrationIsUsed() throws Exception {
+        newDao().insert(photo("1", null));
+        //V003 -> V004
+        database.execSQL("alter table tb_photo add column image BLOB");
+        database.setVersion(4);
+        SchemaMetadata.clear(database);
+
+        BaseDao<Photo> photoDao = newDao();
+        byte[] image = new byte[]{4, 5, 6};
+        assertNotEquals(-1, photoDao.insert(photo("2", image)));
+        Photo where = new Photo();
+        where.setTime("2");
+        List<Photo> photos = photoDao.query(where);
+        assertEquals(1, photos.size());
+        assertArrayEquals(image, photos.get(0).getImage().toByteArray());
+        String[] columns = SchemaMetadata.forDatabase(database).getColumns("tb_photo", schemaHash());
+        assertTrue(Arrays.asList(columns).contains("image"));
+    }
+}
@@ -0,0 +1,169 @@
+package com.sty.ne.db.db;
+
+import com.sty.ne.db.model.User;
+import com.sty.ne.db.storage.Database;
+import com.sty.ne.db.storage.jdbc.JdbcStorage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * 查询结果缓存：规范化的键、表版本号失效、按字节数淘汰、命中率、命中时返回新的实体
+ * @Author: tian
+ * @UpdateDate: 2020/12/19 10:30 PM
+ */
+public class QueryCacheTest {
+    private Database database;
+    private QueryCache cache;
+
+    @Before
+    public void setUp() {
+        database = new JdbcStorage().open(":memory:", false);
+        cache = QueryCache.forDatabase(database);
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+    }
+
+    private static QueryCache.Key key(String tableName, Object arg) {
+        return new QueryCache.Key(tableName, null, "1=1 and name =?", new Object[]{arg}, null, null);
+    }
+
+    private void put(QueryCache.Key key, int size) {
+        cache.put(key, new RowSnapshot(new String[0]), cache.getVersion(key.getTableName()), size);
+    }
+
+    @Test
+    public void sameDatabaseSharesCache() {
+        assertSame(cache, QueryCache.forDatabase(database));
+    }
+
+    @Test
+    public void keyIsNormalized() {
+        QueryCache.Key a = new QueryCache.Key("t", null, " name =?  and  pwd =? ", new Object[]{"a", "b"},
+                "time  desc ", " 0 , 10");
+        QueryCache.Key b = new QueryCache.Key("t", null, "name =? and pwd =?", new Object[]{"a", "b"},
+                "time desc", "0,10");
+        assertEquals(a, b);
+        assertEquals(a.hashCode(), b.hashCode());
+        //参数按类型比较
+        assertNotEquals(key("t", 1L), key("t", "1"));
+        assertEquals(key("t", new byte[]{1}), key("t", new byte[]{1}));
+    }
+
+    @Test
+    public void bumpVersionInvalidatesOnlyThatTable() {
+        put(key("t1", "a"), 100);
+        put(key("t2", "a"), 100);
+        cache.bumpVersion("t1");
+        assertNull(cache.get(key("t1", "a")));
+        assertNotNull(cache.get(key("t2", "a")));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void resultReadBeforeWriteIsNotCached() {
+        QueryCache.Key key = key("t", "a");
+        long version = cache.getVersion("t");
+        //查询期间别的线程写了表
+        cache.bumpVersion("t");
+        cache.put(key, new RowSnapshot(new String[0]), version, 100);
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedOverBudget() {
+        QueryCache.Key a = key("t", "a");
+        QueryCache.Key b = key("t", "b");
+        QueryCache.Key c = key("t", "c");
+        put(a, 1000);
+        int entryBytes = cache.bytes();
+        cache.setMaxBytes(entryBytes * 2);
+        put(b, 1000);
+        //a最近用过，放入c时淘汰b
+        assertNotNull(cache.get(a));
+        put(c, 1000);
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.evictionCount());
+        assertNull(cache.get(b));
+        assertNotNull(cache.get(c));
+
+        //超过总大小的结果不缓存
+        put(key("t", "d"), entryBytes * 3);
+        assertNull(cache.get(key("t", "d")));
+    }
+
+    @Test
+    public void hitRatioIsTrackedPerTable() {
+        put(key("t1", "a"), 100);
+        cache.get(key("t1", "a"));
+        cache.get(key("t1", "a"));
+        cache.get(key("t1", "b"));
+        cache.get(key("t2", "a"));
+        assertEquals(2, cache.hitCount());
+        assertEquals(2, cache.missCount());
+        assertEquals(0.5f, cache.hitRatio(), 0.001f);
+        assertEquals(2f / 3, cache.hitRatio("t1"), 0.001f);
+        assertEquals(0f, cache.hitRatio("t2"), 0.001f);
+    }
+
+    @Test
+    public void writeThroughAnyDaoInvalidatesResults() {
+        BaseDao<User> reader = new BaseDao<>();
+        reader.init(database, User.class);
+        reader.setQueryCacheEnabled(true);
+        BaseDao<User> writer = new BaseDao<>();
+        writer.init(database, User.class);
+        writer.insert(new User(1, "a", "p"));
+
+        User where = new User();
+        where.setName("a");
+        assertEquals(1, reader.query(where).size());
+        List<User> cached = reader.query(where);
+        assertEquals(1, cached.size());
+        assertEquals(1, cache.hitCount());
+
+        //另一个DAO写同一张表
+        writer.insert(new User(2, "a", "p"));
+        assertEquals(2, reader.query(where).size());
+        assertEquals(1, cache.hitCount());
+    }
+
+    @Test
+    public void hitReturnsNewEntities() {
+        BaseDao<User> userDao = new BaseDao<>();
+        userDao.init(database, User.class);
+        userDao.setQueryCacheEnabled(true);
+        userDao.insert(new User(1, "a", "p"));
+
+        User where = new User();
+        where.setName("a");
+        User first = userDao.query(where).get(0);
+        //调用者修改返回的实体
+        first.setPwd("changed");
+        List<User> cached = userDao.query(where);
+        assertEquals(1, cache.hitCount());
+        assertNotSame(first, cached.get(0));
+        assertEquals("p", cached.get(0).getPwd());
+
+        //只查询部分列时，缓存的结果同样只有这些列
+        List<User> projected = userDao.query(where, new String[]{"name"}, null, null, null);
+        assertNull(projected.get(0).getPwd());
+        projected = userDao.query(where, new String[]{"name"}, null, null, null);
+        assertEquals(2, cache.hitCount());
+        assertEquals("a", projected.get(0).getName());
+        assertNull(projected.get(0).getPwd());
+    }
+}
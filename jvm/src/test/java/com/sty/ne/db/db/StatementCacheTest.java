@@ -0,0 +1,156 @@
+package com.sty.ne.db.db;
+
+import com.sty.ne.db.storage.Database;
+import com.sty.ne.db.storage.Statement;
+import com.sty.ne.db.storage.jdbc.JdbcStorage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * 按形状复用编译好的语句、LRU淘汰、同形状并发使用、关闭之后放回
+ * @Author: tian
+ * @UpdateDate: 2020/12/14 8:40 PM
+ */
+public class StatementCacheTest {
+    private Database database;
+    private StatementCache cache;
+    //每次编译的SQL
+    private final List<String> compiled = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        database = new JdbcStorage().open(":memory:", false);
+        database.execSQL("create table t(a INTEGER, b INTEGER, c INTEGER)");
+        cache = new StatementCache(database, new StatementCache.SqlFactory() {
+            @Override
+            public String createSql(StatementCache.Key key) {
+                //第columnMask列，1、2、4分别对应a、b、c
+                String column = key.getColumnMask() == 1 ? "a" : key.getColumnMask() == 2 ? "b" : "c";
+                String sql = "insert into t(" + column + ") values(?)";
+                compiled.add(sql);
+                return sql;
+            }
+        }, 2);
+    }
+
+    @After
+    public void tearDown() {
+        cache.close();
+        database.close();
+    }
+
+    private static StatementCache.Key key(long columnMask) {
+        return new StatementCache.Key(StatementCache.INSERT, columnMask, 0);
+    }
+
+    private void insert(long columnMask, long value) {
+        StatementCache.Key key = key(columnMask);
+        Statement statement = cache.acquire(key);
+        try {
+            statement.bindLong(1, value);
+            statement.executeInsert();
+        } finally {
+            cache.release(key, statement);
+        }
+    }
+
+    @Test
+    public void reusesStatementOfSameShape() {
+        Statement first = cache.acquire(key(1));
+        cache.release(key(1), first);
+        Statement second = cache.acquire(key(1));
+        assertSame(first, second);
+        cache.release(key(1), second);
+
+        for (int i = 0; i < 10; i++) {
+            insert(1, i);
+        }
+        assertEquals(1, compiled.size());
+        assertEquals(11, cache.hitCount());
+        assertEquals(1, cache.missCount());
+        assertEquals(10, database.longForQuery("select count(*) from t where a is not null", null));
+    }
+
+    @Test
+    public void releaseClearsBindings() {
+        Statement statement = cache.acquire(key(1));
+        statement.bindLong(1, 7);
+        cache.release(key(1), statement);
+        //上一次的参数不会带到下一次
+        statement = cache.acquire(key(1));
+        statement.executeInsert();
+        cache.release(key(1), statement);
+        assertEquals(1, database.longForQuery("select count(*) from t where a is null", null));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        insert(1, 1);
+        insert(2, 2);
+        //a最近用过，放入c时淘汰b
+        insert(1, 3);
+        insert(4, 4);
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.evictionCount());
+
+        compiled.clear();
+        insert(1, 5);
+        insert(4, 6);
+        assertEquals(0, compiled.size());
+        insert(2, 7);
+        assertEquals(1, compiled.size());
+    }
+
+    @Test
+    public void setMaxSizeTrims() {
+        insert(1, 1);
+        insert(2, 2);
+        cache.setMaxSize(1);
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.evictionCount());
+    }
+
+    @Test
+    public void concurrentUseOfSameShapeCompilesAnother() {
+        Statement first = cache.acquire(key(1));
+        Statement second = cache.acquire(key(1));
+        assertNotSame(first, second);
+        assertEquals(2, compiled.size());
+        cache.release(key(1), first);
+        //同形状的已经放回，第二条直接关闭
+        cache.release(key(1), second);
+        assertEquals(1, cache.size());
+        assertSame(first, cache.acquire(key(1)));
+    }
+
+    @Test
+    public void closedCacheClosesReleasedStatements() {
+        Statement statement = cache.acquire(key(1));
+        insert(2, 1);
+        cache.close();
+        assertEquals(0, cache.size());
+        cache.release(key(1), statement);
+        assertEquals(0, cache.size());
+        try {
+            statement.executeInsert();
+            fail("statement should be closed");
+        } catch (RuntimeException expected) {
+        }
+    }
+
+    @Test
+    public void releaseNullIsIgnored() {
+        cache.release(key(1), null);
+        assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,94 @@
+package com.sty.ne.db.db;
+
+import com.sty.ne.db.model.User;
+import com.sty.ne.db.storage.Database;
+import com.sty.ne.db.storage.jdbc.JdbcStorage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * 登录：其它用户改为未登录、当前用户插入或更新，在同一个事务中
+ * @Author: tian
+ * @UpdateDate: 2020/12/14 8:20 PM
+ */
+public class UserDaoTest {
+    private static final String[] SUFFIXES = {"", "-journal", "-wal", "-shm"};
+
+    private File dbFile;
+    private Database database;
+    private UserDao userDao;
+
+    @Before
+    public void setUp() {
+        dbFile = new File(System.getProperty("java.io.tmpdir"), "user_dao.db");
+        deleteDatabase();
+        database = new JdbcStorage().open(dbFile.getPath(), false);
+        userDao = new UserDao();
+        userDao.init(database, User.class);
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+        deleteDatabase();
+    }
+
+    private void deleteDatabase() {
+        for (String suffix : SUFFIXES) {
+            new File(dbFile.getPath() + suffix).delete();
+        }
+    }
+
+    @Test
+    public void insertDoesNotLogIn() {
+        assertEquals(1, userDao.insert(new User(1, "a", "p")));
+        assertNull(userDao.getCurrentUserId());
+    }
+
+    @Test
+    public void loginInsertsNewUser() {
+        assertEquals(1, userDao.login(new User(1, "a", "p")));
+        assertEquals(Integer.valueOf(1), userDao.getCurrentUserId());
+
+        //没有主键时直接插入
+        assertEquals(1, userDao.login(new User(null, "b", "p")));
+        assertEquals(2, userDao.count(new User()));
+    }
+
+    @Test
+    public void loginLogsOutOtherUsers() {
+        userDao.login(new User(1, "a", "p"));
+        userDao.login(new User(2, "b", "p"));
+        //已经存在的用户按主键更新
+        assertEquals(1, userDao.login(new User(1, "a2", "p")));
+
+        User loggedIn = new User();
+        loggedIn.setStatus(1);
+        assertEquals(1, userDao.count(loggedIn));
+        assertEquals(Integer.valueOf(1), userDao.getCurrentUserId());
+        assertEquals("a2", userDao.getCurrentUser().getName());
+        assertEquals(2, userDao.count(new User()));
+    }
+
+    @Test
+    public void failedLoginRollsBackLogout() {
+        userDao.login(new User(1, "a", "p"));
+        database.execSQL("create trigger reject_user before insert on tb_user when new.name = 'bad'"
+                + " begin select raise(abort, 'rejected'); end");
+
+        assertEquals(-1, userDao.login(new User(2, "bad", "p")));
+        //批量改为未登录的update和失败的insert一起回滚
+        User loggedIn = new User();
+        loggedIn.setStatus(1);
+        assertEquals(1, userDao.count(loggedIn));
+        assertEquals(1, userDao.count(new User()));
+        assertEquals(Integer.valueOf(1), userDao.getCurrentUser().getId());
+    }
+}
@@ -0,0 +1,196 @@
+package com.sty.ne.db.db;
+
+import com.sty.ne.db.model.User;
+import com.sty.ne.db.storage.Database;
+import com.sty.ne.db.storage.jdbc.JdbcStorage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collection;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 延迟批量写入：close和flush写完队列中的行，按maxBatchSize和flushIntervalMs分批，队列满时背压
+ * 和close并发的insert要么被写入，要么抛出IllegalStateException
+ * @Author: tian
+ * @UpdateDate: 2020/12/19 9:10 PM
+ */
+public class WriteBehindInserterTest {
+    //不会因为时间到了而提交
+    private static final long NEVER = TimeUnit.HOURS.toMillis(1);
+
+    private Database database;
+    private BaseDao<User> userDao;
+    private WriteBehindInserter<User> inserter;
+
+    //insertAll等待放行，用来占住后台线程
+    public static class BlockingUserDao extends BaseDao<User> {
+        final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public int insertAll(Collection<User> entities) {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return super.insertAll(entities);
+        }
+    }
+
+    @Before
+    public void setUp() {
+        database = new JdbcStorage().open(":memory:", false);
+        userDao = new BaseDao<>();
+        userDao.init(database, User.class);
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        if(inserter != null) {
+            inserter.close();
+        }
+        database.close();
+    }
+
+    private long rows() {
+        return userDao.count(new User());
+    }
+
+    @Test
+    public void closeWritesQueuedRows() throws Exception {
+        inserter = new WriteBehindInserter<>(userDao, 1000, NEVER, 1000);
+        for (int i = 0; i < 50; i++) {
+            inserter.insert(new User(i, "u" + i, "p"));
+        }
+        inserter.close();
+        assertEquals(50, rows());
+        assertEquals(50, inserter.getInsertedRows());
+        assertEquals(1, inserter.getBatchCount());
+        assertEquals(0, inserter.getQueueSize());
+        try {
+            inserter.insert(new User(100, "late", "p"));
+            fail("insert after close should throw");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void flushWritesRowsInBatchesOfMaxSize() throws Exception {
+        inserter = new WriteBehindInserter<>(userDao, 10, NEVER, 1000);
+        for (int i = 0; i < 35; i++) {
+            inserter.insert(new User(i, "u" + i, "p"));
+        }
+        inserter.flush();
+        assertEquals(35, rows());
+        assertTrue(inserter.getBatchCount() >= 4);
+        assertEquals(10, inserter.getMaxBatchSize());
+    }
+
+    @Test
+    public void intervalCommitsWithoutFlush() throws Exception {
+        inserter = new WriteBehindInserter<>(userDao, 1000, 20, 1000);
+        inserter.insert(new User(1, "a", "p"));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (rows() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, rows());
+    }
+
+    @Test
+    public void fullQueueAppliesBackpressure() throws Exception {
+        BlockingUserDao blockingDao = new BlockingUserDao();
+        blockingDao.init(database, User.class);
+        inserter = new WriteBehindInserter<>(blockingDao, 1, 0, 2);
+        int accepted = 0;
+        //后台线程卡在第一批，之后的行只能留在队列里，直到放不下
+        while (inserter.offer(new User(accepted, "u" + accepted, "p"), 100, TimeUnit.MILLISECONDS)) {
+            accepted++;
+            assertTrue("queue never filled up", accepted < 100);
+        }
+        assertFalse(inserter.offer(new User(accepted, "x", "p"), 10, TimeUnit.MILLISECONDS));
+        blockingDao.release.countDown();
+        assertTrue(inserter.offer(new User(accepted, "u" + accepted, "p"), 5, TimeUnit.SECONDS));
+        inserter.close();
+        assertEquals(accepted + 1, rows());
+    }
+
+    @Test
+    public void fullQueueStillAcceptsFlushAndClose() throws Exception {
+        final BlockingUserDao blockingDao = new BlockingUserDao();
+        blockingDao.init(database, User.class);
+        inserter = new WriteBehindInserter<>(blockingDao, 1, 0, 2);
+        int accepted = 0;
+        while (inserter.offer(new User(accepted, "u" + accepted, "p"), 100, TimeUnit.MILLISECONDS)) {
+            accepted++;
+            assertTrue("queue never filled up", accepted < 100);
+        }
+        //控制标记不占行的容量
+        assertEquals(2, inserter.getQueueSize());
+        Thread closer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    inserter.flush();
+                    inserter.close();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        closer.start();
+        blockingDao.release.countDown();
+        closer.join(5000);
+        assertFalse(closer.isAlive());
+        assertEquals(accepted, rows());
+    }
+
+    @Test
+    public void insertRacingCloseIsWrittenOrRejected() throws Exception {
+        inserter = new WriteBehindInserter<>(userDao, 10, 1, 5);
+        final AtomicInteger written = new AtomicInteger();
+        final AtomicInteger nextId = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(4);
+        Thread[] producers = new Thread[4];
+        for (int t = 0; t < producers.length; t++) {
+            producers[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    started.countDown();
+                    try {
+                        while (true) {
+                            int id = nextId.getAndIncrement();
+                            inserter.insert(new User(id, "u" + id, "p"));
+                            written.incrementAndGet();
+                        }
+                    } catch (IllegalStateException closed) {
+                        //close之后被拒绝
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            producers[t].start();
+        }
+        started.await();
+        Thread.sleep(50);
+        inserter.close();
+        for (Thread producer : producers) {
+            producer.join(5000);
+            assertFalse(producer.isAlive());
+        }
+        //insert正常返回的行都被写入，没有丢在队列里
+        assertEquals(written.get(), rows());
+        assertEquals(written.get(), inserter.getInsertedRows());
+    }
+}
@@ -0,0 +1,23 @@
+package com.sty.ne.db.storage;
+
+import com.sty.ne.db.storage.jdbc.JdbcStorage;
+
+import java.io.File;
+
+/**
+ * JDBC后端的吞吐量
+ * @Author: tian
+ * @UpdateDate: 2020/12/14 9:20 PM
+ */
+public class JdbcStorageThroughputBenchmark extends StorageThroughputBenchmark {
+
+    @Override
+    protected Storage createStorage() {
+        return new JdbcStorage();
+    }
+
+    @Override
+    protected File getDatabaseFile(String name) {
+        return new File(System.getProperty("java.io.tmpdir"), name);
+    }
+}
@@ -0,0 +1,105 @@
+package com.sty.ne.db.subdb;
+
+import com.sty.ne.db.storage.Database;
+import com.sty.ne.db.storage.jdbc.JdbcStorage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 分库的LRU：超出maxOpen时关闭最久没有使用的，正在使用的等最后一个release，
+ * 真正关闭之前通知OnInvalidateListener丢弃在它上面创建的DAO
+ * @Author: tian
+ * @UpdateDate: 2020/12/19 10:00 PM
+ */
+public class TenantDatabaseManagerTest {
+    private static final String[] SUFFIXES = {"", "-journal", "-wal", "-shm"};
+
+    private File directory;
+    private TenantDatabaseManager tenants;
+    //收到onInvalidate时数据库是否还开着
+    private final List<Database> invalidated = new ArrayList<>();
+    private final List<Boolean> openWhenInvalidated = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        directory = new File(System.getProperty("java.io.tmpdir"), "tenant_manager");
+        tenants = new TenantDatabaseManager(new JdbcStorage(), 1, directory.getPath());
+        deleteDatabases();
+        tenants.addOnInvalidateListener(new TenantDatabaseManager.OnInvalidateListener() {
+            @Override
+            public void onInvalidate(Database database) {
+                invalidated.add(database);
+                openWhenInvalidated.add(database.isOpen());
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        tenants.closeAll();
+        deleteDatabases();
+        directory.delete();
+    }
+
+    private void deleteDatabases() {
+        for (int userId = 1; userId <= 2; userId++) {
+            for (String suffix : SUFFIXES) {
+                new File(tenants.getPath(userId) + suffix).delete();
+            }
+        }
+    }
+
+    @Test
+    public void evictedDatabaseIsInvalidatedBeforeClose() {
+        Database first = tenants.acquire(tenants.getPath(1));
+        tenants.release(first);
+        Database second = tenants.acquire(tenants.getPath(2));
+        tenants.release(second);
+        assertEquals(1, invalidated.size());
+        assertSame(first, invalidated.get(0));
+        assertTrue(openWhenInvalidated.get(0));
+        assertFalse(first.isOpen());
+        assertEquals(1, tenants.getOpenCount());
+    }
+
+    @Test
+    public void databaseInUseIsInvalidatedOnLastRelease() {
+        Database first = tenants.acquire(tenants.getPath(1));
+        Database second = tenants.acquire(tenants.getPath(2));
+        //first被淘汰，但还在使用，不能丢弃它的DAO
+        assertTrue(invalidated.isEmpty());
+        assertTrue(first.isOpen());
+        //同一个路径重新打开的是新的数据库
+        Database reopened = tenants.acquire(tenants.getPath(1));
+        assertNotSame(first, reopened);
+        tenants.release(first);
+        assertTrue(invalidated.contains(first));
+        assertFalse(first.isOpen());
+        assertTrue(reopened.isOpen());
+        tenants.release(second);
+        tenants.release(reopened);
+    }
+
+    @Test
+    public void emptyPathIsRejected() {
+        assertEquals("", tenants.getPath(null));
+        try {
+            tenants.acquire(tenants.getPath(null));
+            fail("acquire without a logged in user should throw");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.sty.ne.db.update;
+
+import com.sty.ne.db.db.BaseDao;
+import com.sty.ne.db.model.MigrationRecord;
+import com.sty.ne.db.storage.Database;
+import com.sty.ne.db.storage.jdbc.JdbcStorage;
+import com.sty.ne.db.subdb.TenantDatabaseManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 分块复制：按rowid分块（rowid可以不连续），每一块和进度一起提交，失败或进程被杀之后从记录的位置接着复制
+ * @Author: tian
+ * @UpdateDate: 2020/12/14 11:20 PM
+ */
+public class ChunkedCopyTest {
+    private static final String[] SUFFIXES = {"", "-journal", "-wal", "-shm"};
+    private static final String CHAIN = "V002->V004";
+    //和assets中的升级脚本相同，每块3行，新表的path不能重复
+    private static final String UPDATE_XML = "<updateXml baseVersion=\"V002\">"
+            + "<updateStep versionFrom=\"V002\" versionTo=\"V003\"><updateDb>"
+            + "<sql_rename>alter table tb_photo rename to bak_tb_photo;</sql_rename>"
+            + "<sql_create>create table if not exists tb_photo(time TEXT, path TEXT unique, name TEXT,"
+            + " lastUpdateTime TEXT, user_id Integer primary key);</sql_create>"
+            + "<copy_chunked from=\"bak_tb_photo\" to=\"tb_photo\" columns=\"time, path\" chunkRows=\"3\"/>"
+            + "<sql_delete>drop table if exists bak_tb_photo;</sql_delete>"
+            + "</updateDb></updateStep>"
+            + "<updateStep versionFrom=\"V003\" versionTo=\"V004\"><updateDb>"
+            + "<sql_alter>alter table tb_photo add column image BLOB;</sql_alter>"
+            + "</updateDb></updateStep>"
+            + "</updateXml>";
+
+    private File directory;
+    private JdbcStorage storage;
+    private TenantDatabaseManager tenants;
+    private Database mainDatabase;
+    private BaseDao<MigrationRecord> recordDao;
+    private MigrationPlan plan;
+    private String path;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = new File(System.getProperty("java.io.tmpdir"), "chunked_copy");
+        storage = new JdbcStorage();
+        tenants = new TenantDatabaseManager(storage, 2, directory.getPath());
+        path = tenants.getPath(1);
+        deleteDatabase();
+        mainDatabase = storage.open(":memory:", false);
+        recordDao = new BaseDao<>();
+        recordDao.init(mainDatabase, MigrationRecord.class);
+        plan = new MigrationPlan(UpdateXml.parse(new ByteArrayInputStream(UPDATE_XML.getBytes("UTF-8"))));
+    }
+
+    @After
+    public void tearDown() {
+        tenants.closeAll();
+        mainDatabase.close();
+        deleteDatabase();
+        directory.delete();
+    }
+
+    private void deleteDatabase() {
+        for (String suffix : SUFFIXES) {
+            new File(path + suffix).delete();
+        }
+    }
+
+    private MigrationRunner.Result migrate() {
+        MigrationRunner.Summary summary = new MigrationRunner(1, tenants, recordDao).run(Arrays.asList(1), plan, null);
+        //分库在下一次打开之前关闭
+        tenants.closeAll();
+        return summary.getResults().get(0);
+    }
+
+    private static void insertPhotos(Database database, String table, int from, int to) {
+        for (int i = from; i <= to; i++) {
+            database.execSQL("insert into " + table + "(rowid, time, path) values(?,?,?)",
+                    new Object[]{i, "t" + i, "/p" + i});
+        }
+    }
+
+    @Test
+    public void chunksFollowRowidGaps() {
+        Database database = storage.open(":memory:", false);
+        try {
+            database.execSQL("create table src(time TEXT, path TEXT)");
+            database.execSQL("create table dst(time TEXT, path TEXT)");
+            for (long rowid : new long[]{1, 2, 10, 11, 50, 90, 91}) {
+                database.execSQL("insert into src(rowid, time, path) values(?,?,?)", new Object[]{rowid, "t", "p"});
+            }
+            ChunkedCopy copy = new ChunkedCopy("src", "dst", "time, path", 3);
+            assertEquals(10, copy.nextChunkEnd(database, 0));
+            assertEquals(3, copy.copyRange(database, 0, 10));
+            assertEquals(90, copy.nextChunkEnd(database, 10));
+            assertEquals(3, copy.copyRange(database, 10, 90));
+            assertEquals(91, copy.nextChunkEnd(database, 90));
+            assertEquals(1, copy.copyRange(database, 90, 91));
+            //没有剩下的行
+            assertEquals(91, copy.nextChunkEnd(database, 91));
+            assertEquals(7, database.longForQuery("select count(*) from dst", null));
+        } finally {
+            database.close();
+        }
+    }
+
+    @Test
+    public void resumesFromCheckpoint() {
+        //进程在复制完前6行之后被杀
+        Database database = storage.open(path, false);
+        try {
+            database.execSQL("create table bak_tb_photo(time TEXT, path TEXT)");
+            insertPhotos(database, "bak_tb_photo", 1, 10);
+            database.execSQL("create table tb_photo(time TEXT, path TEXT unique, name TEXT,"
+                    + " lastUpdateTime TEXT, user_id Integer primary key)");
+            database.execSQL("insert into tb_photo(time, path) select time, path from bak_tb_photo where rowid <= 6");
+            database.execSQL("create table nedb_migration_progress(chain TEXT PRIMARY KEY, statement INTEGER,"
+                    + " last_rowid INTEGER)");
+            database.execSQL("insert into nedb_migration_progress values(?,?,?)", new Object[]{CHAIN, 2, 6});
+        } finally {
+            database.close();
+        }
+
+        MigrationRunner.Result result = migrate();
+        assertEquals(MigrationRunner.Status.MIGRATED, result.getStatus());
+        assertEquals(4, result.getCopiedRows());
+
+        database = storage.open(path, false);
+        try {
+            assertEquals(plan.getTargetVersion(), database.getVersion());
+            assertEquals(10, database.longForQuery("select count(*) from tb_photo", null));
+            assertEquals(0, database.longForQuery("select count(*) from nedb_migration_progress", null));
+            assertEquals(0, database.longForQuery(
+                    "select count(*) from sqlite_master where name = 'bak_tb_photo'", null));
+        } finally {
+            database.close();
+        }
+    }
+
+    @Test
+    public void failedChunkKeepsCommittedChunks() {
+        Database database = storage.open(path, false);
+        try {
+            database.execSQL("create table tb_photo(time TEXT, path TEXT)");
+            insertPhotos(database, "tb_photo", 1, 10);
+            //第三块中有重复的path
+            database.execSQL("update tb_photo set path = '/p1' where rowid = 8");
+        } finally {
+            database.close();
+        }
+
+        MigrationRunner.Result result = migrate();
+        assertEquals(MigrationRunner.Status.FAILED, result.getStatus());
+        assertEquals(6, result.getCopiedRows());
+        assertEquals(0, recordDao.count(new MigrationRecord()));
+
+        database = storage.open(path, false);
+        try {
+            assertEquals(0, database.getVersion());
+            assertEquals(6, database.longForQuery("select count(*) from tb_photo", null));
+            assertEquals(2, database.longForQuery("select statement from nedb_migration_progress", null));
+            assertEquals(6, database.longForQuery("select last_rowid from nedb_migration_progress", null));
+            database.execSQL("update bak_tb_photo set path = '/p8' where rowid = 8");
+        } finally {
+            database.close();
+        }
+
+        //从第7行接着复制
+        result = migrate();
+        assertEquals(MigrationRunner.Status.MIGRATED, result.getStatus());
+        assertEquals(4, result.getCopiedRows());
+        database = storage.open(path, false);
+        try {
+            assertEquals(plan.getTargetVersion(), database.getVersion());
+            assertEquals(10, database.longForQuery("select count(distinct path) from tb_photo", null));
+        } finally {
+            database.close();
+        }
+    }
+
+    @Test
+    public void checkpointOfAnotherChainFails() {
+        Database database = storage.open(path, false);
+        try {
+            database.execSQL("create table tb_photo(time TEXT, path TEXT)");
+            insertPhotos(database, "tb_photo", 1, 3);
+            database.execSQL("create table nedb_migration_progress(chain TEXT PRIMARY KEY, statement INTEGER,"
+                    + " last_rowid INTEGER)");
+            database.execSQL("insert into nedb_migration_progress values(?,?,?)", new Object[]{"V001->V004", 2, 6});
+        } finally {
+            database.close();
+        }
+
+        MigrationRunner.Result result = migrate();
+        assertEquals(MigrationRunner.Status.FAILED, result.getStatus());
+        assertTrue(result.getError() instanceof IllegalStateException);
+
+        //什么都没有执行
+        database = storage.open(path, false);
+        try {
+            assertEquals(0, database.getVersion());
+            assertEquals(3, database.longForQuery("select count(*) from tb_photo", null));
+            assertEquals(1, database.longForQuery("select count(*) from nedb_migration_progress", null));
+        } finally {
+            database.close();
+        }
+    }
+}
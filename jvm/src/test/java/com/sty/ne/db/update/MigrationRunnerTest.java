@@ -0,0 +1,210 @@
+package com.sty.ne.db.update;
+
+import android.content.Context;
+import android.content.res.AssetManager;
+
+import com.sty.ne.db.db.BaseDao;
+import com.sty.ne.db.db.QueryCache;
+import com.sty.ne.db.model.MigrationRecord;
+import com.sty.ne.db.storage.Database;
+import com.sty.ne.db.storage.jdbc.JdbcStorage;
+import com.sty.ne.db.subdb.TenantDatabaseManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 并行升级分库：升级到目标版本并在主库中记录，文件不存在的跳过，单个库失败不影响其它库，重新执行时按记录跳过
+ * 升级之后作废查询缓存，丢弃在库上创建的DAO
+ * @Author: tian
+ * @UpdateDate: 2020/12/19 10:30 PM
+ */
+public class MigrationRunnerTest {
+    private static final String[] SUFFIXES = {"", "-journal", "-wal", "-shm"};
+
+    private File directory;
+    private JdbcStorage storage;
+    private TenantDatabaseManager tenants;
+    private Database mainDatabase;
+    private BaseDao<MigrationRecord> recordDao;
+    private MigrationPlan plan;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = new File(System.getProperty("java.io.tmpdir"), "migration_runner");
+        storage = new JdbcStorage();
+        tenants = new TenantDatabaseManager(storage, 2, directory.getPath());
+        deleteDatabases();
+        mainDatabase = storage.open(":memory:", false);
+        recordDao = new BaseDao<>();
+        recordDao.init(mainDatabase, MigrationRecord.class);
+        plan = MigrationPlan.get(new Context() {
+            @Override
+            public AssetManager getAssets() {
+                return new AssetManager();
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        tenants.closeAll();
+        mainDatabase.close();
+        deleteDatabases();
+        directory.delete();
+    }
+
+    private void deleteDatabases() {
+        for (int userId = 1; userId <= 4; userId++) {
+            for (String suffix : SUFFIXES) {
+                new File(tenants.getPath(userId) + suffix).delete();
+            }
+        }
+    }
+
+    //V002建的分库，没有记录user_version
+    private void createOldTenant(int userId, int rows) {
+        Database database = storage.open(tenants.getPath(userId), false);
+        try {
+            database.execSQL("create table tb_photo(time TEXT, path TEXT)");
+            for (int i = 0; i < rows; i++) {
+                database.execSQL("insert into tb_photo(time, path) values(?,?)", new Object[]{"t" + i, "/p" + i});
+            }
+        } finally {
+            database.close();
+        }
+    }
+
+    private Database openTenant(int userId) {
+        return storage.open(tenants.getPath(userId), false);
+    }
+
+    @Test
+    public void migratesExistingTenantsAndSkipsMissing() {
+        createOldTenant(1, 5);
+        createOldTenant(2, 3);
+        MigrationRunner runner = new MigrationRunner(2, tenants, recordDao);
+        MigrationRunner.Summary summary = runner.run(Arrays.asList(1, 2, 3), plan, null);
+        assertEquals(2, summary.getCount(MigrationRunner.Status.MIGRATED));
+        assertEquals(1, summary.getCount(MigrationRunner.Status.MISSING));
+        assertEquals(8, summary.getCopiedRows());
+        assertEquals(2, recordDao.count(new MigrationRecord()));
+        tenants.closeAll();
+
+        Database database = openTenant(1);
+        try {
+            assertEquals(plan.getTargetVersion(), database.getVersion());
+            assertEquals(5, database.longForQuery("select count(*) from tb_photo", null));
+            //V003 -> V004加上的列
+            assertEquals(0, database.longForQuery("select count(image) from tb_photo", null));
+            assertEquals(0, database.longForQuery(
+                    "select count(*) from sqlite_master where name = 'bak_tb_photo'", null));
+        } finally {
+            database.close();
+        }
+    }
+
+    @Test
+    public void rerunSkipsRecordedTenants() {
+        createOldTenant(1, 2);
+        MigrationRunner runner = new MigrationRunner(2, tenants, recordDao);
+        assertEquals(1, runner.run(Arrays.asList(1), plan, null).getCount(MigrationRunner.Status.MIGRATED));
+        tenants.closeAll();
+        //主库中有记录，不再打开分库
+        MigrationRunner.Summary summary = runner.run(Arrays.asList(1), plan, null);
+        assertEquals(1, summary.getCount(MigrationRunner.Status.ALREADY_DONE));
+        assertEquals(0, tenants.getOpenCount());
+
+        //没有记录但已经是目标版本的库只读版本号
+        recordDao.delete(new MigrationRecord());
+        summary = runner.run(Arrays.asList(1), plan, null);
+        assertEquals(1, summary.getCount(MigrationRunner.Status.ALREADY_DONE));
+        assertEquals(1, recordDao.count(new MigrationRecord()));
+    }
+
+    @Test
+    public void failedTenantIsRolledBackAndOthersMigrate() {
+        createOldTenant(1, 2);
+        //没有tb_photo，重命名失败
+        Database broken = openTenant(2);
+        broken.execSQL("create table tb_other(id INTEGER)");
+        broken.close();
+
+        final int[] finished = {0};
+        MigrationRunner runner = new MigrationRunner(1, tenants, recordDao);
+        MigrationRunner.Summary summary = runner.run(Arrays.asList(1, 2), plan, new MigrationRunner.ProgressListener() {
+            @Override
+            public void onProgress(int count, int total, MigrationRunner.Result result) {
+                finished[0] = count;
+                assertEquals(2, total);
+            }
+        });
+        assertEquals(2, finished[0]);
+        assertEquals(1, summary.getCount(MigrationRunner.Status.MIGRATED));
+        assertEquals(1, summary.getCount(MigrationRunner.Status.FAILED));
+        for (MigrationRunner.Result result : summary.getResults()) {
+            if(result.getStatus() == MigrationRunner.Status.FAILED) {
+                assertEquals(Integer.valueOf(2), result.getUserId());
+                assertTrue(result.getError() != null);
+            }
+        }
+        //失败的库没有记录，下次重新升级
+        assertEquals(1, recordDao.count(new MigrationRecord()));
+        tenants.closeAll();
+
+        Database database = openTenant(2);
+        try {
+            assertEquals(0, database.getVersion());
+            assertEquals(0, database.longForQuery(
+                    "select count(*) from sqlite_master where name like '%tb_photo'", null));
+        } finally {
+            database.close();
+        }
+    }
+
+    @Test
+    public void migrationInvalidatesCacheAndDaos() {
+        createOldTenant(1, 2);
+        createOldTenant(2, 2);
+        final List<Database> invalidated = new ArrayList<>();
+        tenants.addOnInvalidateListener(new TenantDatabaseManager.OnInvalidateListener() {
+            @Override
+            public void onInvalidate(Database database) {
+                synchronized (invalidated) {
+                    invalidated.add(database);
+                }
+            }
+        });
+        //升级期间一直占住，升级用的是同一个数据库
+        Database database = tenants.acquire(tenants.getPath(1));
+        try {
+            QueryCache cache = QueryCache.forDatabase(database);
+            cache.bumpVersion("tb_photo");
+            long version = cache.getVersion("tb_photo");
+            MigrationRunner runner = new MigrationRunner(1, tenants, recordDao);
+            assertEquals(2, runner.run(Arrays.asList(1, 2), plan, null).getCount(MigrationRunner.Status.MIGRATED));
+            assertEquals(version + 1, cache.getVersion("tb_photo"));
+            assertSame(database, invalidated.get(0));
+            assertEquals(2, invalidated.size());
+
+            //已经升级过的库什么都不执行，不作废
+            recordDao.delete(new MigrationRecord());
+            invalidated.clear();
+            runner.run(Arrays.asList(1), plan, null);
+            assertEquals(version + 1, cache.getVersion("tb_photo"));
+            assertTrue(invalidated.isEmpty());
+        } finally {
+            tenants.release(database);
+        }
+    }
+}
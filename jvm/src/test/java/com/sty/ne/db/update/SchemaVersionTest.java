@@ -0,0 +1,103 @@
+package com.sty.ne.db.update;
+
+import android.content.Context;
+import android.content.res.AssetManager;
+
+import com.sty.ne.db.db.BaseDao;
+import com.sty.ne.db.db.SchemaMetadata;
+import com.sty.ne.db.model.Photo;
+import com.sty.ne.db.model.User;
+import com.sty.ne.db.storage.Database;
+import com.sty.ne.db.storage.jdbc.JdbcStorage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 新建的库记为当前的表结构版本，升级时什么都不执行；记录版本之前建的库按baseVersion升级
+ * @Author: tian
+ * @UpdateDate: 2020/12/14 9:50 PM
+ */
+public class SchemaVersionTest {
+    private static final String[] SUFFIXES = {"", "-journal", "-wal", "-shm"};
+
+    private File dbFile;
+    private Database database;
+    private MigrationPlan plan;
+
+    @Before
+    public void setUp() throws Exception {
+        dbFile = new File(System.getProperty("java.io.tmpdir"), "schema_version.db");
+        deleteDatabase();
+        database = new JdbcStorage().open(dbFile.getPath(), false);
+        plan = MigrationPlan.get(new Context() {
+            @Override
+            public AssetManager getAssets() {
+                return new AssetManager();
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        database.close();
+        deleteDatabase();
+    }
+
+    private void deleteDatabase() {
+        for (String suffix : SUFFIXES) {
+            new File(dbFile.getPath() + suffix).delete();
+        }
+    }
+
+    private <T> BaseDao<T> newDao(Class<T> entityClass) {
+        BaseDao<T> dao = new BaseDao<>();
+        dao.init(database, entityClass);
+        return dao;
+    }
+
+    @Test
+    public void schemaVersionMatchesPlanTarget() {
+        assertEquals(plan.getTargetVersion(), SchemaMetadata.SCHEMA_VERSION);
+    }
+
+    @Test
+    public void newDatabaseIsStampedWithSchemaVersion() {
+        newDao(Photo.class);
+        newDao(User.class);
+        assertEquals(SchemaMetadata.SCHEMA_VERSION, database.getVersion());
+        //按实体建好的表不能再执行从baseVersion开始的升级（会重建tb_photo，丢掉image列）
+        int version = plan.resolveVersion(database.getVersion());
+        assertEquals(plan.getTargetVersion(), version);
+        assertTrue(plan.getChain(version).isEmpty());
+    }
+
+    @Test
+    public void tablesBeforeVersioningUseBaseVersion() {
+        //V002的tb_photo，那时还没有记录user_version
+        database.execSQL("create table tb_photo(time TEXT, path TEXT, name TEXT, lastUpdateTime TEXT,"
+                + " user_id Integer primary key)");
+        newDao(User.class);
+        assertEquals(0, database.getVersion());
+        assertEquals(2, plan.resolveVersion(database.getVersion()));
+        assertFalse(plan.getChain(2).isEmpty());
+    }
+
+    @Test
+    public void rolledBackCreationKeepsVersionZero() {
+        database.beginTransaction();
+        try {
+            newDao(Photo.class);
+        } finally {
+            database.endTransaction();
+        }
+        assertEquals(0, database.getVersion());
+    }
+}